@@ -13,6 +13,8 @@ import java.util.InvalidPropertiesFormatException;
 import java.util.Properties;
 
 import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.ReplacementPolicy;
+import de.tuberlin.dima.minidb.io.cache.ResourceClass;
 
 
 /**
@@ -31,12 +33,42 @@ public final class Config
 	
 	private static final String TEMPSPACE_DIRECTORY_KEY = "TEMPSPACE_DIRECTORY";
 	
+	private static final String DATA_MAPPED_READ_ONLY_KEY = "DATA_MAPPED_READ_ONLY";
+	
+	private static final String FILE_EXTENT_SIZE_KEY = "FILE_EXTENT_SIZE";
+	
 	private static final String QUERY_HEAP_SIZE_KEY = "QUERY_HEAP_SIZE";
 	
 	private static final String CACHE_SIZE_KEY_PREFIX = "CACHE_SIZE_FOR_PAGE_";
 	
+	private static final String CACHE_SEGMENTS_KEY = "CACHE_SEGMENTS";
+	
+	private static final String CACHE_REPLACEMENT_POLICY_KEY = "CACHE_REPLACEMENT_POLICY";
+	
+	private static final String CACHE_SCAN_RESISTANCE_KEY = "CACHE_SCAN_RESISTANCE";
+	
+	private static final String CACHE_WARM_RESTART_KEY = "CACHE_WARM_RESTART";
+	
+	private static final String CACHE_REBALANCE_INTERVAL_KEY = "CACHE_REBALANCE_INTERVAL";
+	
+	private static final String CACHE_MIN_PERCENT_KEY_PREFIX = "CACHE_MIN_PERCENT_FOR_";
+	
+	private static final String CACHE_MAX_PERCENT_KEY_PREFIX = "CACHE_MAX_PERCENT_FOR_";
+	
 	private static final String NUM_IO_BUFFERS_KEY = "NUM_IO_BUFFERS";
 	
+	private static final String NUM_IO_THREADS_KEY = "NUM_IO_THREADS";
+	
+	private static final String IO_VIRTUAL_THREADS_KEY = "IO_VIRTUAL_THREADS";
+	
+	private static final String READ_AHEAD_MAX_PAGES_KEY = "READ_AHEAD_MAX_PAGES";
+	
+	private static final String FLUSH_INTERVAL_KEY = "FLUSH_INTERVAL";
+	
+	private static final String FLUSH_DIRTY_PERCENT_KEY = "FLUSH_DIRTY_PERCENT";
+	
+	private static final String CHECKPOINT_INTERVAL_KEY = "CHECKPOINT_INTERVAL";
+	
 	private static final String NUM_CONCURRENT_QUERIES_KEY = "NUM_CONCURRENT_QUERIES";
 	
 	private static final String BLOCK_READ_COST = "BLOCK_READ_TRANSFER_NSECS";
@@ -164,6 +196,34 @@ public final class Config
 		return Config.class.getResource(this.props.getProperty(TEMPSPACE_DIRECTORY_KEY)).getPath();
 	}
 	
+	/**
+	 * Checks whether the tables and indexes are opened read-only and read through a memory
+	 * mapping of their files, which suits databases that are only queried.
+	 * 
+	 * @return True, if the data files are mapped read-only, false otherwise.
+	 */
+	public boolean isDataMappedReadOnly()
+	{
+		return getBoolean(DATA_MAPPED_READ_ONLY_KEY);
+	}
+	
+	/**
+	 * Gets the number of bytes by which table and index files grow at once. The pages of such an
+	 * extent are pre-allocated, so a growing file is extended once per extent rather than once per
+	 * page.
+	 * 
+	 * @return The extent size in bytes, or 0, if the files grow page by page.
+	 */
+	public int getFileExtentSize()
+	{
+		String val = this.props.getProperty(FILE_EXTENT_SIZE_KEY);
+		int size = Integer.parseInt(val);
+		if (size < 0) {
+			throw new IllegalArgumentException("The file extent size must not be negative.");
+		}
+		return size;
+	}
+	
 	/**
 	 * Gets the query heap size.
 	 * 
@@ -188,6 +248,131 @@ public final class Config
 		return Integer.parseInt(val);
 	}
 	
+	/**
+	 * Gets the number of independently locked segments into which each page cache
+	 * of the buffer pool is partitioned.
+	 * 
+	 * @return The number of cache segments.
+	 */
+	public int getCacheSegments()
+	{
+		String val = this.props.getProperty(CACHE_SEGMENTS_KEY);
+		return Integer.parseInt(val);
+	}
+	
+	/**
+	 * Gets the replacement policy used by the page caches of the buffer pool.
+	 * 
+	 * @return The cache replacement policy.
+	 */
+	public ReplacementPolicy getCacheReplacementPolicy()
+	{
+		String val = this.props.getProperty(CACHE_REPLACEMENT_POLICY_KEY);
+		return ReplacementPolicy.valueOf(val.trim());
+	}
+	
+	/**
+	 * Checks whether the page caches keep pages of sequential scans apart from the other pages,
+	 * such that large scans do not displace frequently used pages.
+	 * 
+	 * @return True, if the caches are scan resistant, false otherwise.
+	 */
+	public boolean isCacheScanResistant()
+	{
+		return getBoolean(CACHE_SCAN_RESISTANCE_KEY);
+	}
+	
+	/**
+	 * Checks whether the buffer pool persists the set of resident pages at shutdown and loads
+	 * it again after the next start, such that the caches do not start cold.
+	 * 
+	 * @return True, if the caches are warmed up after a restart, false otherwise.
+	 */
+	public boolean isCacheWarmRestart()
+	{
+		return getBoolean(CACHE_WARM_RESTART_KEY);
+	}
+	
+	/**
+	 * Gets the interval in which the buffer pool moves memory between the caches of different page
+	 * sizes. The memory of all caches together stays the same, and goes to the cache that would
+	 * gain the most hits from it. The cache sizes per page size are the initial sizes then.
+	 * 
+	 * @return The interval in milliseconds, or 0, if the cache sizes are fixed.
+	 */
+	public int getCacheRebalanceInterval()
+	{
+		String val = this.props.getProperty(CACHE_REBALANCE_INTERVAL_KEY);
+		int interval = Integer.parseInt(val);
+		if (interval < 0) {
+			throw new IllegalArgumentException("The rebalance interval must not be negative.");
+		}
+		return interval;
+	}
+	
+	/**
+	 * Gets the share of every page cache (in percent of its capacity) that is reserved for pages
+	 * of the given resource class. Pages of other classes do not replace these pages as long as
+	 * the class does not hold more than its reserved share.
+	 * 
+	 * @param resourceClass The resource class to get the reserved share for.
+	 * @return The reserved share in percent.
+	 */
+	public int getCacheMinPercent(ResourceClass resourceClass)
+	{
+		String val = this.props.getProperty(CACHE_MIN_PERCENT_KEY_PREFIX + resourceClass.name());
+		return checkPercent(Integer.parseInt(val));
+	}
+	
+	/**
+	 * Gets the maximal share of every page cache (in percent of its capacity) that pages of the
+	 * given resource class may occupy. A class that holds its maximal share replaces its own pages.
+	 * 
+	 * @param resourceClass The resource class to get the maximal share for.
+	 * @return The maximal share in percent.
+	 */
+	public int getCacheMaxPercent(ResourceClass resourceClass)
+	{
+		String val = this.props.getProperty(CACHE_MAX_PERCENT_KEY_PREFIX + resourceClass.name());
+		return checkPercent(Integer.parseInt(val));
+	}
+	
+	/**
+	 * Checks that the given value is a valid percentage.
+	 * 
+	 * @param percent The value to check.
+	 * @return The value.
+	 * @throws IllegalArgumentException Thrown, if the value is not between 0 and 100.
+	 */
+	private static int checkPercent(int percent)
+	{
+		if (percent < 0 || percent > 100) {
+			throw new IllegalArgumentException("Not a percentage: " + percent);
+		}
+		return percent;
+	}
+	
+	/**
+	 * Parses the boolean value stored under the given key.
+	 * 
+	 * @param key The key of the value.
+	 * @return The value.
+	 * @throws IllegalArgumentException Thrown, if the value is neither true nor false.
+	 */
+	private boolean getBoolean(String key)
+	{
+		String val = this.props.getProperty(key).trim();
+		if (val.equalsIgnoreCase("true")) {
+			return true;
+		}
+		else if (val.equalsIgnoreCase("false")) {
+			return false;
+		}
+		else {
+			throw new IllegalArgumentException("Not a boolean value: " + val);
+		}
+	}
+	
 	/**
 	 * Gets the number of I/O buffers to be used by the buffer pool.
 	 * 
@@ -199,6 +384,100 @@ public final class Config
 		return Integer.parseInt(val);
 	}
 	
+	/**
+	 * Gets the number of read and of write threads of the buffer pool. The requests for one
+	 * resource are always handled by the same thread, the requests for different resources
+	 * may be handled in parallel.
+	 * 
+	 * @return The number of I/O threads.
+	 */
+	public int getNumIOThreads()
+	{
+		String val = this.props.getProperty(NUM_IO_THREADS_KEY);
+		int threads = Integer.parseInt(val);
+		if (threads < 1) {
+			throw new IllegalArgumentException("The buffer pool needs at least one I/O thread.");
+		}
+		return threads;
+	}
+	
+	/**
+	 * Checks whether the buffer pool runs the completions of asynchronous page requests, and the
+	 * database instance runs its submitted queries, on virtual threads, such that requests waiting
+	 * for I/O do not occupy platform threads. This requires a Java runtime with virtual threads
+	 * (21 or later), older runtimes ignore it.
+	 * 
+	 * @return True, if virtual threads are used, false otherwise.
+	 */
+	public boolean isIOVirtualThreads()
+	{
+		return getBoolean(IO_VIRTUAL_THREADS_KEY);
+	}
+	
+	/**
+	 * Gets the maximal number of pages that the buffer pool reads ahead of a sequential or
+	 * strided stream of page requests.
+	 * 
+	 * @return The maximal read-ahead window, or 0, if the buffer pool does not read ahead.
+	 */
+	public int getReadAheadMaxPages()
+	{
+		String val = this.props.getProperty(READ_AHEAD_MAX_PAGES_KEY);
+		int pages = Integer.parseInt(val);
+		if (pages < 0) {
+			throw new IllegalArgumentException("The read-ahead window must not be negative.");
+		}
+		return pages;
+	}
+	
+	/**
+	 * Gets the interval in which the buffer pool looks for modified pages that are close to
+	 * eviction and writes them in the background, so that evictions find clean pages.
+	 * 
+	 * @return The interval in milliseconds, or 0, if pages are only written when they are evicted.
+	 */
+	public int getFlushInterval()
+	{
+		String val = this.props.getProperty(FLUSH_INTERVAL_KEY);
+		int interval = Integer.parseInt(val);
+		if (interval < 0) {
+			throw new IllegalArgumentException("The flush interval must not be negative.");
+		}
+		return interval;
+	}
+	
+	/**
+	 * Gets the share of modified pages (in percent of the capacity of a page cache) above which
+	 * the buffer pool starts to write modified pages in the background.
+	 * 
+	 * @return The share in percent.
+	 */
+	public int getFlushDirtyPercent()
+	{
+		String val = this.props.getProperty(FLUSH_DIRTY_PERCENT_KEY);
+		int percent = Integer.parseInt(val);
+		if (percent < 0 || percent > 100) {
+			throw new IllegalArgumentException("The dirty share must be between 0 and 100 percent.");
+		}
+		return percent;
+	}
+	
+	/**
+	 * Gets the interval in which the buffer pool takes a checkpoint, writing all pages that have
+	 * been modified before the checkpoint began.
+	 * 
+	 * @return The interval in milliseconds, or 0, if no checkpoints are taken periodically.
+	 */
+	public int getCheckpointInterval()
+	{
+		String val = this.props.getProperty(CHECKPOINT_INTERVAL_KEY);
+		int interval = Integer.parseInt(val);
+		if (interval < 0) {
+			throw new IllegalArgumentException("The checkpoint interval must not be negative.");
+		}
+		return interval;
+	}
+	
 	/**
 	 * Gets the maximal number of concurrent queries.
 	 * 
@@ -277,6 +556,8 @@ public final class Config
 		// set the default data and temp-space directory
 		p.setProperty(DATA_DIRECTORY_KEY, Constants.DEFAULT_DATA_DIRECTORY);
 		p.setProperty(TEMPSPACE_DIRECTORY_KEY, Constants.DEFAULT_TEMPSPACE_DIRECTORY);
+		p.setProperty(DATA_MAPPED_READ_ONLY_KEY, String.valueOf(Constants.DEFAULT_DATA_MAPPED_READ_ONLY));
+		p.setProperty(FILE_EXTENT_SIZE_KEY, String.valueOf(Constants.DEFAULT_FILE_EXTENT_SIZE));
 		
 		// set the default query heap size
 		p.setProperty(QUERY_HEAP_SIZE_KEY, String.valueOf(Constants.DEFAULT_QUERY_HEAP_SIZE));
@@ -288,8 +569,32 @@ public final class Config
 					String.valueOf(Constants.DEFAULT_INITIAL_CACHE_SIZE));
 		}
 		
+		// set the cache segments default
+		p.setProperty(CACHE_SEGMENTS_KEY, String.valueOf(Constants.DEFAULT_CACHE_SEGMENTS));
+		
+		// set the replacement policy default
+		p.setProperty(CACHE_REPLACEMENT_POLICY_KEY, Constants.DEFAULT_CACHE_REPLACEMENT_POLICY.name());
+		p.setProperty(CACHE_SCAN_RESISTANCE_KEY, String.valueOf(Constants.DEFAULT_CACHE_SCAN_RESISTANCE));
+		p.setProperty(CACHE_WARM_RESTART_KEY, String.valueOf(Constants.DEFAULT_CACHE_WARM_RESTART));
+		p.setProperty(CACHE_REBALANCE_INTERVAL_KEY, String.valueOf(Constants.DEFAULT_CACHE_REBALANCE_INTERVAL));
+		
+		// no reservations or limits for the resource classes
+		ResourceClass[] classes = ResourceClass.values();
+		for (int i = 0; i < classes.length; i++) {
+			p.setProperty(CACHE_MIN_PERCENT_KEY_PREFIX + classes[i].name(), "0");
+			p.setProperty(CACHE_MAX_PERCENT_KEY_PREFIX + classes[i].name(), "100");
+		}
+		
 		// set the I/O buffer default
 		p.setProperty(NUM_IO_BUFFERS_KEY, String.valueOf(Constants.DEFAULT_NUM_IO_BUFFERS));
+		p.setProperty(NUM_IO_THREADS_KEY, String.valueOf(Constants.DEFAULT_NUM_IO_THREADS));
+		p.setProperty(IO_VIRTUAL_THREADS_KEY, String.valueOf(Constants.DEFAULT_IO_VIRTUAL_THREADS));
+		p.setProperty(READ_AHEAD_MAX_PAGES_KEY, String.valueOf(Constants.DEFAULT_READ_AHEAD_MAX_PAGES));
+		
+		// set the background writing defaults
+		p.setProperty(FLUSH_INTERVAL_KEY, String.valueOf(Constants.DEFAULT_FLUSH_INTERVAL));
+		p.setProperty(FLUSH_DIRTY_PERCENT_KEY, String.valueOf(Constants.DEFAULT_FLUSH_DIRTY_PERCENT));
+		p.setProperty(CHECKPOINT_INTERVAL_KEY, String.valueOf(Constants.DEFAULT_CHECKPOINT_INTERVAL));
 		
 		// set the concurrent queries default
 		p.setProperty(NUM_CONCURRENT_QUERIES_KEY,
@@ -319,6 +624,20 @@ public final class Config
 			return DATA_DIRECTORY_KEY;
 		}
 		
+		try {
+			isDataMappedReadOnly();
+		}
+		catch (Throwable t) {
+			return DATA_MAPPED_READ_ONLY_KEY;
+		}
+		
+		try {
+			getFileExtentSize();
+		}
+		catch (Throwable t) {
+			return FILE_EXTENT_SIZE_KEY;
+		}
+		
 		try {
 			getQueryHeapSize();
 		}
@@ -335,6 +654,62 @@ public final class Config
 			}
 		}
 		
+		try {
+			getCacheSegments();
+		}
+		catch (Throwable t) {
+			return CACHE_SEGMENTS_KEY;
+		}
+		
+		try {
+			getCacheReplacementPolicy();
+		}
+		catch (Throwable t) {
+			return CACHE_REPLACEMENT_POLICY_KEY;
+		}
+		
+		try {
+			isCacheScanResistant();
+		}
+		catch (Throwable t) {
+			return CACHE_SCAN_RESISTANCE_KEY;
+		}
+		
+		try {
+			isCacheWarmRestart();
+		}
+		catch (Throwable t) {
+			return CACHE_WARM_RESTART_KEY;
+		}
+		
+		try {
+			getCacheRebalanceInterval();
+		}
+		catch (Throwable t) {
+			return CACHE_REBALANCE_INTERVAL_KEY;
+		}
+		
+		int reserved = 0;
+		for (ResourceClass rc : ResourceClass.values()) {
+			try {
+				reserved += getCacheMinPercent(rc);
+			}
+			catch (Throwable t) {
+				return CACHE_MIN_PERCENT_KEY_PREFIX + rc.name();
+			}
+			try {
+				if (getCacheMaxPercent(rc) < getCacheMinPercent(rc)) {
+					return CACHE_MAX_PERCENT_KEY_PREFIX + rc.name();
+				}
+			}
+			catch (Throwable t) {
+				return CACHE_MAX_PERCENT_KEY_PREFIX + rc.name();
+			}
+			if (reserved > 100) {
+				return CACHE_MIN_PERCENT_KEY_PREFIX + rc.name();
+			}
+		}
+		
 		try {
 			getNumIOBuffers();
 		}
@@ -342,6 +717,48 @@ public final class Config
 			return NUM_IO_BUFFERS_KEY;
 		}
 		
+		try {
+			getNumIOThreads();
+		}
+		catch (Throwable t) {
+			return NUM_IO_THREADS_KEY;
+		}
+		
+		try {
+			isIOVirtualThreads();
+		}
+		catch (Throwable t) {
+			return IO_VIRTUAL_THREADS_KEY;
+		}
+		
+		try {
+			getReadAheadMaxPages();
+		}
+		catch (Throwable t) {
+			return READ_AHEAD_MAX_PAGES_KEY;
+		}
+		
+		try {
+			getFlushInterval();
+		}
+		catch (Throwable t) {
+			return FLUSH_INTERVAL_KEY;
+		}
+		
+		try {
+			getFlushDirtyPercent();
+		}
+		catch (Throwable t) {
+			return FLUSH_DIRTY_PERCENT_KEY;
+		}
+		
+		try {
+			getCheckpointInterval();
+		}
+		catch (Throwable t) {
+			return CHECKPOINT_INTERVAL_KEY;
+		}
+		
 		try {
 			getMaxConcurrentQueries();
 		}
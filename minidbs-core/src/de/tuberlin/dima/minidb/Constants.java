@@ -3,6 +3,8 @@ package de.tuberlin.dima.minidb;
 
 import java.util.Locale;
 
+import de.tuberlin.dima.minidb.io.cache.ReplacementPolicy;
+
 
 /**
  * A collection of global constants that are directly relevant for the external
@@ -33,11 +35,22 @@ public abstract class Constants
 	 */
 	public static final String CATALOGUE_FILE_PATH = "catalogue.xml";
 	
+	/**
+	 * The name of the file in the data directory that holds the resident pages of the caches
+	 * between a shutdown and the next start.
+	 */
+	public static final String CACHE_MANIFEST_FILE_NAME = "cache.manifest";
+	
 	/**
 	 * The prefix of the name for temp files created by the query heap.
 	 */
 	public static final String QUERY_HEAP_TEMP_FILE_PREFIX = "qheap.";
 	
+	/**
+	 * The prefix of the name for the temp files that hold the sorted runs of the index bulk loader.
+	 */
+	public static final String BULK_LOAD_TEMP_FILE_PREFIX = "bulkload.";
+	
 	
 	/*
 	 * ********************************************************************************************
@@ -90,12 +103,75 @@ public abstract class Constants
 	 */
 	static final int DEFAULT_INITIAL_CACHE_SIZE = 1000;
 	
+	/**
+	 * The default number of independently locked segments a page cache is split into.
+	 * Pages are assigned to a segment by the hash of their resource id and page number.
+	 */
+	static final int DEFAULT_CACHE_SEGMENTS = 8;
+	
+	/**
+	 * The default replacement policy of the page caches.
+	 */
+	static final ReplacementPolicy DEFAULT_CACHE_REPLACEMENT_POLICY = ReplacementPolicy.ARC;
+	
+	/**
+	 * Whether the page caches admit pages of sequential scans into a separate scan ring by default.
+	 */
+	static final boolean DEFAULT_CACHE_SCAN_RESISTANCE = true;
+	
+	/**
+	 * Whether the buffer pool reloads the pages that were resident at shutdown by default.
+	 */
+	static final boolean DEFAULT_CACHE_WARM_RESTART = true;
+	
+	/**
+	 * The default interval (in milliseconds) in which memory is moved between the page caches.
+	 */
+	static final int DEFAULT_CACHE_REBALANCE_INTERVAL = 1000;
+	
 	/**
 	 * The number of I/O buffers used by the buffer pool. The I/O buffers are needed to
 	 * sequentialize reads and writes.
 	 */
 	static final int DEFAULT_NUM_IO_BUFFERS = 128;
 	
+	/**
+	 * The default number of read and of write threads of the buffer pool.
+	 */
+	static final int DEFAULT_NUM_IO_THREADS = 4;
+	
+	/**
+	 * Whether the completions of asynchronous page requests run on virtual threads by default.
+	 */
+	static final boolean DEFAULT_IO_VIRTUAL_THREADS = false;
+	
+	/**
+	 * The default maximal number of pages read ahead of a sequential stream of page requests.
+	 */
+	static final int DEFAULT_READ_AHEAD_MAX_PAGES = 32;
+	
+	/**
+	 * The default interval (in milliseconds) in which modified pages are written in the background.
+	 * By default, pages are only written when they are evicted.
+	 */
+	static final int DEFAULT_FLUSH_INTERVAL = 0;
+	
+	/**
+	 * The default share of modified pages (in percent) above which they are written in the background.
+	 */
+	static final int DEFAULT_FLUSH_DIRTY_PERCENT = 10;
+	
+	/**
+	 * The default interval (in milliseconds) between two checkpoints. By default, checkpoints are
+	 * only taken on request.
+	 */
+	static final int DEFAULT_CHECKPOINT_INTERVAL = 0;
+	
+	/**
+	 * Whether tables and indexes are opened read-only and mapped into memory by default.
+	 */
+	static final boolean DEFAULT_DATA_MAPPED_READ_ONLY = false;
+	
 	/**
 	 * The default number of concurrent queries.
 	 */
@@ -162,6 +238,22 @@ public abstract class Constants
 	 */
 	public static final int DEFAULT_PREFETCHING_LENGTH = 32;
 	
+	/**
+	 * The default number of bytes by which table and index files grow at once.
+	 */
+	public static final int DEFAULT_FILE_EXTENT_SIZE = 1024 * 1024;
+	
+	/**
+	 * The number of pages that the bulk loader writes to a table or index file at once.
+	 */
+	public static final int DEFAULT_BULK_LOAD_BATCH_PAGES = 64;
+	
+	/**
+	 * The number of bytes in which the bulk loader sorts the entries of one index, before it
+	 * writes them to a temp file as a sorted run.
+	 */
+	public static final int DEFAULT_BULK_LOAD_SORT_BUFFER_SIZE = 16 * 1024 * 1024;
+	
 	/**
 	 * A flag that indicates whether to perform debug checks.
 	 */
@@ -4,8 +4,13 @@ package de.tuberlin.dima.minidb;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.InvalidPropertiesFormatException;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,7 +22,9 @@ import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
 import de.tuberlin.dima.minidb.core.InternalOperationFailure;
 import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.IOThreads;
 import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+import de.tuberlin.dima.minidb.io.manager.WarmRestartable;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
 
@@ -111,6 +118,17 @@ public class DBInstance
 	 */
 	private QueryProcessor queryProcessor;
 
+	/**
+	 * The threads that run the queries submitted to this instance.
+	 */
+	private ExecutorService queryExecutor;
+
+	/**
+	 * Marks the threads of the query executor while they run a query, so that a query which
+	 * shuts down the instance does not wait for itself.
+	 */
+	private final ThreadLocal<Boolean> runningQuery = new ThreadLocal<Boolean>();
+
 	/**
 	 * The path of the configuration file.
 	 */
@@ -357,6 +375,12 @@ public class DBInstance
 				return RETURN_CODE_INTERNAL_PROBLEM;
 			}
 
+			// the queries run on virtual threads, if configured, since they mostly wait for pages
+			if (this.CONFIG.isIOVirtualThreads() && !IOThreads.isVirtualAvailable()) {
+				this.LOGGER.warning("Virtual threads are not available in this Java runtime, queries run on platform threads.");
+			}
+			this.queryExecutor = IOThreads.newQueryExecutor(this.CONFIG.isIOVirtualThreads(), this.CONFIG.getMaxConcurrentQueries());
+
 			// open all resources
 			try {
 				openResources(this.CONFIG, this.CATALOGUE, this.BUFFER_POOL);
@@ -366,6 +390,24 @@ public class DBInstance
 				return RETURN_CODE_INTERNAL_PROBLEM;
 			}
 			
+			// reload the pages that were resident at the last shutdown, the pages are loaded
+			// in the background, so a failure only leaves the caches cold
+			if (this.CONFIG.isCacheWarmRestart() && this.BUFFER_POOL instanceof WarmRestartable) {
+				File manifestFile = new File(this.CONFIG.getDataDirectory(), Constants.CACHE_MANIFEST_FILE_NAME);
+				if (manifestFile.exists()) {
+					try {
+						Map<String, Integer> resourceIds = new HashMap<String, Integer>();
+						for (Map.Entry<Integer, String> entry : getResourceNames(this.CATALOGUE).entrySet()) {
+							resourceIds.put(entry.getValue(), entry.getKey());
+						}
+						((WarmRestartable) this.BUFFER_POOL).loadCacheManifest(manifestFile, resourceIds);
+					}
+					catch (Exception ex) {
+						this.LOGGER.log(Level.WARNING, "The cache manifest could not be loaded: " + ex.getMessage(), ex);
+					}
+				}
+			}
+			
 		    // start the query processor
 //		    try {
 //		    	this.queryProcessor = new QueryProcessor(CATALOGUE, CONFIG, BUFFER_POOL, QUERY_HEAP, 100);
@@ -384,6 +426,10 @@ public class DBInstance
 		finally {
 			if (!this.running) {
 				// shut down all that was started. Make best effort...
+			if (this.queryExecutor != null) {
+				this.queryExecutor.shutdown();
+				this.queryExecutor = null;
+			}
 			if (this.QUERY_HEAP != null) {
 				try {
 					this.QUERY_HEAP.closeQueryHeap();
@@ -428,6 +474,21 @@ public class DBInstance
 		// now close all the resources in the catalogue as best effort
 		boolean allSmooth = true;
 
+		// let the running queries finish, unless a query shuts down the instance
+		if (this.queryExecutor != null) {
+			this.queryExecutor.shutdown();
+			if (this.runningQuery.get() == null) {
+				try {
+					this.queryExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+				}
+				catch (InterruptedException iex) {
+					allSmooth = false;
+					this.LOGGER.log(Level.WARNING, "Interrupted while waiting for the running queries to finish.", iex);
+				}
+			}
+			this.queryExecutor = null;
+		}
+
 	    // close the query heap
 	    try {
 			this.QUERY_HEAP.closeQueryHeap();
@@ -438,6 +499,17 @@ public class DBInstance
 		}
 	    this.QUERY_HEAP = null;
 	    
+		// remember the resident pages for the next start
+		if (this.CONFIG.isCacheWarmRestart() && this.BUFFER_POOL instanceof WarmRestartable) {
+			try {
+				File manifestFile = new File(this.CONFIG.getDataDirectory(), Constants.CACHE_MANIFEST_FILE_NAME);
+				((WarmRestartable) this.BUFFER_POOL).writeCacheManifest(manifestFile, getResourceNames(this.CATALOGUE));
+			}
+			catch (Exception ex) {
+				this.LOGGER.log(Level.WARNING, "The cache manifest could not be written: " + ex.getMessage(), ex);
+			}
+		}
+		
 		// close the buffer pool
 		try {
 			this.BUFFER_POOL.closeBufferPool();
@@ -513,7 +585,8 @@ public class DBInstance
 			// open the table
 			TableResourceManager manager = null;
 			try {
-				manager = TableResourceManager.openTable(tableFile);
+				manager = TableResourceManager.openTable(tableFile, config.isDataMappedReadOnly());
+				manager.setExtentSize(config.getFileExtentSize());
 				int id = catalogue.reserveNextId();
 				buffer.registerResource(id, manager);
 				td.setResourceProperties(manager, id);
@@ -549,7 +622,8 @@ public class DBInstance
 			File indexFile = new File(config.getDataDirectory(), id.getFileName());
 			IndexResourceManager manager = null;
 			try {
-				manager = IndexResourceManager.openIndex(indexFile, table.getSchema());
+				manager = IndexResourceManager.openIndex(indexFile, table.getSchema(), config.isDataMappedReadOnly());
+				manager.setExtentSize(config.getFileExtentSize());
 				int resourceId = catalogue.reserveNextId();
 				buffer.registerResource(resourceId, manager);
 				id.setResourceProperties(manager, table, resourceId);
@@ -569,6 +643,32 @@ public class DBInstance
 		}
 	}
 
+	/**
+	 * Gets the names of the files of all tables and indexes in the catalogue, mapped by the ids
+	 * of the resources. Unlike the ids, the file names remain the same across restarts.
+	 * 
+	 * @param catalogue The catalogue whose resources have been opened.
+	 * @return The file names of the resources, mapped by the resource ids.
+	 */
+	private static Map<Integer, String> getResourceNames(Catalogue catalogue)
+	{
+		Map<Integer, String> names = new HashMap<Integer, String>();
+		
+		Iterator<TableDescriptor> tableIter = catalogue.getAllTables();
+		while (tableIter.hasNext()) {
+			TableDescriptor td = tableIter.next();
+			names.put(td.getResourceId(), td.getFileName());
+		}
+		
+		Iterator<IndexDescriptor> indexIter = catalogue.getAllIndexes();
+		while (indexIter.hasNext()) {
+			IndexDescriptor id = indexIter.next();
+			names.put(id.getResourceId(), id.getFileName());
+		}
+		
+		return names;
+	}
+
 	/**
 	 * Closes all resources that are known by the catalogue. This method does not fail when an error occurs, but logs
 	 * the error and continues.
@@ -619,6 +719,38 @@ public class DBInstance
 	// --------------------------------------------------------------------------------------------
 	//                                    Query processing
 	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Evaluates the query on one of the query threads of this instance, rather than on the
+	 * calling thread (see {@link #processQuery(String, ResultHandler)}). With
+	 * <tt>IO_VIRTUAL_THREADS</tt>, every query runs on a virtual thread of its own, so that the
+	 * queries waiting for pages do not take up platform threads. Otherwise, at most
+	 * <tt>NUM_CONCURRENT_QUERIES</tt> queries run at the same time.
+	 * 
+	 * @param queryString The query as an SQL string.
+	 * @param resultSet The result set to which the resulting tuples are added.
+	 * @return A future that is done, once the query has been evaluated.
+	 */
+	public Future<?> submitQuery(final String queryString, final ResultHandler resultSet)
+	{
+		if (this.queryExecutor == null) {
+			throw new InstanceNotStartedException();
+		}
+
+		return this.queryExecutor.submit(new Runnable() {
+			@Override
+			public void run()
+			{
+				DBInstance.this.runningQuery.set(Boolean.TRUE);
+				try {
+					processQuery(queryString, resultSet);
+				}
+				finally {
+					DBInstance.this.runningQuery.remove();
+				}
+			}
+		});
+	}
 	
 	/**
 	 * Root function that accepts a query string and uses the query processor to evaluate the
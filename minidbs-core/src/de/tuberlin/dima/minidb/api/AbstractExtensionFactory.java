@@ -9,12 +9,14 @@ import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.FrameSource;
 import de.tuberlin.dima.minidb.io.cache.PageCache;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageLayout;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
@@ -116,6 +118,11 @@ public abstract class AbstractExtensionFactory
 	 * This class does not really contain a copy of the binary data as objects, but it
 	 * actually wraps the data and provides functions to access them.
 	 * 
+	 * The records are laid out as the page layout of the schema describes (see
+	 * {@link TableSchema#getPageLayout()}). Pages with the column-grouped layout are created by
+	 * {@link #createColumnGroupedTablePage(TableSchema, byte[])}, to which the extension factory
+	 * dispatches such schemas.
+	 * 
 	 * @param schema The schema describing the layout of the binary page.
 	 * @param binaryPage The binary data from the table.
 	 * @return A TablePage that represents the given binary table data.
@@ -128,7 +135,10 @@ public abstract class AbstractExtensionFactory
 	/**
 	 * Initializes an empty table page with the given page number 
 	 * that will store its data in the given byte buffer. This method makes sure a valid header is
-	 * created.
+	 * created. The records are laid out as the page layout of the schema describes (see
+	 * {@link TableSchema#getPageLayout()}), which the table selects when it is created. Pages
+	 * with the column-grouped layout are initialized by
+	 * {@link #initColumnGroupedTablePage(TableSchema, byte[], int)}.
 	 * 
 	 * @param schema The schema describing the layout of the new page.
 	 * @param binaryPage The buffer for the table page.
@@ -140,6 +150,39 @@ public abstract class AbstractExtensionFactory
 	abstract public TablePage initTablePage(TableSchema schema, byte[] binaryPage, int newPageNumber)
 	throws PageFormatException;
 	
+	/**
+	 * Creates a TablePage like {@link #createTablePage(TableSchema, byte[])} for a schema whose
+	 * page layout groups the records by column ({@link TablePageLayout#COLUMN_GROUPED}).
+	 * 
+	 * @param schema The schema describing the layout of the binary page.
+	 * @param binaryPage The binary data from the table.
+	 * @return A TablePage that represents the given binary table data.
+	 * @throws PageFormatException If the byte array did not contain a valid page as
+	 *                             described by the TableSchema.
+	 */
+	public TablePage createColumnGroupedTablePage(TableSchema schema, byte[] binaryPage)
+	throws PageFormatException
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Initializes an empty table page like {@link #initTablePage(TableSchema, byte[], int)} for a
+	 * schema whose page layout groups the records by column ({@link TablePageLayout#COLUMN_GROUPED}).
+	 * 
+	 * @param schema The schema describing the layout of the new page.
+	 * @param binaryPage The buffer for the table page.
+	 * @param newPageNumber The number for the initialized page.
+	 * @return The new empty TablePage.
+	 * @throws PageFormatException If the array size does not match the page size
+	 *                             for this table schema.
+	 */
+	public TablePage initColumnGroupedTablePage(TableSchema schema, byte[] binaryPage, int newPageNumber)
+	throws PageFormatException
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
 	/**
 	 * Creates a new PageCache with the given number of entries that caches pages of
 	 * the given size. During its lifetime, the cache holds a fix number of pages.
@@ -153,7 +196,29 @@ public abstract class AbstractExtensionFactory
 	 * @return The new page cache.
 	 */
 	abstract public PageCache createPageCache(PageSize pageSize, int numPages);
-	
+
+	/**
+	 * Creates a new PageCache with the given number of entries that caches pages of
+	 * the given size, like {@link #createPageCache(PageSize, int)}. The cache layout
+	 * (for example the number of segments) is taken from the given <tt>Config</tt>, and
+	 * the frames for the empty slots of the cache are taken from the given source.
+	 *
+	 * In contrast to the plain variant, the returned cache must be safe for concurrent
+	 * access by multiple threads without any external synchronization. This is the
+	 * variant used by the buffer pool manager, which passes the arena of its I/O buffers
+	 * as the source of the frames.
+	 *
+	 * @param pageSize The size of the pages cached by this page cache.
+	 * @param numPages The number of pages that the cache holds.
+	 * @param config The configuration describing the layout of the cache.
+	 * @param frames The source of the frames for the empty slots of the cache.
+	 * @return The new thread safe page cache.
+	 */
+	public PageCache createPageCache(PageSize pageSize, int numPages, Config config, FrameSource frames)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	/**
 	 * Creates a buffer pool manager that serves as the resource gateway for all queries.
 	 * The buffer pool internally owns the caches for the respective page sizes and
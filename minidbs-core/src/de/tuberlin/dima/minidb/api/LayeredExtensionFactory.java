@@ -10,12 +10,14 @@ import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.FrameSource;
 import de.tuberlin.dima.minidb.io.cache.PageCache;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageLayout;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
@@ -108,6 +110,9 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 
 	@Override
 	public TablePage createTablePage(TableSchema schema, byte[] binaryPage) throws PageFormatException {
+		if (schema.getPageLayout() == TablePageLayout.COLUMN_GROUPED) {
+			return createColumnGroupedTablePage(schema, binaryPage);
+		}
 		for (AbstractExtensionFactory factory: this.factories) {
 			try {
 				return factory.createTablePage(schema, binaryPage);
@@ -120,6 +125,9 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 
 	@Override
 	public TablePage initTablePage(TableSchema schema, byte[] binaryPage, int newPageNumber) throws PageFormatException {
+		if (schema.getPageLayout() == TablePageLayout.COLUMN_GROUPED) {
+			return initColumnGroupedTablePage(schema, binaryPage, newPageNumber);
+		}
 		for (AbstractExtensionFactory factory: this.factories) {
 			try {
 				return factory.initTablePage(schema, binaryPage, newPageNumber);
@@ -130,6 +138,30 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public TablePage createColumnGroupedTablePage(TableSchema schema, byte[] binaryPage) throws PageFormatException {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createColumnGroupedTablePage(schema, binaryPage);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public TablePage initColumnGroupedTablePage(TableSchema schema, byte[] binaryPage, int newPageNumber) throws PageFormatException {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.initColumnGroupedTablePage(schema, binaryPage, newPageNumber);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public PageCache createPageCache(PageSize pageSize, int numPages) {
 		for (AbstractExtensionFactory factory: this.factories) {
@@ -142,6 +174,18 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public PageCache createPageCache(PageSize pageSize, int numPages, Config config, FrameSource frames) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createPageCache(pageSize, numPages, config, frames);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public BufferPoolManager createBufferPoolManager(Config config, Logger logger) {
 		for (AbstractExtensionFactory factory: this.factories) {
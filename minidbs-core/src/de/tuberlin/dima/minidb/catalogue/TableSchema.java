@@ -9,6 +9,7 @@ import java.util.Map;
 import de.tuberlin.dima.minidb.Constants;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.cache.UnsupportedPageSizeException;
+import de.tuberlin.dima.minidb.io.tables.TablePageLayout;
 import de.tuberlin.dima.minidb.util.Pair;
 
 
@@ -33,6 +34,11 @@ public class TableSchema
 	 * The map from column names to column-position pairs.
 	 */
 	private final Map<String, Pair<ColumnSchema, Integer>> columnsByName;
+	
+	/**
+	 * The layout of the records on the pages of this table.
+	 */
+	private TablePageLayout pageLayout = TablePageLayout.ROW;
 
 	
 	/**
@@ -86,6 +92,30 @@ public class TableSchema
 		return this.pageSize;
 	}
 	
+	/**
+	 * Gets the layout of the records on the pages of this table.
+	 * 
+	 * @return The table's page layout.
+	 */
+	public TablePageLayout getPageLayout()
+	{
+		return this.pageLayout;
+	}
+	
+	/**
+	 * Sets the layout of the records on the pages of this table. The layout must be set before
+	 * the table is created, the pages of an existing table keep their layout.
+	 * 
+	 * @param pageLayout The page layout for this table.
+	 */
+	public void setPageLayout(TablePageLayout pageLayout)
+	{
+		if (pageLayout == null) {
+			throw new NullPointerException("The page layout must not be null.");
+		}
+		this.pageLayout = pageLayout;
+	}
+	
 	/**
 	 * Gets the number of columns in this table schema.
 	 * 
@@ -152,6 +182,9 @@ public class TableSchema
 		}
 		
 		bld.append(") PAGE_SIZE ").append(this.pageSize.getNumberOfBytes());
+		if (this.pageLayout != TablePageLayout.ROW) {
+			bld.append(" PAGE_LAYOUT ").append(this.pageLayout);
+		}
 		
 		return bld.toString();
 	}
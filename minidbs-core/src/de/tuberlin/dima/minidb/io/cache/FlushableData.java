@@ -0,0 +1,21 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+/**
+ * Cacheable data whose modification flag can be reset. The buffer pool uses it to write modified
+ * pages in the background while they stay in the cache: it copies the binary data of a page that
+ * nobody holds pinned, marks the page unmodified and writes the copy. A page that is modified
+ * afterwards is marked modified again by the modification itself.
+ */
+public interface FlushableData extends CacheableData
+{
+	/**
+	 * Marks the data as unmodified, after a copy of its binary data has been taken to be written.
+	 */
+	public void markUnmodified();
+	
+	/**
+	 * Marks the data as modified again, because the copy taken to be written could not be written.
+	 */
+	public void markModified();
+}
@@ -0,0 +1,43 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+/**
+ * Hands out the page frames that a cache gives away for its empty slots. A cache that takes a new
+ * page into an empty slot keeps the buffer of the page, but must still return an evicted entry
+ * with a buffer. The buffer pool lets its caches take these frames from its frame arena, so
+ * filling a cache does not allocate a buffer per page.
+ * 
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public interface FrameSource
+{
+	/**
+	 * Takes a frame for an empty slot of a cache. The frame leaves the cache with the evicted
+	 * entry it is handed out in.
+	 * 
+	 * @return A frame of the page size of the cache.
+	 */
+	byte[] takeFrame();
+
+
+	/**
+	 * Creates a source that allocates a new frame for every empty slot, for caches that are used
+	 * without a buffer pool.
+	 * 
+	 * @param page The size of the frames.
+	 * @return The source.
+	 */
+	static FrameSource allocating(PageSize page)
+	{
+		final int frameSize = page.getNumberOfBytes();
+
+		return new FrameSource()
+		{
+			@Override
+			public byte[] takeFrame()
+			{
+				return new byte[frameSize];
+			}
+		};
+	}
+}
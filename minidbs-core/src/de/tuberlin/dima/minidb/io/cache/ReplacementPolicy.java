@@ -0,0 +1,22 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+/**
+ * An enumeration of the replacement policies a page cache of the buffer pool may use.
+ * The policy is selected through the configuration.
+ */
+public enum ReplacementPolicy
+{
+	/**
+	 * Two recency lists for pages hit once and pages hit repeatedly. The list to evict from
+	 * is chosen by comparing the list sizes.
+	 */
+	TWO_LIST,
+	
+	/**
+	 * Adaptive Replacement Cache (Megiddo, Modha). Keeps ghost lists of recently evicted pages,
+	 * bounded by the cache capacity, and adapts the target size of the recency list whenever
+	 * a ghost entry is hit.
+	 */
+	ARC;
+}
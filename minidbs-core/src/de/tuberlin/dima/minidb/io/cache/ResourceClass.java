@@ -0,0 +1,19 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+/**
+ * An enumeration of the classes of resources whose pages share a page cache. The configuration
+ * may reserve or limit the share of the cache for every class.
+ */
+public enum ResourceClass
+{
+	/**
+	 * Pages of tables.
+	 */
+	TABLE,
+	
+	/**
+	 * Pages of indexes.
+	 */
+	INDEX;
+}
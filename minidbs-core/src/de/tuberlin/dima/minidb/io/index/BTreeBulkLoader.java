@@ -0,0 +1,267 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.manager.PageBatch;
+
+
+/**
+ * Builds a B-Tree index bottom-up from a set of (key / RID) pairs, instead of inserting the pairs
+ * one at a time. The pairs are collected first, as binary records that are sorted in a buffer of
+ * limited size and written to temp files as sorted runs when the buffer is full (see
+ * {@link KeyRIDSorter}). When the index is built, the runs are merged. The leaves are filled
+ * completely in key order and linked, and every level of inner nodes is built from the largest
+ * keys of the level below, until a single root remains. All pages are written to the index file
+ * directly, in batches of consecutive pages, without passing through the buffer pool.
+ * <p>
+ * Building replaces the previous contents of the index. The index must therefore not be in use,
+ * and none of its pages may be held by the buffer pool. NULL keys are not indexed.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public class BTreeBulkLoader
+{
+	/**
+	 * The index to build.
+	 */
+	private final IndexResourceManager index;
+
+	/**
+	 * The schema of the index to build.
+	 */
+	private final IndexSchema schema;
+
+	/**
+	 * The pairs to put into the index.
+	 */
+	private final KeyRIDSorter entries;
+
+	/**
+	 * The number of distinct keys in the built index.
+	 */
+	private long numberOfKeys;
+
+	/**
+	 * The number of leaf pages of the built index.
+	 */
+	private int numberOfLeafs;
+
+	/**
+	 * The number of levels of the built index, including the leaves.
+	 */
+	private int treeDepth;
+
+
+	/**
+	 * Creates a new loader that builds the index behind the given resource manager. The sorted
+	 * runs are written to the default temp directory.
+	 *
+	 * @param index The resource manager of the index to build.
+	 */
+	public BTreeBulkLoader(IndexResourceManager index)
+	{
+		this(index, null, Constants.DEFAULT_BULK_LOAD_SORT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new loader that builds the index behind the given resource manager.
+	 *
+	 * @param index The resource manager of the index to build.
+	 * @param spillDirectory The directory for the sorted runs, or null, to use the default temp
+	 *                       directory.
+	 * @param sortBufferSize The number of bytes in which the pairs are sorted before they are
+	 *                       written to a run.
+	 */
+	public BTreeBulkLoader(IndexResourceManager index, File spillDirectory, int sortBufferSize)
+	{
+		if (index.isMapped()) {
+			throw new IllegalArgumentException("The index is opened read-only.");
+		}
+
+		this.index = index;
+		this.schema = index.getSchema();
+		this.entries = new KeyRIDSorter(this.schema.getIndexedColumnSchema().getDataType(), spillDirectory, sortBufferSize);
+	}
+
+
+	/**
+	 * Adds a pair of (key / RID) to the index to be built. Pairs with a NULL key are ignored.
+	 *
+	 * @param key The key of the pair.
+	 * @param rid The RID of the pair, as given by {@link RID#getID()}.
+	 * @throws IOException Thrown, if a sorted run could not be written.
+	 */
+	public void add(DataField key, long rid) throws IOException
+	{
+		if (!key.isNULL()) {
+			this.entries.add(key, rid);
+		}
+	}
+
+	/**
+	 * Gets the number of pairs added so far.
+	 *
+	 * @return The number of pairs.
+	 */
+	public long getNumberOfEntries()
+	{
+		return this.entries.getNumberOfPairs();
+	}
+
+	/**
+	 * Drops the pairs added so far and deletes their sorted runs, without building the index.
+	 */
+	public void discard()
+	{
+		this.entries.clear();
+	}
+
+	/**
+	 * Sorts the added pairs and writes the index. Afterwards, the root page number and the first
+	 * leaf page number of the index schema refer to the new tree. The sorted runs are deleted, also
+	 * if the index could not be built.
+	 *
+	 * @throws DuplicateException Thrown, if the index is unique, but a key was added twice. The
+	 *                            index is left empty in that case.
+	 * @throws IOException Thrown, if the pages could not be written.
+	 * @throws PageFormatException Thrown, if a page could not be initialized.
+	 */
+	public void build() throws IOException, PageFormatException
+	{
+		try {
+			build(this.entries.sort());
+		}
+		finally {
+			this.entries.clear();
+		}
+	}
+
+	private void build(KeyRIDSorter.Cursor cursor) throws IOException, PageFormatException
+	{
+		this.index.truncate();
+
+		final int firstLeaf = this.schema.getFirstLeafNumber();
+		final int maxEntries = this.schema.getMaximalLeafEntries();
+		final PageBatch batch = new PageBatch(this.index, Constants.DEFAULT_BULK_LOAD_BATCH_PAGES);
+
+		// the largest key below each page of the level that is currently built
+		List<DataField> keys = new ArrayList<DataField>();
+		List<Integer> children = new ArrayList<Integer>();
+
+		// --------------------------- leaves ----------------------------
+
+		BTreeLeafPage leaf = (BTreeLeafPage) IndexPageFactory.initIndexPage(this.schema, batch.nextBuffer(), firstLeaf, true);
+		DataField previous = null;
+		long distinct = 0;
+
+		while (cursor.next()) {
+			DataField key = cursor.getKey();
+			boolean repeated = previous != null && previous.compareTo(key) == 0;
+			if (!repeated) {
+				distinct++;
+			} else if (this.schema.isUnique()) {
+				this.index.truncate();
+				throw new DuplicateException("Key " + key + " is already contained.");
+			}
+
+			if (leaf.getNumberOfEntries() == maxEntries) {
+				BTreeLeafPage next = (BTreeLeafPage) this.index.reserveNewPage(batch.nextBuffer(), BTreeIndexPageType.LEAF_PAGE);
+				leaf.setNextLeafPageNumber(next.getPageNumber());
+				leaf.setLastKeyContinuingOnNextPage(repeated);
+
+				keys.add(previous);
+				children.add(leaf.getPageNumber());
+				batch.add(leaf);
+				leaf = next;
+			}
+
+			leaf.insertKeyRIDPair(key, new RID(cursor.getRID()));
+			previous = key;
+		}
+
+		keys.add(previous);
+		children.add(leaf.getPageNumber());
+		batch.add(leaf);
+
+		this.numberOfKeys = distinct;
+		this.numberOfLeafs = children.size();
+		this.treeDepth = 1;
+
+		// ------------------------- inner nodes -------------------------
+
+		final int maxChildren = this.schema.getFanOut() + 1;
+
+		while (children.size() > 1) {
+			List<DataField> parentKeys = new ArrayList<DataField>();
+			List<Integer> parents = new ArrayList<Integer>();
+
+			for (int start = 0; start < children.size(); ) {
+				int num = Math.min(maxChildren, children.size() - start);
+				// never leave a single child for the last node
+				if (children.size() - start - num == 1) {
+					num--;
+				}
+
+				BTreeInnerNodePage node = (BTreeInnerNodePage) this.index.reserveNewPage(batch.nextBuffer(), BTreeIndexPageType.INNER_NODE_PAGE);
+				node.initRootState(keys.get(start), children.get(start), children.get(start + 1));
+				for (int k = 2; k < num; k++) {
+					node.insertKeyPageNumberPairAtPosition(keys.get(start + k - 1), children.get(start + k), k - 1);
+				}
+
+				parentKeys.add(keys.get(start + num - 1));
+				parents.add(node.getPageNumber());
+				batch.add(node);
+				start += num;
+			}
+
+			keys = parentKeys;
+			children = parents;
+			this.treeDepth++;
+		}
+
+		batch.flush();
+
+		this.index.updateRootPageNumber(children.get(0));
+		this.index.updateFirstLeafPageNumber(firstLeaf);
+	}
+
+	/**
+	 * Gets the number of distinct keys in the built index.
+	 *
+	 * @return The number of distinct keys.
+	 */
+	public long getNumberOfKeys()
+	{
+		return this.numberOfKeys;
+	}
+
+	/**
+	 * Gets the number of leaf pages of the built index.
+	 *
+	 * @return The number of leaf pages.
+	 */
+	public int getNumberOfLeafs()
+	{
+		return this.numberOfLeafs;
+	}
+
+	/**
+	 * Gets the number of levels of the built index, counting the leaves as one level.
+	 *
+	 * @return The depth of the tree.
+	 */
+	public int getTreeDepth()
+	{
+		return this.treeDepth;
+	}
+}
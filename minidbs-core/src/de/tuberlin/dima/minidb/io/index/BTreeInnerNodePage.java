@@ -6,6 +6,7 @@ import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.FlushableData;
 import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 
@@ -39,7 +40,7 @@ import de.tuberlin.dima.minidb.io.cache.PageFormatException;
  *
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
-public class BTreeInnerNodePage implements BTreeIndexPage
+public class BTreeInnerNodePage implements BTreeIndexPage, FlushableData
 {
 	// ------------------------------------------------------------------------
 	//                         public constants
@@ -184,6 +185,28 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 		this.expired = true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see de.tuberlin.dima.minidb.io.cache.FlushableData#markUnmodified()
+	 */
+	@Override
+	public void markUnmodified()
+	{
+		this.modified = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see de.tuberlin.dima.minidb.io.cache.FlushableData#markModified()
+	 */
+	@Override
+	public void markModified()
+	{
+		this.modified = true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#isExpired()
@@ -10,6 +10,7 @@ import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.core.DuplicateException;
 import de.tuberlin.dima.minidb.core.IntField;
 import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.FlushableData;
 import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 
@@ -38,7 +39,7 @@ import de.tuberlin.dima.minidb.io.cache.PageFormatException;
  *
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
-public class BTreeLeafPage implements BTreeIndexPage
+public class BTreeLeafPage implements BTreeIndexPage, FlushableData
 {
 	// ------------------------------------------------------------------------
 	//                         public constants
@@ -218,6 +219,28 @@ public class BTreeLeafPage implements BTreeIndexPage
 		this.expired = true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see de.tuberlin.dima.minidb.io.cache.FlushableData#markUnmodified()
+	 */
+	@Override
+	public void markUnmodified()
+	{
+		this.modified = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see de.tuberlin.dima.minidb.io.cache.FlushableData#markModified()
+	 */
+	@Override
+	public void markModified()
+	{
+		this.modified = true;
+	}
+
 	
 	// ------------------------------------------------------------------------
 	//                   header access and modification
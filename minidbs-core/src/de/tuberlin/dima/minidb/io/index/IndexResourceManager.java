@@ -18,6 +18,8 @@ import de.tuberlin.dima.minidb.io.cache.CacheableData;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.cache.UnsupportedPageSizeException;
+import de.tuberlin.dima.minidb.io.manager.FileExtent;
+import de.tuberlin.dima.minidb.io.manager.MappedPages;
 import de.tuberlin.dima.minidb.io.manager.ResourceManager;
 
 /**
@@ -38,7 +40,15 @@ import de.tuberlin.dima.minidb.io.manager.ResourceManager;
  * <li>Bytes 16 - 19 = INT (little endian): Page number of the root node page.</li>
  * <li>Bytes 20 - 23 = INT (little endian): Page number of the first leaf page.</li>
  * <li>Bytes 24 - 27 = INT (little endian): Attribute flags.</li>
+ * <li>Bytes 28 - 31 = INT (little endian): Page number of the last page, or 0, if not recorded.</li>
  * </ul>
+ * The file grows in extents of pre-allocated pages (see {@link FileExtent}), and new pages are
+ * handed out from the current extent without locking the index manager. Since the file may hold
+ * more pages than the index while it is open, the last page is recorded in the header. The unused
+ * part of the extent is cut off when the index is closed.
+ * An index that is only queried can be opened mapped (see {@link #openIndex(File, TableSchema, boolean)}).
+ * The index manager then holds a shared lock on the file, reads the pages from a memory mapping
+ * of the file and rejects all modifications.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -58,6 +68,11 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	private static final int INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK = 0x1;
 
+	/**
+	 * The offset of the last page number in the header.
+	 */
+	private static final int INDEX_HEADER_LAST_PAGE_OFFSET = 28;
+
 	/**
 	 * The I/O channel through which the index file is accessed.
 	 */
@@ -68,6 +83,11 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	private final FileLock theLock;
 
+	/**
+	 * The pages of the file mapped into memory, or null, if the index is opened for writing.
+	 */
+	private final MappedPages mappedPages;
+
 	/**
 	 * The schema of the index in the file.
 	 */
@@ -86,7 +106,7 @@ public class IndexResourceManager extends ResourceManager {
 	/**
 	 * The number of the last page in the index.
 	 */
-	private int lastPageNumber;
+	private final FileExtent extent;
 
 	// ------------------------------------------------------------------------
 	//                        Constructor & Life-Cycle
@@ -106,11 +126,32 @@ public class IndexResourceManager extends ResourceManager {
 	 *         If the index file did not contain a valid header.
 	 */
 	protected IndexResourceManager(RandomAccessFile fileHandle, TableSchema indexedTable) throws IOException, PageFormatException {
+		this(fileHandle, indexedTable, false);
+	}
+
+	/**
+	 * Creates a new index manager to work on an existing index. The index is represented
+	 * by the given handle to the file. A mapped index is only read, through a memory mapping
+	 * of the file, and other processes may read the file at the same time.
+	 * 
+	 * @param fileHandle
+	 *        The handle to the index's file, opened read-only if the index is to be mapped.
+	 * @param indexedTable
+	 *        The schema of the table that is indexed by this index.
+	 * @param mapped
+	 *        Flag indicating whether the index is to be opened read-only and mapped.
+	 * @throws IOException
+	 *         If the index file could not be accessed due to an I/O error.
+	 * @throws PageFormatException
+	 *         If the index file did not contain a valid header.
+	 */
+	protected IndexResourceManager(RandomAccessFile fileHandle, TableSchema indexedTable, boolean mapped) throws IOException, PageFormatException {
 		// Open the channel. If anything fails, make sure we close it again
 		try {
 			this.ioChannel = fileHandle.getChannel();
 			try {
-				this.theLock = this.ioChannel.tryLock();
+				// a mapped index is read-only, so other processes may read the file as well
+				this.theLock = mapped ? this.ioChannel.tryLock(0, Long.MAX_VALUE, true) : this.ioChannel.tryLock();
 			} catch (OverlappingFileLockException oflex) {
 				throw new IOException("Index file locked by other consumer.");
 			}
@@ -140,7 +181,15 @@ public class IndexResourceManager extends ResourceManager {
 		this.schema = readIndexHeader(this.ioChannel, indexedTable);
 		this.schema.setResourceManagerForPersistence(this);
 		this.pageSize = this.schema.getPageSize().getNumberOfBytes();
-		this.lastPageNumber = (int) (this.ioChannel.size() / this.pageSize) - 1;
+
+		try {
+			this.extent = new FileExtent(this.ioChannel, this.pageSize, INDEX_HEADER_LAST_PAGE_OFFSET,
+				Math.max(readLastPageNumber(this.ioChannel), FIRST_DATA_PAGE), Constants.DEFAULT_FILE_EXTENT_SIZE);
+			this.mappedPages = mapped ? new MappedPages(this.ioChannel, this.pageSize) : null;
+		} catch (IOException ioex) {
+			makeBestEffortToClose();
+			throw ioex;
+		}
 	}
 
 	/**
@@ -184,6 +233,7 @@ public class IndexResourceManager extends ResourceManager {
 		this.miniBuffer.order(ByteOrder.LITTLE_ENDIAN);
 
 		// set member variables
+		this.mappedPages = null;
 		this.schema = schema;
 		this.pageSize = schema.getPageSize().getNumberOfBytes();
 
@@ -197,6 +247,8 @@ public class IndexResourceManager extends ResourceManager {
 		writeIndexHeader(schema, this.ioChannel);
 
 		// initialize to an empty page
+		this.extent = new FileExtent(this.ioChannel, this.pageSize, INDEX_HEADER_LAST_PAGE_OFFSET, FIRST_DATA_PAGE,
+			Constants.DEFAULT_FILE_EXTENT_SIZE);
 		truncate();
 
 		// make sure we are informed about updates for root or first leaf node
@@ -210,6 +262,9 @@ public class IndexResourceManager extends ResourceManager {
 	@Override
 	public synchronized void closeResource() throws IOException {
 		try {
+			if (this.mappedPages == null) {
+				this.extent.close();
+			}
 			this.theLock.release();
 			this.ioChannel.close();
 		} catch (Throwable t) {
@@ -271,6 +326,49 @@ public class IndexResourceManager extends ResourceManager {
 		return this.schema.getPageSize();
 	}
 
+	/**
+	 * Checks whether the index is opened read-only and read through a memory mapping.
+	 * 
+	 * @return True, if the index is mapped, false otherwise.
+	 */
+	public boolean isMapped() {
+		return this.mappedPages != null;
+	}
+
+	/**
+	 * Gets the number of the last page of the index that has been handed out.
+	 * 
+	 * @return The number of the last page.
+	 */
+	public int getLastPageNumber() {
+		return this.extent.getLastPageNumber();
+	}
+
+	/**
+	 * Sets the number of bytes by which the index file grows at once. A size of up to one page
+	 * lets the file grow page by page.
+	 * 
+	 * @param extentSize
+	 *        The size of an extent in bytes.
+	 */
+	public void setExtentSize(int extentSize) {
+		if (this.mappedPages == null) {
+			this.extent.setExtentSize(extentSize);
+		}
+	}
+
+	/**
+	 * Makes sure the index is not mapped before it is modified.
+	 * 
+	 * @throws IOException
+	 *         Thrown, if the index is opened read-only.
+	 */
+	private void checkWritable() throws IOException {
+		if (this.mappedPages != null) {
+			throw new IOException("The index is opened read-only.");
+		}
+	}
+
 	// ------------------------------------------------------------------------
 
 	/**
@@ -283,6 +381,8 @@ public class IndexResourceManager extends ResourceManager {
 	 *        The new page number of the first leaf page.
 	 */
 	public synchronized void updateRootPageNumber(int newNumber) throws IOException {
+		checkWritable();
+
 		// check consistency with the schema
 		if (this.schema.getRootPageNumber() != newNumber) {
 			this.schema.setRootPageNumber(newNumber);
@@ -305,6 +405,8 @@ public class IndexResourceManager extends ResourceManager {
 	 *        The new page number of the first leaf page.
 	 */
 	public synchronized void updateFirstLeafPageNumber(int newNumber) throws IOException {
+		checkWritable();
+
 		// check consistency with the schema
 		if (this.schema.getFirstLeafNumber() != newNumber) {
 			this.schema.setFirstLeafNumber(newNumber);
@@ -328,6 +430,8 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	@Override
 	public synchronized void truncate() throws IOException {
+		checkWritable();
+
 		// write a new empty leaf page
 		try {
 			byte[] temporaryBuffer = new byte[this.pageSize];
@@ -338,8 +442,8 @@ public class IndexResourceManager extends ResourceManager {
 		}
 
 		// set the I/O channel to the right size.
-		this.lastPageNumber = FIRST_DATA_PAGE;
-		this.ioChannel.truncate((this.lastPageNumber + 1) * this.pageSize);
+		this.ioChannel.truncate((FIRST_DATA_PAGE + 1) * this.pageSize);
+		this.extent.reset(FIRST_DATA_PAGE);
 
 		this.schema.setFirstLeafNumber(FIRST_DATA_PAGE);
 		this.schema.setRootPageNumber(FIRST_DATA_PAGE);
@@ -362,6 +466,8 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	@Override
 	public CacheableData reserveNewPage(byte[] buffer, Enum<?> type) throws IOException, PageFormatException {
+		checkWritable();
+
 		// sanity checks
 		if (buffer.length != this.pageSize) {
 			throw new IllegalArgumentException("The buffer to initialize the page to is too small.");
@@ -370,7 +476,7 @@ public class IndexResourceManager extends ResourceManager {
 			throw new IllegalArgumentException("Parameters must be a specifictaion of the page type through " + BTreeIndexPageType.class.getCanonicalName());
 		}
 		BTreeIndexPageType pageType = (BTreeIndexPageType) type;
-		int newPageNumber = this.lastPageNumber + 1;
+		int newPageNumber = this.extent.reservePage();
 
 		try {
 			BTreeIndexPage newPage = null;
@@ -380,9 +486,6 @@ public class IndexResourceManager extends ResourceManager {
 				newPage = IndexPageFactory.initIndexPage(this.schema, buffer, newPageNumber, false);
 			}
 
-			// increment the counter
-			this.lastPageNumber++;
-
 			return newPage;
 		} catch (PageFormatException pfex) {
 			throw new IOException("Could not initialize the new page: " + pfex.getMessage());
@@ -396,8 +499,9 @@ public class IndexResourceManager extends ResourceManager {
 	@Override
 	public BTreeIndexPage readPageFromResource(byte[] buffer, int pageNumber) throws IOException {
 		// check that the page number is within range
-		if (pageNumber < FIRST_DATA_PAGE || pageNumber > this.lastPageNumber) {
-			throw new IOException("Page number " + pageNumber + " is not in valid range: [" + FIRST_DATA_PAGE + "," + this.lastPageNumber + "].");
+		int lastPageNumber = this.extent.getLastPageNumber();
+		if (pageNumber < FIRST_DATA_PAGE || pageNumber > lastPageNumber) {
+			throw new IOException("Page number " + pageNumber + " is not in valid range: [" + FIRST_DATA_PAGE + "," + lastPageNumber + "].");
 		}
 
 		// check that we have enough space
@@ -405,11 +509,15 @@ public class IndexResourceManager extends ResourceManager {
 			throw new IOException("Buffer is not big enough to hold a page.");
 		}
 
-		// seek and read the buffer
-		ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
-		long position = ((long) this.pageSize) * ((long) pageNumber);
 		try {
-			readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+			if (this.mappedPages != null) {
+				this.mappedPages.readPage(pageNumber, buffer);
+			} else {
+				// seek and read the buffer
+				ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
+				long position = ((long) this.pageSize) * ((long) pageNumber);
+				readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page " + pageNumber + " could not be read from index file.", ioex);
 		}
@@ -434,8 +542,9 @@ public class IndexResourceManager extends ResourceManager {
 				throw new IllegalArgumentException("At least one buffer should be provided.");
 			}
 			// check that the page number is within range
-			if (firstPageNumber < FIRST_DATA_PAGE || firstPageNumber > this.lastPageNumber) {
-				throw new IOException("Page number " + firstPageNumber + " is not in valid range: [" + FIRST_DATA_PAGE + "," + this.lastPageNumber + "].");
+			int lastPageNumber = this.extent.getLastPageNumber();
+			if (firstPageNumber < FIRST_DATA_PAGE || firstPageNumber > lastPageNumber) {
+				throw new IOException("Page number " + firstPageNumber + " is not in valid range: [" + FIRST_DATA_PAGE + "," + lastPageNumber + "].");
 			}
 
 			for (int i = 0; i < buffers.length; i++) {
@@ -446,6 +555,18 @@ public class IndexResourceManager extends ResourceManager {
 			}
 		}
 
+		if (this.mappedPages != null) {
+			try {
+				for (int i = 0; i < buffers.length; i++) {
+					this.mappedPages.readPage(firstPageNumber + i, buffers[i]);
+				}
+			} catch (IOException ioex) {
+				throw new IOException("Page sequence [" + firstPageNumber + ", " + (firstPageNumber + buffers.length - 1) + "] could not be read from index file.",
+					ioex);
+			}
+			return wrapPages(buffers);
+		}
+
 		// seek and read the buffer
 		ByteBuffer[] b = new ByteBuffer[buffers.length];
 		for (int i = 0; i < buffers.length; i++) {
@@ -458,7 +579,11 @@ public class IndexResourceManager extends ResourceManager {
 			long bytesRemaining = buffers.length * this.pageSize;
 			int currFirstBuffer = 0;
 			do {
-				bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
+				long count = this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
+				if (count == -1) {
+					throw new EOFException();
+				}
+				bytesRemaining -= count;
 				currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
 			} while (bytesRemaining > 0);
 		} catch (IOException ioex) {
@@ -466,6 +591,19 @@ public class IndexResourceManager extends ResourceManager {
 				ioex);
 		}
 
+		return wrapPages(buffers);
+	}
+
+	/**
+	 * Wraps the loaded buffers in index pages.
+	 * 
+	 * @param buffers
+	 *        The buffers holding the pages.
+	 * @return The index pages.
+	 * @throws IOException
+	 *         Thrown, if a page is corrupted.
+	 */
+	private BTreeIndexPage[] wrapPages(byte[][] buffers) throws IOException {
 		// wrap the loaded buffers in CacheableData objects 
 		BTreeIndexPage[] pages = new BTreeIndexPage[buffers.length];
 		for (int i = 0; i < buffers.length; i++) {
@@ -486,6 +624,7 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	@Override
 	public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException {
+		checkWritable();
 		int pageNumber = wrapper.getPageNumber();
 
 		// check that the page number is within range
@@ -512,6 +651,7 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	@Override
 	public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException {
+		checkWritable();
 		if (Constants.DEBUG_CHECK) {
 			// check that buffers and wrappers array lengths match 
 			if (buffers.length != wrappers.length) {
@@ -606,6 +746,48 @@ public class IndexResourceManager extends ResourceManager {
 		}
 	}
 
+	/**
+	 * Opens the index contained in the given file, optionally read-only and mapped into memory.
+	 * A mapped index serves its pages from the page cache of the operating system without a
+	 * system call per read, which suits indexes that are only queried. Modifying a mapped index
+	 * fails.
+	 * 
+	 * @param indexFile
+	 *        The file containing the index to be opened.
+	 * @param indexedTable
+	 *        The schema of the table that is indexed by this index.
+	 * @param mapped
+	 *        Flag indicating whether the index is to be opened read-only and mapped.
+	 * @return The IndexResourceManager to operate on the index file.
+	 * @throws IOException
+	 *         Thrown, if an I/O error occurred.
+	 * @throws PageFormatException
+	 *         Thrown, if the header of the index contained invalid data.
+	 */
+	public static IndexResourceManager openIndex(File indexFile, TableSchema indexedTable, boolean mapped) throws IOException, PageFormatException {
+		if (!mapped) {
+			return openIndex(indexFile, indexedTable);
+		}
+		if (indexFile == null) {
+			throw new NullPointerException("Index file must not be null.");
+		}
+		if (indexedTable == null) {
+			throw new NullPointerException("Indexed table schema must not be null.");
+		}
+
+		try {
+			// check if the file exists
+			if (!indexFile.exists()) {
+				throw new IOException("Index file '" + indexFile.getCanonicalPath() + "' does not exist.");
+			}
+
+			RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+			return new IndexResourceManager(raf, indexedTable, true);
+		} catch (SecurityException sex) {
+			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
+		}
+	}
+
 	/**
 	 * Creates a new index with the given schema, indexing the a table whose schema is given
 	 * by the index schema's {@link de.tuberlin.dima.minidb.catalogue.IndexSchema#getIndexTableSchema()} method.
@@ -756,6 +938,23 @@ public class IndexResourceManager extends ResourceManager {
 		}
 	}
 
+	/**
+	 * Reads the number of the last page from the header of an index file.
+	 * 
+	 * @param channel
+	 *        The channel to the index file.
+	 * @return The last page number, or 0, if the header does not record it.
+	 * @throws IOException
+	 *         Thrown if an error occurred during reading from the channel.
+	 */
+	private static int readLastPageNumber(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		readIntoBuffer(channel, buffer, INDEX_HEADER_LAST_PAGE_OFFSET, 4);
+
+		return buffer.getInt(0);
+	}
+
 	/**
 	 * Writes an index schema to the given channel. The schema is written to the
 	 * channel starting at the channels current position.
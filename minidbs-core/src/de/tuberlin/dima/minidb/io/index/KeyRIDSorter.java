@@ -0,0 +1,593 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+
+
+/**
+ * Sorts the (key / RID) pairs for the bulk loader of an index. Each pair is kept as a record of
+ * fixed length in one byte array: the key in an encoding that preserves its order, followed by the
+ * RID. Two records compare byte by byte like their keys and then their RIDs, so sorting them needs
+ * no fields. Whenever the array is full, its records are sorted and written to a temp file as a
+ * run. The runs and the records left in the array are merged when the pairs are read back.
+ * <p>
+ * The keys of type TIME and RID have no such encoding. Their records hold the regular binary
+ * encoding of the key, and the keys are decoded to compare them.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+final class KeyRIDSorter
+{
+	/**
+	 * The number of bytes of the RID at the end of each record.
+	 */
+	private static final int RID_BYTES = 8;
+
+	/**
+	 * The number of records that the array holds before it first grows.
+	 */
+	private static final int INITIAL_RECORDS = 1024;
+
+	/**
+	 * The smallest buffer with which a run is read.
+	 */
+	private static final int MIN_READ_BUFFER_SIZE = 4096;
+
+	/**
+	 * The size of the buffer with which a run is written.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The type of the keys.
+	 */
+	private final DataType type;
+
+	/**
+	 * The directory for the runs, null for the default temp directory.
+	 */
+	private final File spillDirectory;
+
+	/**
+	 * The number of bytes of the encoded key in a record.
+	 */
+	private final int keyBytes;
+
+	/**
+	 * The number of bytes of a record.
+	 */
+	private final int recordBytes;
+
+	/**
+	 * The number of records that are sorted in memory.
+	 */
+	private final int maxRecords;
+
+	/**
+	 * Whether the records compare byte by byte.
+	 */
+	private final boolean normalized;
+
+	/**
+	 * The buffer into which the keys are encoded regularly, and from which they are decoded.
+	 */
+	private final byte[] scratch;
+
+	/**
+	 * The files of the runs written so far.
+	 */
+	private final List<File> runs;
+
+	/**
+	 * The streams of the runs that are currently merged.
+	 */
+	private final List<DataInputStream> openRuns;
+
+	/**
+	 * The records that are not yet in a run.
+	 */
+	private byte[] records;
+
+	/**
+	 * The number of records in the array.
+	 */
+	private int numRecords;
+
+	/**
+	 * The number of pairs added in total.
+	 */
+	private long numPairs;
+
+
+	/**
+	 * Creates a new sorter for keys of the given type.
+	 *
+	 * @param type The type of the keys.
+	 * @param spillDirectory The directory for the runs, or null, to use the default temp directory.
+	 * @param bufferSize The number of bytes in which the records are sorted in memory.
+	 */
+	KeyRIDSorter(DataType type, File spillDirectory, int bufferSize)
+	{
+		BasicType basicType = type.getBasicType();
+
+		this.type = type;
+		this.spillDirectory = spillDirectory;
+		this.normalized = basicType != BasicType.TIME && basicType != BasicType.RID;
+		// character keys are padded and followed by their number of bytes
+		this.keyBytes = type.getNumberOfBytes() + (type.isArrayType() ? 2 : 0);
+		this.recordBytes = this.keyBytes + RID_BYTES;
+		this.maxRecords = Math.max(2, bufferSize / this.recordBytes);
+		this.scratch = new byte[type.getNumberOfBytes() + 2];
+		this.runs = new ArrayList<File>();
+		this.openRuns = new ArrayList<DataInputStream>();
+		this.records = new byte[Math.min(INITIAL_RECORDS, this.maxRecords) * this.recordBytes];
+	}
+
+
+	/**
+	 * Adds a pair. If the records fill the buffer, they are written to a run first.
+	 *
+	 * @param key The key, which must not be NULL.
+	 * @param rid The RID.
+	 * @throws IOException Thrown, if the run could not be written.
+	 */
+	void add(DataField key, long rid) throws IOException
+	{
+		if (key.getNumberOfBytes() > this.type.getNumberOfBytes()) {
+			throw new IllegalArgumentException("The key " + key + " is longer than the indexed column.");
+		}
+
+		if (this.numRecords == this.maxRecords) {
+			spill();
+		}
+		else if ((this.numRecords + 1) * this.recordBytes > this.records.length) {
+			int capacity = Math.min(this.maxRecords, 2 * this.records.length / this.recordBytes);
+			this.records = Arrays.copyOf(this.records, capacity * this.recordBytes);
+		}
+
+		int offset = this.numRecords * this.recordBytes;
+		encodeKey(key, this.records, offset);
+		encodeRID(rid, this.records, offset + this.keyBytes);
+		this.numRecords++;
+		this.numPairs++;
+	}
+
+	/**
+	 * Gets the number of pairs added so far.
+	 *
+	 * @return The number of pairs.
+	 */
+	long getNumberOfPairs()
+	{
+		return this.numPairs;
+	}
+
+	/**
+	 * Sorts the records in the array and merges them with the runs. The sorter must not get any
+	 * more pairs afterwards.
+	 *
+	 * @return A cursor over all pairs, ordered by key and then by RID.
+	 * @throws IOException Thrown, if a run could not be opened.
+	 */
+	Cursor sort() throws IOException
+	{
+		List<Source> sources = new ArrayList<Source>();
+
+		if (!this.runs.isEmpty()) {
+			// the read buffers of all runs together take no more than the sort buffer
+			int bufferSize = Math.max(MIN_READ_BUFFER_SIZE, this.maxRecords * this.recordBytes / this.runs.size());
+			for (File run : this.runs) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), bufferSize));
+				this.openRuns.add(in);
+				sources.add(new RunSource(in, run.length() / this.recordBytes));
+			}
+		}
+		if (this.numRecords > 0) {
+			sources.add(new ArraySource(sortRecords()));
+		}
+
+		return new Cursor(sources);
+	}
+
+	/**
+	 * Closes and deletes the runs and drops all records.
+	 */
+	void clear()
+	{
+		for (DataInputStream in : this.openRuns) {
+			try {
+				in.close();
+			}
+			catch (IOException ioex) {
+				// the file is deleted anyways
+			}
+		}
+		this.openRuns.clear();
+
+		for (File run : this.runs) {
+			run.delete();
+		}
+		this.runs.clear();
+
+		this.records = new byte[Math.min(INITIAL_RECORDS, this.maxRecords) * this.recordBytes];
+		this.numRecords = 0;
+		this.numPairs = 0;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sorts the records in the array and writes them to a new run.
+	 */
+	private void spill() throws IOException
+	{
+		int[] order = sortRecords();
+
+		File run = File.createTempFile(Constants.BULK_LOAD_TEMP_FILE_PREFIX, ".run", this.spillDirectory);
+		this.runs.add(run);
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(run), WRITE_BUFFER_SIZE);
+		try {
+			for (int i = 0; i < order.length; i++) {
+				out.write(this.records, order[i] * this.recordBytes, this.recordBytes);
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		this.numRecords = 0;
+	}
+
+	/**
+	 * Sorts the records in the array by merge sort, without moving them.
+	 *
+	 * @return The numbers of the records in their sorted order.
+	 */
+	private int[] sortRecords()
+	{
+		int[] order = new int[this.numRecords];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		mergeSort(order, new int[order.length], 0, order.length);
+		return order;
+	}
+
+	private void mergeSort(int[] order, int[] temp, int from, int to)
+	{
+		if (to - from <= 16) {
+			for (int i = from + 1; i < to; i++) {
+				int record = order[i];
+				int k = i;
+				for (; k > from && compareRecords(order[k - 1], record) > 0; k--) {
+					order[k] = order[k - 1];
+				}
+				order[k] = record;
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(order, temp, from, mid);
+		mergeSort(order, temp, mid, to);
+		if (compareRecords(order[mid - 1], order[mid]) <= 0) {
+			return;
+		}
+
+		System.arraycopy(order, from, temp, from, to - from);
+		for (int i = from, left = from, right = mid; i < to; i++) {
+			if (right == to || (left < mid && compareRecords(temp[left], temp[right]) <= 0)) {
+				order[i] = temp[left++];
+			}
+			else {
+				order[i] = temp[right++];
+			}
+		}
+	}
+
+	private int compareRecords(int first, int second)
+	{
+		return compare(this.records, first * this.recordBytes, this.records, second * this.recordBytes);
+	}
+
+	/**
+	 * Compares two records by their keys and then by their RIDs.
+	 */
+	private int compare(byte[] first, int firstOffset, byte[] second, int secondOffset)
+	{
+		if (this.normalized) {
+			for (int i = 0; i < this.recordBytes; i++) {
+				int c = (first[firstOffset + i] & 0xff) - (second[secondOffset + i] & 0xff);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return 0;
+		}
+
+		DataField firstKey = this.type.getFromBinary(first, firstOffset, this.keyBytes);
+		int c = firstKey.compareTo(this.type.getFromBinary(second, secondOffset, this.keyBytes));
+		if (c != 0) {
+			return c;
+		}
+		long firstRID = decodeRID(first, firstOffset + this.keyBytes);
+		long secondRID = decodeRID(second, secondOffset + this.keyBytes);
+		return firstRID < secondRID ? -1 : firstRID > secondRID ? 1 : 0;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Encodes a key into a record. Numbers are stored most significant byte first, with the sign
+	 * bit flipped, and the bits of negative floating point numbers inverted. Characters are stored
+	 * most significant byte first, padded with zeros and followed by their number of bytes.
+	 */
+	private void encodeKey(DataField key, byte[] target, int offset)
+	{
+		int len = key.encodeBinary(this.scratch, 0);
+
+		if (!this.normalized) {
+			System.arraycopy(this.scratch, 0, target, offset, len);
+			return;
+		}
+
+		switch (this.type.getBasicType()) {
+		case CHAR:
+		case VAR_CHAR:
+			int padded = this.keyBytes - 2;
+			for (int i = 0; i < len; i += 2) {
+				target[offset + i] = this.scratch[i + 1];
+				target[offset + i + 1] = this.scratch[i];
+			}
+			Arrays.fill(target, offset + len, offset + padded, (byte) 0);
+			target[offset + padded] = (byte) (len >>> 8);
+			target[offset + padded + 1] = (byte) len;
+			break;
+		case FLOAT:
+		case DOUBLE:
+			reverse(this.scratch, target, offset, len);
+			if (target[offset] < 0) {
+				for (int i = 0; i < len; i++) {
+					target[offset + i] = (byte) ~target[offset + i];
+				}
+			}
+			else {
+				target[offset] = (byte) (target[offset] ^ 0x80);
+			}
+			break;
+		default:
+			reverse(this.scratch, target, offset, len);
+			target[offset] = (byte) (target[offset] ^ 0x80);
+		}
+	}
+
+	/**
+	 * Decodes the key of a record.
+	 */
+	private DataField decodeKey(byte[] source, int offset)
+	{
+		if (!this.normalized) {
+			return this.type.getFromBinary(source, offset, this.keyBytes);
+		}
+
+		switch (this.type.getBasicType()) {
+		case CHAR:
+		case VAR_CHAR:
+			int padded = this.keyBytes - 2;
+			int len = ((source[offset + padded] & 0xff) << 8) | (source[offset + padded + 1] & 0xff);
+			for (int i = 0; i < len; i += 2) {
+				this.scratch[i] = source[offset + i + 1];
+				this.scratch[i + 1] = source[offset + i];
+			}
+			return this.type.getFromBinary(this.scratch, 0, len);
+		case FLOAT:
+		case DOUBLE:
+			if (source[offset] < 0) {
+				reverse(source, offset, this.scratch, this.keyBytes);
+				this.scratch[this.keyBytes - 1] = (byte) (this.scratch[this.keyBytes - 1] ^ 0x80);
+			}
+			else {
+				reverse(source, offset, this.scratch, this.keyBytes);
+				for (int i = 0; i < this.keyBytes; i++) {
+					this.scratch[i] = (byte) ~this.scratch[i];
+				}
+			}
+			return this.type.getFromBinary(this.scratch, 0, this.keyBytes);
+		default:
+			reverse(source, offset, this.scratch, this.keyBytes);
+			this.scratch[this.keyBytes - 1] = (byte) (this.scratch[this.keyBytes - 1] ^ 0x80);
+			return this.type.getFromBinary(this.scratch, 0, this.keyBytes);
+		}
+	}
+
+	/**
+	 * Copies the little endian bytes from the start of the source to the target, reversed.
+	 */
+	private static void reverse(byte[] source, byte[] target, int offset, int len)
+	{
+		for (int i = 0; i < len; i++) {
+			target[offset + i] = source[len - 1 - i];
+		}
+	}
+
+	/**
+	 * Copies the big endian bytes from the source to the start of the target, reversed.
+	 */
+	private static void reverse(byte[] source, int offset, byte[] target, int len)
+	{
+		for (int i = 0; i < len; i++) {
+			target[i] = source[offset + len - 1 - i];
+		}
+	}
+
+	private static void encodeRID(long rid, byte[] target, int offset)
+	{
+		rid ^= Long.MIN_VALUE;
+		for (int i = RID_BYTES - 1; i >= 0; i--) {
+			target[offset + i] = (byte) rid;
+			rid >>>= 8;
+		}
+	}
+
+	private static long decodeRID(byte[] source, int offset)
+	{
+		long rid = 0;
+		for (int i = 0; i < RID_BYTES; i++) {
+			rid = (rid << 8) | (source[offset + i] & 0xff);
+		}
+		return rid ^ Long.MIN_VALUE;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Reads the pairs in sorted order, merging the runs and the records in the array.
+	 */
+	final class Cursor
+	{
+		private final PriorityQueue<Source> queue;
+
+		private Source current;
+
+		private Cursor(List<Source> sources) throws IOException
+		{
+			this.queue = new PriorityQueue<Source>(Math.max(1, sources.size()), new Comparator<Source>() {
+				@Override
+				public int compare(Source first, Source second)
+				{
+					return KeyRIDSorter.this.compare(first.buffer, first.offset, second.buffer, second.offset);
+				}
+			});
+
+			for (Source source : sources) {
+				if (source.advance()) {
+					this.queue.add(source);
+				}
+			}
+		}
+
+		/**
+		 * Moves to the next pair.
+		 *
+		 * @return True, if there is another pair, false, if all pairs have been read.
+		 * @throws IOException Thrown, if a run could not be read.
+		 */
+		boolean next() throws IOException
+		{
+			if (this.current != null && this.current.advance()) {
+				this.queue.add(this.current);
+			}
+			this.current = this.queue.poll();
+			return this.current != null;
+		}
+
+		/**
+		 * Gets the key of the current pair.
+		 *
+		 * @return The key.
+		 */
+		DataField getKey()
+		{
+			return decodeKey(this.current.buffer, this.current.offset);
+		}
+
+		/**
+		 * Gets the RID of the current pair.
+		 *
+		 * @return The RID.
+		 */
+		long getRID()
+		{
+			return decodeRID(this.current.buffer, this.current.offset + KeyRIDSorter.this.keyBytes);
+		}
+	}
+
+	/**
+	 * A sorted sequence of records, positioned at its current record.
+	 */
+	private abstract static class Source
+	{
+		protected byte[] buffer;
+
+		protected int offset;
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return True, if there is another record, false otherwise.
+		 */
+		protected abstract boolean advance() throws IOException;
+	}
+
+	/**
+	 * The records in the array, in their sorted order.
+	 */
+	private final class ArraySource extends Source
+	{
+		private final int[] order;
+
+		private int next;
+
+		private ArraySource(int[] order)
+		{
+			this.order = order;
+			this.buffer = KeyRIDSorter.this.records;
+		}
+
+		@Override
+		protected boolean advance()
+		{
+			if (this.next == this.order.length) {
+				return false;
+			}
+			this.offset = this.order[this.next++] * KeyRIDSorter.this.recordBytes;
+			return true;
+		}
+	}
+
+	/**
+	 * The records of a run.
+	 */
+	private final class RunSource extends Source
+	{
+		private final DataInputStream in;
+
+		private long remaining;
+
+		private RunSource(DataInputStream in, long numRecords)
+		{
+			this.in = in;
+			this.remaining = numRecords;
+			this.buffer = new byte[KeyRIDSorter.this.recordBytes];
+		}
+
+		@Override
+		protected boolean advance() throws IOException
+		{
+			if (this.remaining == 0) {
+				return false;
+			}
+			this.in.readFully(this.buffer);
+			this.remaining--;
+			return true;
+		}
+	}
+}
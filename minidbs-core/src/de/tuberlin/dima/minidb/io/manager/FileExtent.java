@@ -0,0 +1,245 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The growth of a resource file in extents. The file is extended by a whole extent of zeroed pages
+ * at once, rather than by every page that is written beyond its end, so that a growing resource
+ * changes the size of its file only once per extent and the file system can place the extent in
+ * one piece. New pages are handed out from the extent without locking; only the thread that
+ * reserves the first page beyond the extent extends the file.
+ * <p>
+ * Since the file is larger than its data while it grows, the number of the last reserved page
+ * (the logical end) is kept in a field of the header. The field is updated whenever the file is
+ * extended and when the resource is closed, which also cuts off the unused part of the extent.
+ * If the resource was not closed, the pages behind the recorded end are checked when the file is
+ * opened again, and the last page that is not all zeros becomes the logical end.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public final class FileExtent
+{
+	/**
+	 * The channel to the resource file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The position of the header field that holds the logical end, or -1, if there is none.
+	 */
+	private final long endFieldPosition;
+
+	/**
+	 * The number of the last page that has been handed out.
+	 */
+	private final AtomicInteger lastPageNumber;
+
+	/**
+	 * The number of the last page that the file holds.
+	 */
+	private volatile int lastAllocatedPageNumber;
+
+	/**
+	 * The number of pages by which the file is extended.
+	 */
+	private volatile int extentPages;
+
+	/**
+	 * The number of times the file has been extended.
+	 */
+	private int numberOfExtensions;
+
+
+	/**
+	 * Determines the logical end of the file behind the given channel.
+	 *
+	 * @param channel The channel to the file.
+	 * @param pageSize The size of a page in bytes.
+	 * @param endFieldPosition The position of the header field that holds the logical end, or -1,
+	 *                         if the header has no such field.
+	 * @param recordedEnd The logical end as recorded in the header, or the last header page, if
+	 *                    the header does not hold it.
+	 * @param extentSize The number of bytes by which the file is extended.
+	 * @throws IOException Thrown, if the pages behind the recorded end could not be checked.
+	 */
+	public FileExtent(FileChannel channel, int pageSize, long endFieldPosition, int recordedEnd, int extentSize)
+	throws IOException
+	{
+		this.channel = channel;
+		this.pageSize = pageSize;
+		this.endFieldPosition = endFieldPosition;
+		// the header pages need not be whole, but are never filled with zeros
+		this.lastAllocatedPageNumber = Math.max((int) (channel.size() / pageSize) - 1, recordedEnd);
+		this.lastPageNumber = new AtomicInteger(findLastPageNumber(recordedEnd));
+		setExtentSize(extentSize);
+	}
+
+
+	/**
+	 * Sets the number of bytes by which the file is extended. Sizes up to one page let the file
+	 * grow with every page that is written beyond its end. A file whose header has no field for
+	 * the logical end always grows page by page, since the zeros of an extent would otherwise
+	 * become part of its data.
+	 *
+	 * @param extentSize The size of an extent in bytes.
+	 */
+	public void setExtentSize(int extentSize)
+	{
+		if (extentSize < 0) {
+			throw new IllegalArgumentException("The extent size must not be negative.");
+		}
+		this.extentPages = this.endFieldPosition < 0 ? 1 : Math.max(1, extentSize / this.pageSize);
+	}
+
+	/**
+	 * Gets the number of the last page that has been handed out.
+	 *
+	 * @return The logical end of the file.
+	 */
+	public int getLastPageNumber()
+	{
+		return this.lastPageNumber.get();
+	}
+
+	/**
+	 * Gets the number of times the file has been extended by an extent since it was opened.
+	 *
+	 * @return The number of extensions.
+	 */
+	public synchronized int getNumberOfExtensions()
+	{
+		return this.numberOfExtensions;
+	}
+
+	/**
+	 * Hands out the next page of the file, extending the file if the page lies beyond it.
+	 *
+	 * @return The number of the new page.
+	 * @throws IOException Thrown, if the file could not be extended. The page number is used up,
+	 *                     but the page is only created when it is written.
+	 */
+	public int reservePage() throws IOException
+	{
+		int pageNumber = this.lastPageNumber.incrementAndGet();
+		if (pageNumber > this.lastAllocatedPageNumber) {
+			extend(pageNumber);
+		}
+		return pageNumber;
+	}
+
+	/**
+	 * Sets the logical end back after the file has been truncated.
+	 *
+	 * @param lastPageNumber The number of the last page that the file still holds.
+	 * @throws IOException Thrown, if the header could not be updated.
+	 */
+	public synchronized void reset(int lastPageNumber) throws IOException
+	{
+		this.lastPageNumber.set(lastPageNumber);
+		this.lastAllocatedPageNumber = Math.max((int) (this.channel.size() / this.pageSize) - 1, lastPageNumber);
+		writeEnd(lastPageNumber);
+	}
+
+	/**
+	 * Records the logical end in the header and cuts off the unused part of the extent. Must be
+	 * called before the channel is closed.
+	 *
+	 * @throws IOException Thrown, if the file could not be updated.
+	 */
+	public synchronized void close() throws IOException
+	{
+		int last = this.lastPageNumber.get();
+		writeEnd(last);
+		if (last < this.lastAllocatedPageNumber) {
+			this.channel.truncate((last + 1) * (long) this.pageSize);
+			this.lastAllocatedPageNumber = last;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Extends the file by an extent of zeroed pages that covers the given page.
+	 */
+	private synchronized void extend(int pageNumber) throws IOException
+	{
+		if (pageNumber <= this.lastAllocatedPageNumber) {
+			return;
+		}
+
+		int extent = this.extentPages;
+		int last = Math.max(pageNumber, this.lastAllocatedPageNumber + extent);
+
+		if (extent > 1) {
+			// write the zeros, so that the blocks are allocated now and in one piece
+			ByteBuffer zeros = ByteBuffer.allocate((last - this.lastAllocatedPageNumber) * this.pageSize);
+			long position = (this.lastAllocatedPageNumber + 1) * (long) this.pageSize;
+			while (zeros.hasRemaining()) {
+				position += this.channel.write(zeros, position);
+			}
+			this.numberOfExtensions++;
+			writeEnd(this.lastPageNumber.get());
+		}
+
+		// published after the zeros, so a page in the extent is never overwritten with them
+		this.lastAllocatedPageNumber = last;
+	}
+
+	/**
+	 * Writes the logical end into the header field.
+	 */
+	private void writeEnd(int lastPageNumber) throws IOException
+	{
+		if (this.endFieldPosition < 0) {
+			return;
+		}
+
+		ByteBuffer field = ByteBuffer.allocate(4);
+		field.order(ByteOrder.LITTLE_ENDIAN);
+		field.putInt(lastPageNumber);
+		field.flip();
+
+		long position = this.endFieldPosition;
+		while (field.hasRemaining()) {
+			position += this.channel.write(field, position);
+		}
+	}
+
+	/**
+	 * Finds the logical end: the recorded end, or the last page behind it that is not all zeros.
+	 */
+	private int findLastPageNumber(int recordedEnd) throws IOException
+	{
+		ByteBuffer page = ByteBuffer.allocate(this.pageSize);
+
+		for (int pageNumber = this.lastAllocatedPageNumber; pageNumber > recordedEnd; pageNumber--) {
+			page.clear();
+			long position = pageNumber * (long) this.pageSize;
+			while (page.hasRemaining()) {
+				int count = this.channel.read(page, position);
+				if (count == -1) {
+					break;
+				}
+				position += count;
+			}
+
+			for (int i = 0; i < page.position(); i++) {
+				if (page.get(i) != 0) {
+					return pageNumber;
+				}
+			}
+		}
+		return recordedEnd;
+	}
+}
@@ -0,0 +1,193 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Creates the threads that wait for I/O, either as platform threads or, on a Java runtime that
+ * has them (21 and later), as virtual threads. A virtual thread that blocks on a page read gives
+ * its carrier thread back, so thousands of concurrent lookups do not need thousands of platform
+ * threads.
+ * <p>
+ * The virtual threads are created reflectively, so the code also compiles and runs on older
+ * runtimes, which fall back to platform threads.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public final class IOThreads
+{
+	/**
+	 * Thread.ofVirtual() and Thread.Builder#name(String), #unstarted(Runnable), null if unavailable.
+	 */
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method UNSTARTED;
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor(), null if unavailable.
+	 */
+	private static final Method NEW_VIRTUAL_EXECUTOR;
+
+	static {
+		Method ofVirtual = null, name = null, unstarted = null, newExecutor = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+			newExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (ReflectiveOperationException roex) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		UNSTARTED = unstarted;
+		NEW_VIRTUAL_EXECUTOR = ofVirtual != null ? newExecutor : null;
+	}
+
+
+	private IOThreads()
+	{
+	}
+
+
+	/**
+	 * Checks whether the runtime supports virtual threads.
+	 *
+	 * @return True, if virtual threads can be created, false otherwise.
+	 */
+	public static boolean isVirtualAvailable()
+	{
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates an unstarted thread. Platform threads are daemon threads.
+	 *
+	 * @param task The task the thread runs.
+	 * @param name The name of the thread.
+	 * @param virtual Whether a virtual thread is wanted. Without runtime support, a platform
+	 *                thread is created.
+	 * @return The thread.
+	 */
+	public static Thread newThread(Runnable task, String name, boolean virtual)
+	{
+		if (virtual && OF_VIRTUAL != null) {
+			try {
+				Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+				return (Thread) UNSTARTED.invoke(builder, task);
+			}
+			catch (ReflectiveOperationException roex) {
+				// fall back to a platform thread
+			}
+		}
+
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Gets the executor that runs the completions of asynchronous page requests. The completions
+	 * do not block. With virtual threads, every completion gets its own virtual thread, otherwise
+	 * the completions share the common pool.
+	 *
+	 * @param virtual Whether virtual threads are wanted.
+	 * @return The executor.
+	 */
+	public static Executor newCompletionExecutor(boolean virtual)
+	{
+		ExecutorService executor = newVirtualExecutor(virtual);
+		return executor != null ? executor : ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Creates the executor that runs the asynchronous page requests that block, because they wait
+	 * for a frame or for the write of the page. With virtual threads, every request gets its own
+	 * virtual thread. Otherwise, the requests run on at most the given number of platform threads,
+	 * rather than on the common pool, whose few threads the blocked requests would take from every
+	 * other user. The threads end when they are idle.
+	 *
+	 * @param virtual Whether virtual threads are wanted.
+	 * @param maxThreads The number of platform threads, if no virtual threads are used.
+	 * @return The executor, which must be shut down when the buffer pool is closed.
+	 */
+	public static ExecutorService newBlockingExecutor(boolean virtual, int maxThreads)
+	{
+		ExecutorService executor = newVirtualExecutor(virtual);
+		if (executor != null) {
+			return executor;
+		}
+
+		int threads = Math.max(1, maxThreads);
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable task)
+				{
+					return IOThreads.newThread(task, "page-request-" + this.count.getAndIncrement(), false);
+				}
+			});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Creates the executor that runs the queries of a database instance. With virtual threads,
+	 * every query gets its own virtual thread, so a query that waits for a page does not take up a
+	 * platform thread. Otherwise, the queries run on a fixed number of platform threads, and the
+	 * queries beyond that number wait for a thread.
+	 *
+	 * @param virtual Whether virtual threads are wanted.
+	 * @param maxQueries The number of platform threads, if no virtual threads are used.
+	 * @return The executor, which must be shut down when the instance shuts down.
+	 */
+	public static ExecutorService newQueryExecutor(boolean virtual, int maxQueries)
+	{
+		ExecutorService executor = newVirtualExecutor(virtual);
+		if (executor != null) {
+			return executor;
+		}
+
+		return Executors.newFixedThreadPool(Math.max(1, maxQueries), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable task)
+			{
+				return IOThreads.newThread(task, "query-" + this.count.getAndIncrement(), false);
+			}
+		});
+	}
+
+	/**
+	 * Creates an executor that starts a virtual thread per task.
+	 *
+	 * @return The executor, or null, if no virtual threads are wanted or available.
+	 */
+	private static ExecutorService newVirtualExecutor(boolean virtual)
+	{
+		if (virtual && NEW_VIRTUAL_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+			}
+			catch (ReflectiveOperationException roex) {
+				// fall back to platform threads
+			}
+		}
+		return null;
+	}
+}
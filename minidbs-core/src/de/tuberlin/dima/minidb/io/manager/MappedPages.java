@@ -0,0 +1,97 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * The pages of a read-only resource file, mapped into memory. Reading a page copies it from the
+ * mapping into the I/O buffer, without a system call and without moving the position of the
+ * channel, so concurrent readers do not contend for the file. The bytes are served from the page
+ * cache of the operating system.
+ * <p>
+ * A mapping covers at most 2 GB, so larger files are mapped in several segments, each holding a
+ * whole number of pages. The file must not change in size while it is mapped.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public final class MappedPages
+{
+	/**
+	 * The mapped segments of the file.
+	 */
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The number of pages in every segment.
+	 */
+	private final int pagesPerSegment;
+
+	/**
+	 * The number of whole pages in the file.
+	 */
+	private final int numberOfPages;
+
+
+	/**
+	 * Maps all whole pages of the file behind the given channel.
+	 *
+	 * @param channel The channel to the file, opened for reading.
+	 * @param pageSize The size of a page in bytes.
+	 * @throws IOException Thrown, if the file could not be mapped.
+	 */
+	public MappedPages(FileChannel channel, int pageSize) throws IOException
+	{
+		this.pageSize = pageSize;
+		this.pagesPerSegment = Integer.MAX_VALUE / pageSize;
+		this.numberOfPages = (int) (channel.size() / pageSize);
+
+		int numSegments = (this.numberOfPages + this.pagesPerSegment - 1) / this.pagesPerSegment;
+		this.segments = new MappedByteBuffer[numSegments];
+
+		for (int i = 0; i < numSegments; i++) {
+			long position = (long) i * this.pagesPerSegment * pageSize;
+			int pages = Math.min(this.pagesPerSegment, this.numberOfPages - i * this.pagesPerSegment);
+			this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) pages * pageSize);
+		}
+	}
+
+
+	/**
+	 * Gets the number of whole pages in the mapped file, including the header pages.
+	 *
+	 * @return The number of pages.
+	 */
+	public int getNumberOfPages()
+	{
+		return this.numberOfPages;
+	}
+
+	/**
+	 * Copies a page from the mapping into the given buffer.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @param buffer The buffer to copy the page into, at least one page large.
+	 * @throws IOException Thrown, if the page lies beyond the end of the file.
+	 */
+	public void readPage(int pageNumber, byte[] buffer) throws IOException
+	{
+		if (pageNumber < 0 || pageNumber >= this.numberOfPages) {
+			throw new EOFException("Page " + pageNumber + " lies beyond the end of the mapped file.");
+		}
+
+		// a duplicate has its own position, so concurrent reads do not interfere
+		ByteBuffer segment = this.segments[pageNumber / this.pagesPerSegment].duplicate();
+		segment.position((pageNumber % this.pagesPerSegment) * this.pageSize);
+		segment.get(buffer, 0, this.pageSize);
+	}
+}
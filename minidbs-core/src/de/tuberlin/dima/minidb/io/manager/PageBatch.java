@@ -0,0 +1,156 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+
+
+/**
+ * A batch of pages that are written to a resource directly, without passing through the buffer
+ * pool. Pages are added in the order of their page numbers and are written with a single call to
+ * {@link ResourceManager#writePagesToResource(byte[][], CacheableData[])} per run of consecutive
+ * page numbers, either when the batch is full or when it is flushed.
+ * <p>
+ * The buffers of written pages are handed out again by {@link #nextBuffer()}, so that a batch
+ * that fills many pages allocates only as many buffers as it holds pages at once.
+ * <p>
+ * A batch is used by a single thread.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public final class PageBatch
+{
+	/**
+	 * The resource to write the pages to.
+	 */
+	private final ResourceManager resource;
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The buffers of the pages in the batch.
+	 */
+	private final byte[][] buffers;
+
+	/**
+	 * The pages in the batch.
+	 */
+	private final CacheableData[] pages;
+
+	/**
+	 * The buffers of pages that have been written.
+	 */
+	private final ArrayDeque<byte[]> freeBuffers;
+
+	/**
+	 * The number of pages in the batch.
+	 */
+	private int count;
+
+	/**
+	 * The number of pages written so far.
+	 */
+	private int numberOfPagesWritten;
+
+
+	/**
+	 * Creates a new batch that writes to the given resource.
+	 *
+	 * @param resource The resource to write the pages to.
+	 * @param capacity The number of pages written at once.
+	 */
+	public PageBatch(ResourceManager resource, int capacity)
+	{
+		if (capacity < 1) {
+			throw new IllegalArgumentException("A batch must hold at least one page.");
+		}
+
+		this.resource = resource;
+		this.pageSize = resource.getPageSize().getNumberOfBytes();
+		this.buffers = new byte[capacity][];
+		this.pages = new CacheableData[capacity];
+		this.freeBuffers = new ArrayDeque<byte[]>();
+	}
+
+
+	/**
+	 * Gets a zeroed buffer for a new page. The buffer is either newly allocated or the buffer of
+	 * a page that has already been written.
+	 *
+	 * @return A buffer of the size of a page.
+	 */
+	public byte[] nextBuffer()
+	{
+		byte[] buffer = this.freeBuffers.poll();
+		if (buffer == null) {
+			return new byte[this.pageSize];
+		}
+		Arrays.fill(buffer, (byte) 0);
+		return buffer;
+	}
+
+	/**
+	 * Adds a complete page to the batch. The page must not be modified any more, and its buffer
+	 * is reused once the page is written. If the page does not directly follow the last page in
+	 * the batch, the batch is written first.
+	 *
+	 * @param page The page to add.
+	 * @throws IOException Thrown, if the batch had to be written and writing failed.
+	 */
+	public void add(CacheableData page) throws IOException
+	{
+		if (this.count > 0 && this.pages[this.count - 1].getPageNumber() + 1 != page.getPageNumber()) {
+			flush();
+		}
+
+		this.buffers[this.count] = page.getBuffer();
+		this.pages[this.count] = page;
+		this.count++;
+
+		if (this.count == this.pages.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all pages in the batch.
+	 *
+	 * @throws IOException Thrown, if the pages could not be written.
+	 */
+	public void flush() throws IOException
+	{
+		if (this.count == 0) {
+			return;
+		}
+
+		if (this.count == this.pages.length) {
+			this.resource.writePagesToResource(this.buffers, this.pages);
+		} else {
+			this.resource.writePagesToResource(Arrays.copyOf(this.buffers, this.count), Arrays.copyOf(this.pages, this.count));
+		}
+
+		for (int i = 0; i < this.count; i++) {
+			this.freeBuffers.add(this.buffers[i]);
+			this.buffers[i] = null;
+			this.pages[i] = null;
+		}
+		this.numberOfPagesWritten += this.count;
+		this.count = 0;
+	}
+
+	/**
+	 * Gets the number of pages that have been written so far.
+	 *
+	 * @return The number of written pages.
+	 */
+	public int getNumberOfPagesWritten()
+	{
+		return this.numberOfPagesWritten;
+	}
+}
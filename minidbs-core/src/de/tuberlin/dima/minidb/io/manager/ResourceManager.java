@@ -102,6 +102,9 @@ public abstract class ResourceManager
 	 * created page. The resource manager may choose to directly write the new page to the
 	 * resource or not.
 	 * 
+	 * The buffer pool calls this method from several threads without holding a lock, so the
+	 * page numbers must be assigned atomically.
+	 * 
 	 * @param ioBuffer The buffer to initialize the page into.
 	 * @return The page object wrapping the page represented by the binary data initialized
 	 *         into the buffer. 
@@ -119,7 +122,8 @@ public abstract class ResourceManager
 	 * parameter specifies which kind of page to initialize.
 	 * <p>
 	 * This method assigns a page number to the newly created page. The resource manager
-	 * may choose to directly write the new page to the resource or not.
+	 * may choose to directly write the new page to the resource or not. Like
+	 * {@link #reserveNewPage(byte[])}, it may be called by several threads at the same time.
 	 * 
 	 * @param ioBuffer The buffer to initialize the page into.
 	 * @param type Optional parameter. May be used to specify which type page is to be initialized.
@@ -0,0 +1,45 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+
+/**
+ * A buffer pool that can persist the set of pages resident in its caches and load it again after
+ * a restart, such that the first requests after the restart do not all go to secondary storage.
+ * <p>
+ * Resource ids are reserved anew on every start, so the manifest identifies resources by a name
+ * that is stable across restarts, typically the name of the resource's file.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public interface WarmRestartable
+{
+	/**
+	 * Writes the resident pages of all caches to the given file. Only pages of resources
+	 * that have a name in the given map are written.
+	 *
+	 * @param manifestFile The file to write the manifest to.
+	 * @param resourceNames The stable names of the resources, mapped by their current ids.
+	 * @throws IOException Thrown, if the manifest could not be written.
+	 */
+	public void writeCacheManifest(File manifestFile, Map<Integer, String> resourceNames)
+		throws IOException;
+
+	/**
+	 * Reads the manifest from the given file and starts loading the pages listed in it into the
+	 * caches. The pages are loaded asynchronously, this method returns as soon as the manifest
+	 * is read. Pages of resources that are not registered under the given names are skipped.
+	 *
+	 * @param manifestFile The file to read the manifest from.
+	 * @param resourceIds The current ids of the resources, mapped by their stable names.
+	 * @return A future that yields the number of pages loaded, once the load has finished.
+	 * @throws IOException Thrown, if the manifest could not be read or has an invalid format.
+	 * @throws BufferPoolException Thrown, if the buffer pool is closed.
+	 */
+	public Future<Integer> loadCacheManifest(File manifestFile, Map<String, Integer> resourceIds)
+		throws IOException, BufferPoolException;
+}
@@ -0,0 +1,475 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The data pages of a compressed table file. Every page is stored compressed (see
+ * {@link PageCodec}) in a slot of its own, and slots follow each other behind the header pages.
+ * A slot starts with the page number, the capacity of the slot and the number of stored bytes,
+ * and is rounded up to a multiple of 256 bytes, so that a page which compresses a little worse
+ * after a modification still fits. A page that does not fit any more moves to a new slot at the
+ * end of the file, and its old slot is marked dead. A page that does not compress is stored as
+ * it is.
+ * <p>
+ * The directory of the slots is kept in memory and rebuilt from the slot headers when the file is
+ * opened. A page read decompresses the slot into the I/O buffer, and a read of a sequence of
+ * pages whose slots follow each other reads all slots at once, so scans read only the compressed
+ * bytes.
+ * <p>
+ * A page is read under the read lock of its slot and written under the write lock, so that a read
+ * never sees a slot that is rewritten in place or marked dead while its bytes are read. The slots
+ * share a fixed number of locks, and the directory itself is guarded by the monitor.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+final class CompressedPages {
+	/**
+	 * The size of the header of a slot: page number, capacity and number of stored bytes.
+	 */
+	private static final int SLOT_HEADER_SIZE = 12;
+
+	/**
+	 * The granularity of the slot capacities.
+	 */
+	private static final int SLOT_ALIGNMENT = 256;
+
+	/**
+	 * The page number of a dead slot.
+	 */
+	private static final int DEAD_SLOT = -1;
+
+	/**
+	 * The number of locks that the slots share, so that the stripes of a sequence of pages fit a
+	 * bit mask.
+	 */
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * The codecs of the I/O threads.
+	 */
+	private static final ThreadLocal<PageCodec> CODECS = new ThreadLocal<PageCodec>() {
+		@Override
+		protected PageCodec initialValue() {
+			return new PageCodec();
+		}
+	};
+
+	/**
+	 * The channel to the table file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The number of the first data page.
+	 */
+	private final int firstPageNumber;
+
+	/**
+	 * The position of the first slot.
+	 */
+	private final long dataStart;
+
+	/**
+	 * The position of the header field that holds the last data page number.
+	 */
+	private final long endFieldPosition;
+
+	/**
+	 * The number of the last page that has been handed out.
+	 */
+	private final AtomicInteger lastPageNumber;
+
+	/**
+	 * The position of the slot of every page, relative to the first data page, or 0, if the page
+	 * has not been written.
+	 */
+	private long[] positions;
+
+	/**
+	 * The capacity of the slot of every page.
+	 */
+	private int[] capacities;
+
+	/**
+	 * The number of bytes stored in the slot of every page.
+	 */
+	private int[] lengths;
+
+	/**
+	 * The position at which the next new slot is placed.
+	 */
+	private long appendPosition;
+
+	/**
+	 * The locks of the slots, the slot of a page uses the lock of its page number modulo the
+	 * number of locks.
+	 */
+	private final ReentrantReadWriteLock[] slotLocks;
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Reads the slot directory of the compressed table file behind the given channel.
+	 *
+	 * @param channel
+	 *        The channel to the table file.
+	 * @param pageSize
+	 *        The size of a page in bytes.
+	 * @param firstPageNumber
+	 *        The number of the first data page, the slots start at its position.
+	 * @param endFieldPosition
+	 *        The position of the header field that holds the last data page number.
+	 * @param recordedEnd
+	 *        The last data page number as recorded in the header.
+	 * @throws IOException
+	 *         Thrown, if the slot headers could not be read.
+	 */
+	CompressedPages(FileChannel channel, int pageSize, int firstPageNumber, long endFieldPosition, int recordedEnd) throws IOException {
+		this.channel = channel;
+		this.pageSize = pageSize;
+		this.firstPageNumber = firstPageNumber;
+		this.dataStart = firstPageNumber * (long) pageSize;
+		this.endFieldPosition = endFieldPosition;
+		this.positions = new long[64];
+		this.capacities = new int[64];
+		this.lengths = new int[64];
+		this.slotLocks = new ReentrantReadWriteLock[LOCK_STRIPES];
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			this.slotLocks[i] = new ReentrantReadWriteLock();
+		}
+
+		int last = Math.max(recordedEnd, firstPageNumber - 1);
+		long size = channel.size();
+		long position = this.dataStart;
+		ByteBuffer header = ByteBuffer.allocate(SLOT_HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+
+		// the slots are in the order they were placed, so a later slot of a page wins
+		while (position + SLOT_HEADER_SIZE <= size) {
+			header.clear();
+			readFully(header, position);
+			int pageNumber = header.getInt(0);
+			int capacity = header.getInt(4);
+			int length = header.getInt(8);
+
+			if (capacity <= 0 || length <= 0 || length > capacity || length > pageSize || position + SLOT_HEADER_SIZE + length > size) {
+				// the rest of the file has not been written completely
+				break;
+			}
+			if (pageNumber >= firstPageNumber) {
+				setSlot(pageNumber, position, capacity, length);
+				last = Math.max(last, pageNumber);
+			}
+			position += SLOT_HEADER_SIZE + capacity;
+		}
+
+		this.appendPosition = position;
+		this.lastPageNumber = new AtomicInteger(last);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of the last page that has been handed out.
+	 *
+	 * @return The last data page number.
+	 */
+	int getLastPageNumber() {
+		return this.lastPageNumber.get();
+	}
+
+	/**
+	 * Hands out the next page number. The page gets its slot when it is written.
+	 *
+	 * @return The number of the new page.
+	 */
+	int reservePage() {
+		return this.lastPageNumber.incrementAndGet();
+	}
+
+	/**
+	 * Forgets all slots after the file has been truncated to its header.
+	 *
+	 * @throws IOException
+	 *         Thrown, if the header could not be updated.
+	 */
+	synchronized void reset() throws IOException {
+		Arrays.fill(this.positions, 0);
+		this.appendPosition = this.dataStart;
+		this.lastPageNumber.set(this.firstPageNumber - 1);
+		writeEnd();
+	}
+
+	/**
+	 * Records the last data page number in the header. Must be called before the channel is closed.
+	 *
+	 * @throws IOException
+	 *         Thrown, if the header could not be updated.
+	 */
+	void close() throws IOException {
+		writeEnd();
+	}
+
+	/**
+	 * Reads and decompresses a page into the given buffer.
+	 *
+	 * @param pageNumber
+	 *        The number of the page.
+	 * @param buffer
+	 *        The buffer to decompress the page into.
+	 * @throws IOException
+	 *         Thrown, if the page has not been written, or could not be read or decompressed.
+	 */
+	void readPage(int pageNumber, byte[] buffer) throws IOException {
+		Lock lock = slotLock(pageNumber).readLock();
+		lock.lock();
+		try {
+			long position;
+			int length;
+			synchronized (this) {
+				int index = pageNumber - this.firstPageNumber;
+				if (index < 0 || index >= this.positions.length || this.positions[index] == 0) {
+					throw new EOFException("Page " + pageNumber + " has not been written.");
+				}
+				position = this.positions[index];
+				length = this.lengths[index];
+			}
+
+			PageCodec codec = CODECS.get();
+			byte[] slot = codec.getScratch(SLOT_HEADER_SIZE + length);
+			readFully(ByteBuffer.wrap(slot, 0, SLOT_HEADER_SIZE + length), position);
+			decode(slot, 0, pageNumber, length, buffer);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Reads and decompresses a sequence of pages. If their slots follow each other in the file,
+	 * they are read at once.
+	 *
+	 * @param firstPageNumber
+	 *        The number of the first page.
+	 * @param buffers
+	 *        The buffers to decompress the pages into.
+	 * @throws IOException
+	 *         Thrown, if a page has not been written, or could not be read or decompressed.
+	 */
+	void readPages(int firstPageNumber, byte[][] buffers) throws IOException {
+		// the locks are taken in the order of their stripes, a writer holds only one of them
+		long stripes = 0;
+		for (int i = 0; i < buffers.length && i < LOCK_STRIPES; i++) {
+			stripes |= 1L << stripeOf(firstPageNumber + i);
+		}
+		for (int s = 0; s < LOCK_STRIPES; s++) {
+			if ((stripes & (1L << s)) != 0) {
+				this.slotLocks[s].readLock().lock();
+			}
+		}
+		try {
+			readLockedPages(firstPageNumber, buffers);
+		}
+		finally {
+			for (int s = 0; s < LOCK_STRIPES; s++) {
+				if ((stripes & (1L << s)) != 0) {
+					this.slotLocks[s].readLock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a sequence of pages whose slots are read locked.
+	 */
+	private void readLockedPages(int firstPageNumber, byte[][] buffers) throws IOException {
+		long start;
+		long end;
+		int[] lengths = new int[buffers.length];
+		int[] offsets = new int[buffers.length];
+
+		synchronized (this) {
+			int first = firstPageNumber - this.firstPageNumber;
+			int last = first + buffers.length - 1;
+			boolean contiguous = first >= 0 && last < this.positions.length && this.positions[first] != 0;
+
+			for (int i = 1; contiguous && i < buffers.length; i++) {
+				contiguous = this.positions[first + i] == this.positions[first + i - 1] + SLOT_HEADER_SIZE + this.capacities[first + i - 1];
+			}
+			if (!contiguous || buffers.length == 1) {
+				start = -1;
+				end = -1;
+			} else {
+				start = this.positions[first];
+				end = this.positions[last] + SLOT_HEADER_SIZE + this.lengths[last];
+				for (int i = 0; i < buffers.length; i++) {
+					lengths[i] = this.lengths[first + i];
+					offsets[i] = (int) (this.positions[first + i] - start);
+				}
+			}
+		}
+
+		if (start < 0) {
+			for (int i = 0; i < buffers.length; i++) {
+				readPage(firstPageNumber + i, buffers[i]);
+			}
+			return;
+		}
+
+		PageCodec codec = CODECS.get();
+		byte[] slots = codec.getScratch((int) (end - start));
+		readFully(ByteBuffer.wrap(slots, 0, (int) (end - start)), start);
+
+		for (int i = 0; i < buffers.length; i++) {
+			decode(slots, offsets[i], firstPageNumber + i, lengths[i], buffers[i]);
+		}
+	}
+
+	/**
+	 * Compresses a page and writes it into its slot, or into a new slot, if it does not fit.
+	 *
+	 * @param pageNumber
+	 *        The number of the page.
+	 * @param buffer
+	 *        The buffer holding the page.
+	 * @throws IOException
+	 *         Thrown, if the page could not be written.
+	 */
+	void writePage(int pageNumber, byte[] buffer) throws IOException {
+		PageCodec codec = CODECS.get();
+		byte[] slot = codec.getScratch(SLOT_HEADER_SIZE + PageCodec.maxCompressedLength(this.pageSize));
+		int length = codec.compress(buffer, this.pageSize, slot, SLOT_HEADER_SIZE);
+		if (length >= this.pageSize) {
+			// does not compress, store it as it is
+			System.arraycopy(buffer, 0, slot, SLOT_HEADER_SIZE, this.pageSize);
+			length = this.pageSize;
+		}
+
+		int index = pageNumber - this.firstPageNumber;
+		if (index < 0) {
+			throw new IOException("Page number " + pageNumber + " is not valid. First data page is " + this.firstPageNumber + ".");
+		}
+
+		// no read of the page sees the slot while it is rewritten or marked dead
+		Lock lock = slotLock(pageNumber).writeLock();
+		lock.lock();
+		try {
+			long position;
+			int capacity;
+			long deadPosition = 0;
+
+			synchronized (this) {
+				ensureCapacity(index);
+
+				if (this.positions[index] != 0 && this.capacities[index] >= length) {
+					position = this.positions[index];
+					capacity = this.capacities[index];
+				} else {
+					deadPosition = this.positions[index];
+					capacity = (length + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT;
+					position = this.appendPosition;
+					this.appendPosition += SLOT_HEADER_SIZE + capacity;
+				}
+			}
+
+			ByteBuffer bytes = ByteBuffer.wrap(slot, 0, SLOT_HEADER_SIZE + length);
+			bytes.order(ByteOrder.LITTLE_ENDIAN);
+			bytes.putInt(0, pageNumber);
+			bytes.putInt(4, capacity);
+			bytes.putInt(8, length);
+			writeFully(bytes, position);
+
+			// the slot is published once it is written
+			synchronized (this) {
+				setSlot(pageNumber, position, capacity, length);
+			}
+
+			if (deadPosition != 0) {
+				ByteBuffer dead = ByteBuffer.allocate(4);
+				dead.order(ByteOrder.LITTLE_ENDIAN);
+				dead.putInt(0, DEAD_SLOT);
+				writeFully(dead, deadPosition);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void decode(byte[] slots, int offset, int pageNumber, int length, byte[] buffer) throws IOException {
+		int storedNumber = (slots[offset] & 0xff) | ((slots[offset + 1] & 0xff) << 8) | ((slots[offset + 2] & 0xff) << 16)
+			| ((slots[offset + 3] & 0xff) << 24);
+		if (storedNumber != pageNumber) {
+			throw new IOException("The slot of page " + pageNumber + " holds page " + storedNumber + ".");
+		}
+
+		if (length == this.pageSize) {
+			System.arraycopy(slots, offset + SLOT_HEADER_SIZE, buffer, 0, this.pageSize);
+		} else {
+			PageCodec.decompress(slots, offset + SLOT_HEADER_SIZE, length, buffer, this.pageSize);
+		}
+	}
+
+	private int stripeOf(int pageNumber) {
+		return pageNumber & (LOCK_STRIPES - 1);
+	}
+
+	private ReentrantReadWriteLock slotLock(int pageNumber) {
+		return this.slotLocks[stripeOf(pageNumber)];
+	}
+
+	private void setSlot(int pageNumber, long position, int capacity, int length) {
+		int index = pageNumber - this.firstPageNumber;
+		ensureCapacity(index);
+		this.positions[index] = position;
+		this.capacities[index] = capacity;
+		this.lengths[index] = length;
+	}
+
+	private void ensureCapacity(int index) {
+		if (index >= this.positions.length) {
+			int size = Math.max(index + 1, this.positions.length * 2);
+			this.positions = Arrays.copyOf(this.positions, size);
+			this.capacities = Arrays.copyOf(this.capacities, size);
+			this.lengths = Arrays.copyOf(this.lengths, size);
+		}
+	}
+
+	private void writeEnd() throws IOException {
+		ByteBuffer field = ByteBuffer.allocate(4);
+		field.order(ByteOrder.LITTLE_ENDIAN);
+		field.putInt(0, this.lastPageNumber.get());
+		writeFully(field, this.endFieldPosition);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = this.channel.read(buffer, position);
+			if (count == -1) {
+				throw new EOFException();
+			}
+			position += count;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += this.channel.write(buffer, position);
+		}
+	}
+}
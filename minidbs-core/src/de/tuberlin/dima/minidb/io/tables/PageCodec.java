@@ -0,0 +1,239 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fast compressor for binary pages, writing the LZ4 block format. The compressor looks for
+ * repetitions of at least four bytes within the last 64 KB, which catches the padding of CHAR
+ * columns and repeated values well, and emits them as back references between runs of literals.
+ * It trades compression ratio for speed: it does not search for the longest match, and
+ * decompression is a simple copy loop.
+ * <p>
+ * A codec keeps its hash table and buffer between calls, so it must not be shared between threads.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+final class PageCodec {
+	/**
+	 * The shortest repetition that is encoded as a back reference.
+	 */
+	private static final int MIN_MATCH = 4;
+
+	/**
+	 * The farthest back a repetition may lie.
+	 */
+	private static final int MAX_OFFSET = 65535;
+
+	/**
+	 * The number of bytes at the end of the input that are always literals.
+	 */
+	private static final int LAST_LITERALS = 5;
+
+	/**
+	 * The distance from the end of the input at which no new match may start.
+	 */
+	private static final int MATCH_FIND_LIMIT = 12;
+
+	private static final int HASH_BITS = 12;
+
+	/**
+	 * The last position of every hashed four byte sequence, plus one, so that 0 marks none.
+	 */
+	private final int[] table = new int[1 << HASH_BITS];
+
+	/**
+	 * The buffer for compressed bytes, grown as needed.
+	 */
+	private byte[] scratch = new byte[0];
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the size of a buffer that holds the compressed form of any input of the given length.
+	 *
+	 * @param length
+	 *        The length of the input.
+	 * @return The size of the buffer.
+	 */
+	static int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	/**
+	 * Gets a buffer of at least the given size for compressed bytes. The buffer is reused by the
+	 * next call.
+	 *
+	 * @param size
+	 *        The minimal size of the buffer.
+	 * @return The buffer.
+	 */
+	byte[] getScratch(int size) {
+		if (this.scratch.length < size) {
+			this.scratch = new byte[size];
+		}
+		return this.scratch;
+	}
+
+	/**
+	 * Compresses the given bytes.
+	 *
+	 * @param src
+	 *        The bytes to compress.
+	 * @param length
+	 *        The number of bytes to compress.
+	 * @param dst
+	 *        The buffer to compress into, at least <code>maxCompressedLength(length)</code> large.
+	 * @param dstOffset
+	 *        The position in the buffer at which the compressed bytes start.
+	 * @return The number of compressed bytes.
+	 */
+	int compress(byte[] src, int length, byte[] dst, int dstOffset) {
+		Arrays.fill(this.table, 0);
+
+		int op = dstOffset;
+		int anchor = 0;
+		int ip = 0;
+		int findLimit = length - MATCH_FIND_LIMIT;
+		int matchLimit = length - LAST_LITERALS;
+
+		while (ip < findLimit) {
+			int sequence = readInt(src, ip);
+			int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+			int ref = this.table[hash] - 1;
+			this.table[hash] = ip + 1;
+
+			if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+				ip++;
+				continue;
+			}
+
+			// extend the match as far as it goes
+			int matchLength = MIN_MATCH;
+			while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+				matchLength++;
+			}
+
+			op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+			ip += matchLength;
+			anchor = ip;
+		}
+
+		// the rest are literals
+		return writeSequence(src, anchor, length - anchor, dst, op, 0, 0) - dstOffset;
+	}
+
+	/**
+	 * Decompresses the given bytes.
+	 *
+	 * @param src
+	 *        The buffer holding the compressed bytes.
+	 * @param srcOffset
+	 *        The position of the compressed bytes in the buffer.
+	 * @param srcLength
+	 *        The number of compressed bytes.
+	 * @param dst
+	 *        The buffer to decompress into.
+	 * @param length
+	 *        The number of bytes that the compressed bytes decompress to.
+	 * @throws IOException
+	 *         Thrown, if the compressed bytes are corrupted.
+	 */
+	static void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int length) throws IOException {
+		int ip = srcOffset;
+		int srcEnd = srcOffset + srcLength;
+		int op = 0;
+
+		try {
+			while (true) {
+				int token = src[ip++] & 0xff;
+
+				// copy the literals
+				int literals = token >>> 4;
+				if (literals == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						literals += b;
+					} while (b == 255);
+				}
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+
+				if (ip >= srcEnd) {
+					break;
+				}
+
+				// copy the match, which may overlap its own output
+				int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+				ip += 2;
+				int matchLength = token & 0x0f;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+
+				int ref = op - offset;
+				if (offset == 0 || ref < 0) {
+					throw new IOException("The compressed page refers to bytes before its start.");
+				}
+				for (int i = 0; i < matchLength; i++) {
+					dst[op++] = dst[ref++];
+				}
+			}
+		} catch (IndexOutOfBoundsException ioobex) {
+			throw new IOException("The compressed page is corrupted.", ioobex);
+		}
+
+		if (op != length) {
+			throw new IOException("The compressed page decompressed to " + op + " instead of " + length + " bytes.");
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Writes a run of literals followed by a match. A match length of 0 ends the block.
+	 */
+	private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op, int offset, int matchLength) {
+		int tokenPos = op++;
+		int token = Math.min(literals, 15) << 4;
+		if (literals >= 15) {
+			op = writeLength(dst, op, literals - 15);
+		}
+		System.arraycopy(src, literalStart, dst, op, literals);
+		op += literals;
+
+		if (matchLength > 0) {
+			dst[op++] = (byte) offset;
+			dst[op++] = (byte) (offset >>> 8);
+
+			int extra = matchLength - MIN_MATCH;
+			token |= Math.min(extra, 15);
+			if (extra >= 15) {
+				op = writeLength(dst, op, extra - 15);
+			}
+		}
+
+		dst[tokenPos] = (byte) token;
+		return op;
+	}
+
+	private static int writeLength(byte[] dst, int op, int length) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+	}
+}
@@ -0,0 +1,488 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.Catalogue;
+import de.tuberlin.dima.minidb.catalogue.ColumnStatistics;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.catalogue.TableStatistics;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataFormatException;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeBulkLoader;
+import de.tuberlin.dima.minidb.io.manager.PageBatch;
+
+
+/**
+ * Loads delimited text files into an empty table of the catalogue and builds all indexes of the
+ * catalogue on that table, without passing through the buffer pool. Each line of a file holds one
+ * tuple, whose fields are separated by a delimiter (by default '|', as in the files of the TPC-H
+ * data generator). A delimiter after the last field is allowed, and a field holding
+ * <code>NULL</code> is the NULL value.
+ * <p>
+ * The lines are parsed into fields by a pool of threads, in chunks. The calling thread takes the
+ * parsed chunks in the order of the input and encodes the fields of each line directly into a
+ * page, through a single tuple that is reused for all lines. The pages are written to the table
+ * file in batches of consecutive pages. While doing so, the calling thread hands the (key / RID)
+ * pairs of every index on the table to the index loaders, which keep them as sorted runs of binary
+ * records, and collects the statistics of the table and its columns. Once all files are loaded,
+ * each index is built bottom-up (see {@link BTreeBulkLoader}), and the
+ * statistics of the table, its columns and its indexes are replaced in the catalogue. The number
+ * of distinct values of an indexed column is exact; that of any other column is estimated.
+ * <p>
+ * The table and its indexes must not be in use while they are loaded, and none of their pages may
+ * be held by the buffer pool.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public class TableBulkLoader
+{
+	/**
+	 * The number of lines parsed by one task.
+	 */
+	private static final int LINES_PER_CHUNK = 4096;
+
+	/**
+	 * The character set of the files.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * The descriptor of the table to load.
+	 */
+	private final TableDescriptor table;
+
+	/**
+	 * The descriptors of the indexes on the table.
+	 */
+	private final List<IndexDescriptor> indexes;
+
+	/**
+	 * The character that separates the fields of a line.
+	 */
+	private char delimiter = '|';
+
+	/**
+	 * The number of threads that parse the lines.
+	 */
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The directory for the sorted runs of the index loaders, null for the default temp directory.
+	 */
+	private File spillDirectory;
+
+	/**
+	 * The number of bytes in which each index loader sorts its pairs.
+	 */
+	private int sortBufferSize = Constants.DEFAULT_BULK_LOAD_SORT_BUFFER_SIZE;
+
+
+	/**
+	 * Creates a new loader for the table with the given name. The table and its indexes must
+	 * have been opened.
+	 *
+	 * @param catalogue The catalogue that describes the table and its indexes.
+	 * @param tableName The name of the table to load.
+	 * @throws IllegalArgumentException Thrown, if the catalogue has no table with the given name.
+	 * @throws IllegalStateException Thrown, if the table or one of its indexes has not been opened.
+	 */
+	public TableBulkLoader(Catalogue catalogue, String tableName)
+	{
+		this.table = catalogue.getTable(tableName);
+		if (this.table == null) {
+			throw new IllegalArgumentException("The catalogue has no table '" + tableName + "'.");
+		}
+		if (this.table.getResourceManager() == null) {
+			throw new IllegalStateException("The table '" + tableName + "' has not been opened.");
+		}
+
+		this.indexes = catalogue.getAllIndexesForTable(tableName);
+		for (IndexDescriptor index : this.indexes) {
+			if (index.getResourceManager() == null) {
+				throw new IllegalStateException("The index '" + index.getName() + "' has not been opened.");
+			}
+		}
+	}
+
+
+	/**
+	 * Sets the character that separates the fields of a line.
+	 *
+	 * @param delimiter The delimiter.
+	 */
+	public void setDelimiter(char delimiter)
+	{
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Sets the number of threads that parse the lines. The default is the number of processors.
+	 *
+	 * @param numberOfThreads The number of threads.
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed to parse the lines.");
+		}
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * Sets the directory to which the index loaders write their sorted runs. By default, the runs
+	 * are written to the default temp directory.
+	 *
+	 * @param spillDirectory The directory for the sorted runs.
+	 */
+	public void setSpillDirectory(File spillDirectory)
+	{
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Sets the number of bytes in which each index loader sorts its pairs before it writes them
+	 * to a sorted run.
+	 *
+	 * @param sortBufferSize The size of the sort buffer of each index loader.
+	 */
+	public void setSortBufferSize(int sortBufferSize)
+	{
+		this.sortBufferSize = sortBufferSize;
+	}
+
+	/**
+	 * Loads the given files, in the given order, into the table and builds the indexes on the
+	 * table.
+	 *
+	 * @param files The files to load.
+	 * @return The number of loaded tuples.
+	 * @throws IllegalStateException Thrown, if the table is not empty.
+	 * @throws IOException Thrown, if a file could not be read or a page could not be written.
+	 * @throws DataFormatException Thrown, if a line does not hold a valid tuple of the table. The
+	 *                             tuples of the previous lines remain in the table in that case,
+	 *                             but the indexes are not built.
+	 * @throws PageFormatException Thrown, if a page could not be initialized.
+	 * @throws de.tuberlin.dima.minidb.core.DuplicateException Thrown, if a key occurs twice for a
+	 *         unique index. That index is left empty.
+	 */
+	public long load(File... files) throws IOException, DataFormatException, PageFormatException
+	{
+		TableResourceManager resource = this.table.getResourceManager();
+		if (resource.getLastDataPageNumber() >= resource.getFirstDataPageNumber()) {
+			throw new IllegalStateException("Only an empty table can be bulk loaded.");
+		}
+
+		Encoder encoder = new Encoder(resource);
+		ExecutorService parsers = Executors.newFixedThreadPool(this.numberOfThreads);
+		ArrayDeque<Future<DataField[]>> pending = new ArrayDeque<Future<DataField[]>>();
+		boolean loaded = false;
+
+		try {
+			for (File file : files) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET), 1 << 16);
+				try {
+					String[] chunk = new String[LINES_PER_CHUNK];
+					int[] lineNumbers = new int[LINES_PER_CHUNK];
+					int numLines = 0;
+					int lineNumber = 0;
+					String line;
+
+					while ((line = reader.readLine()) != null) {
+						lineNumber++;
+						if (line.isEmpty()) {
+							continue;
+						}
+						chunk[numLines] = line;
+						lineNumbers[numLines++] = lineNumber;
+						if (numLines == LINES_PER_CHUNK) {
+							pending.add(parsers.submit(new ParseTask(file, chunk, lineNumbers, numLines)));
+							chunk = new String[LINES_PER_CHUNK];
+							lineNumbers = new int[LINES_PER_CHUNK];
+							numLines = 0;
+
+							// keep the parsers busy, but do not read ahead further than that
+							while (pending.size() > 2 * this.numberOfThreads) {
+								encoder.encode(take(pending.poll()));
+							}
+						}
+					}
+					if (numLines > 0) {
+						pending.add(parsers.submit(new ParseTask(file, chunk, lineNumbers, numLines)));
+					}
+				}
+				finally {
+					reader.close();
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				encoder.encode(take(pending.poll()));
+			}
+
+			encoder.finish();
+			loaded = true;
+		}
+		finally {
+			parsers.shutdownNow();
+			if (!loaded) {
+				encoder.discard();
+			}
+		}
+		return encoder.cardinality;
+	}
+
+	/**
+	 * Waits for a chunk to be parsed.
+	 *
+	 * @param chunk The chunk to wait for.
+	 * @return The fields of the parsed lines, one line after the other.
+	 * @throws DataFormatException Thrown, if a line of the chunk was invalid.
+	 * @throws IOException Thrown, if the thread was interrupted while waiting.
+	 */
+	private static DataField[] take(Future<DataField[]> chunk) throws DataFormatException, IOException
+	{
+		try {
+			return chunk.get();
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("The bulk load was interrupted.");
+		}
+		catch (ExecutionException eex) {
+			Throwable cause = eex.getCause();
+			if (cause instanceof DataFormatException) {
+				throw (DataFormatException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else {
+				throw new IOException("A chunk of lines could not be parsed.", cause);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Parses a chunk of lines into fields.
+	 */
+	private final class ParseTask implements Callable<DataField[]>
+	{
+		private final File file;
+
+		private final String[] lines;
+
+		private final int[] lineNumbers;
+
+		private final int numLines;
+
+		private ParseTask(File file, String[] lines, int[] lineNumbers, int numLines)
+		{
+			this.file = file;
+			this.lines = lines;
+			this.lineNumbers = lineNumbers;
+			this.numLines = numLines;
+		}
+
+		@Override
+		public DataField[] call() throws DataFormatException
+		{
+			TableSchema schema = TableBulkLoader.this.table.getSchema();
+			int numCols = schema.getNumberOfColumns();
+			DataType[] types = new DataType[numCols];
+			for (int i = 0; i < numCols; i++) {
+				types[i] = schema.getColumn(i).getDataType();
+			}
+			char delimiter = TableBulkLoader.this.delimiter;
+
+			DataField[] fields = new DataField[this.numLines * numCols];
+			for (int n = 0; n < this.numLines; n++) {
+				String line = this.lines[n];
+				int first = n * numCols;
+				int start = 0;
+				try {
+					for (int i = 0; i < numCols; i++) {
+						int end = line.indexOf(delimiter, start);
+						if (end < 0) {
+							if (i < numCols - 1) {
+								throw new DataFormatException("The line holds only " + (i + 1) + " of " + numCols + " fields.");
+							}
+							end = line.length();
+						}
+						fields[first + i] = types[i].getFromString(line.substring(start, end));
+						start = end + 1;
+					}
+					if (start < line.length()) {
+						throw new DataFormatException("The line holds more than " + numCols + " fields.");
+					}
+				}
+				catch (DataFormatException dfex) {
+					throw new DataFormatException("Invalid tuple in '" + this.file.getName() + "', line " + this.lineNumbers[n] + ": " + dfex.getMessage());
+				}
+			}
+			return fields;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Encodes the parsed lines into pages and collects the index entries and statistics.
+	 */
+	private final class Encoder
+	{
+		private final TableResourceManager resource;
+
+		private final PageBatch batch;
+
+		private final BTreeBulkLoader[] indexLoaders;
+
+		private final int[] indexedColumns;
+
+		private final DataField[] lowKeys;
+
+		private final DataField[] highKeys;
+
+		private final DistinctCounter[] distinct;
+
+		/**
+		 * The tuple through which every line is inserted into its page.
+		 */
+		private final DataTuple tuple;
+
+		private TablePage page;
+
+		private long cardinality;
+
+		private Encoder(TableResourceManager resource)
+		{
+			this.resource = resource;
+			this.batch = new PageBatch(resource, Constants.DEFAULT_BULK_LOAD_BATCH_PAGES);
+
+			List<IndexDescriptor> indexes = TableBulkLoader.this.indexes;
+			this.indexLoaders = new BTreeBulkLoader[indexes.size()];
+			this.indexedColumns = new int[indexes.size()];
+			for (int i = 0; i < this.indexLoaders.length; i++) {
+				this.indexLoaders[i] = new BTreeBulkLoader(indexes.get(i).getResourceManager(),
+					TableBulkLoader.this.spillDirectory, TableBulkLoader.this.sortBufferSize);
+				this.indexedColumns[i] = indexes.get(i).getSchema().getColumnNumber();
+			}
+
+			int numCols = resource.getSchema().getNumberOfColumns();
+			this.lowKeys = new DataField[numCols];
+			this.highKeys = new DataField[numCols];
+			this.distinct = new DistinctCounter[numCols];
+			for (int i = 0; i < numCols; i++) {
+				this.distinct[i] = new DistinctCounter();
+			}
+			this.tuple = new DataTuple(numCols);
+		}
+
+		private void encode(DataField[] fields) throws IOException, PageFormatException
+		{
+			final DataTuple tuple = this.tuple;
+			final int numCols = this.lowKeys.length;
+
+			for (int first = 0; first < fields.length; first += numCols) {
+				for (int i = 0; i < numCols; i++) {
+					tuple.assignDataField(fields[first + i], i);
+				}
+
+				if (this.page == null || !this.page.insertTuple(tuple)) {
+					if (this.page != null) {
+						this.batch.add(this.page);
+					}
+					this.page = this.resource.reserveNewPage(this.batch.nextBuffer());
+					if (!this.page.insertTuple(tuple)) {
+						throw new PageFormatException("The tuple " + tuple + " does not fit on an empty page.");
+					}
+				}
+
+				// the RID as composed by de.tuberlin.dima.minidb.core.RID
+				long rid = ((long) this.page.getPageNumber()) << 32 | (this.page.getNumRecordsOnPage() - 1);
+				for (int i = 0; i < this.indexLoaders.length; i++) {
+					this.indexLoaders[i].add(fields[first + this.indexedColumns[i]], rid);
+				}
+
+				for (int i = 0; i < numCols; i++) {
+					DataField field = fields[first + i];
+					if (field.isNULL()) {
+						continue;
+					}
+					if (this.lowKeys[i] == null || field.compareTo(this.lowKeys[i]) < 0) {
+						this.lowKeys[i] = field;
+					}
+					if (this.highKeys[i] == null || field.compareTo(this.highKeys[i]) > 0) {
+						this.highKeys[i] = field;
+					}
+					this.distinct[i].add(field);
+				}
+				this.cardinality++;
+			}
+		}
+
+		private void finish() throws IOException, PageFormatException
+		{
+			if (this.page != null) {
+				this.batch.add(this.page);
+				this.page = null;
+			}
+			this.batch.flush();
+
+			TableSchema schema = this.resource.getSchema();
+			ColumnStatistics[] columns = new ColumnStatistics[this.lowKeys.length];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = ColumnStatistics.createColumnStatistics(schema.getColumn(i).getDataType());
+				if (this.lowKeys[i] != null) {
+					columns[i].setLowKey(this.lowKeys[i]);
+					columns[i].setHighKey(this.highKeys[i]);
+					columns[i].setCardinality(Math.max(1, Math.min(this.distinct[i].estimate(), this.cardinality)));
+				}
+			}
+
+			for (int i = 0; i < this.indexLoaders.length; i++) {
+				BTreeBulkLoader loader = this.indexLoaders[i];
+				loader.build();
+				if (this.lowKeys[this.indexedColumns[i]] != null) {
+					columns[this.indexedColumns[i]].setCardinality(loader.getNumberOfKeys());
+				}
+
+				IndexDescriptor index = TableBulkLoader.this.indexes.get(i);
+				index.getStatistics().setTreeDepth(loader.getTreeDepth());
+				index.getStatistics().setNumberOfLeafs(loader.getNumberOfLeafs());
+			}
+
+			TableStatistics statistics = TableBulkLoader.this.table.getStatistics();
+			statistics.setCardinality(this.cardinality);
+			statistics.setNumberOfPages(this.batch.getNumberOfPagesWritten());
+			statistics.setColumnStatistics(columns);
+		}
+
+		private void discard()
+		{
+			for (BTreeBulkLoader loader : this.indexLoaders) {
+				loader.discard();
+			}
+		}
+	}
+}
@@ -206,6 +206,34 @@ public interface TablePage extends CacheableData
 	public TupleIterator getIterator(LowLevelPredicate[] preds, int numCols, long columnBitmap)
 	throws PageTupleAccessException, PageExpiredException;
 	
+	/**
+	 * Creates an iterator as the function <code>getIterator(preds, numCols, columnBitmap)</code>
+	 * does. If <code>reuseTuple</code> is set, the iterator may decode every record into the same
+	 * tuple object and return that object from every call to <code>next()</code>. This spares
+	 * the creation of a tuple per record, but the caller must not keep a returned tuple
+	 * beyond the next call to <code>next()</code> or <code>hasNext()</code>.
+	 * <p>
+	 * Pages that cannot reuse a tuple ignore the flag; by default, this method returns
+	 * <code>getIterator(preds, numCols, columnBitmap)</code>.
+	 * 
+	 * @param preds An array of predicates that the tuple must pass, or null, if all tuples pass.
+	 * @param numCols The number of columns that should be fetched.
+	 * @param columnBitmap The bitmap describing which columns to fetch. See description of the class
+	 *                     for details on how the bitmaps describe which columns to fetch.
+	 * @param reuseTuple Flag indicating whether all tuples returned may be the same object.
+	 * 
+	 * @return An iterator over the tuples represented by the records in this page.
+	 * @throws PageTupleAccessException Thrown, if the iterator could not be created due to
+	 *                                  invalid format.
+	 * @throws PageExpiredException Thrown, if the operation is performed 
+	 * 								on a page that is identified to be expired. 
+	 */
+	public default TupleIterator getIterator(LowLevelPredicate[] preds, int numCols, long columnBitmap, boolean reuseTuple)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		return getIterator(preds, numCols, columnBitmap);
+	}
+	
 	/**
 	 * Creates an iterator as the function <code>getIterator()</code> does. In addition to the tuples,
 	 * this iterator the RID that referenced the tuple's record.
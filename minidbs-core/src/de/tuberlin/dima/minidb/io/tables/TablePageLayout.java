@@ -0,0 +1,25 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+/**
+ * An enumeration of the ways a table page can lay out its records. The layout is chosen per
+ * table when the table is created (see
+ * {@link de.tuberlin.dima.minidb.catalogue.TableSchema#setPageLayout(TablePageLayout)}) and is
+ * recorded in the header of the table file.
+ *
+ * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
+ */
+public enum TablePageLayout
+{
+	/**
+	 * Records are stored one after the other, each holding all its fields.
+	 */
+	ROW,
+
+	/**
+	 * The fields of the records are grouped by column (PAX): every column has a mini-page of its
+	 * own on the page, holding the field of that column of every record. Scans that fetch or
+	 * evaluate few columns read only the mini-pages of those columns.
+	 */
+	COLUMN_GROUPED;
+}
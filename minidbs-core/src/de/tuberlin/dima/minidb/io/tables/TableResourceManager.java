@@ -19,6 +19,8 @@ import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.FileExtent;
+import de.tuberlin.dima.minidb.io.manager.MappedPages;
 import de.tuberlin.dima.minidb.io.manager.ResourceManager;
 
 /**
@@ -26,6 +28,23 @@ import de.tuberlin.dima.minidb.io.manager.ResourceManager;
  * methods to create, open, close and delete a table. Once a TableManager is
  * created for a table, it exclusively locks the table's file. The table manager
  * allows to read and write binary pages from and to a table.
+ * <p>
+ * A table that is only queried can be opened mapped (see {@link #openTable(File, boolean)}). The
+ * table manager then holds a shared lock on the file, reads the pages from a memory mapping of
+ * the file and rejects all modifications.
+ * <p>
+ * The file grows in extents of pre-allocated pages (see {@link FileExtent}), and new pages are
+ * handed out from the current extent without locking the table manager. The header of a table in
+ * the current format records the last data page, since the file may hold more pages than that.
+ * Tables in the original format, whose header does not record it, grow page by page.
+ * <p>
+ * A table can be created compressed (see {@link #createTable(File, TableSchema, boolean)}). Its
+ * pages are then stored compressed in slots of variable size (see {@link CompressedPages}) and
+ * decompressed into the buffer when they are read, which trades a little CPU for fewer bytes read
+ * by scans. The compression is transparent to the users of the table manager.
+ * <p>
+ * The header also records the layout of the records on the pages of the table (see
+ * {@link TablePageLayout}), which is part of the schema read from the header.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -35,6 +54,37 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	private static final int TABLE_HEADER_MAGIC_NUMBER = 0xDEAFD00D;
 
+	/**
+	 * The version of the table format, whose header records the last data page and the storage
+	 * flags. The header of version 1 records only the last data page.
+	 */
+	private static final int TABLE_FORMAT_VERSION = 3;
+
+	/**
+	 * The earlier version of the table format, whose data pages are stored compressed.
+	 */
+	private static final int TABLE_FORMAT_COMPRESSED = 2;
+
+	/**
+	 * The offset of the last data page number in the header.
+	 */
+	private static final int TABLE_HEADER_LAST_PAGE_OFFSET = 16;
+
+	/**
+	 * The offset of the storage flags in the header.
+	 */
+	private static final int TABLE_HEADER_FLAGS_OFFSET = 20;
+
+	/**
+	 * The flag indicating that the data pages are stored compressed.
+	 */
+	private static final int TABLE_HEADER_FLAG_COMPRESSED = 0x1;
+
+	/**
+	 * The flag indicating that the records on the data pages are grouped by column.
+	 */
+	private static final int TABLE_HEADER_FLAG_COLUMN_GROUPED = 0x2;
+
 	/**
 	 * The mask to access the 'nullable' bit in the column attributes.
 	 */
@@ -60,6 +110,16 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	private final FileLock theLock;
 
+	/**
+	 * The pages of the file mapped into memory, or null, if the table is opened for writing.
+	 */
+	private final MappedPages mappedPages;
+
+	/**
+	 * Flag indicating whether the table is opened read-only.
+	 */
+	private final boolean readOnly;
+
 	/**
 	 * The schema of the table in the file.
 	 */
@@ -76,9 +136,15 @@ public class TableResourceManager extends ResourceManager {
 	private final int firstDataPageNumber;
 
 	/**
-	 * The last page that contains actual data (rather than metadata, like schema)
+	 * The growth of the file, which knows the last page that contains actual data, or null, if the
+	 * table is compressed.
 	 */
-	private int lastDataPageNumber;
+	private final FileExtent extent;
+
+	/**
+	 * The slots of the compressed data pages, or null, if the table is not compressed.
+	 */
+	private final CompressedPages compressedPages;
 
 	// ------------------------------------------------------------------------
 	//                        Constructor & Life-Cycle
@@ -96,11 +162,31 @@ public class TableResourceManager extends ResourceManager {
 	 *         If the table file did not contain a valid header.
 	 */
 	protected TableResourceManager(RandomAccessFile fileHandle) throws IOException, PageFormatException {
+		this(fileHandle, false);
+	}
+
+	/**
+	 * Creates a new table manager to work on an existing table. The table is represented
+	 * by the given handle to the file. A mapped table is only read, through a memory mapping
+	 * of the file, and other processes may read the file at the same time. A compressed table
+	 * is not mapped, but read-only as well.
+	 * 
+	 * @param fileHandle
+	 *        The handle to the table's file, opened read-only if the table is to be mapped.
+	 * @param mapped
+	 *        Flag indicating whether the table is to be opened read-only and mapped.
+	 * @throws IOException
+	 *         If the table file could not be accessed due to an I/O error.
+	 * @throws PageFormatException
+	 *         If the table file did not contain a valid header.
+	 */
+	protected TableResourceManager(RandomAccessFile fileHandle, boolean mapped) throws IOException, PageFormatException {
 		// Open the channel. If anything fails, make sure we close it again
 		try {
 			this.ioChannel = fileHandle.getChannel();
 			try {
-				this.theLock = this.ioChannel.tryLock();
+				// a mapped table is read-only, so other processes may read the file as well
+				this.theLock = mapped ? this.ioChannel.tryLock(0, Long.MAX_VALUE, true) : this.ioChannel.tryLock();
 			} catch (OverlappingFileLockException oflex) {
 				throw new IOException("Table file locked by other consumer.");
 			}
@@ -129,7 +215,27 @@ public class TableResourceManager extends ResourceManager {
 
 		// find page numbers
 		this.firstDataPageNumber = (int) (this.ioChannel.position() / this.schema.getPageSize().getNumberOfBytes()) + 1;
-		this.lastDataPageNumber = (int) ((this.ioChannel.size() - 1) / this.schema.getPageSize().getNumberOfBytes());
+
+		try {
+			// a header in the original format does not record the last data page
+			int recordedEnd = readLastDataPageNumber(this.ioChannel);
+			if ((readStorageFlags(this.ioChannel) & TABLE_HEADER_FLAG_COMPRESSED) != 0) {
+				// the slots of a compressed table do not lie at the positions of their pages
+				this.compressedPages = new CompressedPages(this.ioChannel, this.pageSize, this.firstDataPageNumber, TABLE_HEADER_LAST_PAGE_OFFSET,
+					recordedEnd);
+				this.extent = null;
+				this.mappedPages = null;
+			} else {
+				this.compressedPages = null;
+				this.extent = new FileExtent(this.ioChannel, this.pageSize, recordedEnd < 0 ? -1 : TABLE_HEADER_LAST_PAGE_OFFSET,
+					Math.max(recordedEnd, this.firstDataPageNumber - 1), Constants.DEFAULT_FILE_EXTENT_SIZE);
+				this.mappedPages = mapped ? new MappedPages(this.ioChannel, this.pageSize) : null;
+			}
+			this.readOnly = mapped;
+		} catch (IOException ioex) {
+			makeBestEffortToClose();
+			throw ioex;
+		}
 	}
 
 	/**
@@ -145,6 +251,23 @@ public class TableResourceManager extends ResourceManager {
 	 *         If the table could not be created due to an I/O error.
 	 */
 	protected TableResourceManager(RandomAccessFile fileHandle, TableSchema schema) throws IOException {
+		this(fileHandle, schema, false);
+	}
+
+	/**
+	 * Creates a table manager that newly creates a table for a given (existing) file,
+	 * optionally storing the pages of the table compressed.
+	 * 
+	 * @param fileHandle
+	 *        The handle to the file which is used for the table.
+	 * @param schema
+	 *        The schema for the new table.
+	 * @param compressed
+	 *        Flag indicating whether the pages of the table are stored compressed.
+	 * @throws IOException
+	 *         If the table could not be created due to an I/O error.
+	 */
+	protected TableResourceManager(RandomAccessFile fileHandle, TableSchema schema, boolean compressed) throws IOException {
 		// Open the channel. If anything fails, make sure we close it again
 		try {
 			this.ioChannel = fileHandle.getChannel();
@@ -170,17 +293,32 @@ public class TableResourceManager extends ResourceManager {
 		}
 
 		// set member variables
+		this.mappedPages = null;
+		this.readOnly = false;
 		this.schema = schema;
 		this.pageSize = schema.getPageSize().getNumberOfBytes();
 
 		// rewind and write the header
 		this.ioChannel.position(0);
-		writeTableHeader(schema, this.ioChannel);
+		writeTableHeader(schema, this.ioChannel, compressed);
 
 		// set first empty page and first data page both to the first page after what is
 		// consumed by the header.
 		this.firstDataPageNumber = (int) (this.ioChannel.position() / schema.getPageSize().getNumberOfBytes()) + 1;
-		this.lastDataPageNumber = this.firstDataPageNumber - 1;
+
+		// drop what an earlier file held, the extent starts right after the header
+		this.ioChannel.truncate(this.firstDataPageNumber * (long) this.pageSize);
+		if (compressed) {
+			this.extent = null;
+			this.compressedPages = new CompressedPages(this.ioChannel, this.pageSize, this.firstDataPageNumber, TABLE_HEADER_LAST_PAGE_OFFSET,
+				this.firstDataPageNumber - 1);
+			this.compressedPages.reset();
+		} else {
+			this.compressedPages = null;
+			this.extent = new FileExtent(this.ioChannel, this.pageSize, TABLE_HEADER_LAST_PAGE_OFFSET, this.firstDataPageNumber - 1,
+				Constants.DEFAULT_FILE_EXTENT_SIZE);
+			this.extent.reset(this.firstDataPageNumber - 1);
+		}
 	}
 
 	/*
@@ -190,6 +328,11 @@ public class TableResourceManager extends ResourceManager {
 	@Override
 	public synchronized void closeResource() throws IOException {
 		try {
+			if (this.compressedPages != null && !this.readOnly) {
+				this.compressedPages.close();
+			} else if (this.extent != null && !this.readOnly) {
+				this.extent.close();
+			}
 			this.theLock.release();
 			this.ioChannel.close();
 		} catch (Throwable t) {
@@ -271,7 +414,62 @@ public class TableResourceManager extends ResourceManager {
 	 * @return The number of the last page.
 	 */
 	public int getLastDataPageNumber() {
-		return this.lastDataPageNumber;
+		return this.compressedPages != null ? this.compressedPages.getLastPageNumber() : this.extent.getLastPageNumber();
+	}
+
+	/**
+	 * Sets the number of bytes by which the table file grows at once. Pages up to that size are
+	 * pre-allocated when the first page beyond the file is reserved. A size of up to one page lets
+	 * the file grow page by page. Tables in the original format, whose header does not record the
+	 * last data page, always grow page by page, and compressed tables append their slots; both
+	 * ignore the size.
+	 * 
+	 * @param extentSize
+	 *        The size of an extent in bytes.
+	 */
+	public void setExtentSize(int extentSize) {
+		if (!this.readOnly && this.extent != null) {
+			this.extent.setExtentSize(extentSize);
+		}
+	}
+
+	/**
+	 * Gets the number of times the table file has been extended by an extent since it was opened.
+	 * 
+	 * @return The number of extensions.
+	 */
+	public int getNumberOfExtensions() {
+		return this.extent != null ? this.extent.getNumberOfExtensions() : 0;
+	}
+
+	/**
+	 * Checks whether the table is opened read-only and read through a memory mapping.
+	 * 
+	 * @return True, if the table is mapped, false otherwise.
+	 */
+	public boolean isMapped() {
+		return this.mappedPages != null;
+	}
+
+	/**
+	 * Checks whether the pages of the table are stored compressed.
+	 * 
+	 * @return True, if the table is compressed, false otherwise.
+	 */
+	public boolean isCompressed() {
+		return this.compressedPages != null;
+	}
+
+	/**
+	 * Makes sure the table is not opened read-only before it is modified.
+	 * 
+	 * @throws IOException
+	 *         Thrown, if the table is opened read-only.
+	 */
+	private void checkWritable() throws IOException {
+		if (this.readOnly) {
+			throw new IOException("The table is opened read-only.");
+		}
 	}
 
 	// ------------------------------------------------------------------------
@@ -284,8 +482,13 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	@Override
 	public synchronized void truncate() throws IOException {
+		checkWritable();
 		this.ioChannel.truncate(this.firstDataPageNumber * this.schema.getPageSize().getNumberOfBytes());
-		this.lastDataPageNumber = this.firstDataPageNumber - 1;
+		if (this.compressedPages != null) {
+			this.compressedPages.reset();
+		} else {
+			this.extent.reset(this.firstDataPageNumber - 1);
+		}
 	}
 
 	/*
@@ -293,21 +496,17 @@ public class TableResourceManager extends ResourceManager {
 	 * @see de.tuberlin.dima.minidb.io.ResourceManager#reserveNewPage(byte[])
 	 */
 	@Override
-	public final synchronized TablePage reserveNewPage(byte[] buffer) throws PageFormatException {
+	public final TablePage reserveNewPage(byte[] buffer) throws IOException, PageFormatException {
 		// we can ignore the parameters object, because there is nothing to configure here
+		checkWritable();
 		if (buffer.length < this.schema.getPageSize().getNumberOfBytes()) {
 			throw new IllegalArgumentException("The buffer to initialize the page to is too small.");
 		}
 
-		// determine the next empty page number
-		int nextEmptyPageNumber = this.lastDataPageNumber >= this.firstDataPageNumber ? this.lastDataPageNumber + 1 : this.firstDataPageNumber;
-
-		TablePage newPage = pageFactory.initTablePage(this.schema, buffer, nextEmptyPageNumber);
-
-		// increment the counter
-		this.lastDataPageNumber = nextEmptyPageNumber;
+		// take the next empty page from the extent, the logical end starts before the first data page
+		int nextEmptyPageNumber = this.compressedPages != null ? this.compressedPages.reservePage() : this.extent.reservePage();
 
-		return newPage;
+		return pageFactory.initTablePage(this.schema, buffer, nextEmptyPageNumber);
 	}
 
 	/*
@@ -315,7 +514,7 @@ public class TableResourceManager extends ResourceManager {
 	 * @see de.tuberlin.dima.minidb.io.ResourceManager#reserveNewPage(byte[], java.lang.Enum)
 	 */
 	@Override
-	public final synchronized TablePage reserveNewPage(byte[] buffer, Enum<?> type) throws PageFormatException {
+	public final TablePage reserveNewPage(byte[] buffer, Enum<?> type) throws IOException, PageFormatException {
 		return reserveNewPage(buffer);
 	}
 
@@ -325,6 +524,7 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	@Override
 	public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException {
+		checkWritable();
 		int pageNumber = wrapper.getPageNumber();
 
 		if (Constants.DEBUG_CHECK) {
@@ -340,13 +540,16 @@ public class TableResourceManager extends ResourceManager {
 			}
 		}
 
-		ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
-
 		// seek and write the buffer. If the position is beyond the file size,
 		// the channel will automatically increase the file length
 		try {
-			long position = (this.pageSize * (long) pageNumber);
-			writeBuffer(this.ioChannel, b, position);
+			if (this.compressedPages != null) {
+				this.compressedPages.writePage(pageNumber, buffer);
+			} else {
+				ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
+				long position = (this.pageSize * (long) pageNumber);
+				writeBuffer(this.ioChannel, b, position);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page " + pageNumber + " could not be written to the table file.", ioex);
 		}
@@ -358,6 +561,7 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	@Override
 	public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException {
+		checkWritable();
 		if (Constants.DEBUG_CHECK) {
 			// check that buffers and wrappers array lengths match 
 			if (buffers.length != wrappers.length) {
@@ -393,6 +597,17 @@ public class TableResourceManager extends ResourceManager {
 			}
 		}
 
+		if (this.compressedPages != null) {
+			try {
+				for (int i = 0; i < buffers.length; i++) {
+					this.compressedPages.writePage(pageNumber + i, buffers[i]);
+				}
+			} catch (IOException ioex) {
+				throw new IOException("Page sequence [" + pageNumber + ", " + (pageNumber + buffers.length - 1) + "] could not be written to the table file.", ioex);
+			}
+			return;
+		}
+
 		ByteBuffer[] b = new ByteBuffer[buffers.length];
 		for (int i = 0; i < buffers.length; i++) {
 			b[i] = ByteBuffer.wrap(buffers[i], 0, this.pageSize);
@@ -432,12 +647,17 @@ public class TableResourceManager extends ResourceManager {
 			}
 		}
 
-		// seek and read the buffer
-		ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
-
 		try {
-			long position = (this.pageSize * (long) pageNumber);
-			readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+			if (this.mappedPages != null) {
+				this.mappedPages.readPage(pageNumber, buffer);
+			} else if (this.compressedPages != null) {
+				this.compressedPages.readPage(pageNumber, buffer);
+			} else {
+				// seek and read the buffer
+				ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
+				long position = (this.pageSize * (long) pageNumber);
+				readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page " + pageNumber + " could not be read from table file.", ioex);
 		}
@@ -475,6 +695,28 @@ public class TableResourceManager extends ResourceManager {
 			}
 		}
 
+		if (this.mappedPages != null) {
+			try {
+				for (int i = 0; i < buffers.length; i++) {
+					this.mappedPages.readPage(firstPageNumber + i, buffers[i]);
+				}
+			} catch (IOException ioex) {
+				throw new IOException("Page sequence [" + firstPageNumber + ", " + (firstPageNumber + buffers.length - 1) + "] could not be read from table file.",
+					ioex);
+			}
+			return wrapPages(buffers);
+		}
+
+		if (this.compressedPages != null) {
+			try {
+				this.compressedPages.readPages(firstPageNumber, buffers);
+			} catch (IOException ioex) {
+				throw new IOException("Page sequence [" + firstPageNumber + ", " + (firstPageNumber + buffers.length - 1) + "] could not be read from table file.",
+					ioex);
+			}
+			return wrapPages(buffers);
+		}
+
 		// seek and read the buffer
 		ByteBuffer[] b = new ByteBuffer[buffers.length];
 		for (int i = 0; i < buffers.length; i++) {
@@ -487,7 +729,11 @@ public class TableResourceManager extends ResourceManager {
 			long bytesRemaining = buffers.length * this.pageSize;
 			int currFirstBuffer = 0;
 			do {
-				bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
+				long count = this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
+				if (count == -1) {
+					throw new EOFException();
+				}
+				bytesRemaining -= count;
 				currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
 			} while (bytesRemaining > 0);
 		} catch (IOException ioex) {
@@ -495,6 +741,19 @@ public class TableResourceManager extends ResourceManager {
 				ioex);
 		}
 
+		return wrapPages(buffers);
+	}
+
+	/**
+	 * Wraps the loaded buffers in table pages.
+	 * 
+	 * @param buffers
+	 *        The buffers holding the pages.
+	 * @return The table pages.
+	 * @throws IOException
+	 *         Thrown, if a page is corrupted.
+	 */
+	private TablePage[] wrapPages(byte[][] buffers) throws IOException {
 		// wrap the loaded buffers in CacheableData objects 
 		TablePage[] pages = new TablePage[buffers.length];
 		for (int i = 0; i < buffers.length; i++) {
@@ -567,6 +826,43 @@ public class TableResourceManager extends ResourceManager {
 		}
 	}
 
+	/**
+	 * Opens the table contained in the given file, optionally read-only and mapped into memory.
+	 * A mapped table serves its pages from the page cache of the operating system without a
+	 * system call per read, which suits tables that are only queried. Writing to a mapped table
+	 * fails.
+	 * 
+	 * @param tableFile
+	 *        The file containing the table to be opened.
+	 * @param mapped
+	 *        Flag indicating whether the table is to be opened read-only and mapped.
+	 * @return The TableManager to operate on the table file.
+	 * @throws IOException
+	 *         Thrown, if an I/O error occurred.
+	 * @throws PageFormatException
+	 *         Thrown, if the header of the table contained invalid data.
+	 */
+	public static TableResourceManager openTable(File tableFile, boolean mapped) throws IOException, PageFormatException {
+		if (!mapped) {
+			return openTable(tableFile);
+		}
+		if (tableFile == null) {
+			throw new NullPointerException("Table file must not be null.");
+		}
+
+		try {
+			// check if the file exists
+			if (!tableFile.exists()) {
+				throw new IOException("Table file '" + tableFile.getCanonicalPath() + "' does not exist.");
+			}
+
+			RandomAccessFile raf = new RandomAccessFile(tableFile, "r");
+			return new TableResourceManager(raf, true);
+		} catch (SecurityException sex) {
+			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
+		}
+	}
+
 	/**
 	 * Creates a new table with the given schema. The tables data will be stored in the given file.
 	 * The new table will initially hold a description of the schema in the header and will
@@ -578,12 +874,38 @@ public class TableResourceManager extends ResourceManager {
 	 *         If an I/O problem occurred.
 	 */
 	public static TableResourceManager createTable(File tableFile, TableSchema schema) throws IOException {
+		return createTable(tableFile, schema, false);
+	}
+
+	/**
+	 * Creates a new table with the given schema, optionally storing its pages compressed. The
+	 * tables data will be stored in the given file. The new table will initially hold a
+	 * description of the schema in the header and will otherwise be empty.
+	 * 
+	 * @param tableFile
+	 *        The file to store the new table in.
+	 * @param compressed
+	 *        Flag indicating whether the pages of the table are stored compressed.
+	 * @throws IOException
+	 *         If an I/O problem occurred, or if the page layout of the schema cannot hold
+	 *         the records of the schema.
+	 */
+	public static TableResourceManager createTable(File tableFile, TableSchema schema, boolean compressed) throws IOException {
 		if (tableFile == null) {
 			throw new NullPointerException("Table file must not be null.");
 		}
 		if (schema == null) {
 			throw new NullPointerException("Table schema must not be null.");
 		}
+		if (schema.getPageLayout() != TablePageLayout.ROW) {
+			// layouts other than the row layout reserve room for records of maximal length,
+			// so let the page check that at least one of them fits
+			try {
+				pageFactory.initTablePage(schema, new byte[schema.getPageSize().getNumberOfBytes()], 0);
+			} catch (PageFormatException pfex) {
+				throw new IOException("The page layout " + schema.getPageLayout() + " cannot hold the records of the table: " + pfex.getMessage());
+			}
+		}
 
 		try {
 			// check if the file exists
@@ -594,7 +916,7 @@ public class TableResourceManager extends ResourceManager {
 
 			// create the random access file and the table manager
 			RandomAccessFile raf = new RandomAccessFile(tableFile, "rwd");
-			return new TableResourceManager(raf, schema);
+			return new TableResourceManager(raf, schema, compressed);
 		} catch (SecurityException sex) {
 			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
 		}
@@ -652,7 +974,8 @@ public class TableResourceManager extends ResourceManager {
 			throw new PageFormatException("Table header invalid. Magic number not found.");
 		}
 		// check the version number
-		if (buffer.getInt() != 0) {
+		int version = buffer.getInt();
+		if (version < 0 || version > TABLE_FORMAT_VERSION) {
 			throw new PageFormatException("Unknown table format version.");
 		}
 
@@ -671,6 +994,19 @@ public class TableResourceManager extends ResourceManager {
 			throw new PageFormatException("Number of columns out of range: " + numCols);
 		}
 
+		// skip the last data page number, it is read separately
+		if (version != 0) {
+			readIntoBuffer(channel, buffer, 4);
+		}
+
+		// the storage flags carry the page layout, compression is read separately
+		if (version >= TABLE_FORMAT_VERSION) {
+			readIntoBuffer(channel, buffer, 4);
+			if ((buffer.getInt() & TABLE_HEADER_FLAG_COLUMN_GROUPED) != 0) {
+				schema.setPageLayout(TablePageLayout.COLUMN_GROUPED);
+			}
+		}
+
 		// read all columns
 		for (int i = 0; i < numCols; i++) {
 			// get the column fix length part: type, array length, attributes (nullable)
@@ -723,22 +1059,31 @@ public class TableResourceManager extends ResourceManager {
 	 *        The schema to be written.
 	 * @param channel
 	 *        The channel to write the schema to.
+	 * @param compressed
+	 *        Flag indicating whether the data pages are stored compressed.
 	 * @throws IOException
 	 *         Thrown, if an error occurred during writing to the channel.
 	 */
-	private static void writeTableHeader(TableSchema schema, FileChannel channel) throws IOException {
+	private static void writeTableHeader(TableSchema schema, FileChannel channel, boolean compressed) throws IOException {
 		ByteBuffer buffer = ByteBuffer.allocate(schema.getPageSize().getNumberOfBytes());
 		buffer.order(ByteOrder.LITTLE_ENDIAN);
 
 		// first write magic number
 		buffer.putInt(TABLE_HEADER_MAGIC_NUMBER);
-		// second field write table format version. set to zero, because there is
-		// nothing to decide, yet
-		buffer.putInt(0);
+		// second field write table format version
+		buffer.putInt(TABLE_FORMAT_VERSION);
 		// write the page size
 		buffer.putInt(schema.getPageSize().getNumberOfBytes());
 		// write the number of columns
 		buffer.putInt(schema.getNumberOfColumns());
+		// write the last data page number, it is set once the data pages are known
+		buffer.putInt(0);
+		// write the storage flags
+		int flags = compressed ? TABLE_HEADER_FLAG_COMPRESSED : 0;
+		if (schema.getPageLayout() == TablePageLayout.COLUMN_GROUPED) {
+			flags |= TABLE_HEADER_FLAG_COLUMN_GROUPED;
+		}
+		buffer.putInt(flags);
 
 		// write the buffer
 		buffer.flip();
@@ -784,6 +1129,45 @@ public class TableResourceManager extends ResourceManager {
 		// done with the table header
 	}
 
+	/**
+	 * Reads the number of the last data page from the header of a table file.
+	 * 
+	 * @param channel
+	 *        The channel to the table file.
+	 * @return The last data page number, or -1, if the table is in the original format.
+	 * @throws IOException
+	 *         Thrown if an error occurred during reading from the channel.
+	 */
+	private static int readLastDataPageNumber(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(TABLE_HEADER_LAST_PAGE_OFFSET + 4);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		readIntoBuffer(channel, buffer, 0, buffer.capacity());
+
+		return buffer.getInt(4) != 0 ? buffer.getInt(TABLE_HEADER_LAST_PAGE_OFFSET) : -1;
+	}
+
+	/**
+	 * Reads the storage flags from the header of a table file.
+	 * 
+	 * @param channel
+	 *        The channel to the table file.
+	 * @return The storage flags, which are 0 for the earlier versions of the table format,
+	 *         except for compressed tables.
+	 * @throws IOException
+	 *         Thrown if an error occurred during reading from the channel.
+	 */
+	private static int readStorageFlags(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(TABLE_HEADER_FLAGS_OFFSET + 4);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		readIntoBuffer(channel, buffer, 0, buffer.capacity());
+
+		int version = buffer.getInt(4);
+		if (version == TABLE_FORMAT_COMPRESSED) {
+			return TABLE_HEADER_FLAG_COMPRESSED;
+		}
+		return version >= TABLE_FORMAT_VERSION ? buffer.getInt(TABLE_HEADER_FLAGS_OFFSET) : 0;
+	}
+
 	// ------------------------------------------------------------------------
 
 	/**
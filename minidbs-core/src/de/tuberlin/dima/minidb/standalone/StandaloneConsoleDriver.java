@@ -213,9 +213,9 @@ public class StandaloneConsoleDriver
 	        	System.out.println();
 	        	
 	        	// create a result set that prints to the console and invoke the instance
-	        	// to process the query
+	        	// to process the query on its query threads
 	        	ResultHandler set = new PrintStreamResultSet(System.out);
-	        	instance.processQuery(line, set);
+	        	instance.submitQuery(line, set).get();
 	        	
 	        	System.out.println();
 	        }
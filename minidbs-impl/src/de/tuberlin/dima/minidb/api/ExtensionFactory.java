@@ -6,16 +6,20 @@ import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.FrameSource;
 import de.tuberlin.dima.minidb.io.cache.MyPageCache;
 import de.tuberlin.dima.minidb.io.cache.PageCache;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.StripedPageCache;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
 import de.tuberlin.dima.minidb.io.index.solution.BTreeIndexImpl;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.MyPaxTablePage;
 import de.tuberlin.dima.minidb.io.tables.MyTablePage;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageLayout;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
@@ -44,19 +48,38 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 
     @Override
     public TablePage createTablePage(TableSchema schema, byte[] binaryPage) throws PageFormatException {
+        if (schema.getPageLayout() == TablePageLayout.COLUMN_GROUPED)
+            return createColumnGroupedTablePage(schema, binaryPage);
         return new MyTablePage(schema, binaryPage);
     }
 
     @Override
     public TablePage initTablePage(TableSchema schema, byte[] binaryPage, int newPageNumber) throws PageFormatException {
+        if (schema.getPageLayout() == TablePageLayout.COLUMN_GROUPED)
+            return initColumnGroupedTablePage(schema, binaryPage, newPageNumber);
         return new MyTablePage(schema, binaryPage, newPageNumber);
     }
 
+    @Override
+    public TablePage createColumnGroupedTablePage(TableSchema schema, byte[] binaryPage) throws PageFormatException {
+        return new MyPaxTablePage(schema, binaryPage);
+    }
+
+    @Override
+    public TablePage initColumnGroupedTablePage(TableSchema schema, byte[] binaryPage, int newPageNumber) throws PageFormatException {
+        return new MyPaxTablePage(schema, binaryPage, newPageNumber);
+    }
+
     @Override
     public PageCache createPageCache(PageSize pageSize, int numPages) {
         return  new MyPageCache(pageSize, numPages);
     }
 
+    @Override
+    public PageCache createPageCache(PageSize pageSize, int numPages, Config config, FrameSource frames) {
+        return StripedPageCache.forConfig(pageSize, numPages, config, frames);
+    }
+
     @Override
     public BufferPoolManager createBufferPoolManager(Config config, Logger logger) {
         return new MyBufferPoolManager(config, logger);
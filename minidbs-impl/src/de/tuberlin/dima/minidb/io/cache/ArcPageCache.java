@@ -0,0 +1,661 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page cache with the Adaptive Replacement Cache policy (Megiddo, Modha: "ARC: A Self-Tuning,
+ * Low Overhead Replacement Cache", FAST 2003).
+ * <p/>
+ * Resident pages are in T1 (seen once recently) or T2 (seen at least twice). The keys of pages
+ * evicted from T1 and T2 are remembered in the ghost lists B1 and B2. The target size
+ * <tt>p</tt> of T1 grows whenever a page from B1 is requested again and shrinks for pages from
+ * B2, so the cache shifts its space towards recency or frequency as the workload demands. The
+ * lists are kept such that |T1| + |B1| &lt;= c and |T1| + |T2| + |B1| + |B2| &lt;= 2c, so the
+ * ghosts never hold more than <tt>c</tt> keys.
+ * <p/>
+ * Deviations from the paper, required by the {@link PageCache} contract:
+ * <ul>
+ *   <li>A page added with <code>addPage()</code> is not hit yet, its first request keeps it in T1
+ *       (pre-fetched pages must not look frequent). Pages added with
+ *       <code>addPageAndPin()</code> count as hit once.</li>
+ *   <li>Pinned pages are skipped by the replacement. If the list chosen by <tt>p</tt> holds only
+ *       pinned pages, the least recently used unpinned page of the other list is evicted.</li>
+ *   <li>Frames of expelled resources are handed out before any page is replaced.</li>
+ * </ul>
+ * <p/>
+ * The cache is scan resistant: pages added as part of a sequential scan (see
+ * {@link ScanAwarePageCache}) are admitted into a small ring of frames (SCAN) instead of T1. Once the
+ * cache is full, scan pages recycle the frames of the ring, so a large scan displaces neither
+ * T1 nor T2 and does not leave ghosts that would bias the target size. Frames the ring took
+ * while the cache was filling up are the first to be replaced by other pages. A scan page that is
+ * hit again while it is in the ring is considered frequent and moves to T2.
+ * <p/>
+ * The frames can be partitioned by resource class with {@link CacheQuotas}. A class that holds
+ * its maximal share replaces its own least recently used page, and the replacement skips pages
+ * of classes that hold no more than their reserved share, unless only such pages are unpinned.
+ * <p/>
+ * The capacity can be changed at runtime up to the maximal capacity given at construction time.
+ * The frames are allocated lazily, so an unused maximal capacity only costs the per frame state.
+ * Requests for pages in the ghost lists are counted as a measure of how much the cache would gain
+ * from a larger capacity.
+ */
+public class ArcPageCache implements ScanAwarePageCache, PartitionedPageCache, WarmablePageCache,
+        ResizablePageCache, FlushablePageCache {
+
+
+    private static final int NIL = FrameLists.NIL;
+
+    private static final int T1 = 0;
+    private static final int T2 = 1;
+    private static final int SCAN = 2;
+    private static final int EXPELLED = 3;
+    private static final int FREE = 4;
+
+    /**
+     * The fraction of the capacity (as divisor) that the scan ring may occupy.
+     */
+    private static final int SCAN_RING_DIVISOR = 32;
+
+    private static final int B1 = 0;
+    private static final int B2 = 1;
+
+    private static final int ANY_CLASS = -1;
+
+    // the lists in which a class that holds its maximal share looks for its own victim
+    private static final int[] OWN_VICTIM_ORDER = {SCAN, T1, T2};
+
+    // the lists whose cold ends are cleaned first, scan pages are replaced first
+    private static final int[] FLUSH_ORDER = {SCAN, T1, T2};
+
+
+    private final PageSize page;
+    private int capacity;
+
+    // hands out the frames for the empty slots
+    private final FrameSource frames;
+
+    // maps the packed page key to the frame index
+    private final PageTable table;
+
+    // per frame state
+    private final CacheableData[] pages;
+    private final long[] keys;
+    private final int[] hits;
+    private final int[] pins;
+    private final byte[] frameClass;
+
+    // T1, T2, SCAN, EXPELLED and FREE lists over the frames, FREE holds frames without a page
+    // that were given up when the capacity shrank
+    private final FrameLists lists;
+
+    // B1 and B2
+    private final GhostList ghosts;
+
+    // number of frames handed out so far, frames beyond are still empty
+    private int usedFrames;
+
+    // target size of T1
+    private int target;
+
+    // the number of requests for pages in B1 or B2
+    private long ghostHits;
+
+    // shares per resource class and the number of resident pages of every class
+    private final CacheQuotas quotas;
+    private final int[] residents;
+
+
+    public ArcPageCache(PageSize page, int pages) {
+
+        this(page, pages, new CacheQuotas());
+    }
+
+    /**
+     * Creates a new cache whose frames are partitioned by the given quotas.
+     *
+     * @param page   The size of the pages in the cache.
+     * @param pages  The number of pages the cache holds.
+     * @param quotas The quotas of the resource classes, may be shared with other caches.
+     */
+    public ArcPageCache(PageSize page, int pages, CacheQuotas quotas) {
+
+        this(page, pages, pages, quotas);
+    }
+
+    /**
+     * Creates a new cache that can grow at runtime.
+     *
+     * @param page     The size of the pages in the cache.
+     * @param pages    The number of pages the cache holds initially.
+     * @param maxPages The number of pages the cache can hold at most.
+     * @param quotas   The quotas of the resource classes, may be shared with other caches.
+     */
+    public ArcPageCache(PageSize page, int pages, int maxPages, CacheQuotas quotas) {
+
+        this(page, pages, maxPages, quotas, FrameSource.allocating(page));
+    }
+
+    /**
+     * Creates a new cache that can grow at runtime and whose empty slots hand out the frames of
+     * the given source.
+     *
+     * @param page     The size of the pages in the cache.
+     * @param pages    The number of pages the cache holds initially.
+     * @param maxPages The number of pages the cache can hold at most.
+     * @param quotas   The quotas of the resource classes, may be shared with other caches.
+     * @param frames   The source of the frames for the empty slots.
+     */
+    public ArcPageCache(PageSize page, int pages, int maxPages, CacheQuotas quotas, FrameSource frames) {
+
+        if (maxPages < pages)
+            throw new IllegalArgumentException("The maximal capacity must not be below the capacity.");
+
+        this.page = page;
+        this.frames = frames;
+        this.capacity = pages;
+
+        this.table = new PageTable(pages);
+
+        this.pages = new CacheableData[maxPages];
+        this.keys = new long[maxPages];
+        this.hits = new int[maxPages];
+        this.pins = new int[maxPages];
+        this.frameClass = new byte[maxPages];
+        this.lists = new FrameLists(maxPages, 5);
+
+        this.ghosts = new GhostList(maxPages, 2);
+        this.usedFrames = 0;
+        this.target = 0;
+
+        this.quotas = quotas;
+        this.residents = new int[CacheQuotas.numberOfClasses()];
+    }
+
+
+    /**
+     * Gets the current target size of T1, the list of pages that were seen once recently.
+     *
+     * @return The target size, between 0 and the capacity.
+     */
+    public int getTargetSize() {
+
+        return target;
+    }
+
+    /**
+     * Sets the target size of T1. The cache keeps adapting the target from the given value
+     * on, so this is mainly useful to start with a known bias towards recency or frequency.
+     *
+     * @param targetSize The new target size. It is clamped to the range 0 to capacity.
+     */
+    public void setTargetSize(int targetSize) {
+
+        this.target = Math.max(0, Math.min(capacity, targetSize));
+    }
+
+    @Override
+    public void assignResourceClass(int resourceId, ResourceClass resourceClass) {
+
+        quotas.assign(resourceId, resourceClass);
+    }
+
+    /**
+     * Gets the number of pages of the given class that are currently in the cache.
+     */
+    public int getNumberOfResidentPages(ResourceClass resourceClass) {
+
+        return residents[resourceClass.ordinal()];
+    }
+
+
+    @Override
+    public CacheableData getPage(int resourceId, int pageNumber) {
+
+        int frame = table.get(PageTable.key(resourceId, pageNumber));
+
+        if (frame == PageTable.NOT_FOUND)
+            return null;
+
+        hitFrame(frame);
+        return pages[frame];
+    }
+
+    @Override
+    public boolean containsPage(int resourceId, int pageNumber) {
+
+        return table.get(PageTable.key(resourceId, pageNumber)) != PageTable.NOT_FOUND;
+    }
+
+    @Override
+    public CacheableData getPageAndPin(int resourceId, int pageNumber) {
+
+        int frame = table.get(PageTable.key(resourceId, pageNumber));
+
+        if (frame == PageTable.NOT_FOUND)
+            return null;
+
+        pins[frame]++;
+        hitFrame(frame);
+        return pages[frame];
+    }
+
+    /**
+     * Case I of ARC: a page in T1 or SCAN moves to T2 on its second hit, all others move to the
+     * most recently used end of their list.
+     */
+    private void hitFrame(int frame) {
+
+        hits[frame]++;
+
+        if (lists.listOf(frame) != T2 && hits[frame] >= 2)
+            lists.moveToTail(T2, frame);
+        else
+            lists.moveToTail(lists.listOf(frame), frame);
+    }
+
+
+    @Override
+    public EvictedCacheEntry addPage(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        return insert(newPage, resourceId, false, false);
+    }
+
+    @Override
+    public EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        return insert(newPage, resourceId, true, false);
+    }
+
+    @Override
+    public EvictedCacheEntry addScanPage(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        return insert(newPage, resourceId, false, true);
+    }
+
+    @Override
+    public EvictedCacheEntry addScanPageAndPin(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        return insert(newPage, resourceId, true, true);
+    }
+
+
+    private EvictedCacheEntry insert(CacheableData newPage, int resourceId, boolean pin, boolean scanHint)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        long key = PageTable.key(resourceId, newPage.getPageNumber());
+
+        if (table.contains(key))
+            throw new DuplicateCacheEntryException(resourceId, newPage.getPageNumber());
+
+        int b1 = ghosts.size(B1);
+        int b2 = ghosts.size(B2);
+        int ghost = ghosts.remove(key);
+
+        // a page that is remembered in a ghost list is not treated as a scan page
+        boolean scan = scanHint && ghost == NIL;
+
+        // drop T1's LRU page without a ghost, when T1 alone fills the cache (case IV.A)
+        boolean forget = false;
+
+        if (ghost != NIL)
+            ghostHits++;
+
+        if (ghost == B1) {
+            // case II: the page was evicted too early from T1, favour recency
+            target = Math.min(capacity, target + Math.max(b2 / b1, 1));
+        } else if (ghost == B2) {
+            // case III: the page was evicted too early from T2, favour frequency
+            target = Math.max(0, target - Math.max(b1 / b2, 1));
+        } else if (!scan) {
+            // case IV: the page is new, keep the directory within its bounds
+            // (scan pages stay outside of T1 and B1 and do not affect it)
+            int t1 = lists.size(T1);
+            int t2 = lists.size(T2);
+
+            if (t1 + b1 >= capacity) {
+                if (t1 < capacity)
+                    ghosts.removeOldest(B1);
+                else
+                    forget = true;
+            } else if (t1 + t2 + b1 + b2 >= 2 * capacity) {
+                ghosts.removeOldest(B2);
+            }
+        }
+
+        EvictedCacheEntry evicted;
+        int frame;
+        int cls = quotas.classOf(resourceId);
+
+        // scan pages may use free frames, but once the cache is full, a scan recycles the frames
+        // of its ring and other pages take the frames the ring holds beyond its size first
+        int scanRingSize = Math.max(1, capacity / SCAN_RING_DIVISOR);
+        boolean shrinkRing = scan ? lists.size(SCAN) >= scanRingSize : lists.size(SCAN) > scanRingSize;
+        boolean full = residentPages() >= capacity;
+
+        int limit = quotas.maxFrames(cls, capacity);
+
+        if (limit < capacity && residents[cls] >= limit && (frame = ownVictim(cls)) != NIL) {
+            // the class holds its maximal share and replaces one of its own pages
+            evicted = evictFrame(frame, true);
+        } else if (!full && lists.head(EXPELLED) != NIL) {
+            frame = lists.head(EXPELLED);
+            evicted = evictFrame(frame, false);
+        } else if (!full && lists.head(FREE) != NIL) {
+            frame = lists.head(FREE);
+            lists.unlink(frame);
+            evicted = new EvictedCacheEntry(frames.takeFrame());
+        } else if (!full && usedFrames < this.pages.length) {
+            frame = usedFrames++;
+            evicted = new EvictedCacheEntry(frames.takeFrame());
+        } else if (shrinkRing && (frame = unpinnedHead(SCAN, cls)) != NIL) {
+            evicted = evictFrame(frame, false);
+        } else {
+            frame = replace(ghost == B2, cls);
+            evicted = evictFrame(frame, !(forget && lists.listOf(frame) == T1));
+        }
+
+        pages[frame] = newPage;
+        keys[frame] = key;
+        pins[frame] = pin ? 1 : 0;
+        frameClass[frame] = (byte) cls;
+        residents[cls]++;
+
+        if (ghost != NIL) {
+            hits[frame] = 2;
+            lists.append(T2, frame);
+        } else if (scan) {
+            hits[frame] = pin ? 1 : 0;
+            lists.append(SCAN, frame);
+        } else {
+            hits[frame] = pin ? 1 : 0;
+            lists.append(T1, frame);
+        }
+
+        table.put(key, frame);
+        return evicted;
+    }
+
+
+    /**
+     * The REPLACE subroutine of ARC: picks the frame to evict from T1 if T1 exceeds its target,
+     * otherwise from T2.
+     */
+    private int replace(boolean requestInB2, int cls) throws CachePinnedException {
+
+        int t1 = lists.size(T1);
+        boolean fromT1 = t1 > 0 && (t1 > target || (requestInB2 && t1 == target));
+
+        int frame = findVictim(fromT1 ? T1 : T2, cls);
+
+        // every unpinned page is protected by the reservation of its class
+        if (frame == NIL)
+            frame = findVictim(fromT1 ? T1 : T2, ANY_CLASS);
+        if (frame == NIL)
+            throw new CachePinnedException();
+
+        return frame;
+    }
+
+    /**
+     * Finds the least recently used frame that a page of the given class may replace, starting
+     * with the given list. The scan ring is the last resort.
+     */
+    private int findVictim(int side, int cls) {
+
+        int frame = unpinnedHead(side, cls);
+
+        if (frame == NIL)
+            frame = unpinnedHead(side == T1 ? T2 : T1, cls);
+        if (frame == NIL)
+            frame = unpinnedHead(SCAN, cls);
+
+        return frame;
+    }
+
+    private int unpinnedHead(int side, int cls) {
+
+        for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame)) {
+            if (pins[frame] == 0 && (cls == ANY_CLASS || replaceable(frame, cls)))
+                return frame;
+        }
+        return NIL;
+    }
+
+    /**
+     * Checks whether a page of the given class may replace the frame. Pages of other classes are
+     * protected while their class holds no more than its reserved share.
+     */
+    private boolean replaceable(int frame, int cls) {
+
+        int owner = frameClass[frame];
+        return owner == cls || residents[owner] > quotas.minFrames(owner, capacity);
+    }
+
+    /**
+     * Finds the least recently used unpinned frame of the given class, preferring scan pages and
+     * pages that were seen once.
+     */
+    private int ownVictim(int cls) {
+
+        for (int side : OWN_VICTIM_ORDER) {
+            for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame)) {
+                if (pins[frame] == 0 && frameClass[frame] == cls)
+                    return frame;
+            }
+        }
+        return NIL;
+    }
+
+    /**
+     * Takes the frame out of the cache. Resident pages leave the table and, if requested,
+     * leave a ghost in B1 or B2.
+     */
+    private EvictedCacheEntry evictFrame(int frame, boolean remember) {
+
+        long key = keys[frame];
+        CacheableData page = pages[frame];
+        int side = lists.listOf(frame);
+
+        if (side != EXPELLED) {
+            table.remove(key);
+            residents[frameClass[frame]]--;
+
+            if (remember && side != SCAN) {
+                if (ghosts.isFull())
+                    ghosts.removeOldest(ghosts.size(B2) > 0 ? B2 : B1);
+                ghosts.add(side == T1 ? B1 : B2, key);
+            }
+        }
+
+        lists.unlink(frame);
+        pages[frame] = null;
+
+        return new EvictedCacheEntry(page.getBuffer(), page, PageTable.resourceIdOf(key));
+    }
+
+
+    @Override
+    public void unpinPage(int resourceId, int pageNumber) {
+
+        int frame = table.get(PageTable.key(resourceId, pageNumber));
+
+        if (frame != PageTable.NOT_FOUND && pins[frame] > 0)
+            pins[frame]--;
+    }
+
+    /**
+     * Describes the pages of T1 as recent and the pages of T2 as frequent.
+     */
+    @Override
+    public void describeResidentPages(CacheManifest manifest) {
+
+        for (int side = T1; side <= T2; side++) {
+            for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame))
+                manifest.add(PageTable.resourceIdOf(keys[frame]), PageTable.pageNumberOf(keys[frame]), side == T2);
+        }
+    }
+
+    @Override
+    public EvictedCacheEntry addWarmPage(CacheableData newPage, int resourceId, boolean frequent)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        EvictedCacheEntry evicted = insert(newPage, resourceId, false, false);
+
+        if (frequent) {
+            int frame = table.get(PageTable.key(resourceId, newPage.getPageNumber()));
+            hits[frame] = 2;
+            lists.moveToTail(T2, frame);
+        }
+        return evicted;
+    }
+
+
+    @Override
+    public int getNumberOfModifiedPages() {
+
+        int modified = 0;
+
+        for (int side = T1; side <= SCAN; side++) {
+            for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame)) {
+                if (FlushBatch.isModified(pages[frame]))
+                    modified++;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public void collectModifiedPages(FlushBatch batch) {
+
+        for (int side : FLUSH_ORDER) {
+            int horizon = batch.horizon(lists.size(side));
+
+            for (int frame = lists.head(side); frame != NIL && horizon > 0 && !batch.isFull(); frame = lists.next(frame)) {
+                if (pins[frame] == 0)
+                    batch.offer(PageTable.resourceIdOf(keys[frame]), pages[frame]);
+                horizon--;
+            }
+        }
+    }
+
+
+    @Override
+    public CacheableData[] getAllPagesForResource(int resourceId) {
+
+        ArrayList<CacheableData> data = new ArrayList<>();
+
+        for (int side = T1; side <= SCAN; side++) {
+            for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame)) {
+                if (PageTable.resourceIdOf(keys[frame]) == resourceId)
+                    data.add(pages[frame]);
+            }
+        }
+
+        return data.toArray(new CacheableData[data.size()]);
+    }
+
+    @Override
+    public void expellAllPagesForResource(int resourceId) {
+
+        for (int side = T1; side <= SCAN; side++) {
+            int frame = lists.head(side);
+            while (frame != NIL) {
+                int following = lists.next(frame);
+
+                if (PageTable.resourceIdOf(keys[frame]) == resourceId) {
+                    table.remove(keys[frame]);
+                    residents[frameClass[frame]]--;
+                    pins[frame] = 0;
+                    lists.moveToTail(EXPELLED, frame);
+                }
+                frame = following;
+            }
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    @Override
+    public int getMaxCapacity() {
+
+        return pages.length;
+    }
+
+    @Override
+    public PageSize getPageSize() {
+
+        return page;
+    }
+
+    @Override
+    public long getGhostHits() {
+
+        return ghostHits;
+    }
+
+    /**
+     * Changes the capacity. When the cache shrinks, it replaces pages like for new pages, with
+     * ghosts, until the resident pages fit. Pinned pages are not replaced, so the capacity does
+     * not drop below the number of pinned pages. The buffers of expelled pages are given up as
+     * well. The ghost lists are trimmed to the bounds of the new capacity.
+     */
+    @Override
+    public List<EvictedCacheEntry> setCapacity(int pages) {
+
+        ArrayList<EvictedCacheEntry> evicted = new ArrayList<>();
+        int newCapacity = Math.max(1, Math.min(this.pages.length, pages));
+
+        if (newCapacity < capacity) {
+            while (lists.head(EXPELLED) != NIL) {
+                int frame = lists.head(EXPELLED);
+                evicted.add(new EvictedCacheEntry(evictFrame(frame, false).getBinaryPage()));
+                lists.append(FREE, frame);
+            }
+
+            while (residentPages() > newCapacity) {
+                int t1 = lists.size(T1);
+                int frame = findVictim(t1 > 0 && t1 > target ? T1 : T2, ANY_CLASS);
+                if (frame == NIL)
+                    break;
+
+                evicted.add(evictFrame(frame, true));
+                lists.append(FREE, frame);
+            }
+        }
+
+        capacity = Math.max(newCapacity, residentPages());
+        target = Math.min(target, capacity);
+
+        while (lists.size(T1) + ghosts.size(B1) > capacity && ghosts.size(B1) > 0)
+            ghosts.removeOldest(B1);
+        while (residentPages() + ghosts.size(B1) + ghosts.size(B2) > 2 * capacity && ghosts.size(B2) > 0)
+            ghosts.removeOldest(B2);
+
+        return evicted;
+    }
+
+    private int residentPages() {
+
+        return lists.size(T1) + lists.size(T2) + lists.size(SCAN);
+    }
+
+    @Override
+    public void unpinAllPages() {
+
+        for (int frame = 0; frame < usedFrames; frame++) {
+            pins[frame] = 0;
+        }
+    }
+
+
+}
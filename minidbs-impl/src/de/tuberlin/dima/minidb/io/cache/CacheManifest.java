@@ -0,0 +1,184 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A list of pages that were resident in a cache, together with their frequency class: pages that
+ * were hit repeatedly are frequent, all others are recent. The list is written at shutdown and
+ * read after the next start to load the pages again.
+ * <p/>
+ * In the written form, the pages are grouped by resource, and every resource is identified by a
+ * name instead of its id, since ids are reserved anew on every start. Within a resource, the pages
+ * are in ascending order, so they can be loaded with few sequential reads.
+ */
+public class CacheManifest {
+
+
+    private static final int MAGIC = 0x4D444243;
+    private static final int VERSION = 1;
+
+    private static final byte RECENT = 0;
+    private static final byte FREQUENT = 1;
+
+    private long[] keys;
+    private byte[] classes;
+    private int size;
+
+
+    public CacheManifest() {
+
+        this.keys = new long[64];
+        this.classes = new byte[64];
+    }
+
+
+    public void add(int resourceId, int pageNumber, boolean frequent) {
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            classes = Arrays.copyOf(classes, size * 2);
+        }
+
+        keys[size] = PageTable.key(resourceId, pageNumber);
+        classes[size] = frequent ? FREQUENT : RECENT;
+        size++;
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public int getResourceId(int index) {
+
+        return PageTable.resourceIdOf(keys[index]);
+    }
+
+    public int getPageNumber(int index) {
+
+        return PageTable.pageNumberOf(keys[index]);
+    }
+
+    public boolean isFrequent(int index) {
+
+        return classes[index] == FREQUENT;
+    }
+
+    /**
+     * Sorts the pages by resource id and page number.
+     */
+    public void sort() {
+
+        // page numbers are never negative, so the packed keys sort like (resource id, page number)
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        long[] newKeys = new long[Math.max(size, 1)];
+        byte[] newClasses = new byte[Math.max(size, 1)];
+        for (int i = 0; i < size; i++) {
+            newKeys[i] = keys[order[i]];
+            newClasses[i] = classes[order[i]];
+        }
+
+        keys = newKeys;
+        classes = newClasses;
+    }
+
+
+    /**
+     * Writes the manifest. Pages of resources without a name are left out.
+     *
+     * @param out           The output to write to.
+     * @param resourceNames The names of the resources, mapped by their ids.
+     * @throws IOException Thrown, if the output could not be written.
+     */
+    public void write(DataOutput out, Map<Integer, String> resourceNames) throws IOException {
+
+        sort();
+
+        // count the resources first, the groups are written with their lengths
+        int numResources = 0;
+        for (int i = 0; i < size; i = endOfGroup(i)) {
+            if (resourceNames.containsKey(getResourceId(i)))
+                numResources++;
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(numResources);
+
+        for (int i = 0; i < size; i = endOfGroup(i)) {
+            String name = resourceNames.get(getResourceId(i));
+            if (name == null)
+                continue;
+
+            int end = endOfGroup(i);
+            out.writeUTF(name);
+            out.writeInt(end - i);
+
+            for (int k = i; k < end; k++) {
+                out.writeInt(getPageNumber(k));
+                out.writeByte(classes[k]);
+            }
+        }
+    }
+
+    /**
+     * Reads a manifest. Pages of resources that have no id are skipped.
+     *
+     * @param in          The input to read from.
+     * @param resourceIds The ids of the resources, mapped by their names.
+     * @return The manifest, sorted by resource id and page number.
+     * @throws IOException Thrown, if the input could not be read or is not a manifest.
+     */
+    public static CacheManifest read(DataInput in, Map<String, Integer> resourceIds) throws IOException {
+
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a cache manifest.");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported cache manifest version: " + version);
+
+        CacheManifest manifest = new CacheManifest();
+        int numResources = in.readInt();
+
+        for (int r = 0; r < numResources; r++) {
+            Integer resourceId = resourceIds.get(in.readUTF());
+            int numPages = in.readInt();
+
+            for (int i = 0; i < numPages; i++) {
+                int pageNumber = in.readInt();
+                boolean frequent = in.readByte() == FREQUENT;
+
+                if (resourceId != null)
+                    manifest.add(resourceId, pageNumber, frequent);
+            }
+        }
+
+        manifest.sort();
+        return manifest;
+    }
+
+
+    /**
+     * Gets the index after the last page of the resource of the page at the given index.
+     */
+    private int endOfGroup(int index) {
+
+        int resourceId = getResourceId(index);
+        int end = index + 1;
+        while (end < size && getResourceId(end) == resourceId)
+            end++;
+        return end;
+    }
+
+
+}
@@ -0,0 +1,116 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.Config;
+
+/**
+ * The reserved and maximal shares of a page cache for the resource classes, together with the
+ * class of every registered resource. Shares are given in percent, so one instance can be shared
+ * by caches (or cache segments) of different capacities. Resources that are not registered
+ * belong to {@link ResourceClass#TABLE}.
+ * <p/>
+ * The object is thread safe. Lookups happen on every cache insert and do not lock.
+ */
+public final class CacheQuotas {
+
+
+    private static final int NUM_CLASSES = ResourceClass.values().length;
+
+    private volatile int[] minPercent;
+    private volatile int[] maxPercent;
+
+    // class ordinal per resource id, ids beyond the array are tables
+    private volatile byte[] classes;
+
+
+    /**
+     * Creates quotas without any reservations or limits.
+     */
+    public CacheQuotas() {
+
+        this.minPercent = new int[NUM_CLASSES];
+        this.maxPercent = new int[NUM_CLASSES];
+        Arrays.fill(this.maxPercent, 100);
+        this.classes = new byte[0];
+    }
+
+    /**
+     * Creates quotas with the shares from the configuration.
+     */
+    public CacheQuotas(Config config) {
+
+        this();
+        for (ResourceClass rc : ResourceClass.values())
+            setQuota(rc, config.getCacheMinPercent(rc), config.getCacheMaxPercent(rc));
+    }
+
+
+    /**
+     * Sets the shares of a resource class.
+     *
+     * @param resourceClass The resource class.
+     * @param min           The reserved share in percent.
+     * @param max           The maximal share in percent.
+     */
+    public synchronized void setQuota(ResourceClass resourceClass, int min, int max) {
+
+        if (min < 0 || max > 100 || min > max)
+            throw new IllegalArgumentException("Invalid quota " + min + "% - " + max + "% for " + resourceClass);
+
+        int[] newMin = minPercent.clone();
+        int[] newMax = maxPercent.clone();
+        newMin[resourceClass.ordinal()] = min;
+        newMax[resourceClass.ordinal()] = max;
+
+        minPercent = newMin;
+        maxPercent = newMax;
+    }
+
+    /**
+     * Registers the class of a resource.
+     */
+    public synchronized void assign(int resourceId, ResourceClass resourceClass) {
+
+        if (resourceId < 0)
+            throw new IllegalArgumentException("Resource ids must not be negative.");
+
+        byte[] current = classes;
+        byte[] updated = Arrays.copyOf(current, Math.max(current.length, resourceId + 1));
+        updated[resourceId] = (byte) resourceClass.ordinal();
+        classes = updated;
+    }
+
+
+    /**
+     * Gets the ordinal of the class the resource belongs to.
+     */
+    int classOf(int resourceId) {
+
+        byte[] current = classes;
+        return resourceId >= 0 && resourceId < current.length ? current[resourceId] : ResourceClass.TABLE.ordinal();
+    }
+
+    /**
+     * Gets the number of frames reserved for the class in a cache of the given capacity.
+     */
+    int minFrames(int classOrdinal, int capacity) {
+
+        return (int) ((long) capacity * minPercent[classOrdinal] / 100);
+    }
+
+    /**
+     * Gets the number of frames the class may occupy in a cache of the given capacity.
+     */
+    int maxFrames(int classOrdinal, int capacity) {
+
+        return Math.max(1, (int) ((long) capacity * maxPercent[classOrdinal] / 100));
+    }
+
+    static int numberOfClasses() {
+
+        return NUM_CLASSES;
+    }
+
+
+}
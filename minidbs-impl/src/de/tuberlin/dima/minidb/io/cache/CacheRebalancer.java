@@ -0,0 +1,124 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves memory between page caches of different page sizes, keeping the memory of all caches
+ * together constant. The marginal gain of a cache is estimated from its ghost hits: a request for
+ * a page that the cache evicted recently would have been a hit with more capacity. Since the
+ * ghost lists remember about as many pages as the cache holds, the ghost hits per byte of cache
+ * tell how many hits a byte more would bring.
+ * <p/>
+ * Every round compares the ghost hits since the previous round. If the cache with the highest
+ * gain per byte gains clearly more than the cache with the lowest one, a step of memory moves
+ * from the latter to the former. A cache never shrinks below a quarter of the capacity it had
+ * when the rebalancer first saw it.
+ */
+public class CacheRebalancer {
+
+
+    /**
+     * The fraction of the donor's memory (as divisor) that is moved in one round.
+     */
+    private static final int STEP_DIVISOR = 20;
+
+    /**
+     * The fraction of the initial capacity (as divisor) that a cache keeps at least.
+     */
+    private static final int MIN_CAPACITY_DIVISOR = 4;
+
+    /**
+     * The number of ghost hits per round a cache needs to receive memory, fewer are noise.
+     */
+    private static final long MIN_GHOST_HITS = 16;
+
+    /**
+     * How many times the gain per byte of the receiver must exceed that of the donor.
+     */
+    private static final int GAIN_RATIO = 2;
+
+
+    private final Map<ResizablePageCache, Long> lastGhostHits = new IdentityHashMap<>();
+    private final Map<ResizablePageCache, Integer> minCapacity = new IdentityHashMap<>();
+
+    // memory that was taken from a donor, but did not make up a whole page of the receiver
+    private long unassignedBytes;
+
+
+    /**
+     * Runs one round of rebalancing.
+     *
+     * @param caches  The caches to balance.
+     * @param evicted Receives the entries of the pages that the donor evicted. Modified pages
+     *                among them must be written by the caller.
+     * @return True, if memory has been moved, false otherwise.
+     */
+    public boolean rebalance(List<ResizablePageCache> caches, List<EvictedCacheEntry> evicted) {
+
+        ResizablePageCache receiver = null;
+        ResizablePageCache donor = null;
+        double receiverGain = 0;
+        double donorGain = Double.MAX_VALUE;
+
+        for (ResizablePageCache cache : caches) {
+            long ghostHits = cache.getGhostHits();
+            Long last = lastGhostHits.put(cache, ghostHits);
+            long delta = last == null ? 0 : ghostHits - last;
+
+            int capacity = cache.getCapacity();
+            if (!minCapacity.containsKey(cache))
+                minCapacity.put(cache, Math.max(1, capacity / MIN_CAPACITY_DIVISOR));
+
+            double gain = (double) delta / ((double) capacity * cache.getPageSize().getNumberOfBytes());
+
+            if (delta >= MIN_GHOST_HITS && capacity < cache.getMaxCapacity() && gain > receiverGain) {
+                receiver = cache;
+                receiverGain = gain;
+            }
+            if (capacity > minCapacity.get(cache) && gain < donorGain) {
+                donor = cache;
+                donorGain = gain;
+            }
+        }
+
+        if (receiver == null || donor == null || receiver == donor || receiverGain < GAIN_RATIO * donorGain)
+            return false;
+
+        return move(donor, receiver, evicted);
+    }
+
+
+    private boolean move(ResizablePageCache donor, ResizablePageCache receiver, List<EvictedCacheEntry> evicted) {
+
+        int donorPage = donor.getPageSize().getNumberOfBytes();
+        int receiverPage = receiver.getPageSize().getNumberOfBytes();
+        int donorCapacity = donor.getCapacity();
+
+        // move whole pages of the larger page size, so no memory is lost to rounding
+        long unit = Math.max(donorPage, receiverPage);
+        long step = (long) donorCapacity * donorPage / STEP_DIVISOR / unit * unit;
+        step = Math.max(step, unit);
+        step = Math.min(step, (long) (donorCapacity - minCapacity.get(donor)) * donorPage / unit * unit);
+        step = Math.min(step, (long) (receiver.getMaxCapacity() - receiver.getCapacity()) * receiverPage / unit * unit);
+
+        if (step <= 0)
+            return false;
+
+        evicted.addAll(donor.setCapacity(donorCapacity - (int) (step / donorPage)));
+
+        // pinned pages may have kept the donor from shrinking by the whole step
+        long freed = (long) (donorCapacity - donor.getCapacity()) * donorPage + unassignedBytes;
+        int pages = (int) (freed / receiverPage);
+        unassignedBytes = freed - (long) pages * receiverPage;
+
+        if (pages > 0)
+            evicted.addAll(receiver.setCapacity(receiver.getCapacity() + pages));
+
+        return pages > 0;
+    }
+
+
+}
@@ -0,0 +1,166 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+import java.util.Arrays;
+
+/**
+ * A batch of modified pages that a cache hands out to be written in the background. The buffer
+ * pool gives the batch a number of empty frames. The cache offers it its unpinned pages, starting
+ * with the pages it would evict next, while it holds the lock that pinning the pages requires. The
+ * batch copies every modified page into one of its frames and marks the page unmodified, so the
+ * copy is consistent and a later modification makes the page modified again.
+ * <p/>
+ * A batch for the background writer only looks at the cold end of every list of the cache, the
+ * pages that are about to be evicted. A batch for a checkpoint looks at all pages. A checkpoint
+ * first marks the modified pages with a batch that copies nothing, and then takes only the marked
+ * pages, so that pages modified while it runs do not keep it going.
+ */
+public class FlushBatch {
+
+
+    /**
+     * The fraction of a list (as divisor) that counts as its cold end.
+     */
+    private static final int COLD_DIVISOR = 4;
+
+
+    private final byte[][] frames;
+    private final FlushableData[] pages;
+    private final int[] resourceIds;
+    private final boolean coldOnly;
+    private int size;
+
+    // the pages a checkpoint writes, by PageTable.key, null for the background writer
+    private final PageTable marked;
+    private final boolean marking;
+
+
+    /**
+     * Creates a new batch.
+     *
+     * @param frames   The frames to copy the pages into. The batch holds as many pages as frames.
+     * @param coldOnly Whether only the cold end of the lists of the cache is to be looked at.
+     */
+    public FlushBatch(byte[][] frames, boolean coldOnly) {
+
+        this(frames, coldOnly, null, false);
+    }
+
+    /**
+     * Creates a new batch for a checkpoint, which takes only the marked pages and unmarks them.
+     *
+     * @param frames The frames to copy the pages into. The batch holds as many pages as frames.
+     * @param marked The pages to write.
+     */
+    public FlushBatch(byte[][] frames, PageTable marked) {
+
+        this(frames, false, marked, false);
+    }
+
+    private FlushBatch(byte[][] frames, boolean coldOnly, PageTable marked, boolean marking) {
+
+        this.frames = frames;
+        this.pages = new FlushableData[frames.length];
+        this.resourceIds = new int[frames.length];
+        this.coldOnly = coldOnly;
+        this.marked = marked;
+        this.marking = marking;
+    }
+
+    /**
+     * Creates a batch that copies no page, but marks all modified pages offered to it.
+     *
+     * @param marked Receives the modified pages.
+     * @return The batch.
+     */
+    public static FlushBatch marking(PageTable marked) {
+
+        return new FlushBatch(new byte[0][], false, marked, true);
+    }
+
+
+    /**
+     * Gets the number of pages at the head of a list that the cache offers to the batch.
+     *
+     * @param listSize The number of pages in the list, starting with the page evicted next.
+     */
+    public int horizon(int listSize) {
+
+        return coldOnly ? listSize / COLD_DIVISOR + 1 : listSize;
+    }
+
+    /**
+     * Offers an unpinned page. A modified page is copied and marked unmodified, unless the batch
+     * is full, the page cannot be marked, or the checkpoint has not marked it.
+     *
+     * @return true, if the page has been taken
+     */
+    public boolean offer(int resourceId, CacheableData page) {
+
+        if (!isModified(page) || !(page instanceof FlushableData))
+            return false;
+
+        if (marking) {
+            marked.put(PageTable.key(resourceId, page.getPageNumber()), 0);
+            return false;
+        }
+
+        if (size == frames.length
+                || (marked != null && marked.remove(PageTable.key(resourceId, page.getPageNumber())) == PageTable.NOT_FOUND))
+            return false;
+
+        System.arraycopy(page.getBuffer(), 0, frames[size], 0, frames[size].length);
+        ((FlushableData) page).markUnmodified();
+
+        pages[size] = (FlushableData) page;
+        resourceIds[size] = resourceId;
+        size++;
+        return true;
+    }
+
+    /**
+     * Checks whether a resident page is modified. Expired pages are not.
+     */
+    public static boolean isModified(CacheableData page) {
+
+        return page != null && !page.isExpired() && page.hasBeenModified();
+    }
+
+    public boolean isFull() {
+
+        return !marking && size == frames.length;
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public int getResourceId(int index) {
+
+        return resourceIds[index];
+    }
+
+    public FlushableData getPage(int index) {
+
+        return pages[index];
+    }
+
+    /**
+     * Gets the frame holding the copy of the page.
+     */
+    public byte[] getFrame(int index) {
+
+        return frames[index];
+    }
+
+    /**
+     * Gets the frames that no page has been copied into.
+     */
+    public byte[][] getUnusedFrames() {
+
+        return Arrays.copyOfRange(frames, size, frames.length);
+    }
+
+
+}
@@ -0,0 +1,24 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+/**
+ * A page cache whose modified pages can be written while they stay in the cache, so that the
+ * pages the cache evicts are mostly clean and a new page does not wait for the eviction of a
+ * modified one to be written.
+ */
+public interface FlushablePageCache extends PageCache {
+
+    /**
+     * Counts the resident pages that have been modified.
+     *
+     * @return The number of modified pages.
+     */
+    int getNumberOfModifiedPages();
+
+    /**
+     * Offers the unpinned pages to the batch, in the order in which they would be evicted, until
+     * the batch is full. The pages are offered while nobody can pin them.
+     *
+     * @param batch The batch that takes copies of the modified pages.
+     */
+    void collectModifiedPages(FlushBatch batch);
+}
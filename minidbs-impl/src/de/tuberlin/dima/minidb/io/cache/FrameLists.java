@@ -0,0 +1,110 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+import java.util.Arrays;
+
+/**
+ * A fixed number of doubly linked lists over the node indexes <tt>0 .. nodes-1</tt>. Every
+ * node is in at most one list at a time. The links are kept in primitive arrays, so moving a
+ * node between lists does not allocate. The head of a list is its oldest (least recently
+ * appended) node.
+ */
+final class FrameLists {
+
+
+    static final int NIL = -1;
+
+    private final byte[] list;
+    private final int[] prev;
+    private final int[] next;
+
+    private final int[] head;
+    private final int[] tail;
+    private final int[] size;
+
+
+    FrameLists(int nodes, int lists) {
+
+        this.list = new byte[nodes];
+        this.prev = new int[nodes];
+        this.next = new int[nodes];
+
+        this.head = new int[lists];
+        this.tail = new int[lists];
+        this.size = new int[lists];
+
+        Arrays.fill(this.list, (byte) NIL);
+        Arrays.fill(this.head, NIL);
+        Arrays.fill(this.tail, NIL);
+    }
+
+
+    int head(int side) {
+
+        return head[side];
+    }
+
+    int next(int node) {
+
+        return next[node];
+    }
+
+    int size(int side) {
+
+        return size[side];
+    }
+
+    /**
+     * Gets the list the node is in, or <code>NIL</code>, if it is in none.
+     */
+    int listOf(int node) {
+
+        return list[node];
+    }
+
+
+    void append(int side, int node) {
+
+        list[node] = (byte) side;
+        prev[node] = tail[side];
+        next[node] = NIL;
+
+        if (tail[side] == NIL)
+            head[side] = node;
+        else
+            next[tail[side]] = node;
+
+        tail[side] = node;
+        size[side]++;
+    }
+
+    void unlink(int node) {
+
+        int side = list[node];
+
+        if (prev[node] == NIL)
+            head[side] = next[node];
+        else
+            next[prev[node]] = next[node];
+
+        if (next[node] == NIL)
+            tail[side] = prev[node];
+        else
+            prev[next[node]] = prev[node];
+
+        list[node] = (byte) NIL;
+        prev[node] = NIL;
+        next[node] = NIL;
+        size[side]--;
+    }
+
+    /**
+     * Moves the node to the tail (most recent end) of the given list.
+     */
+    void moveToTail(int side, int node) {
+
+        unlink(node);
+        append(side, node);
+    }
+
+
+}
@@ -0,0 +1,86 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+/**
+ * Remembers the keys of recently evicted pages in a number of LRU ordered lists, without
+ * holding on to the pages themselves. The total number of remembered keys is bounded by the
+ * capacity given at construction time; callers make room with <code>removeOldest()</code>
+ * before adding to a full ghost list.
+ */
+final class GhostList {
+
+
+    private final long[] keys;
+    private final PageTable index;
+    private final FrameLists lists;
+
+    private final int[] free;
+    private int numFree;
+
+
+    GhostList(int capacity, int numLists) {
+
+        this.keys = new long[capacity];
+        this.index = new PageTable(capacity);
+        this.lists = new FrameLists(capacity, numLists);
+
+        this.free = new int[capacity];
+        for (int i = 0; i < capacity; i++)
+            this.free[i] = capacity - 1 - i;
+        this.numFree = capacity;
+    }
+
+
+    int size(int side) {
+
+        return lists.size(side);
+    }
+
+    boolean isFull() {
+
+        return numFree == 0;
+    }
+
+    /**
+     * Adds the key at the most recent end of the given list. If no capacity is left, the key
+     * is not remembered.
+     */
+    void add(int side, long key) {
+
+        if (numFree == 0 || index.contains(key))
+            return;
+
+        int slot = free[--numFree];
+        keys[slot] = key;
+        index.put(key, slot);
+        lists.append(side, slot);
+    }
+
+    /**
+     * Forgets the key.
+     *
+     * @return The list the key was in, or <code>FrameLists.NIL</code>, if it was not remembered.
+     */
+    int remove(long key) {
+
+        int slot = index.remove(key);
+        if (slot == PageTable.NOT_FOUND)
+            return FrameLists.NIL;
+
+        int side = lists.listOf(slot);
+        lists.unlink(slot);
+        free[numFree++] = slot;
+        return side;
+    }
+
+    /**
+     * Forgets the oldest key of the given list, if it has one.
+     */
+    void removeOldest(int side) {
+
+        int slot = lists.head(side);
+        if (slot != FrameLists.NIL)
+            remove(keys[slot]);
+    }
+
+
+}
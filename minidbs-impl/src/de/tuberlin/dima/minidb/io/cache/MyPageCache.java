@@ -2,47 +2,86 @@ package de.tuberlin.dima.minidb.io.cache;
 
 
 
-import java.util.*;
+import java.util.ArrayList;
 
 /**
  * Created by arbuzinside on 3.11.2015.
+ * <p/>
+ * The cache keeps all entries in frames that are addressed by index. The per-frame state (page,
+ * key, hits, pins, list membership and the recency links) lives in parallel primitive arrays and
+ * a {@link PageTable} maps the packed (resourceId, pageNumber) key to the frame. A cache hit
+ * therefore takes one hash probe and a few array writes, but does not allocate any objects.
+ * <p/>
+ * Frames are linked into one of three doubly linked lists: LR (pages hit once), LF (pages hit at
+ * least twice) and EXPELLED (pages of expelled resources that are to be evicted next). The head
+ * of each list is the least recently used frame. The keys of evicted pages are remembered in a
+ * {@link GhostList} of at most <tt>capacity</tt> entries, a page that comes back while it is
+ * still remembered enters LF directly.
  */
-public class MyPageCache implements PageCache {
+public class MyPageCache implements FlushablePageCache {
+
+
+    private static final int NIL = FrameLists.NIL;
+
+    private static final int LR = 0;
+    private static final int LF = 1;
+    private static final int EXPELLED = 2;
 
 
-    private int pageSize;
     private int bufferSize;
 
-    private LinkedHashMap<CacheId, MyCacheableData> LR;
-    private LinkedHashMap<CacheId, MyCacheableData> LF;
+    // hands out the frames for the empty slots
+    private final FrameSource frames;
 
+    // maps the packed page key to the frame index
+    private PageTable table;
 
+    // per frame state
+    private CacheableData[] pages;
+    private long[] keys;
+    private int[] hits;
+    private int[] pins;
 
-    private Set<CacheId> deletedLR;
-    private Set<CacheId> deletedLF;
+    // LR, LF and EXPELLED lists over the frames
+    private FrameLists lists;
 
+    // number of frames handed out so far, frames beyond are still empty
+    private int usedFrames;
 
-    private boolean hasDeleted;
+    // keys of pages evicted from LR and LF
+    private GhostList deleted;
 
 
 
 
     public MyPageCache(PageSize page, int pages){
 
-        this.pageSize = page.getNumberOfBytes();
-        this.bufferSize = pages;
-
+        this(page, pages, FrameSource.allocating(page));
+    }
 
+    /**
+     * Creates a new cache whose empty slots hand out the frames of the given source.
+     *
+     * @param page   The size of the pages in the cache.
+     * @param pages  The number of pages the cache holds.
+     * @param frames The source of the frames for the empty slots.
+     */
+    public MyPageCache(PageSize page, int pages, FrameSource frames){
 
-        LR = new LinkedHashMap<>();
-        LF = new LinkedHashMap<>();
+        this.frames = frames;
+        this.bufferSize = pages;
 
+        this.table = new PageTable(pages);
 
-        hasDeleted = false;
+        this.pages = new CacheableData[pages];
+        this.keys = new long[pages];
+        this.hits = new int[pages];
+        this.pins = new int[pages];
+        this.lists = new FrameLists(pages, 3);
 
-        deletedLR = new HashSet<>();
-        deletedLF = new HashSet<>();
+        this.usedFrames = 0;
 
+        this.deleted = new GhostList(pages, 2);
 
     }
 
@@ -59,32 +98,13 @@ public class MyPageCache implements PageCache {
      */
     public CacheableData getPage(int resourceId, int pageNumber){
 
+        int frame = table.get(PageTable.key(resourceId, pageNumber));
 
-        CacheId currentKey = new CacheId(pageNumber, resourceId);
-
-        MyCacheableData page;
-
-        if (LR.containsKey(currentKey) && !LR.get(currentKey).isDeleted()){
-
-            page = LR.remove(currentKey);
-
-            page.hitPage();
-
-            if ( page.getHits() == 2)
-                LF.put(currentKey, page);
-            else
-                LR.put(currentKey, page);
-            return page.getPage();
-        } else if (LF.containsKey(currentKey) && !LF.get(currentKey).isDeleted()){
-
-
-            page = LF.remove(currentKey);
-
-            page.hitPage();
-            LF.put(currentKey, page);
-            return page.getPage();
-        } else
+        if (frame == PageTable.NOT_FOUND)
             return null;
+
+        hitFrame(frame);
+        return pages[frame];
     }
 
     /**
@@ -103,38 +123,29 @@ public class MyPageCache implements PageCache {
      */
     public CacheableData getPageAndPin(int resourceId, int pageNumber){
 
+        int frame = table.get(PageTable.key(resourceId, pageNumber));
 
+        if (frame == PageTable.NOT_FOUND)
+            return null;
 
+        pins[frame]++;
+        hitFrame(frame);
+        return pages[frame];
+    }
 
 
-        CacheId currentKey = new CacheId(pageNumber, resourceId);
-
-        MyCacheableData page;
-
-        if (LR.containsKey(currentKey) && !LR.get(currentKey).isDeleted()){
-
-            page = LR.remove(currentKey);
-
-            page.hitPage();
-            page.pinPage();
-
-            if ( page.getHits() == 2)
-                LF.put(currentKey, page);
-            else
-                LR.put(currentKey, page);
-            return page.getPage();
-        } else if (LF.containsKey(currentKey) && !LF.get(currentKey).isDeleted()){
-
-
-            page = LF.remove(currentKey);
-            page.hitPage();
-            page.pinPage();
-            LF.put(currentKey, page);
-            return page.getPage();
-        } else
-            return null;
+    /**
+     * Registers a hit on the frame: pages in LR move to LF on their second hit, all others
+     * move to the most recently used end of their list.
+     */
+    private void hitFrame(int frame) {
 
+        hits[frame]++;
 
+        if (lists.listOf(frame) == LR && hits[frame] == 2)
+            lists.moveToTail(LF, frame);
+        else
+            lists.moveToTail(lists.listOf(frame), frame);
     }
 
     /**
@@ -170,274 +181,10 @@ public class MyPageCache implements PageCache {
    public EvictedCacheEntry addPage(CacheableData newPage, int resourceId)
             throws CachePinnedException, DuplicateCacheEntryException{
 
-
-
-       CacheId currentKey = new CacheId(newPage.getPageNumber(), resourceId);
-       MyCacheableData currentPage = new MyCacheableData(newPage, resourceId);
-       EvictedCacheEntry deleted;
-
-
-       if (LR.containsKey(currentKey) || LF.containsKey(currentKey))
-           throw new DuplicateCacheEntryException(resourceId, newPage.getPageNumber());
-
-
-       //check if the page is in deleted lists
-       if (deletedLR.remove(currentKey) || deletedLF.remove(currentKey)){
-
-            currentPage.hitPage();
-
-           if (LR.size() + LF.size() >= bufferSize && LR.size() < LF.size()) {
-               deleted = removeElement(LF);
-               LF.put(currentKey,currentPage);
-               return deleted;
-           } else if (LR.size() + LF.size() >= bufferSize && LR.size() >= LF.size()){
-               deleted = removeElement(LR);
-               LF.put(currentKey,currentPage);
-               return deleted;
-           }
-       }
-
-
-
-
-
-
-        // checks if the page is in LR list
-       if(LR.get(currentKey) != null){
-
-           LR.get(currentKey).hitPage();
-
-           //hits >= 2
-           if (LR.get(currentKey).getHits() == 2){
-               LR.remove(currentKey);
-               LF.put(currentKey, currentPage);
-
-               return new EvictedCacheEntry(new byte[pageSize]);
-
-               //hits == 2 and LR is full
-           } else if(LR.size() + LF.size() >= bufferSize && LR.size() >= LF.size()){
-
-               deleted = removeElement(LR);
-               LR.put(currentKey,currentPage);
-               return deleted;
-
-               //hits == 2 and we have space
-           } else if(LR.size() < bufferSize - LF.size()){
-
-
-               LR.put(currentKey, currentPage);
-               deleted = new EvictedCacheEntry(new byte[pageSize]);
-
-               return deleted;
-           }
-        // check if the page is in LF
-       } else if (LF.get(currentKey) != null){
-             LF.get(currentKey).hitPage();
-
-           //if the buffer is full
-           if (LF.size() == bufferSize - LR.size()){
-
-               deleted = removeElement(LF);
-               LR.put(currentKey,currentPage);
-               return deleted;
-            //if we have space
-           } else {
-
-               LR.put(currentKey, currentPage);
-               deleted = new EvictedCacheEntry(new byte[pageSize]);
-
-               return deleted;
-           }
-
-       } else if (LR.size() + LF.size() >= bufferSize && LR.size() < LF.size()) {
-           deleted = removeElement(LF);
-           LR.put(currentKey,currentPage);
-           return deleted;
-       } else if (LR.size() + LF.size() >= bufferSize && LR.size() >= LF.size()){
-           deleted = removeElement(LR);
-           LR.put(currentKey,currentPage);
-           return deleted;
-       }
-
-       LR.put(currentKey,currentPage);
-       return new EvictedCacheEntry(new byte[pageSize]);
-
+       return insert(newPage, resourceId, false);
     }
 
 
-    //delete the last element from the buffer side
-
-    private EvictedCacheEntry removeElement(LinkedHashMap<CacheId, MyCacheableData> side) throws CachePinnedException {
-
-
-
-
-
-            if (side == LR)
-                return removefromLR();
-             else if (side == LF)
-                return removefromLF();
-             else
-                return new EvictedCacheEntry(new byte[pageSize]);
-
-    }
-
-
-    private EvictedCacheEntry removefromLR() throws CachePinnedException {
-
-
-        EvictedCacheEntry deleted;
-
-        Map.Entry<CacheId, MyCacheableData> entry;
-        Iterator it;
-
-
-
-        if (hasDeleted) {
-            it = LR.entrySet().iterator();
-
-            while (it.hasNext()) {
-                entry = (Map.Entry<CacheId, MyCacheableData>) it.next();
-
-                if (entry.getValue().isDeleted()) {
-                    CacheableData page = entry.getValue().getPage();
-                    it.remove();
-                    return new EvictedCacheEntry(page.getBuffer(), page, entry.getKey().getResourceId());
-                }
-            }
-        }
-
-
-
-        it = LR.entrySet().iterator();
-        while (it.hasNext()) {
-
-            entry = (Map.Entry<CacheId, MyCacheableData>) it.next();
-
-            if (entry.getValue().isPinned() == 0) {
-
-
-                deleted = new EvictedCacheEntry(entry.getValue().getPage().getBuffer(), entry.getValue().getPage(), entry.getKey().getResourceId());
-                LR.remove(entry.getKey());
-
-
-                if (deletedLR.size() > LF.size()){
-                    deletedLR.remove(0);
-                    deletedLR.add(entry.getKey());
-                }
-                else {
-                    deletedLR.add(entry.getKey());
-                }
-                return deleted;
-
-            }
-        }
-
-            it = LF.entrySet().iterator();
-            while (it.hasNext()) {
-
-                entry = (Map.Entry<CacheId, MyCacheableData>) it.next();
-
-                if (entry.getValue().isPinned() == 0) {
-                    deleted = new EvictedCacheEntry(entry.getValue().getPage().getBuffer(), entry.getValue().getPage(), entry.getKey().getResourceId());
-                    LF.remove(entry.getKey());
-
-                    if (deletedLF.size() > 2*bufferSize - LF.size()){
-                        deletedLF.remove(0);
-                        deletedLF.add(entry.getKey());
-                    }
-                    else {
-                        deletedLF.add(entry.getKey());
-                    }
-                    return deleted;
-
-                }
-            }
-
-       throw new CachePinnedException();
-
-    }
-
-    private EvictedCacheEntry removefromLF() throws CachePinnedException{
-
-
-        EvictedCacheEntry deleted;
-
-        Map.Entry<CacheId, MyCacheableData> entry;
-        Iterator it;
-
-
-        if (hasDeleted) {
-            it = LF.entrySet().iterator();
-
-            while (it.hasNext()) {
-                entry = (Map.Entry<CacheId, MyCacheableData>) it.next();
-
-                if (entry.getValue().isDeleted()) {
-                    CacheableData page = entry.getValue().getPage();
-                    it.remove();
-                    return new EvictedCacheEntry(page.getBuffer(), page, entry.getKey().getResourceId());
-                }
-            }
-        }
-
-
-
-
-
-        it = LF.entrySet().iterator();
-        while (it.hasNext()) {
-
-            entry = (Map.Entry<CacheId, MyCacheableData>) it.next();
-
-            if (entry.getValue().isPinned() == 0) {
-                deleted = new EvictedCacheEntry(entry.getValue().getPage().getBuffer(), entry.getValue().getPage(), entry.getKey().getResourceId());
-                LF.remove(entry.getKey());
-
-                if (deletedLF.size() > 2*bufferSize - LF.size()){
-                    deletedLF.remove(0);
-                    deletedLF.add(entry.getKey());
-                }
-                else {
-                    deletedLF.add(entry.getKey());
-                }
-
-                return deleted;
-
-            }
-        }
-
-        it = LR.entrySet().iterator();
-        while (it.hasNext()) {
-
-            entry = (Map.Entry<CacheId, MyCacheableData>) it.next();
-
-            if (entry.getValue().isPinned() == 0) {
-
-                deleted = new EvictedCacheEntry(entry.getValue().getPage().getBuffer(), entry.getValue().getPage(), entry.getKey().getResourceId());
-                LR.remove(entry.getKey());
-                if (deletedLR.size() > LF.size()){
-                    deletedLR.remove(0);
-                    deletedLR.add(entry.getKey());
-                }
-                else {
-                    deletedLR.add(entry.getKey());
-                }
-
-                return deleted;
-
-            }
-        }
-
-        throw new CachePinnedException();
-
-    }
-
-
-
-
-
-
     /**
      * This method behaves very similar to the  <code>addPage(CacheEntry)</code> method, with the
      * following distinctions:
@@ -460,112 +207,91 @@ public class MyPageCache implements PageCache {
    public EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId)
             throws CachePinnedException, DuplicateCacheEntryException{
 
+       return insert(newPage, resourceId, true);
+    }
 
 
-       CacheId currentKey = new CacheId(newPage.getPageNumber(), resourceId);
-       MyCacheableData currentPage = new MyCacheableData(newPage, resourceId);
-       EvictedCacheEntry deleted;
-
-
-       if (LR.containsKey(currentKey) || LF.containsKey(currentKey))
-           throw new DuplicateCacheEntryException(resourceId, newPage.getPageNumber());
-
-
-
-
-       currentPage.pinPage();
-       currentPage.hitPage();
-
-
-
-
-       //check if the page is in deleted lists
-       if (deletedLR.remove(currentKey) || deletedLF.remove(currentKey)){
-
-           currentPage.hitPage();
-
-           if (LR.size() + LF.size() >= bufferSize && LR.size() < LF.size()) {
-               deleted = removeElement(LF);
-               LF.put(currentKey,currentPage);
-               return deleted;
-           } else if (LR.size() + LF.size() >= bufferSize && LR.size() >= LF.size()){
-               deleted = removeElement(LR);
-               LF.put(currentKey,currentPage);
-               return deleted;
-           }
-       }
-
-
-
+    private EvictedCacheEntry insert(CacheableData newPage, int resourceId, boolean pin)
+            throws CachePinnedException, DuplicateCacheEntryException {
 
+        long key = PageTable.key(resourceId, newPage.getPageNumber());
 
+        if (table.contains(key))
+            throw new DuplicateCacheEntryException(resourceId, newPage.getPageNumber());
 
-       // checks if the page is in LR list
-       if(LR.get(currentKey) != null){
+        //check if the page is in deleted lists
+        boolean wasDeleted = deleted.remove(key) != NIL;
 
-           LR.get(currentKey).hitPage();
+        EvictedCacheEntry evicted;
+        int frame;
 
-           //hits >= 2
-           if (LR.get(currentKey).getHits() == 2){
-               LR.remove(currentKey);
-               LF.put(currentKey, currentPage);
+        if (lists.head(EXPELLED) != NIL) {
+            frame = lists.head(EXPELLED);
+            evicted = evictFrame(frame, false);
+        } else if (usedFrames < bufferSize) {
+            frame = usedFrames++;
+            evicted = new EvictedCacheEntry(frames.takeFrame());
+        } else {
+            frame = findVictim(lists.size(LR) < lists.size(LF) ? LF : LR);
+            evicted = evictFrame(frame, true);
+        }
 
-               return new EvictedCacheEntry(new byte[pageSize]);
+        pages[frame] = newPage;
+        keys[frame] = key;
+        hits[frame] = (pin ? 1 : 0) + (wasDeleted ? 1 : 0);
+        pins[frame] = pin ? 1 : 0;
 
-               //hits == 2 and LR is full
-           } else if(LR.size() + LF.size() >= bufferSize && LR.size() >= LF.size()){
+        lists.append(wasDeleted ? LF : LR, frame);
+        table.put(key, frame);
 
+        return evicted;
+    }
 
-               deleted = removeElement(LR);
-               LR.put(currentKey,currentPage);
 
-               return deleted;
+    //find the least recently used unpinned frame, starting at the preferred side
 
-               //hits == 2 and we have space
-           } else if(LR.size() < bufferSize - LF.size()){
+    private int findVictim(int side) throws CachePinnedException {
 
+        int other = side == LR ? LF : LR;
 
-               LR.put(currentKey, currentPage);
-               deleted = new EvictedCacheEntry(new byte[pageSize]);
+        for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame)) {
+            if (pins[frame] == 0)
+                return frame;
+        }
 
-               return deleted;
-           }
-           // check if the page is in LF
-       } else if (LF.get(currentKey) != null){
-           LF.get(currentKey).hitPage();
+        for (int frame = lists.head(other); frame != NIL; frame = lists.next(frame)) {
+            if (pins[frame] == 0)
+                return frame;
+        }
 
-           //if the buffer is full
-           if (LF.size() == bufferSize - LR.size()){
+        throw new CachePinnedException();
+    }
 
-               deleted = removeElement(LF);
-               LR.put(currentKey,currentPage);
-               return deleted;
-               //if we have space
-           } else {
 
-               LR.put(currentKey, currentPage);
-               deleted = new EvictedCacheEntry(new byte[pageSize]);
+    //take the frame out of the cache, remember evicted pages in the deleted list
 
-               return deleted;
-           }
+    private EvictedCacheEntry evictFrame(int frame, boolean remember) {
 
-       } else if (LR.size() + LF.size() >= bufferSize && LR.size() < LF.size()) {
-           deleted = removeElement(LF);
-           LR.put(currentKey,currentPage);
-           return deleted;
-       } else if (LR.size() + LF.size() >= bufferSize && LR.size() >= LF.size()){
-           deleted = removeElement(LR);
-           LR.put(currentKey,currentPage);
-           return deleted;
-       }
+        long key = keys[frame];
+        CacheableData page = pages[frame];
 
-       LR.put(currentKey,currentPage);
-       return new EvictedCacheEntry(new byte[pageSize]);
+        if (remember) {
+            table.remove(key);
+            int side = lists.listOf(frame);
 
+            // keep the ghosts bounded, forget the oldest entry of the longer list
+            if (deleted.isFull())
+                deleted.removeOldest(deleted.size(LR) < deleted.size(LF) ? LF : LR);
+            deleted.add(side, key);
+        }
 
+        lists.unlink(frame);
+        pages[frame] = null;
 
+        return new EvictedCacheEntry(page.getBuffer(), page, PageTable.resourceIdOf(key));
     }
 
+
     /**
      * Decreases the pinning counter of the entry for the page described by this resource-id and
      * page number. If there is no entry for this page, this method does nothing. If
@@ -578,24 +304,46 @@ public class MyPageCache implements PageCache {
     @Override
     public void unpinPage(int resourceId, int pageNumber){
 
-        CacheId currentKey = new CacheId(pageNumber, resourceId);
+        int frame = table.get(PageTable.key(resourceId, pageNumber));
 
-        if(LR.containsKey(currentKey)){
+        if (frame != PageTable.NOT_FOUND && pins[frame] > 0)
+            pins[frame]--;
 
-            if(LR.get(currentKey).isPinned() > 0)
-                LR.get(currentKey).unpinPage();
+    }
 
-        }
 
-        if (LF.containsKey(currentKey)){
 
-            if(LF.get(currentKey).isPinned() > 0)
-                LF.get(currentKey).unpinPage();
-        }
+    /**
+     * Counts the resident pages that have been modified.
+     */
+    public int getNumberOfModifiedPages() {
+
+        int modified = 0;
 
+        for (int side = LR; side <= LF; side++) {
+            for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame)) {
+                if (FlushBatch.isModified(pages[frame]))
+                    modified++;
+            }
+        }
+        return modified;
     }
 
+    /**
+     * Offers the unpinned pages of LR first, since LR is replaced before LF.
+     */
+    public void collectModifiedPages(FlushBatch batch) {
+
+        for (int side = LR; side <= LF; side++) {
+            int horizon = batch.horizon(lists.size(side));
 
+            for (int frame = lists.head(side); frame != NIL && horizon > 0 && !batch.isFull(); frame = lists.next(frame)) {
+                if (pins[frame] == 0)
+                    batch.offer(PageTable.resourceIdOf(keys[frame]), pages[frame]);
+                horizon--;
+            }
+        }
+    }
 
     /**
      * Gets all pages/entries for the resource specified by this resource-type and
@@ -611,22 +359,13 @@ public class MyPageCache implements PageCache {
 
         ArrayList<CacheableData> data = new ArrayList<>();
 
-
-        for(Map.Entry<CacheId, MyCacheableData> entry: LR.entrySet()){
-
-            if(entry.getKey().getResourceId() == resourceId){
-                data.add(entry.getValue().getPage());
+        for (int side = LR; side <= LF; side++) {
+            for (int frame = lists.head(side); frame != NIL; frame = lists.next(frame)) {
+                if (PageTable.resourceIdOf(keys[frame]) == resourceId)
+                    data.add(pages[frame]);
             }
-
         }
 
-        for(Map.Entry<CacheId, MyCacheableData> entry: LF.entrySet()){
-
-            if(entry.getKey().getResourceId() == resourceId){
-                data.add(entry.getValue().getPage());
-            }
-
-        }
         CacheableData[] result = new CacheableData[data.size()];
         data.toArray(result);
 
@@ -652,24 +391,20 @@ public class MyPageCache implements PageCache {
      */
     public void expellAllPagesForResource(int resourceId){
 
-        for(Map.Entry<CacheId, MyCacheableData> entry: LR.entrySet()){
-
-            if(entry.getKey().getResourceId() == resourceId){
-                entry.getValue().setDeleted(true);
-            }
-
-        }
-        for(Map.Entry<CacheId, MyCacheableData> entry: LF.entrySet()){
+        for (int side = LR; side <= LF; side++) {
+            int frame = lists.head(side);
+            while (frame != NIL) {
+                int following = lists.next(frame);
 
-            if(entry.getKey().getResourceId() == resourceId){
-                 entry.getValue().setDeleted(true);
+                if (PageTable.resourceIdOf(keys[frame]) == resourceId) {
+                    table.remove(keys[frame]);
+                    pins[frame] = 0;
+                    lists.moveToTail(EXPELLED, frame);
+                }
+                frame = following;
             }
-
         }
 
-        hasDeleted = true;
-
-
     }
 
     /**
@@ -689,19 +424,8 @@ public class MyPageCache implements PageCache {
      */
     public void unpinAllPages(){
 
-        for(Map.Entry<CacheId, MyCacheableData> entry: LR.entrySet()){
-
-            if(entry.getValue().isPinned() > 0){
-                entry.getValue().setPinToZero();
-            }
-
-        }
-        for(Map.Entry<CacheId, MyCacheableData> entry: LF.entrySet()){
-
-            if(entry.getValue().isPinned() > 0){
-                entry.getValue().setPinToZero();
-            }
-
+        for (int frame = 0; frame < usedFrames; frame++) {
+            pins[frame] = 0;
         }
 
     }
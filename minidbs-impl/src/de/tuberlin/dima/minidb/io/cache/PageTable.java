@@ -0,0 +1,191 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table that maps pages to int values (typically frame indexes of a cache).
+ * A page is identified by its resource id and page number, which are packed into a single long
+ * key, so lookups neither allocate key objects nor box values. Collisions are resolved by linear
+ * probing, removals use backward shifting, so no tombstones accumulate.
+ * <p/>
+ * Values must be non-negative, a negative value marks an empty slot.
+ */
+public class PageTable {
+
+
+    public static final int NOT_FOUND = -1;
+
+    private static final int MIN_SLOTS = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+
+    /**
+     * Creates a new table that can hold the given number of entries without growing.
+     *
+     * @param expectedEntries The number of entries the table is sized for.
+     */
+    public PageTable(int expectedEntries) {
+
+        int slots = MIN_SLOTS;
+        while (slots < expectedEntries * 2)
+            slots <<= 1;
+
+        allocate(slots);
+    }
+
+
+    /**
+     * Packs resource id and page number into one key, in the same layout as a RID.
+     */
+    public static long key(int resourceId, int pageNumber) {
+
+        return ((long) resourceId << 32) | (pageNumber & 0xFFFFFFFFL);
+    }
+
+    public static int resourceIdOf(long key) {
+
+        return (int) (key >>> 32);
+    }
+
+    public static int pageNumberOf(long key) {
+
+        return (int) key;
+    }
+
+
+    public int get(long key) {
+
+        int slot = slotFor(key);
+        while (values[slot] >= 0) {
+            if (keys[slot] == key)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    public boolean contains(long key) {
+
+        return get(key) != NOT_FOUND;
+    }
+
+    /**
+     * Associates the key with the value, replacing a previous mapping.
+     *
+     * @return The previous value, or <code>NOT_FOUND</code>.
+     */
+    public int put(long key, int value) {
+
+        if (value < 0)
+            throw new IllegalArgumentException("Values must not be negative.");
+
+        int slot = slotFor(key);
+        while (values[slot] >= 0) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if (++size * 2 > keys.length)
+            grow();
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @return The removed value, or <code>NOT_FOUND</code>, if the key was not contained.
+     */
+    public int remove(long key) {
+
+        int slot = slotFor(key);
+        while (values[slot] >= 0) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                shiftBack(slot);
+                size--;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public void clear() {
+
+        Arrays.fill(values, NOT_FOUND);
+        size = 0;
+    }
+
+
+    /**
+     * Closes the gap at the given slot by moving back entries of the same probe sequence.
+     */
+    private void shiftBack(int gap) {
+
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] < 0)
+                break;
+
+            int home = slotFor(keys[slot]);
+            // the entry may only move back if its home slot is not between gap and slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = NOT_FOUND;
+    }
+
+    private int slotFor(long key) {
+
+        // murmur3 finalizer, spreads page numbers of one resource over the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private void allocate(int slots) {
+
+        keys = new long[slots];
+        values = new int[slots];
+        Arrays.fill(values, NOT_FOUND);
+        mask = slots - 1;
+    }
+
+    private void grow() {
+
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        allocate(oldKeys.length * 2);
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] >= 0)
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+
+}
@@ -0,0 +1,16 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+/**
+ * A page cache that reserves and limits its frames per resource class (see {@link CacheQuotas}).
+ * The cache needs to know the class of every resource whose pages it holds.
+ */
+public interface PartitionedPageCache extends PageCache {
+
+    /**
+     * Registers the class of a resource. Pages of unregistered resources count as table pages.
+     *
+     * @param resourceId The id of the resource.
+     * @param resourceClass The class of the resource.
+     */
+    void assignResourceClass(int resourceId, ResourceClass resourceClass);
+}
@@ -0,0 +1,43 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+import java.util.List;
+
+/**
+ * A page cache whose capacity can be changed at runtime, such that the buffer pool can move
+ * memory between the caches of different page sizes. The cache counts the requests for pages
+ * that it evicted recently (ghost hits), which tells how much it would gain from more capacity.
+ */
+public interface ResizablePageCache extends PageCache {
+
+    /**
+     * Gets the size of the pages in the cache.
+     *
+     * @return The page size.
+     */
+    PageSize getPageSize();
+
+    /**
+     * Gets the number of pages the cache can hold at most.
+     *
+     * @return The maximal capacity.
+     */
+    int getMaxCapacity();
+
+    /**
+     * Gets the number of requests for recently evicted pages since the cache was created.
+     *
+     * @return The number of ghost hits.
+     */
+    long getGhostHits();
+
+    /**
+     * Changes the capacity of the cache. A shrinking cache evicts pages until the resident pages
+     * fit, but never evicts pinned pages. <code>getCapacity()</code> tells the capacity that was
+     * actually set.
+     *
+     * @param pages The new number of pages, it is clamped to the range 1 to the maximal capacity.
+     * @return The entries of the pages evicted to shrink the cache. Modified pages among them
+     *         must be written by the caller.
+     */
+    List<EvictedCacheEntry> setCapacity(int pages);
+}
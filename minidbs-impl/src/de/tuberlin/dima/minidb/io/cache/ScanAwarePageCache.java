@@ -0,0 +1,47 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+/**
+ * A page cache that accepts a hint for pages of sequential scans. Such pages are read once and
+ * are unlikely to be requested again soon, so the cache may admit them into a separate region
+ * in which they cannot displace frequently used pages.
+ */
+public interface ScanAwarePageCache extends PageCache {
+
+    /**
+     * Checks whether the page is resident, without counting as a request for it. The buffer pool
+     * uses it to skip resident pages when it reads ahead of a stream.
+     *
+     * @param resourceId The id of the resource the page belongs to.
+     * @param pageNumber The page number.
+     * @return True, if the page is in the cache, false otherwise.
+     */
+    boolean containsPage(int resourceId, int pageNumber);
+
+    /**
+     * Adds a page that is part of a sequential scan. Behaves like
+     * {@link PageCache#addPage(CacheableData, int)} otherwise.
+     *
+     * @param newPage The new page to be put into the cache.
+     * @param resourceId The id of the resource the page belongs to.
+     * @return The entry for the page that needed to be evicted.
+     * @throws CachePinnedException Thrown, if no page could be evicted, because all pages
+     *                              are pinned.
+     * @throws DuplicateCacheEntryException Thrown, if an entry for that page is already contained.
+     */
+    EvictedCacheEntry addScanPage(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException;
+
+    /**
+     * Adds and pins a page that is part of a sequential scan. Behaves like
+     * {@link PageCache#addPageAndPin(CacheableData, int)} otherwise.
+     *
+     * @param newPage The new page to be put into the cache.
+     * @param resourceId The id of the resource the page belongs to.
+     * @return The entry for the page that needed to be evicted.
+     * @throws CachePinnedException Thrown, if no page could be evicted, because all pages
+     *                              are pinned.
+     * @throws DuplicateCacheEntryException Thrown, if an entry for that page is already contained.
+     */
+    EvictedCacheEntry addScanPageAndPin(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException;
+}
@@ -0,0 +1,528 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.tuberlin.dima.minidb.Config;
+
+/**
+ * A thread safe page cache that partitions its entries into independently locked segments.
+ * A page is always assigned to the same segment, chosen by the hash of its resource id and
+ * page number. Every segment is a complete page cache with its own replacement state, so
+ * threads working on pages of different segments never wait for each other.
+ * <p/>
+ * The capacity is split evenly over the segments. Evictions only happen inside the segment
+ * the new page belongs to. As a consequence, a cold cache may already return occupied entries
+ * before all <tt>getCapacity()</tt> empty entries have been handed out, namely once the segment
+ * of a new page is full.
+ * <p/>
+ * A change of the capacity is split evenly over the segments as well. Only ARC segments can be
+ * resized, with any other policy the capacity stays fixed.
+ * <p/>
+ * The segments are guarded by locks rather than monitors, so a virtual thread that waits for a
+ * segment does not hold on to its carrier thread.
+ */
+public class StripedPageCache implements ScanAwarePageCache, PartitionedPageCache, WarmablePageCache,
+        ResizablePageCache, FlushablePageCache {
+
+
+    private final PageSize page;
+    private final PageCache[] segments;
+    private final ReentrantLock[] locks;
+    private final int segmentMask;
+    private final CacheQuotas quotas;
+
+    // the segment the next batch of modified pages starts with
+    private int flushCursor;
+
+
+    /**
+     * Creates a new striped cache.
+     *
+     * @param page        The size of the pages in the cache.
+     * @param pages       The total number of pages the cache holds initially.
+     * @param maxPages    The total number of pages the cache can grow to.
+     * @param numSegments The requested number of segments. It is rounded down to a power of two
+     *                    and reduced such that every segment holds at least one page.
+     * @param policy      The replacement policy of the segments.
+     * @param quotas      The quotas of the resource classes, applied to every segment. They are
+     *                    only enforced by the ARC policy.
+     */
+    public StripedPageCache(PageSize page, int pages, int maxPages, int numSegments, ReplacementPolicy policy,
+                            CacheQuotas quotas) {
+
+        this(page, pages, maxPages, numSegments, policy, quotas, FrameSource.allocating(page));
+    }
+
+    /**
+     * Creates a new striped cache whose segments take the frames for their empty slots from the
+     * given source.
+     *
+     * @param page        The size of the pages in the cache.
+     * @param pages       The total number of pages the cache holds initially.
+     * @param maxPages    The total number of pages the cache can grow to.
+     * @param numSegments The requested number of segments. It is rounded down to a power of two
+     *                    and reduced such that every segment holds at least one page.
+     * @param policy      The replacement policy of the segments.
+     * @param quotas      The quotas of the resource classes, applied to every segment. They are
+     *                    only enforced by the ARC policy.
+     * @param frames      The source of the frames for the empty slots, shared by the segments. It
+     *                    is called while a segment is locked.
+     */
+    public StripedPageCache(PageSize page, int pages, int maxPages, int numSegments, ReplacementPolicy policy,
+                            CacheQuotas quotas, FrameSource frames) {
+
+        int n = 1;
+        while (n * 2 <= numSegments && n * 2 <= pages)
+            n *= 2;
+
+        this.page = page;
+        this.segments = new PageCache[n];
+        this.locks = new ReentrantLock[n];
+        this.segmentMask = n - 1;
+        this.quotas = quotas;
+
+        for (int i = 0; i < n; i++) {
+            segments[i] = createSegment(page, share(pages, i), Math.max(share(maxPages, i), share(pages, i)),
+                    policy, quotas, frames);
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+
+    /**
+     * Creates the striped cache for one page size as the configuration describes it: its
+     * segments, replacement policy and quotas. With rebalancing, the cache may grow up to the
+     * memory of all configured caches. The frames for its empty slots come from the given source.
+     *
+     * @param page   The size of the pages in the cache.
+     * @param pages  The number of pages the cache holds initially.
+     * @param config The configuration.
+     * @param frames The source of the frames for the empty slots.
+     * @return The new cache.
+     */
+    public static StripedPageCache forConfig(PageSize page, int pages, Config config, FrameSource frames) {
+
+        int maxPages = pages;
+        if (config.getCacheRebalanceInterval() > 0) {
+            long budget = 0;
+            for (PageSize size : PageSize.values())
+                budget += (long) config.getCacheSize(size) * size.getNumberOfBytes();
+            maxPages = (int) Math.max(pages, Math.min(Integer.MAX_VALUE, budget / page.getNumberOfBytes()));
+        }
+
+        return new StripedPageCache(page, pages, maxPages, config.getCacheSegments(),
+                config.getCacheReplacementPolicy(), new CacheQuotas(config), frames);
+    }
+
+
+    private static PageCache createSegment(PageSize page, int pages, int maxPages, ReplacementPolicy policy,
+                                           CacheQuotas quotas, FrameSource frames) {
+
+        switch (policy) {
+            case ARC:
+                return new ArcPageCache(page, pages, maxPages, quotas, frames);
+            case TWO_LIST:
+                return new MyPageCache(page, pages, frames);
+            default:
+                throw new IllegalArgumentException("Unsupported replacement policy: " + policy);
+        }
+    }
+
+
+    /**
+     * Gets the share of the given number of pages that the segment holds.
+     */
+    private int share(int pages, int segment) {
+
+        return pages / segments.length + (segment < pages % segments.length ? 1 : 0);
+    }
+
+    /**
+     * Gets the index of the segment responsible for the given page.
+     */
+    private int indexFor(int resourceId, int pageNumber) {
+
+        int h = resourceId * 31 + pageNumber;
+        h ^= (h >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+
+        return h & segmentMask;
+    }
+
+
+    public int getNumberOfSegments() {
+
+        return segments.length;
+    }
+
+    /**
+     * Registers the class of a resource. The quotas are shared by all segments, so no segment
+     * needs to be locked.
+     */
+    @Override
+    public void assignResourceClass(int resourceId, ResourceClass resourceClass) {
+
+        quotas.assign(resourceId, resourceClass);
+    }
+
+
+    @Override
+    public CacheableData getPage(int resourceId, int pageNumber) {
+
+        int index = indexFor(resourceId, pageNumber);
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            return segment.getPage(resourceId, pageNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheableData getPageAndPin(int resourceId, int pageNumber) {
+
+        int index = indexFor(resourceId, pageNumber);
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            return segment.getPageAndPin(resourceId, pageNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public EvictedCacheEntry addPage(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        int index = indexFor(resourceId, newPage.getPageNumber());
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            return segment.addPage(newPage, resourceId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        int index = indexFor(resourceId, newPage.getPageNumber());
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            return segment.addPageAndPin(newPage, resourceId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the page is resident. In segments that are not scan aware, the check counts
+     * as a hit.
+     */
+    @Override
+    public boolean containsPage(int resourceId, int pageNumber) {
+
+        int index = indexFor(resourceId, pageNumber);
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            if (segment instanceof ScanAwarePageCache)
+                return ((ScanAwarePageCache) segment).containsPage(resourceId, pageNumber);
+            return segment.getPage(resourceId, pageNumber) != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a page of a sequential scan. Segments that are not scan aware add it as a regular page.
+     */
+    @Override
+    public EvictedCacheEntry addScanPage(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        int index = indexFor(resourceId, newPage.getPageNumber());
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            if (segment instanceof ScanAwarePageCache)
+                return ((ScanAwarePageCache) segment).addScanPage(newPage, resourceId);
+            return segment.addPage(newPage, resourceId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds and pins a page of a sequential scan. Segments that are not scan aware add it as a
+     * regular page.
+     */
+    @Override
+    public EvictedCacheEntry addScanPageAndPin(CacheableData newPage, int resourceId)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        int index = indexFor(resourceId, newPage.getPageNumber());
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            if (segment instanceof ScanAwarePageCache)
+                return ((ScanAwarePageCache) segment).addScanPageAndPin(newPage, resourceId);
+            return segment.addPageAndPin(newPage, resourceId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Describes the resident pages of all segments that can describe them. The segments are
+     * visited one after the other, so the result is not an atomic snapshot over the whole cache.
+     */
+    @Override
+    public void describeResidentPages(CacheManifest manifest) {
+
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                if (segment instanceof WarmablePageCache)
+                    ((WarmablePageCache) segment).describeResidentPages(manifest);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds a page listed in a manifest. Segments that cannot take warm pages add it as a regular
+     * page.
+     */
+    @Override
+    public EvictedCacheEntry addWarmPage(CacheableData newPage, int resourceId, boolean frequent)
+            throws CachePinnedException, DuplicateCacheEntryException {
+
+        int index = indexFor(resourceId, newPage.getPageNumber());
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            if (segment instanceof WarmablePageCache)
+                return ((WarmablePageCache) segment).addWarmPage(newPage, resourceId, frequent);
+            return segment.addPage(newPage, resourceId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getNumberOfModifiedPages() {
+
+        int modified = 0;
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                if (segment instanceof FlushablePageCache)
+                    modified += ((FlushablePageCache) segment).getNumberOfModifiedPages();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Lets the segments fill the batch one after the other. Every batch starts with the next
+     * segment, so that the cold pages of all segments get their turn.
+     */
+    @Override
+    public void collectModifiedPages(FlushBatch batch) {
+
+        int start = flushCursor++;
+
+        for (int i = 0; i < segments.length && !batch.isFull(); i++) {
+            PageCache segment = segments[(start + i) & segmentMask];
+            ReentrantLock lock = locks[(start + i) & segmentMask];
+            lock.lock();
+            try {
+                if (segment instanceof FlushablePageCache)
+                    ((FlushablePageCache) segment).collectModifiedPages(batch);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void unpinPage(int resourceId, int pageNumber) {
+
+        int index = indexFor(resourceId, pageNumber);
+        PageCache segment = segments[index];
+        ReentrantLock lock = locks[index];
+        lock.lock();
+        try {
+            segment.unpinPage(resourceId, pageNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets all pages of the resource. The segments are visited one after the other, so the
+     * result is not an atomic snapshot over the whole cache.
+     */
+    @Override
+    public CacheableData[] getAllPagesForResource(int resourceId) {
+
+        ArrayList<CacheableData> data = new ArrayList<>();
+
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                Collections.addAll(data, segment.getAllPagesForResource(resourceId));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        CacheableData[] result = new CacheableData[data.size()];
+        data.toArray(result);
+
+        return result;
+    }
+
+    @Override
+    public void expellAllPagesForResource(int resourceId) {
+
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                segment.expellAllPagesForResource(resourceId);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+
+        int capacity = 0;
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                capacity += segment.getCapacity();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return capacity;
+    }
+
+    @Override
+    public PageSize getPageSize() {
+
+        return page;
+    }
+
+    @Override
+    public int getMaxCapacity() {
+
+        int maxCapacity = 0;
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                if (segment instanceof ResizablePageCache)
+                    maxCapacity += ((ResizablePageCache) segment).getMaxCapacity();
+                else
+                    maxCapacity += segment.getCapacity();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return maxCapacity;
+    }
+
+    @Override
+    public long getGhostHits() {
+
+        long ghostHits = 0;
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                if (segment instanceof ResizablePageCache)
+                    ghostHits += ((ResizablePageCache) segment).getGhostHits();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return ghostHits;
+    }
+
+    /**
+     * Splits the new capacity evenly over the segments, which are resized one after the other.
+     */
+    @Override
+    public List<EvictedCacheEntry> setCapacity(int pages) {
+
+        ArrayList<EvictedCacheEntry> evicted = new ArrayList<>();
+
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                if (segment instanceof ResizablePageCache)
+                    evicted.addAll(((ResizablePageCache) segment).setCapacity(share(pages, i)));
+            } finally {
+                lock.unlock();
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public void unpinAllPages() {
+
+        for (int i = 0; i < segments.length; i++) {
+            PageCache segment = segments[i];
+            ReentrantLock lock = locks[i];
+            lock.lock();
+            try {
+                segment.unpinAllPages();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+
+}
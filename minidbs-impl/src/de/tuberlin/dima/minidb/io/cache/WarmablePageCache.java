@@ -0,0 +1,32 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+/**
+ * A page cache that can describe its resident pages and take them back after a restart in the
+ * same frequency class, such that pages that were frequent before the restart do not have to
+ * prove themselves again.
+ */
+public interface WarmablePageCache extends PageCache {
+
+    /**
+     * Adds all resident pages to the manifest. Pages of sequential scans are left out.
+     *
+     * @param manifest The manifest to add the pages to.
+     */
+    void describeResidentPages(CacheManifest manifest);
+
+    /**
+     * Adds a page that was listed in a manifest, without hitting it. A frequent page goes
+     * directly among the frequent pages. Behaves like {@link PageCache#addPage(CacheableData, int)}
+     * otherwise.
+     *
+     * @param newPage The new page to be put into the cache.
+     * @param resourceId The id of the resource the page belongs to.
+     * @param frequent Whether the page was frequent when the manifest was written.
+     * @return The entry for the page that needed to be evicted.
+     * @throws CachePinnedException Thrown, if no page could be evicted, because all pages
+     *                              are pinned.
+     * @throws DuplicateCacheEntryException Thrown, if an entry for that page is already contained.
+     */
+    EvictedCacheEntry addWarmPage(CacheableData newPage, int resourceId, boolean frequent)
+            throws CachePinnedException, DuplicateCacheEntryException;
+}
@@ -0,0 +1,36 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A buffer pool that serves page requests without blocking the caller. A page that is not in the
+ * cache is read by the I/O threads while the caller goes on, so the caller can keep many reads in
+ * flight and overlap its work with the I/O.
+ */
+public interface AsyncBufferPool extends BufferPoolManager {
+
+    /**
+     * Fetches and pins a page like {@link BufferPoolManager#getPageAndPin(int, int)}, without
+     * waiting for it.
+     *
+     * @param resourceId The id of the resource.
+     * @param pageNumber The page number of the page to fetch.
+     * @return A future that yields the pinned page. It fails with a <code>BufferPoolException</code>
+     *         or an <code>IOException</code> in the cases in which <code>getPageAndPin</code>
+     *         throws them.
+     */
+    CompletableFuture<CacheableData> getPageAndPinAsync(int resourceId, int pageNumber);
+
+    /**
+     * Fetches and pins several pages of a resource, without waiting for them. The reads of the
+     * missing pages are queued together, so that consecutive pages are read with batched reads.
+     *
+     * @param resourceId  The id of the resource.
+     * @param pageNumbers The page numbers of the pages to fetch.
+     * @return One future per page number, in the order of the page numbers.
+     */
+    List<CompletableFuture<CacheableData>> getPagesAndPinAsync(int resourceId, int[] pageNumbers);
+}
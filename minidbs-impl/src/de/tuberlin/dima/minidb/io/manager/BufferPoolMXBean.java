@@ -0,0 +1,32 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+/**
+ * The JMX view of a {@link MonitoredBufferPool}. The buffer pool registers it as
+ * <tt>de.tuberlin.dima.minidb:type=BufferPool,name=pool-&lt;n&gt;</tt> when its I/O threads start,
+ * and unregisters it when it is closed.
+ */
+public interface BufferPoolMXBean {
+
+    /**
+     * Gets all metrics of the buffer pool.
+     */
+    BufferPoolStatistics getStatistics();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getWriteBacks();
+
+    long getPrefetchHits();
+
+    long getWastedPrefetches();
+
+    int getReadQueueDepth();
+
+    int getWriteQueueDepth();
+}
@@ -0,0 +1,259 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.PageTable;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records the metrics of a buffer pool. The counters are kept per resource and added up per page
+ * size when a snapshot is taken. The I/O threads record the wait and device times.
+ * <p/>
+ * A prefetched page is remembered from the time its prefetch is queued until it is requested,
+ * which counts as a prefetch hit, or until it is evicted or its prefetch fails, which counts as a
+ * wasted prefetch. At most the pages of the caches and the reads in flight are remembered. The
+ * prefetched pages are kept per resource in a primitive table, so a request allocates nothing.
+ */
+final class BufferPoolMetrics {
+
+
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final ConcurrentHashMap<Integer, Counters> resources = new ConcurrentHashMap<>();
+
+    final LatencyHistogram readWaitTime = new LatencyHistogram();
+    final LatencyHistogram writeWaitTime = new LatencyHistogram();
+    final LatencyHistogram readDeviceTime = new LatencyHistogram();
+    final LatencyHistogram writeDeviceTime = new LatencyHistogram();
+
+    // null, if the MBean is not registered
+    private ObjectName name;
+
+
+    void register(int resourceId) {
+        resources.putIfAbsent(resourceId, new Counters());
+    }
+
+    /**
+     * Records a request for a page.
+     *
+     * @param hit whether the page was in the cache
+     */
+    void request(int resourceId, int pageNumber, boolean hit) {
+
+        Counters counters = resources.get(resourceId);
+        if (counters == null)
+            return;
+
+        if (hit)
+            counters.hits.increment();
+        else
+            counters.misses.increment();
+
+        if (counters.removePrefetched(pageNumber))
+            counters.prefetchHits.increment();
+    }
+
+    void prefetchQueued(int resourceId, int pageNumber) {
+
+        Counters counters = resources.get(resourceId);
+        if (counters != null)
+            counters.addPrefetched(pageNumber);
+    }
+
+    /**
+     * Records a prefetch that did not add its page to the cache.
+     */
+    void prefetchFailed(int resourceId, int pageNumber) {
+
+        Counters counters = resources.get(resourceId);
+        if (counters != null && counters.removePrefetched(pageNumber))
+            counters.wastedPrefetches.increment();
+    }
+
+    /**
+     * Records the eviction of a page.
+     *
+     * @param written whether the page has to be written, because it was modified
+     */
+    void evicted(int resourceId, int pageNumber, boolean written) {
+
+        Counters counters = resources.get(resourceId);
+        if (counters == null)
+            return;
+
+        counters.evictions.increment();
+        if (written)
+            counters.writeBacks.increment();
+        if (counters.removePrefetched(pageNumber))
+            counters.wastedPrefetches.increment();
+    }
+
+    /**
+     * Takes a snapshot of the metrics.
+     *
+     * @param pageSizes       the page sizes of the registered resources
+     * @param freeFrames      the free I/O buffers of every page size, by the page size in bytes
+     * @param readQueueDepth  the number of queued reads
+     * @param writeQueueDepth the number of queued writes
+     */
+    BufferPoolStatistics snapshot(Map<Integer, PageSize> pageSizes, Map<Integer, Integer> freeFrames,
+                                  int readQueueDepth, int writeQueueDepth) {
+
+        Map<Integer, CacheCounters> perResource = new HashMap<>();
+        Map<Integer, CacheCounters> perPageSize = new HashMap<>();
+        CacheCounters total = new CacheCounters(0, 0, 0, 0, 0, 0);
+
+        for (Map.Entry<Integer, PageSize> entry : pageSizes.entrySet()) {
+            Counters counters = resources.get(entry.getKey());
+            if (counters == null)
+                continue;
+
+            CacheCounters snapshot = counters.snapshot();
+            perResource.put(entry.getKey(), snapshot);
+            total = total.plus(snapshot);
+
+            int bytes = entry.getValue().getNumberOfBytes();
+            CacheCounters sum = perPageSize.get(bytes);
+            perPageSize.put(bytes, sum == null ? snapshot : sum.plus(snapshot));
+        }
+
+        return new BufferPoolStatistics(perResource, perPageSize, total, freeFrames, readQueueDepth,
+                writeQueueDepth, readWaitTime.snapshot(), writeWaitTime.snapshot(), readDeviceTime.snapshot(),
+                writeDeviceTime.snapshot());
+    }
+
+    /**
+     * Registers the MBean of the buffer pool with the platform MBean server. A failure is logged
+     * and leaves the buffer pool without the MBean.
+     */
+    void registerMBean(final MonitoredBufferPool bufferPool, Logger logger) {
+
+        BufferPoolMXBean bean = new BufferPoolMXBean() {
+            public BufferPoolStatistics getStatistics() {
+                return bufferPool.getStatistics();
+            }
+
+            public long getHits() {
+                return getStatistics().getTotal().getHits();
+            }
+
+            public long getMisses() {
+                return getStatistics().getTotal().getMisses();
+            }
+
+            public double getHitRatio() {
+                return getStatistics().getTotal().getHitRatio();
+            }
+
+            public long getEvictions() {
+                return getStatistics().getTotal().getEvictions();
+            }
+
+            public long getWriteBacks() {
+                return getStatistics().getTotal().getWriteBacks();
+            }
+
+            public long getPrefetchHits() {
+                return getStatistics().getTotal().getPrefetchHits();
+            }
+
+            public long getWastedPrefetches() {
+                return getStatistics().getTotal().getWastedPrefetches();
+            }
+
+            public int getReadQueueDepth() {
+                return getStatistics().getReadQueueDepth();
+            }
+
+            public int getWriteQueueDepth() {
+                return getStatistics().getWriteQueueDepth();
+            }
+        };
+
+        try {
+            ObjectName objectName = new ObjectName("de.tuberlin.dima.minidb:type=BufferPool,name=pool-"
+                    + POOLS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+            name = objectName;
+        } catch (JMException | RuntimeException ex) {
+            logger.warning("The buffer pool metrics could not be published through JMX: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Unregisters the MBean, if it has been registered.
+     */
+    void unregisterMBean() {
+
+        if (name == null)
+            return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException ex) {
+            // unregistered already
+        }
+        name = null;
+    }
+
+
+    /**
+     * The counters of one resource.
+     */
+    private static final class Counters {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder writeBacks = new LongAdder();
+        private final LongAdder prefetchHits = new LongAdder();
+        private final LongAdder wastedPrefetches = new LongAdder();
+
+        // the prefetched pages that have not been requested yet, keyed by page number
+        private final PageTable prefetched = new PageTable(16);
+        private volatile int numPrefetched;
+
+
+        void addPrefetched(int pageNumber) {
+
+            synchronized (prefetched) {
+                prefetched.put(PageTable.key(0, pageNumber), 0);
+                numPrefetched = prefetched.size();
+            }
+        }
+
+        /**
+         * Forgets a prefetched page.
+         *
+         * @return whether the page was prefetched and not requested yet
+         */
+        boolean removePrefetched(int pageNumber) {
+
+            if (numPrefetched == 0)
+                return false;
+
+            synchronized (prefetched) {
+                boolean removed = prefetched.remove(PageTable.key(0, pageNumber)) != PageTable.NOT_FOUND;
+                numPrefetched = prefetched.size();
+                return removed;
+            }
+        }
+
+        CacheCounters snapshot() {
+            return new CacheCounters(hits.sum(), misses.sum(), evictions.sum(), writeBacks.sum(),
+                    prefetchHits.sum(), wastedPrefetches.sum());
+        }
+    }
+}
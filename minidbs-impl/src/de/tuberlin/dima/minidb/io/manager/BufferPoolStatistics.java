@@ -0,0 +1,98 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The metrics of a buffer pool at one point in time: the cache counters per resource and per page
+ * size, the requests queued at the I/O threads and the free I/O buffers, and the latency
+ * histograms of reads and writes. The wait time of a request is the time it spends queued, the
+ * device time of a read or write is the time the resource manager takes for it. A batched read or
+ * write counts as one operation.
+ */
+public final class BufferPoolStatistics {
+
+
+    private final Map<Integer, CacheCounters> resources;
+    private final Map<Integer, CacheCounters> pageSizes;
+    private final CacheCounters total;
+    private final Map<Integer, Integer> freeFrames;
+    private final int readQueueDepth;
+    private final int writeQueueDepth;
+    private final LatencyHistogram.Snapshot readWaitTime;
+    private final LatencyHistogram.Snapshot writeWaitTime;
+    private final LatencyHistogram.Snapshot readDeviceTime;
+    private final LatencyHistogram.Snapshot writeDeviceTime;
+
+
+    BufferPoolStatistics(Map<Integer, CacheCounters> resources, Map<Integer, CacheCounters> pageSizes,
+                         CacheCounters total, Map<Integer, Integer> freeFrames, int readQueueDepth,
+                         int writeQueueDepth, LatencyHistogram.Snapshot readWaitTime,
+                         LatencyHistogram.Snapshot writeWaitTime, LatencyHistogram.Snapshot readDeviceTime,
+                         LatencyHistogram.Snapshot writeDeviceTime) {
+
+        this.resources = Collections.unmodifiableMap(resources);
+        this.pageSizes = Collections.unmodifiableMap(pageSizes);
+        this.total = total;
+        this.freeFrames = Collections.unmodifiableMap(freeFrames);
+        this.readQueueDepth = readQueueDepth;
+        this.writeQueueDepth = writeQueueDepth;
+        this.readWaitTime = readWaitTime;
+        this.writeWaitTime = writeWaitTime;
+        this.readDeviceTime = readDeviceTime;
+        this.writeDeviceTime = writeDeviceTime;
+    }
+
+
+    /**
+     * Gets the counters of every registered resource, by resource id.
+     */
+    public Map<Integer, CacheCounters> getResources() {
+        return resources;
+    }
+
+    /**
+     * Gets the counters of the resources of every page size, by the page size in bytes.
+     */
+    public Map<Integer, CacheCounters> getPageSizes() {
+        return pageSizes;
+    }
+
+    /**
+     * Gets the counters of all resources.
+     */
+    public CacheCounters getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the number of free I/O buffers of every page size, by the page size in bytes.
+     */
+    public Map<Integer, Integer> getFreeFrames() {
+        return freeFrames;
+    }
+
+    public int getReadQueueDepth() {
+        return readQueueDepth;
+    }
+
+    public int getWriteQueueDepth() {
+        return writeQueueDepth;
+    }
+
+    public LatencyHistogram.Snapshot getReadWaitTime() {
+        return readWaitTime;
+    }
+
+    public LatencyHistogram.Snapshot getWriteWaitTime() {
+        return writeWaitTime;
+    }
+
+    public LatencyHistogram.Snapshot getReadDeviceTime() {
+        return readDeviceTime;
+    }
+
+    public LatencyHistogram.Snapshot getWriteDeviceTime() {
+        return writeDeviceTime;
+    }
+}
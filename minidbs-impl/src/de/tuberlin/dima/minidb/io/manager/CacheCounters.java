@@ -0,0 +1,80 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+/**
+ * The cache counters of a resource, or of all resources of a page size, at one point in time.
+ * A request is a hit if the page is in the cache, and a miss if it has to wait for a read. A
+ * prefetch hit is the first request for a page that a prefetch has read or is reading, so a
+ * request that waits for a prefetch in flight is a miss and a prefetch hit. A wasted prefetch is a
+ * prefetched page that is evicted before it is requested, or a prefetch that fails or is canceled.
+ */
+public final class CacheCounters {
+
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long writeBacks;
+    private final long prefetchHits;
+    private final long wastedPrefetches;
+
+
+    public CacheCounters(long hits, long misses, long evictions, long writeBacks, long prefetchHits,
+                         long wastedPrefetches) {
+
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.writeBacks = writeBacks;
+        this.prefetchHits = prefetchHits;
+        this.wastedPrefetches = wastedPrefetches;
+    }
+
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of pages that were evicted from the cache.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of evicted pages that had to be written, because they were modified.
+     */
+    public long getWriteBacks() {
+        return writeBacks;
+    }
+
+    public long getPrefetchHits() {
+        return prefetchHits;
+    }
+
+    public long getWastedPrefetches() {
+        return wastedPrefetches;
+    }
+
+    /**
+     * Gets the share of the requests that were hits, or 0, if there were no requests.
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Adds up the counters of two resources.
+     */
+    CacheCounters plus(CacheCounters other) {
+
+        return new CacheCounters(hits + other.hits, misses + other.misses, evictions + other.evictions,
+                writeBacks + other.writeBacks, prefetchHits + other.prefetchHits,
+                wastedPrefetches + other.wastedPrefetches);
+    }
+}
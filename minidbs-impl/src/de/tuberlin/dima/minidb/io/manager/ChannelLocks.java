@@ -0,0 +1,36 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The locks that keep the batched reads and writes of a resource manager from overlapping. A
+ * batched read or write moves the position of the channel of the resource, while the single page
+ * reads and writes are positional and need no lock.
+ * <p/>
+ * The locks are reentrant locks rather than the monitors of the managers, so that a virtual thread
+ * which waits for a batched read or write does not hold on to its carrier thread.
+ */
+final class ChannelLocks {
+
+
+    private final ConcurrentHashMap<ResourceManager, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    private final Function<ResourceManager, ReentrantLock> newLock = new Function<ResourceManager, ReentrantLock>() {
+        public ReentrantLock apply(ResourceManager manager) {
+            return new ReentrantLock();
+        }
+    };
+
+
+    /**
+     * Gets the lock of the channel of the resource manager.
+     */
+    ReentrantLock of(ResourceManager manager) {
+
+        return locks.computeIfAbsent(manager, newLock);
+    }
+
+
+}
@@ -0,0 +1,21 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.io.IOException;
+
+/**
+ * A buffer pool that can write all its modified pages on request, while they stay in the cache.
+ */
+public interface CheckpointingBufferPool extends BufferPoolManager {
+
+    /**
+     * Takes a checkpoint. Every checkpoint begins a new epoch and writes the pages that have been
+     * modified before, then waits until they are written. Pages that are pinned while the
+     * checkpoint passes them are left to the next checkpoint or to their eviction.
+     *
+     * @return The epoch the checkpoint began, starting with 1.
+     * @throws BufferPoolException Thrown, if the buffer pool is closed, or the thread is interrupted
+     *                             while waiting for the writes.
+     * @throws IOException         Thrown, if a page could not be written.
+     */
+    long checkpoint() throws BufferPoolException, IOException;
+}
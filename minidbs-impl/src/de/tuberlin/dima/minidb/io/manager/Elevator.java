@@ -0,0 +1,60 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders a batch of queued I/O requests like an elevator: by resource and page number. Requests
+ * for consecutive pages of a resource form a run that is read or written with one batched I/O.
+ * The sort is stable, so requests for the same page keep the order in which they were queued.
+ */
+final class Elevator {
+
+
+    private static final Comparator<Request> ORDER = new Comparator<Request>() {
+        public int compare(Request a, Request b) {
+            if (a.getId() != b.getId())
+                return a.getId() < b.getId() ? -1 : 1;
+            return a.compareTo(b);
+        }
+    };
+
+
+    private Elevator() {
+    }
+
+
+    /**
+     * Sorts the requests and splits them into runs of consecutive pages of one resource.
+     *
+     * @param requests     The requests, sorted in place.
+     * @param maxRunLength The maximal number of pages in a run.
+     * @return The runs in the order of the sweep.
+     */
+    static List<List<Request>> runs(List<Request> requests, int maxRunLength) {
+
+        Collections.sort(requests, ORDER);
+
+        List<List<Request>> runs = new ArrayList<>();
+        List<Request> run = null;
+
+        for (Request request : requests) {
+            if (run != null && run.size() < maxRunLength && continues(run.get(run.size() - 1), request)) {
+                run.add(request);
+            } else {
+                run = new ArrayList<>();
+                run.add(request);
+                runs.add(run);
+            }
+        }
+
+        return runs;
+    }
+
+    private static boolean continues(Request last, Request next) {
+
+        return last.getId() == next.getId() && last.getPageNumber() + 1 == next.getPageNumber();
+    }
+}
@@ -0,0 +1,99 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.FlushableData;
+
+import java.io.IOException;
+
+/**
+ * A write of a copy of a page that stays in the cache. When the write completes, the frame of the
+ * copy goes back to the buffer pool. If it fails, the page is marked modified again, so that it is
+ * written when it is evicted.
+ * <p/>
+ * The page may be evicted while the copy is written, and its frame may then hold another page.
+ * The resource manager therefore gets a wrapper around the copy that keeps the page number.
+ * <p/>
+ * The write is handled after the write-backs of evicted pages, unless a requester waits for it, or
+ * a write-back of the same page is queued after it.
+ */
+public class FlushRequest extends WriteRequest {
+
+
+    private final FlushableData page;
+
+    private final MyBufferPoolManager bufferPool;
+
+
+    public FlushRequest(int resourceId, byte[] copy, ResourceManager mng, FlushableData page,
+                        MyBufferPoolManager bufferPool) {
+
+        super(resourceId, page.getPageNumber(), copy, mng, new PageCopy(page.getPageNumber(), copy));
+        this.page = page;
+        this.bufferPool = bufferPool;
+
+    }
+
+
+    /**
+     * Gets the page in the cache that the copy has been taken from.
+     */
+    public FlushableData getPage() {
+        return page;
+    }
+
+    public IOPriority getPriority() {
+        return promoted ? IOPriority.WRITE_BACK : IOPriority.FLUSH;
+    }
+
+    public void complete(CacheableData result) {
+
+        bufferPool.finishFlush(this, true);
+        super.complete(result);
+    }
+
+    public void fail(IOException error) {
+
+        bufferPool.finishFlush(this, false);
+        super.fail(error);
+    }
+
+
+    /**
+     * The copy of a page, as written to the resource.
+     */
+    private static final class PageCopy implements CacheableData {
+
+        private final int pageNumber;
+
+        private final byte[] buffer;
+
+        private boolean expired;
+
+
+        PageCopy(int pageNumber, byte[] buffer) {
+
+            this.pageNumber = pageNumber;
+            this.buffer = buffer;
+        }
+
+        public boolean hasBeenModified() {
+            return true;
+        }
+
+        public int getPageNumber() {
+            return pageNumber;
+        }
+
+        public void markExpired() {
+            expired = true;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+
+        public byte[] getBuffer() {
+            return buffer;
+        }
+    }
+}
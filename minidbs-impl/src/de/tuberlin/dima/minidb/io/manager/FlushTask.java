@@ -0,0 +1,71 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Periodically lets the buffer pool write modified pages that are close to eviction, and takes
+ * the periodic checkpoints.
+ */
+public class FlushTask implements Runnable {
+
+
+    private final MyBufferPoolManager bufferPool;
+    private final int flushInterval;
+    private final int checkpointInterval;
+    private final Logger logger;
+    private volatile boolean running;
+
+
+    /**
+     * @param bufferPool         the buffer pool whose pages are written
+     * @param flushInterval      the time between two rounds of the background writer, in
+     *                           milliseconds, or 0, if there is none
+     * @param checkpointInterval the time between two checkpoints, in milliseconds, or 0, if there
+     *                           are none
+     * @param logger             the logger for failed checkpoints
+     */
+    public FlushTask(MyBufferPoolManager bufferPool, int flushInterval, int checkpointInterval, Logger logger) {
+
+        this.bufferPool = bufferPool;
+        this.flushInterval = flushInterval;
+        this.checkpointInterval = checkpointInterval;
+        this.logger = logger;
+        this.running = true;
+    }
+
+
+    public void run() {
+
+        int interval = flushInterval > 0 ? flushInterval : checkpointInterval;
+        long nextCheckpoint = checkpointInterval > 0 ? System.currentTimeMillis() + checkpointInterval : Long.MAX_VALUE;
+
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException ex) {
+                break;
+            }
+
+            if (System.currentTimeMillis() >= nextCheckpoint) {
+                try {
+                    long epoch = bufferPool.checkpoint();
+                    logger.fine("Checkpoint " + epoch + " taken.");
+                } catch (IOException ex) {
+                    logger.severe("Checkpoint failed: " + ex.getMessage());
+                } catch (BufferPoolException ex) {
+                    // closed or interrupted
+                    break;
+                }
+                nextCheckpoint = System.currentTimeMillis() + checkpointInterval;
+            } else if (flushInterval > 0) {
+                bufferPool.flushModifiedPages();
+            }
+        }
+    }
+
+
+    public void stopThread() {
+        running = false;
+    }
+}
@@ -0,0 +1,221 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import de.tuberlin.dima.minidb.io.cache.FrameSource;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of page frames (binary page buffers) of one page size, allocated once when the
+ * arena is created. The buffer pool takes a frame for every page it reads or creates. Since the
+ * page then lives on in the cache, the frame is paid back with the buffer of the entry the cache
+ * evicted for it. In a warm system, frames therefore circulate between the arena and the cache,
+ * and no page buffers are allocated per I/O.
+ * <p/>
+ * While the cache is not yet full, it pays back a frame with one that it takes from the arena for
+ * the empty slot (see {@link FrameSource}). The arena therefore holds a frame for every slot of
+ * the cache in addition to the I/O buffers, and the frames of the slots stay in the cache once it
+ * is full.
+ * <p/>
+ * The arena owns exactly the number of frames it was created with. A frame whose evicted page is
+ * still being written is paid back when the write is done. Only a frame that never comes back,
+ * because a requester keeps its page outside the cache, is replaced with a new one.
+ * <p/>
+ * The free frames are kept in a bounded lock-free ring, so taking and paying back a frame does not
+ * lock and does not allocate. Taking a frame blocks while the arena is empty, which bounds the
+ * number of concurrent reads. Only the threads that wait for a frame lock, and they wait on a lock
+ * condition rather than a monitor, so a virtual thread that waits for a frame does not hold on to
+ * its carrier thread.
+ */
+public class FrameArena implements FrameSource {
+
+
+    private final int frameSize;
+    private final int numFrames;
+
+    // the ring of free frames: a slot can be filled when its sequence equals the fill position,
+    // and emptied when it equals the take position + 1
+    private final AtomicReferenceArray<byte[]> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong fillPosition = new AtomicLong();
+    private final AtomicLong takePosition = new AtomicLong();
+
+    // counted before a frame goes into the ring and after it leaves it, so it bounds the ring
+    private final AtomicInteger numFree = new AtomicInteger();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+
+    /**
+     * Creates a new arena and allocates all its frames.
+     *
+     * @param pageSize  The size of the frames.
+     * @param numFrames The number of frames in the arena.
+     */
+    public FrameArena(PageSize pageSize, int numFrames) {
+
+        this.frameSize = pageSize.getNumberOfBytes();
+        this.numFrames = numFrames;
+
+        int capacity = Integer.highestOneBit(Math.max(1, numFrames - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < capacity; i++)
+            this.sequences.set(i, i);
+
+        for (int i = 0; i < numFrames; i++) {
+            numFree.incrementAndGet();
+            offer(new byte[frameSize]);
+        }
+    }
+
+
+    /**
+     * Takes a frame from the arena, waiting until one is available.
+     *
+     * @return The frame.
+     * @throws InterruptedException Thrown, if the thread is interrupted while waiting.
+     */
+    public byte[] acquire() throws InterruptedException {
+
+        byte[] frame = tryAcquire();
+        if (frame != null)
+            return frame;
+
+        lock.lockInterruptibly();
+        waiters.incrementAndGet();
+        try {
+            // a frame paid back after the waiter has been counted signals the condition
+            while ((frame = tryAcquire()) == null)
+                available.await();
+            return frame;
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a frame from the arena, if one is available.
+     *
+     * @return The frame, or null, if the arena is empty.
+     */
+    public byte[] tryAcquire() {
+
+        byte[] frame = poll();
+        if (frame != null)
+            numFree.decrementAndGet();
+        return frame;
+    }
+
+    /**
+     * Pays back a taken frame. A frame beyond the number of frames of the arena is dropped.
+     *
+     * @param frame The frame to give back.
+     * @throws IllegalArgumentException Thrown, if the frame does not have the page size of the arena.
+     */
+    public void release(byte[] frame) {
+
+        if (frame.length != frameSize)
+            throw new IllegalArgumentException("The frame does not have the page size of the arena.");
+
+        if (numFree.incrementAndGet() > numFrames) {
+            numFree.decrementAndGet();
+            return;
+        }
+        offer(frame);
+
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Takes a frame for an empty slot of the cache without waiting. Only a cache that has grown
+     * beyond the slots the arena was created for gets a new frame.
+     */
+    @Override
+    public byte[] takeFrame() {
+
+        byte[] frame = tryAcquire();
+        return frame != null ? frame : new byte[frameSize];
+    }
+
+    /**
+     * Replaces a taken frame that will not be paid back, so the arena keeps its size.
+     */
+    public void replace() {
+
+        release(new byte[frameSize]);
+    }
+
+    public int getNumFreeFrames() {
+
+        return Math.max(0, numFree.get());
+    }
+
+
+    private void offer(byte[] frame) {
+
+        long position = fillPosition.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+
+            if (difference == 0) {
+                if (fillPosition.compareAndSet(position, position + 1)) {
+                    slots.set(slot, frame);
+                    sequences.set(slot, position + 1);
+                    return;
+                }
+                position = fillPosition.get();
+            } else if (difference < 0) {
+                // the slot is still being emptied, the count of free frames bounds the ring
+                Thread.yield();
+                position = fillPosition.get();
+            } else {
+                position = fillPosition.get();
+            }
+        }
+    }
+
+    private byte[] poll() {
+
+        long position = takePosition.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - (position + 1);
+
+            if (difference == 0) {
+                if (takePosition.compareAndSet(position, position + 1)) {
+                    byte[] frame = slots.get(slot);
+                    slots.set(slot, null);
+                    sequences.set(slot, position + mask + 1);
+                    return frame;
+                }
+                position = takePosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = takePosition.get();
+            }
+        }
+    }
+
+
+}
@@ -0,0 +1,31 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+/**
+ * The priority classes of the I/O requests, from the most to the least urgent. An I/O worker
+ * handles the queued requests of a more urgent class first. Reads and writes have their own
+ * workers, so the classes order the requests within the queue of a worker.
+ */
+public enum IOPriority {
+
+    /**
+     * A read that a requester waits for.
+     */
+    DEMAND_READ,
+
+    /**
+     * The write of an evicted page, whose frame is free once it is written.
+     */
+    WRITE_BACK,
+
+    /**
+     * A read that nobody waits for yet.
+     */
+    PREFETCH,
+
+    /**
+     * The write of a copy of a page that stays in the cache, by the background writer or a
+     * checkpoint.
+     */
+    FLUSH
+}
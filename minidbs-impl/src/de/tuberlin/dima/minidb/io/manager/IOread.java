@@ -3,22 +3,54 @@ package de.tuberlin.dima.minidb.io.manager;
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by arbuzinside on 11.11.2015.
+ * <p/>
+ * A read worker of the buffer pool. The worker blocks on its queue while there is nothing to read.
+ * It reads single pages with the positional reads of the resource managers, which need no lock, so
+ * the workers of a buffer pool read in parallel. A batched read moves the channel position, it
+ * holds the channel lock of the manager (see {@link ChannelLocks}). Every request is completed, with the page or with
+ * the I/O error, and requests that are still queued when the worker stops fail.
+ * <p/>
+ * The worker takes all queued requests at once, up to the maximal number of requests that are
+ * handled together, and sweeps over them in page order (see {@link Elevator}). Consecutive pages
+ * of a resource are read with one batched read.
+ * <p/>
+ * Prefetches wait until no demand read is queued, and a sweep holds reads of one priority class
+ * only, so a demand read never waits for more than the sweep in progress. A requester that waits
+ * for a page whose prefetch is still queued promotes the prefetch to a demand read. Within a class,
+ * the reads are shared fairly among the threads that issued them (see {@link RequestQueue}).
+ * <p/>
+ * The worker records how long every request was queued and how long every read took.
+ * <p/>
+ * Like the write workers, the worker is woken up to stop by a marker in its queue rather than by
+ * an interrupt, because an interrupt during a read closes the channel of the resource.
  */
 public class IOread implements Runnable {
 
 
-    public ConcurrentLinkedQueue<Request> queue;
-    private CacheableData data;
+    // wakes up the worker to stop
+    private final Request stop = new ReadRequest(-1, -1, null, null, null, false, false);
+
+    private final RequestQueue queue;
+
+    private final ChannelLocks channelLocks;
+
+    private final LatencyHistogram waitTime;
+    private final LatencyHistogram deviceTime;
+
     private volatile boolean running;
 
-    public IOread() {
+    public IOread(ChannelLocks channelLocks, LatencyHistogram waitTime, LatencyHistogram deviceTime) {
 
-        this.setQueue(new ConcurrentLinkedQueue<Request>());
+        this.queue = new RequestQueue(true);
+        this.channelLocks = channelLocks;
+        this.waitTime = waitTime;
+        this.deviceTime = deviceTime;
         this.running = true;
 
     }
@@ -26,74 +58,134 @@ public class IOread implements Runnable {
 
     public void run() {
 
-        Request request;
-
+        List<Request> batch = new ArrayList<>();
 
         while (running) {
-            request = getQueue().peek();
-
-            if (request != null) {
-                synchronized (request) {
-                    try {
-                        ResourceManager manager = request.getMng();
-
-
-                        synchronized (manager) {
-                            data = manager.readPageFromResource(request.getBuffer(), request.getPageNumber());
-                        }
-                        request.setResult(data);
-                        getQueue().remove(request);
-                        request.setCompleted(true);
-                    } catch (IOException ex) {
-                        System.out.println(ex.getMessage() + request.getId());
-                    } finally {
-                        request.notifyAll();
-                    }
-                }
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                continue;
             }
-        }
-    }
 
+            queue.drainTo(batch, BufferPoolManager.MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE);
+            batch.remove(stop);
 
-    public void addRequest(Request request) {
+            long now = System.nanoTime();
+            for (Request request : batch)
+                waitTime.record(now - request.getQueuedAt());
 
-        this.getQueue().add(request);
+            for (List<Request> run : Elevator.runs(batch, BufferPoolManager.MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE))
+                read(run);
 
+            batch.clear();
+        }
+
+        Request request;
+        while ((request = queue.poll()) != null) {
+            if (request != stop)
+                cancel(request, "The buffer pool has been closed.");
+        }
     }
 
-    public CacheableData getRequest(int id, int pageNumber) {
+    private void read(List<Request> run) {
 
-        CacheableData result = null;
-        for (Request req : queue) {
-            if (req.getId() == id && req.getPageNumber() == pageNumber) {
-                try {
-                    synchronized (req) {
-                        while (!req.isCompleted()) {
-                            req.wait();
-                        }
-                        result = req.getResult();
-                    }
-                } catch (InterruptedException ex) {
-                    System.out.println(ex.getMessage());
-                }
+        if (run.size() == 1) {
+            read(run.get(0));
+            return;
+        }
+
+        ResourceManager manager = run.get(0).getMng();
+        byte[][] buffers = new byte[run.size()][];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = run.get(i).getBuffer();
+
+        CacheableData[] pages;
+
+        try {
+            long start = System.nanoTime();
+            // batched reads move the channel position
+            ReentrantLock lock = channelLocks.of(manager);
+            lock.lock();
+            try {
+                pages = manager.readPagesFromResource(buffers, run.get(0).getPageNumber());
+            } finally {
+                lock.unlock();
             }
+            deviceTime.record(System.nanoTime() - start);
+        } catch (IOException | RuntimeException ex) {
+            // read the pages one by one, so that every request gets its own error
+            for (Request request : run)
+                read(request);
+            return;
+        }
+
+        for (int i = 0; i < pages.length; i++)
+            run.get(i).complete(pages[i]);
+    }
 
+    private void read(Request request) {
+
+        try {
+            ResourceManager manager = request.getMng();
+            long start = System.nanoTime();
+            CacheableData page = manager.readPageFromResource(request.getBuffer(), request.getPageNumber());
+            deviceTime.record(System.nanoTime() - start);
+            request.complete(page);
+        } catch (IOException ex) {
+            request.fail(ex);
+        } catch (RuntimeException ex) {
+            request.fail(new IOException("Page " + request.getPageNumber() + " could not be read.", ex));
         }
-        return result;
     }
 
+    private void cancel(Request request, String reason) {
 
-    public void stopThread() {
-        running = false;
+        request.fail(new IOException(reason));
+    }
+
+
+    public void addRequest(Request request) {
+
+        queue.add(request);
+
+        // the worker may have drained the queue already
+        if (!running && queue.remove(request))
+            cancel(request, "The buffer pool has been closed.");
+
+    }
 
+    /**
+     * Gets the number of queued reads.
+     */
+    public int getQueueDepth() {
+        return queue.size();
     }
 
+    /**
+     * Promotes the request to a demand read, if it is a prefetch that is still queued.
+     */
+    public void promote(Request request) {
 
-    public Queue<Request> getQueue() {
-        return queue;
+        if (request.isPrefetch())
+            queue.promote(request);
     }
 
-    public void setQueue(ConcurrentLinkedQueue<Request> queue) {
-        this.queue = queue;
+    /**
+     * Cancels the queued prefetches for the resource that the owner alone issued. Prefetches that
+     * are being read complete.
+     */
+    public void cancelPrefetches(int id, Object owner) {
+
+        for (Request req : queue) {
+            if (req.isPrefetch() && req.getId() == id && ((PrefetchRequest) req).isOwnedBy(owner)
+                    && queue.remove(req))
+                cancel(req, "The prefetch has been canceled.");
+        }
+    }
+
+    public void stopThread() {
+
+        running = false;
+        queue.add(stop);
     }
 }
@@ -2,50 +2,162 @@ package de.tuberlin.dima.minidb.io.manager;
 
 
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageTable;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
 
 /**
  * Created by arbuzinside on 11.11.2015.
+ * <p/>
+ * A write worker of the buffer pool. The worker blocks on its queue while there is nothing to
+ * write, and writes with the positional writes of the resource managers. An evicted page stays
+ * visible to <code>getRequest</code> until it is written, so that the buffer pool takes it back
+ * into the cache instead of reading the old version from disk. When the worker stops, it writes
+ * the pages that are still queued before it exits.
+ * <p/>
+ * Like the read workers, the worker takes all queued requests at once and sweeps over them in page
+ * order, writing consecutive pages of a resource with one batched write. A batched write holds the
+ * channel lock of the manager (see {@link ChannelLocks}). Writes of the same page
+ * keep their order.
+ * <p/>
+ * The write-backs of evicted pages go before the writes of the background writer and the
+ * checkpoints (see {@link IOPriority}). A queued flush of a page is promoted when a write-back of
+ * the same page is queued, so that the older version is not written last.
+ * <p/>
+ * The worker records how long every request was queued and how long every write took.
+ * <p/>
+ * The worker is woken up to stop by a marker in its queue rather than by an interrupt, because an
+ * interrupt during a write closes the channel of the resource.
  */
 public class IOwrite implements Runnable {
 
 
-    private Queue<Request> queue;
+    // wakes up the worker to stop
+    private final Request stop = new WriteRequest(-1, -1, null, null, null);
+
+    private final RequestQueue queue;
+
+    // the requests that are queued or being written, by PageTable.key of their page
+    private final Map<Long, List<Request>> pending;
+
+    private final ChannelLocks channelLocks;
+
+    private final Logger logger;
+
+    private final LatencyHistogram waitTime;
+    private final LatencyHistogram deviceTime;
+
     private volatile boolean running;
 
-    public IOwrite() {
+    public IOwrite(ChannelLocks channelLocks, Logger logger, LatencyHistogram waitTime, LatencyHistogram deviceTime) {
 
-        this.setQueue(new LinkedBlockingQueue<Request>());
+        this.queue = new RequestQueue(false);
+        this.pending = new HashMap<>();
+        this.channelLocks = channelLocks;
+        this.logger = logger;
+        this.waitTime = waitTime;
+        this.deviceTime = deviceTime;
         this.running = true;
 
     }
 
     public void run() {
 
-        Request request;
+        List<Request> batch = new ArrayList<>();
+
         while (running) {
-            request = getQueue().peek();
-
-            if (request != null) {
-                synchronized (request) {
-                    try {
-                        ResourceManager manager = request.getMng();
-
-                        synchronized (manager) {
-                            manager.writePageToResource(request.getBuffer(), request.getData());
-                        }
-                        getQueue().remove(request);
-                        request.setCompleted(true);
-                    } catch (IOException ex) {
-                        System.out.println(ex.getMessage() + request.getId());
-                    } finally {
-                        request.notifyAll();
-                    }
-                }
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                continue;
             }
+
+            writeBatch(batch);
+        }
+
+        // write the pages that were evicted before the buffer pool closed
+        while (!queue.isEmpty())
+            writeBatch(batch);
+    }
+
+    private void writeBatch(List<Request> batch) {
+
+        queue.drainTo(batch, BufferPoolManager.MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE);
+        batch.remove(stop);
+
+        long now = System.nanoTime();
+        for (Request request : batch)
+            waitTime.record(now - request.getQueuedAt());
+
+        for (List<Request> run : Elevator.runs(batch, BufferPoolManager.MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE))
+            write(run);
+
+        batch.clear();
+    }
+
+    private void write(List<Request> run) {
+
+        if (run.size() == 1) {
+            write(run.get(0));
+            return;
+        }
+
+        ResourceManager manager = run.get(0).getMng();
+        byte[][] buffers = new byte[run.size()][];
+        CacheableData[] pages = new CacheableData[run.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = run.get(i).getBuffer();
+            pages[i] = run.get(i).getData();
+        }
+
+        try {
+            long start = System.nanoTime();
+            // batched writes move the channel position
+            ReentrantLock lock = channelLocks.of(manager);
+            lock.lock();
+            try {
+                manager.writePagesToResource(buffers, pages);
+            } finally {
+                lock.unlock();
+            }
+            deviceTime.record(System.nanoTime() - start);
+        } catch (IOException | RuntimeException ex) {
+            // write the pages one by one, so that only the failing ones are lost
+            for (Request request : run)
+                write(request);
+            return;
+        }
+
+        for (Request request : run) {
+            request.complete(null);
+            removePending(request);
+        }
+    }
+
+    private void write(Request request) {
+
+        try {
+            ResourceManager manager = request.getMng();
+            long start = System.nanoTime();
+            manager.writePageToResource(request.getBuffer(), request.getData());
+            deviceTime.record(System.nanoTime() - start);
+            request.complete(null);
+        } catch (IOException ex) {
+            logger.severe("Page " + request.getPageNumber() + " of resource " + request.getId()
+                    + " could not be written: " + ex.getMessage());
+            request.fail(ex);
+        } catch (RuntimeException ex) {
+            logger.severe("Page " + request.getPageNumber() + " of resource " + request.getId()
+                    + " could not be written: " + ex);
+            request.fail(new IOException(ex));
+        } finally {
+            removePending(request);
         }
     }
 
@@ -53,33 +165,99 @@ public class IOwrite implements Runnable {
     public void stopThread() {
 
         running = false;
+        queue.add(stop);
+    }
 
-
+    /**
+     * Gets the number of queued writes.
+     */
+    public int getQueueDepth() {
+        return queue.size();
     }
 
     public void addRequest(Request request) {
-        this.getQueue().add(request);
+
+        long key = PageTable.key(request.getId(), request.getPageNumber());
+        synchronized (pending) {
+            List<Request> requests = pending.get(key);
+            if (requests == null) {
+                requests = new ArrayList<>(2);
+                pending.put(key, requests);
+            }
+
+            if (!(request instanceof FlushRequest)) {
+                for (Request req : requests) {
+                    if (req instanceof FlushRequest)
+                        promote(req);
+                }
+            }
+            requests.add(request);
+        }
+        queue.add(request);
     }
 
+    private void removePending(Request request) {
 
-    public Queue<Request> getQueue() {
-        return queue;
+        long key = PageTable.key(request.getId(), request.getPageNumber());
+        synchronized (pending) {
+            List<Request> requests = pending.get(key);
+            if (requests != null && requests.remove(request) && requests.isEmpty())
+                pending.remove(key);
+        }
     }
 
-    public void setQueue(LinkedBlockingQueue<Request> queue) {
-        this.queue = queue;
+    /**
+     * Promotes the request to a write-back, if it is a flush that is still queued.
+     */
+    public void promote(Request request) {
+
+        if (request.getPriority() == IOPriority.FLUSH)
+            queue.promote(request);
     }
 
 
+    /**
+     * Checks whether a write of the evicted page is queued or in progress.
+     */
+    public boolean isWriteBackPending(int id, int pageNumber) {
+
+        synchronized (pending) {
+            List<Request> requests = pending.get(PageTable.key(id, pageNumber));
+            if (requests != null) {
+                for (Request req : requests) {
+                    if (!(req instanceof FlushRequest))
+                        return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gets the page of a queued write of an evicted page. The frame of the page then stays with the
+     * requester rather than going back to the buffer pool after the write (see
+     * {@link WriteRequest#handOut()}).
+     *
+     * @return The page, or null, if no write of the page is queued.
+     */
     public CacheableData getRequest(int id, int pageNumber) {
 
         CacheableData data = null;
 
-        for (Request req : queue) {
-            if (req.getId() == id && req.getPageNumber() == pageNumber)
-                data = req.getData();
+        synchronized (pending) {
+            List<Request> requests = pending.get(PageTable.key(id, pageNumber));
+            if (requests == null)
+                return null;
 
+            for (Request req : requests) {
+                // the page of a flush stays in the cache, its frame is reused once it is evicted
+                if (!(req instanceof FlushRequest)) {
+                    CacheableData handed = ((WriteRequest) req).handOut();
+                    if (handed != null)
+                        data = handed;
+                }
+            }
         }
         return data;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with buckets of powers of two microseconds. Bucket <i>i</i> counts the
+ * latencies below 2<sup>i</sup> microseconds that do not fall into a lower bucket, the last bucket
+ * counts all longer latencies. Recording does not lock, so the I/O threads record every operation.
+ */
+public final class LatencyHistogram {
+
+
+    /**
+     * The number of buckets.
+     */
+    public static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder totalMicros = new LongAdder();
+
+    private final AtomicLong maxMicros = new AtomicLong();
+
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        totalMicros.add(micros);
+
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros))
+            max = maxMicros.get();
+    }
+
+    /**
+     * Takes a snapshot of the histogram. Latencies recorded meanwhile may be partially included.
+     */
+    public Snapshot snapshot() {
+
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = counts.get(i);
+
+        return new Snapshot(buckets, totalMicros.sum(), maxMicros.get());
+    }
+
+
+    /**
+     * The recorded latencies at one point in time.
+     */
+    public static final class Snapshot {
+
+        private final long[] buckets;
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+
+
+        Snapshot(long[] buckets, long totalMicros, long maxMicros) {
+
+            long count = 0;
+            for (long bucket : buckets)
+                count += bucket;
+
+            this.buckets = buckets;
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+        }
+
+
+        /**
+         * Gets the number of latencies in every bucket.
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getMedianMicros() {
+            return getPercentileMicros(0.5);
+        }
+
+        public long getP90Micros() {
+            return getPercentileMicros(0.9);
+        }
+
+        public long getP99Micros() {
+            return getPercentileMicros(0.99);
+        }
+
+        /**
+         * Gets an upper bound of the given percentile: the upper end of the bucket that holds it,
+         * but at most the maximal latency.
+         *
+         * @param fraction The percentile, between 0 and 1.
+         * @return The bound in microseconds, or 0, if nothing has been recorded.
+         */
+        public long getPercentileMicros(double fraction) {
+
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0)
+                    return i == buckets.length - 1 ? maxMicros : Math.min(1L << i, maxMicros);
+            }
+            return 0;
+        }
+    }
+}
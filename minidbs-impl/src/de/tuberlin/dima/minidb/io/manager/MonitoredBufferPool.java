@@ -0,0 +1,17 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+/**
+ * A buffer pool that counts its cache hits, misses and evictions and measures its I/O, so that the
+ * cache sizes and the number of I/O buffers can be chosen from data. The same metrics are
+ * published as a JMX MBean (see {@link BufferPoolMXBean}) while the I/O threads run.
+ */
+public interface MonitoredBufferPool extends BufferPoolManager {
+
+    /**
+     * Takes a snapshot of the metrics of the buffer pool. The counters start at zero when the
+     * buffer pool is created.
+     *
+     * @return The metrics.
+     */
+    BufferPoolStatistics getStatistics();
+}
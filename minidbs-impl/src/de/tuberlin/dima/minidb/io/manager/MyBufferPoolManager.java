@@ -4,10 +4,35 @@ package de.tuberlin.dima.minidb.io.manager;
 import de.tuberlin.dima.minidb.Config;
 import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
 import de.tuberlin.dima.minidb.io.cache.*;
-
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Vector;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 
@@ -21,18 +46,82 @@ import java.util.logging.Logger;
  * <p/>
  * General mechanism of synchronization:
  * <ul>
- * <li>All accesses to one of the caches are synchronized on that specific cache object.</li>
- * <li>All accesses to the load and write queue are synchronized through a central lock or monitor.
+ * <li>The caches, which the extension factory creates, are thread safe themselves. The default ones are
+ * partitioned into independently locked segments
+ * (see {@link de.tuberlin.dima.minidb.io.cache.StripedPageCache}), so concurrent hits on different
+ * pages do not serialize on a single monitor.</li>
+ * <li>Reads and writes are handled by pools of I/O threads (see <tt>NUM_IO_THREADS</tt>), each of which
+ * blocks on its own queue. The requests for a resource always go to the same thread, so the requests
+ * for different resources are handled in parallel.</li>
  * <li>When adding an item that was not found in the cache to the queues, the cache lock
  * must not be released in the meantime to make sure that a cache miss and the addition
  * to the queues remains atomic.</li>
  * <li>When removing pages from the queues and adding them to the cache, the operation must
  * hold both the cache and the monitor lock before starting to remove the pages.</li>
  * </ul>
+ * <p/>
+ * Page buffers come from a {@link FrameArena} per page size. A page that is read or created takes a
+ * frame from the arena and hands it to the cache, and the buffer of the entry that the cache evicts
+ * goes back to the arena in exchange, so no buffers are allocated per I/O in a warm buffer pool. The
+ * cache takes the buffers it hands out for its empty slots from the arena as well.
+ * The buffer of a modified entry goes back once the entry is written, unless a requester has taken
+ * the page from the queued write; only then is the frame replaced with a new one.
+ * <p/>
+ * Page requests are observed by a {@link SequentialDetector}. Pages that are read from disk as
+ * part of a sequential stream are added to scan aware caches with the scan hint, so that large
+ * table scans do not displace frequently used pages (see <tt>CACHE_SCAN_RESISTANCE</tt>).
+ * <p/>
+ * Demand requests are also observed by a {@link ReadAhead}, which prefetches the pages ahead of
+ * sequential and strided request streams with a growing window (see <tt>READ_AHEAD_MAX_PAGES</tt>).
+ * <p/>
+ * A page that is not in the cache is read only once, however many threads miss on it at the same
+ * time. The reads in flight are kept in a table keyed by resource and page number. The first
+ * requester issues the read, later requesters wait for that read and then pin the page in the cache.
+ * The I/O thread adds the page to the cache exactly once, pinned for the requester that issued the
+ * read, before it completes the request.
+ * <p/>
+ * The asynchronous requests of {@link AsyncBufferPool} issue and join the reads like the blocking
+ * ones. Their futures are completed on the common fork-join pool, so that dependent stages never
+ * run on, and block, an I/O thread. With <tt>IO_VIRTUAL_THREADS</tt>, every completion runs on a
+ * virtual thread instead (see {@link IOThreads}). Requests that have to wait for a frame or a write
+ * block, they run on a bounded pool of their own, or on virtual threads, rather than on the common
+ * pool. The caches, the frame arenas and the batched reads and writes of
+ * a resource (see {@link ChannelLocks}) wait on locks rather than monitors for the same reason.
+ * <p/>
+ * Prefetches are queued on the read threads behind the demand reads and are dropped, rather than
+ * waiting, once half of the I/O buffers are taken by prefetches or no frame is free. They are reads
+ * in flight like the others, and a request that waits for a queued prefetch promotes it.
+ * <p/>
+ * The workers handle their queues by priority class: demand reads before prefetches, and the
+ * write-backs of evicted pages before the writes of the background writer (see {@link IOPriority}).
+ * The reads of a class are shared fairly among the requesting threads, so that the prefetches and
+ * the read-ahead of a large scan do not hold up the lookups of another session.
+ * <p/>
+ * If <tt>FLUSH_INTERVAL</tt> or <tt>CHECKPOINT_INTERVAL</tt> is configured, a {@link FlushTask}
+ * writes modified pages in the background. Whenever more than
+ * <tt>FLUSH_DIRTY_PERCENT</tt> of the pages of a cache are modified, it copies the modified pages
+ * at the cold end of the cache into spare I/O buffers, marks them unmodified and lets the write
+ * threads write the copies in page order. The pages the cache evicts are therefore mostly clean.
+ * The task also takes a checkpoint every <tt>CHECKPOINT_INTERVAL</tt>, which writes all modified
+ * pages the same way (see {@link CheckpointingBufferPool}). A page whose copy is still being
+ * written is not read from disk until the write is done, in case it has been evicted meanwhile, and
+ * the write is promoted to a write-back.
+ * <p/>
+ * At shutdown, the resident pages of warmable caches can be written to a {@link CacheManifest}.
+ * After the next start, a {@link WarmRestartLoader} reads them back in the background.
+ * <p/>
+ * If the caches of several page sizes are resizable, a {@link RebalanceTask} periodically moves
+ * memory from the cache that gains the least from it to the one that gains the most (see
+ * {@link CacheRebalancer}), so the configured cache sizes are only the initial split of the memory.
+ * <p/>
+ * The buffer pool counts the hits, misses, evictions and prefetch outcomes of every resource, and
+ * the I/O threads measure the wait and device times of the requests (see {@link BufferPoolStatistics}).
+ * While the I/O threads run, the metrics are also published as a {@link BufferPoolMXBean}.
  *
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
-public class MyBufferPoolManager implements BufferPoolManager {
+public class MyBufferPoolManager implements PrefetchingBufferPool, AsyncBufferPool, CheckpointingBufferPool,
+        WarmRestartable, MonitoredBufferPool {
     /**
      * The maximum number of requests that may be queued together. If multiple requests on the same
      * resource are found together, they are queued together and handled together in an "elevator" like
@@ -45,17 +134,60 @@ public class MyBufferPoolManager implements BufferPoolManager {
 
     private int numberIOBuffers;
 
-    private IOread readThread;
-    private IOwrite writeThread;
+    // bounds the frames held by prefetches, so that demand reads find free frames
+    private final Semaphore prefetchPermits;
+
+    private IOread[] readThreads;
+    private IOwrite[] writeThreads;
+
+    // keep the batched reads and writes of a resource from overlapping
+    private final ChannelLocks channelLocks = new ChannelLocks();
+
+    // null, if the cache sizes are fixed
+    private RebalanceTask rebalanceTask;
+
+    private final BufferPoolMetrics metrics = new BufferPoolMetrics();
+
+    // runs the completions of asynchronous requests
+    private final Executor completions;
+
+    // runs the asynchronous requests that wait for a frame or a write
+    private final ExecutorService blockingRequests;
+
+    // the reads that have been issued and whose page is not in the cache yet, see PageTable.key
+    private final ConcurrentHashMap<Long, ReadRequest> inFlight = new ConcurrentHashMap<>();
+
+    // null, if modified pages are only written when they are evicted
+    private FlushTask flushTask;
+
+    private final int flushDirtyPercent;
+
+    // the copies of resident pages that are being written, see PageTable.key
+    private final ConcurrentHashMap<Long, FlushRequest> flushing = new ConcurrentHashMap<>();
+
+    // serializes the checkpoints
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private long checkpointEpoch;
 
     private boolean isOpened;
 
     private HashMap<PageSize, PageCache> caches;
-    private HashMap<PageSize, Vector<byte[]>> buffers;
+    private HashMap<PageSize, FrameArena> buffers;
     private HashMap<Integer, ResourceManager> resourceManagers;
 
-    private Thread w;
-    private Thread r;
+    // null, if the caches are not scan resistant
+    private SequentialDetector scanDetector;
+
+    // null, if the buffer pool does not read ahead
+    private ReadAhead readAhead;
+
+    private Thread[] w;
+    private Thread[] r;
+    private Thread b;
+    private Thread f;
+
+    // the thread loading the pages of a cache manifest, null if none was loaded
+    private Thread warmUpThread;
 
 
     public MyBufferPoolManager(Config config, Logger logger) {
@@ -65,12 +197,32 @@ public class MyBufferPoolManager implements BufferPoolManager {
 
         this.resourceManagers = new HashMap<>();
         numberIOBuffers = config.getNumIOBuffers();
+        prefetchPermits = new Semaphore(Math.max(1, numberIOBuffers / 2));
 
         caches = new HashMap<>();
         buffers = new HashMap<>();
 
-        readThread = new IOread();
-        writeThread = new IOwrite();
+        int numberIOThreads = config.getNumIOThreads();
+        readThreads = new IOread[numberIOThreads];
+        writeThreads = new IOwrite[numberIOThreads];
+        for (int i = 0; i < numberIOThreads; i++) {
+            readThreads[i] = new IOread(channelLocks, metrics.readWaitTime, metrics.readDeviceTime);
+            writeThreads[i] = new IOwrite(channelLocks, logger, metrics.writeWaitTime, metrics.writeDeviceTime);
+        }
+
+        if (config.isIOVirtualThreads() && !IOThreads.isVirtualAvailable())
+            logger.warning("Virtual threads are not available in this Java runtime, using platform threads.");
+        completions = IOThreads.newCompletionExecutor(config.isIOVirtualThreads());
+        // a request waits for one frame at most, more threads than frames would only wait longer
+        blockingRequests = IOThreads.newBlockingExecutor(config.isIOVirtualThreads(), numberIOBuffers);
+
+        if (config.isCacheScanResistant())
+            scanDetector = new SequentialDetector();
+
+        if (config.getReadAheadMaxPages() > 0)
+            readAhead = new ReadAhead(config.getReadAheadMaxPages());
+
+        flushDirtyPercent = config.getFlushDirtyPercent();
 
         this.isOpened = true;
 
@@ -84,12 +236,32 @@ public class MyBufferPoolManager implements BufferPoolManager {
     public void startIOThreads() throws BufferPoolException {
 
 
-        r = new Thread(readThread);
-        w = new Thread(writeThread);
+        r = new Thread[readThreads.length];
+        w = new Thread[writeThreads.length];
 
-        r.start();
-        w.start();
+        for (int i = 0; i < r.length; i++) {
+            r[i] = new Thread(readThreads[i], "io-read-" + i);
+            w[i] = new Thread(writeThreads[i], "io-write-" + i);
+            r[i].start();
+            w[i].start();
+        }
+
+        // the background tasks get the pool once it is constructed
+        if (config.getCacheRebalanceInterval() > 0) {
+            rebalanceTask = new RebalanceTask(this, config.getCacheRebalanceInterval());
+            b = new Thread(rebalanceTask);
+            b.setDaemon(true);
+            b.start();
+        }
 
+        if (config.getFlushInterval() > 0 || config.getCheckpointInterval() > 0) {
+            flushTask = new FlushTask(this, config.getFlushInterval(), config.getCheckpointInterval(), logger);
+            f = new Thread(flushTask, "io-flush");
+            f.setDaemon(true);
+            f.start();
+        }
+
+        metrics.registerMBean(this, logger);
     }
 
     /**
@@ -108,11 +280,60 @@ public class MyBufferPoolManager implements BufferPoolManager {
      */
     public void closeBufferPool() {
 
-        readThread.stopThread();
-        writeThread.stopThread();
-        r.interrupt();
-        w.interrupt();
         isOpened = false;
+
+        // the background writer and the rebalancer must not queue writes once the write threads
+        // stop, they are interrupted while they sleep between their rounds
+        if (f != null) {
+            flushTask.stopThread();
+            f.interrupt();
+            join(f);
+        }
+
+        if (b != null) {
+            rebalanceTask.stopThread();
+            b.interrupt();
+            join(b);
+        }
+
+        // the I/O threads are woken up by a marker in their queues, since an interrupt during
+        // I/O closes the channel. The writers finish the queued writes first, the readers fail
+        // the queued reads.
+        for (int i = 0; i < readThreads.length; i++) {
+            readThreads[i].stopThread();
+            writeThreads[i].stopThread();
+        }
+
+        if (r != null) {
+            for (Thread writer : w)
+                join(writer);
+            for (Thread reader : r)
+                join(reader);
+        }
+
+        // the requests that wait for a frame or a write are interrupted and fail, the queued ones
+        // fail right away, since the buffer pool is closed
+        for (Runnable queued : blockingRequests.shutdownNow())
+            queued.run();
+
+        // the warm-up stops after the run it is reading, its buffers are free once the I/O
+        // threads are done
+        if (warmUpThread != null)
+            join(warmUpThread);
+
+        metrics.unregisterMBean();
+    }
+
+    /**
+     * Waits for a background thread of the buffer pool to end.
+     */
+    private static void join(Thread thread) {
+
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -130,7 +351,7 @@ public class MyBufferPoolManager implements BufferPoolManager {
      *                             registered with another handler or a cache needs to be created but
      *                             the creation fails.
      */
-    public void registerResource(int id, ResourceManager manager)
+    public synchronized void registerResource(int id, ResourceManager manager)
             throws BufferPoolException {
 
 
@@ -141,19 +362,29 @@ public class MyBufferPoolManager implements BufferPoolManager {
             throw new BufferPoolException("Current resource manager is already registered");
 
         resourceManagers.put(id, manager);
+        metrics.register(id);
 
         PageSize pageSize = manager.getPageSize();
 
 
         if (!caches.containsKey(pageSize)) {
-            PageCache cache =  AbstractExtensionFactory.getExtensionFactory().createPageCache(pageSize, this.config.getCacheSize(pageSize));
+            // the arena holds the frames of the cache slots besides the I/O buffers, the cache
+            // takes them for its empty slots
+            int cachePages = this.config.getCacheSize(pageSize);
+            FrameArena arena = new FrameArena(pageSize, numberIOBuffers + cachePages);
+
+            // the pool uses the scan, quota, flush and resize support of the cache, where it has it
+            PageCache cache = AbstractExtensionFactory.getExtensionFactory().createPageCache(pageSize, cachePages,
+                    this.config, arena);
             caches.put(pageSize, cache);
-            buffers.put(pageSize, new Vector<byte[]>());
+            buffers.put(pageSize, arena);
+        }
 
-            //init all buffers to buffer pool
-            for (int i = 0; i < numberIOBuffers; i++) {
-                buffers.get(pageSize).add(new byte[pageSize.getNumberOfBytes()]);
-            }
+        // let the cache apply the quotas of the resource's class
+        PageCache resourceCache = caches.get(pageSize);
+        if (resourceCache instanceof PartitionedPageCache) {
+            ResourceClass resourceClass = manager instanceof IndexResourceManager ? ResourceClass.INDEX : ResourceClass.TABLE;
+            ((PartitionedPageCache) resourceCache).assignResourceClass(id, resourceClass);
         }
 
 
@@ -199,20 +430,72 @@ public class MyBufferPoolManager implements BufferPoolManager {
         PageSize currentPageSize = currentManager.getPageSize();
 
 
-        //try to read from cache
-        synchronized (currentCache) {
-            page = currentCache.getPageAndPin(resourceId, pageNumber);
-        }
+        boolean scan = isScanRequest(resourceId, pageNumber);
+        readAhead(resourceId, pageNumber, currentManager, currentCache, scan);
 
+        //try to read from cache
+        page = currentCache.getPageAndPin(resourceId, pageNumber);
+        metrics.request(resourceId, pageNumber, page != null);
 
         if (page == null)
-            page = getPageFromDisk(resourceId, currentPageSize, pageNumber, currentManager);
+            page = getPageFromDisk(resourceId, currentPageSize, pageNumber, currentManager, currentCache, scan);
 
 
         return page;
 
     }
 
+    /**
+     * Fetches and pins a page without waiting for it. A hit completes the future right away, a
+     * miss issues an asynchronous read or joins the read of the page that is in flight already.
+     *
+     * @param resourceId The id of the resource.
+     * @param pageNumber The page number of the page to fetch.
+     * @return A future that yields the pinned page.
+     */
+    public CompletableFuture<CacheableData> getPageAndPinAsync(int resourceId, int pageNumber) {
+
+        ResourceManager currentManager = resourceManagers.get(resourceId);
+
+        if (currentManager == null || !isOpened) {
+            CompletableFuture<CacheableData> future = new CompletableFuture<>();
+            future.completeExceptionally(new BufferPoolException());
+            return future;
+        }
+
+        PageCache currentCache = caches.get(currentManager.getPageSize());
+
+        boolean scan = isScanRequest(resourceId, pageNumber);
+        readAhead(resourceId, pageNumber, currentManager, currentCache, scan);
+
+        CacheableData page = currentCache.getPageAndPin(resourceId, pageNumber);
+        metrics.request(resourceId, pageNumber, page != null);
+
+        if (page != null)
+            return CompletableFuture.completedFuture(page);
+
+        return getPageFromDiskAsync(resourceId, pageNumber, currentManager, currentCache, scan);
+    }
+
+    /**
+     * Fetches and pins several pages of a resource without waiting for them. The reads of the
+     * missing pages are queued one after the other, so the read thread coalesces consecutive
+     * pages into batched reads.
+     *
+     * @param resourceId  The id of the resource.
+     * @param pageNumbers The page numbers of the pages to fetch.
+     * @return One future per page number, in the order of the page numbers.
+     */
+    public List<CompletableFuture<CacheableData>> getPagesAndPinAsync(int resourceId, int[] pageNumbers) {
+
+        List<CompletableFuture<CacheableData>> futures = new ArrayList<>(pageNumbers.length);
+
+        for (int pageNumber : pageNumbers)
+            futures.add(getPageAndPinAsync(resourceId, pageNumber));
+
+        return futures;
+    }
+
     /**
      * Unpins a given page and in addition fetches another page from the same resource. This method works exactly
      * like the method {@link de.tuberlin.dima.minidb.io.BufferPoolManager#getPageAndPin(int, int)}, only that it
@@ -238,6 +521,9 @@ public class MyBufferPoolManager implements BufferPoolManager {
 
         CacheableData page;
 
+        if (!resourceManagers.containsKey(resourceId) || !isOpened)
+            throw new BufferPoolException();
+
         //get
         ResourceManager currentManager = resourceManagers.get(resourceId);
         //get cache for this size
@@ -245,21 +531,16 @@ public class MyBufferPoolManager implements BufferPoolManager {
 
         PageSize currentPageSize = currentManager.getPageSize();
 
-        synchronized (currentCache) {
-            currentCache.unpinPage(resourceId, unpinPageNumber);
-            page = currentCache.getPageAndPin(resourceId, getPageNumber);
-        }
-
-
-        if (page == null)
-            page = writeThread.getRequest(resourceId, getPageNumber);
+        boolean scan = isScanRequest(resourceId, getPageNumber);
+        readAhead(resourceId, getPageNumber, currentManager, currentCache, scan);
 
-        if (page == null)
-            page = readThread.getRequest(resourceId, getPageNumber);
+        currentCache.unpinPage(resourceId, unpinPageNumber);
+        page = currentCache.getPageAndPin(resourceId, getPageNumber);
 
+        metrics.request(resourceId, getPageNumber, page != null);
 
         if (page == null)
-            page = getPageFromDisk(resourceId, currentPageSize, getPageNumber, currentManager);
+            page = getPageFromDisk(resourceId, currentPageSize, getPageNumber, currentManager, currentCache, scan);
 
 
         return page;
@@ -268,47 +549,225 @@ public class MyBufferPoolManager implements BufferPoolManager {
     }
 
     /**
-     * function which retrieves page from the disk and adds to cache
+     * function which retrieves page from the disk and adds to cache. If a read of the page is in
+     * flight already, the function waits for it instead and pins the page it put into the cache.
      *
      * @param resourceId
      * @param currentPageSize
      * @param pageNumber
      * @param currentManager
+     * @param currentCache
+     * @param scan           whether the page is read as part of a sequential scan
      * @return
-     * @throws IOException
+     * @throws IOException         if the page could not be read
+     * @throws BufferPoolException if the buffer pool was closed while waiting for the page
      */
 
-    private CacheableData getPageFromDisk(int resourceId, PageSize currentPageSize, int pageNumber, ResourceManager currentManager)
-            throws IOException {
+    private CacheableData getPageFromDisk(int resourceId, PageSize currentPageSize, int pageNumber, ResourceManager currentManager,
+                                          PageCache currentCache, boolean scan)
+            throws IOException, BufferPoolException {
 
-        CacheableData page = null;
-        byte[] buffer;
+        Long key = PageTable.key(resourceId, pageNumber);
 
+        while (true) {
 
-        try {
+            ReadRequest pending = inFlight.get(key);
+
+            if (pending == null) {
+                awaitFlush(key);
+
+                CacheableData reclaimed = reclaimWriteBack(resourceId, pageNumber, currentCache, scan);
+                if (reclaimed != null)
+                    return reclaimed;
 
-            buffer = getBuffer(currentPageSize);
-            Request readRequest = new ReadRequest(resourceId, pageNumber, buffer, currentManager);
+                ReadRequest readRequest = new ReadRequest(resourceId, pageNumber, getBuffer(currentPageSize), currentManager,
+                        this, true, scan);
 
-            readThread.addRequest(readRequest);
-            synchronized (readRequest) {
-                while (!readRequest.isCompleted()) {
-                    readRequest.wait();
+                pending = inFlight.putIfAbsent(key, readRequest);
+
+                if (pending == null) {
+                    readerFor(resourceId).addRequest(readRequest);
+                    return awaitRead(readRequest);
                 }
+
+                putBuffer(currentPageSize, readRequest.getBuffer());
             }
 
-            page = readRequest.getResult();
-            addPageToCache(resourceId, page, true);
-            putBuffer(currentPageSize);
+            readerFor(resourceId).promote(pending);
 
+            try {
+                awaitRead(pending);
+            } catch (IOException ex) {
+                // a failed or canceled prefetch is no answer for a demand request
+                if (!(pending instanceof PrefetchRequest))
+                    throw ex;
+            }
 
-        } catch (Exception ex) {
-            throw new IOException("request interrupted");
+            // the page may have been evicted again before it could be pinned
+            CacheableData page = currentCache.getPageAndPin(resourceId, pageNumber);
+            if (page != null)
+                return page;
         }
+    }
 
-        return page;
+    /**
+     * Like <code>getPageFromDisk</code>, without waiting for the read.
+     */
+    private CompletableFuture<CacheableData> getPageFromDiskAsync(final int resourceId, final int pageNumber,
+                                                                  final ResourceManager currentManager,
+                                                                  final PageCache currentCache, final boolean scan) {
+
+        final PageSize currentPageSize = currentManager.getPageSize();
+        Long key = PageTable.key(resourceId, pageNumber);
+
+        ReadRequest pending = inFlight.get(key);
+
+        if (pending == null) {
+            CacheableData reclaimed = reclaimWriteBack(resourceId, pageNumber, currentCache, scan);
+            if (reclaimed != null)
+                return CompletableFuture.completedFuture(reclaimed);
+
+            byte[] buffer = flushing.containsKey(key) ? null : buffers.get(currentPageSize).tryAcquire();
+
+            // waiting for a frame or for the write of the page blocks, so leave that to its own threads
+            if (buffer == null) {
+                try {
+                    return CompletableFuture.supplyAsync(new Supplier<CacheableData>() {
+                        public CacheableData get() {
+                            if (!isOpened)
+                                throw new CompletionException(new BufferPoolException("The buffer pool has been closed."));
+                            try {
+                                return getPageFromDisk(resourceId, currentPageSize, pageNumber, currentManager, currentCache, scan);
+                            } catch (BufferPoolException | IOException ex) {
+                                throw new CompletionException(ex);
+                            }
+                        }
+                    }, blockingRequests);
+                } catch (RejectedExecutionException ex) {
+                    CompletableFuture<CacheableData> future = new CompletableFuture<>();
+                    future.completeExceptionally(new BufferPoolException("The buffer pool has been closed."));
+                    return future;
+                }
+            }
 
+            ReadRequest readRequest = new ReadRequest(resourceId, pageNumber, buffer, currentManager, this, true, scan);
 
+            pending = inFlight.putIfAbsent(key, readRequest);
+
+            if (pending == null) {
+                readerFor(resourceId).addRequest(readRequest);
+
+                return readRequest.getCompletion().handleAsync(new BiFunction<CacheableData, Throwable, CacheableData>() {
+                    public CacheableData apply(CacheableData page, Throwable error) {
+                        if (error != null)
+                            throw new CompletionException(readFailure(error));
+                        return page;
+                    }
+                }, completions);
+            }
+
+            putBuffer(currentPageSize, buffer);
+        }
+
+        readerFor(resourceId).promote(pending);
+
+        final boolean prefetch = pending instanceof PrefetchRequest;
+
+        return pending.getCompletion().handleAsync(new BiFunction<CacheableData, Throwable, CompletableFuture<CacheableData>>() {
+            public CompletableFuture<CacheableData> apply(CacheableData ignored, Throwable error) {
+                if (error != null && (!prefetch || !isOpened))
+                    throw new CompletionException(readFailure(error));
+
+                CacheableData page = currentCache.getPageAndPin(resourceId, pageNumber);
+                if (page != null)
+                    return CompletableFuture.completedFuture(page);
+
+                return getPageFromDiskAsync(resourceId, pageNumber, currentManager, currentCache, scan);
+            }
+        }, completions).thenCompose(Function.<CompletableFuture<CacheableData>>identity());
+    }
+
+    /**
+     * Takes an evicted page back from its queued write and puts it into the cache again, pinned. The
+     * page stays modified, so it is written again once it is evicted again. Reading it from disk
+     * instead would return the version before the modification, as long as the write is queued.
+     *
+     * @return the page, or null, if no write of the evicted page is queued
+     */
+    private CacheableData reclaimWriteBack(int resourceId, int pageNumber, PageCache currentCache, boolean scan) {
+
+        while (true) {
+            CacheableData queued = writerFor(resourceId).getRequest(resourceId, pageNumber);
+            if (queued == null)
+                return null;
+
+            try {
+                EvictedCacheEntry evicted;
+                if (scan && currentCache instanceof ScanAwarePageCache)
+                    evicted = ((ScanAwarePageCache) currentCache).addScanPageAndPin(queued, resourceId);
+                else
+                    evicted = currentCache.addPageAndPin(queued, resourceId);
+
+                putBuffer(resourceManagers.get(resourceId).getPageSize(), handleEvicted(evicted));
+                return queued;
+            } catch (DuplicateCacheEntryException ex) {
+                // another requester has taken it back already
+                CacheableData page = currentCache.getPageAndPin(resourceId, pageNumber);
+                if (page != null)
+                    return page;
+                // and it has been evicted again since
+            } catch (CachePinnedException ex) {
+                // the requester keeps the page without the cache, its frame does not come back
+                buffers.get(resourceManagers.get(resourceId).getPageSize()).replace();
+                return queued;
+            }
+        }
+    }
+
+    /**
+     * Waits for a read in flight.
+     *
+     * @return the page, pinned, if the waiting thread issued the read
+     */
+    private CacheableData awaitRead(ReadRequest readRequest) throws IOException, BufferPoolException {
+
+        try {
+            return readRequest.awaitResult();
+        } catch (IOException ex) {
+            if (!isOpened)
+                throw new BufferPoolException("The buffer pool has been closed.");
+            throw ex;
+        } catch (InterruptedException ex) {
+            throw new BufferPoolException("Interrupted while waiting for page " + readRequest.getPageNumber());
+        }
+    }
+
+    /**
+     * Waits until the copy of the page that is being written, if any, is written.
+     */
+    private void awaitFlush(Long key) throws BufferPoolException {
+
+        FlushRequest flush = flushing.get(key);
+        if (flush == null)
+            return;
+
+        writerFor(flush.getId()).promote(flush);
+
+        try {
+            flush.awaitResult();
+        } catch (IOException ex) {
+            // the write thread has reported it, the page is marked modified again if still resident
+        } catch (InterruptedException ex) {
+            throw new BufferPoolException("Interrupted while waiting for page " + PageTable.pageNumberOf(key));
+        }
+    }
+
+    /**
+     * Gets the error with which a request for a page fails, because the read failed.
+     */
+    private Throwable readFailure(Throwable error) {
+
+        return isOpened ? error : new BufferPoolException("The buffer pool has been closed.");
     }
 
     /**
@@ -326,9 +785,7 @@ public class MyBufferPoolManager implements BufferPoolManager {
         //get cache for this size
         PageCache currentCache = caches.get(currentManager.getPageSize());
 
-        synchronized (currentCache) {
-            currentCache.unpinPage(resourceId, pageNumber);
-        }
+        currentCache.unpinPage(resourceId, pageNumber);
 
     }
 
@@ -352,8 +809,13 @@ public class MyBufferPoolManager implements BufferPoolManager {
     public void prefetchPage(int resourceId, int pageNumber)
             throws BufferPoolException {
 
+        prefetchPage(resourceId, pageNumber, null);
+    }
+
+    private void prefetchPage(int resourceId, int pageNumber, Object owner)
+            throws BufferPoolException {
+
         CacheableData page;
-        byte[] buffer;
 
         if (!resourceManagers.containsKey(resourceId) || !isOpened)
             throw new BufferPoolException();
@@ -367,20 +829,262 @@ public class MyBufferPoolManager implements BufferPoolManager {
         PageSize currentPageSize = currentManager.getPageSize();
 
 
-        synchronized (currentCache) {
-            page = currentCache.getPage(resourceId, pageNumber); // hit included
+        boolean scan = isScanRequest(resourceId, pageNumber);
+
+        page = currentCache.getPage(resourceId, pageNumber); // hit included
+
+        if (page == null)
+            queuePrefetch(resourceId, pageNumber, currentManager, scan, owner);
+    }
+
+    /**
+     * Queues a prefetch of the page, unless a read of it is in flight already. A prefetch is a hint,
+     * it is dropped rather than waiting for a permit or a frame.
+     *
+     * @param owner The object that issues the prefetch, null for the read-ahead.
+     */
+    private void queuePrefetch(int resourceId, int pageNumber, ResourceManager manager, boolean scan, Object owner) {
+
+        Long key = PageTable.key(resourceId, pageNumber);
+
+        ReadRequest pending = inFlight.get(key);
+        if (pending != null) {
+            // the owner must not cancel a prefetch that someone else asked for as well
+            if (pending instanceof PrefetchRequest)
+                ((PrefetchRequest) pending).share(owner);
+            return;
+        }
+
+        if (flushing.containsKey(key) || writerFor(resourceId).isWriteBackPending(resourceId, pageNumber)
+                || !prefetchPermits.tryAcquire())
+            return;
+
+        byte[] buffer = buffers.get(manager.getPageSize()).tryAcquire();
+        if (buffer == null) {
+            prefetchPermits.release();
+            return;
+        }
+
+        PrefetchRequest prefetch = new PrefetchRequest(resourceId, pageNumber, buffer, manager, this, scan, owner);
+
+        pending = inFlight.putIfAbsent(key, prefetch);
+        if (pending != null) {
+            if (pending instanceof PrefetchRequest)
+                ((PrefetchRequest) pending).share(owner);
+            putBuffer(manager.getPageSize(), buffer);
+            prefetchPermits.release();
+            return;
         }
 
-        if (page == null) {
+        metrics.prefetchQueued(resourceId, pageNumber);
+        readerFor(resourceId).addRequest(prefetch);
+    }
+
+    /**
+     * Prefetches the pages ahead of the request, if it continues a sequential or strided stream.
+     * Resident pages are skipped without counting as a hit.
+     */
+    private void readAhead(int resourceId, int pageNumber, ResourceManager manager, PageCache cache, boolean scan) {
+
+        if (readAhead == null)
+            return;
+
+        int[] pages = readAhead.onRequest(resourceId, pageNumber);
+        if (pages == null)
+            return;
+
+        int lastPage;
+        if (manager instanceof TableResourceManager)
+            lastPage = ((TableResourceManager) manager).getLastDataPageNumber();
+        else if (manager instanceof IndexResourceManager)
+            lastPage = ((IndexResourceManager) manager).getLastPageNumber();
+        else
+            lastPage = Integer.MAX_VALUE;
 
-            buffer = getBuffer(currentPageSize);
-            ReadRequest request = new ReadRequest(resourceId, pageNumber, buffer, currentManager);
-            Runnable readOnce = new ReadOnce(request, currentCache);
-            new Thread(readOnce).start();
-            putBuffer(currentPageSize);
+        for (int ahead : pages) {
+            if (ahead > lastPage)
+                break;
+
+            boolean resident = cache instanceof ScanAwarePageCache
+                    ? ((ScanAwarePageCache) cache).containsPage(resourceId, ahead)
+                    : cache.getPage(resourceId, ahead) != null;
+
+            if (!resident)
+                queuePrefetch(resourceId, ahead, manager, scan, null);
         }
+    }
 
+    /**
+     * Cancels the queued prefetches for the resource that the owner alone issued.
+     *
+     * @param resourceId The id of the resource.
+     * @param owner      The object that issued the prefetches.
+     */
+    public void cancelPrefetches(int resourceId, Object owner) {
 
+        if (resourceManagers.containsKey(resourceId))
+            readerFor(resourceId).cancelPrefetches(resourceId, owner);
+    }
+
+    /**
+     * Writes modified pages at the cold end of every cache in which the share of modified pages
+     * exceeds <tt>FLUSH_DIRTY_PERCENT</tt>. The copies take at most half of the free I/O buffers,
+     * so that demand reads still find frames.
+     */
+    void flushModifiedPages() {
+
+        for (Map.Entry<PageSize, FlushablePageCache> entry : flushableCaches().entrySet()) {
+            FlushablePageCache cache = entry.getValue();
+
+            if (!isOpened)
+                return;
+            if (cache.getNumberOfModifiedPages() * 100L <= (long) flushDirtyPercent * cache.getCapacity())
+                continue;
+
+            PageSize pageSize = entry.getKey();
+            int frames = Math.min(MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE, buffers.get(pageSize).getNumFreeFrames() / 2);
+
+            FlushBatch batch = new FlushBatch(takeFrames(pageSize, frames), true);
+            cache.collectModifiedPages(batch);
+            queueFlushes(pageSize, batch);
+        }
+    }
+
+    /**
+     * Writes all modified pages that are not pinned and waits until they are written. A page that
+     * the background writer has copied already counts as clean, so the checkpoint also waits for
+     * the copies that are still being written.
+     * <p/>
+     * The pages modified when the checkpoint begins are marked, and the checkpoint goes on until
+     * it has taken all marked pages that are still modified and unpinned. Every round waits for at
+     * least one free frame, frames come back as the copies of the earlier rounds are written.
+     *
+     * @return The epoch the checkpoint began.
+     * @throws BufferPoolException Thrown, if the buffer pool is closed, or the thread is interrupted
+     *                             while waiting for the writes.
+     * @throws IOException         Thrown, if a page could not be written.
+     */
+    public long checkpoint() throws BufferPoolException, IOException {
+
+        checkpointLock.lock();
+        try {
+            if (!isOpened)
+                throw new BufferPoolException();
+
+            long epoch = ++checkpointEpoch;
+            List<FlushRequest> requests = new ArrayList<>();
+
+            for (Map.Entry<PageSize, FlushablePageCache> entry : flushableCaches().entrySet()) {
+                PageSize pageSize = entry.getKey();
+                FlushablePageCache cache = entry.getValue();
+
+                // pages that are modified while the checkpoint runs must not keep it going
+                PageTable marked = new PageTable(Math.max(16, cache.getNumberOfModifiedPages()));
+                cache.collectModifiedPages(FlushBatch.marking(marked));
+
+                // a round that takes no page leaves only marked pages that are pinned, evicted or
+                // taken by the background writer
+                while (marked.size() > 0) {
+                    byte[] frame = getBuffer(pageSize);
+                    int frames = Math.min(MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE - 1, buffers.get(pageSize).getNumFreeFrames() / 2);
+                    byte[][] copies = takeFrames(pageSize, frames);
+                    copies = Arrays.copyOf(copies, copies.length + 1);
+                    copies[copies.length - 1] = frame;
+
+                    FlushBatch batch = new FlushBatch(copies, marked);
+                    cache.collectModifiedPages(batch);
+                    requests.addAll(queueFlushes(pageSize, batch));
+
+                    if (batch.size() == 0)
+                        break;
+                }
+            }
+
+            // copies taken by the background writer before the pages were collected
+            requests.addAll(flushing.values());
+
+            IOException failure = null;
+
+            for (FlushRequest request : requests) {
+                try {
+                    request.awaitResult();
+                } catch (IOException ex) {
+                    failure = ex;
+                } catch (InterruptedException ex) {
+                    throw new BufferPoolException("Interrupted while waiting for checkpoint " + epoch);
+                }
+            }
+
+            if (failure != null)
+                throw new IOException("Checkpoint " + epoch + " could not write all modified pages.", failure);
+
+            return epoch;
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private Map<PageSize, FlushablePageCache> flushableCaches() {
+
+        Map<PageSize, FlushablePageCache> flushable = new HashMap<>();
+
+        synchronized (this) {
+            for (Map.Entry<PageSize, PageCache> entry : caches.entrySet()) {
+                if (entry.getValue() instanceof FlushablePageCache)
+                    flushable.put(entry.getKey(), (FlushablePageCache) entry.getValue());
+            }
+        }
+        return flushable;
+    }
+
+    /**
+     * Takes up to the given number of frames, without waiting.
+     */
+    private byte[][] takeFrames(PageSize pageSize, int count) {
+
+        FrameArena arena = buffers.get(pageSize);
+        List<byte[]> frames = new ArrayList<>(count);
+
+        for (byte[] frame; frames.size() < count && (frame = arena.tryAcquire()) != null; )
+            frames.add(frame);
+
+        return frames.toArray(new byte[frames.size()][]);
+    }
+
+    /**
+     * Queues the writes of the copies in the batch and pays back the unused frames.
+     */
+    private List<FlushRequest> queueFlushes(PageSize pageSize, FlushBatch batch) {
+
+        List<FlushRequest> requests = new ArrayList<>(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            int resourceId = batch.getResourceId(i);
+            FlushRequest request = new FlushRequest(resourceId, batch.getFrame(i), resourceManagers.get(resourceId),
+                    batch.getPage(i), this);
+
+            flushing.put(PageTable.key(resourceId, request.getPageNumber()), request);
+            writerFor(resourceId).addRequest(request);
+            requests.add(request);
+        }
+
+        for (byte[] frame : batch.getUnusedFrames())
+            putBuffer(pageSize, frame);
+
+        return requests;
+    }
+
+    /**
+     * Pays back the frame of a written copy. A copy that could not be written leaves its page
+     * modified.
+     */
+    void finishFlush(FlushRequest request, boolean written) {
+
+        if (!written)
+            request.getPage().markModified();
+
+        putBuffer(request.getMng().getPageSize(), request.getBuffer());
+        flushing.remove(PageTable.key(request.getId(), request.getPageNumber()), request);
     }
 
     /**
@@ -397,14 +1101,28 @@ public class MyBufferPoolManager implements BufferPoolManager {
             throws BufferPoolException {
 
 
+        prefetchPages(resourceId, startPageNumber, endPageNumber, null);
+    }
+
+    /**
+     * Prefetches a sequence of pages for the owner, which can cancel the prefetches with
+     * {@link #cancelPrefetches(int, Object)}.
+     *
+     * @param resourceId      The id of the resource.
+     * @param startPageNumber The page number of the first page to prefetch.
+     * @param endPageNumber   The page number of the last page to prefetch.
+     * @param owner           The object that issues the prefetches.
+     * @throws BufferPoolException If the buffer pool is closed, or the resource is not registered.
+     */
+    public void prefetchPages(int resourceId, int startPageNumber, int endPageNumber, Object owner)
+            throws BufferPoolException {
+
         if (!resourceManagers.containsKey(resourceId) || !isOpened)
             throw new BufferPoolException();
 
         for (int i = startPageNumber; i <= endPageNumber; i++) {
-            prefetchPage(resourceId, i);
+            prefetchPage(resourceId, i, owner);
         }
-
-
     }
 
 
@@ -442,19 +1160,18 @@ public class MyBufferPoolManager implements BufferPoolManager {
 
 
         buffer = getBuffer(currentPageSize);
+        byte[] spare = buffer;
 
         try {
-            synchronized (currentManager) {
-                page = currentManager.reserveNewPage(buffer);
-            }
+            page = currentManager.reserveNewPage(buffer);
 
-            addPageToCache(resourceId, page, true);
-            putBuffer(currentPageSize);
+            spare = addPageToCache(resourceId, page, true, false);
 
 
         } catch (Exception ex) {
             throw new IOException();
-
+        } finally {
+            putBuffer(currentPageSize, spare);
         }
 
         return page;
@@ -498,17 +1215,17 @@ public class MyBufferPoolManager implements BufferPoolManager {
 
 
         buffer = getBuffer(currentPageSize);
+        byte[] spare = buffer;
 
         try {
-            synchronized (currentManager) {
-                page = currentManager.reserveNewPage(buffer, type);
-            }
+            page = currentManager.reserveNewPage(buffer, type);
 
-            addPageToCache(resourceId, page, true);
-            putBuffer(currentPageSize);
+            spare = addPageToCache(resourceId, page, true, false);
 
         } catch (Exception ex) {
             throw new IOException();
+        } finally {
+            putBuffer(currentPageSize, spare);
         }
 
         return page;
@@ -517,57 +1234,268 @@ public class MyBufferPoolManager implements BufferPoolManager {
 
 
     /**
-     * Returns a buffer (byte array) of size <code>BUFFER_SIZE from the
-     * pool. When the buffer is no longer needed, it should be put back in the
-     * pool for future use by calling <code>putBuffer.
+     * Writes the resident pages of all warmable caches to the manifest file.
      *
-     * @return a buffer
-     * @see #putBuffer(byte[])
+     * @param manifestFile  The file to write the manifest to.
+     * @param resourceNames The stable names of the resources, mapped by their current ids.
+     * @throws IOException Thrown, if the manifest could not be written.
      */
+    public void writeCacheManifest(File manifestFile, Map<Integer, String> resourceNames)
+            throws IOException {
+
+        CacheManifest manifest = new CacheManifest();
 
-    private byte[] getBuffer(PageSize size) throws BufferPoolException {
+        for (PageCache cache : caches.values()) {
+            if (cache instanceof WarmablePageCache)
+                ((WarmablePageCache) cache).describeResidentPages(manifest);
+        }
 
-        Vector<byte[]> availableBuffers = buffers.get(size);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(manifestFile)))) {
+            manifest.write(out, resourceNames);
+        }
 
-        byte[] buffer;
+        logger.info("Cache manifest with " + manifest.size() + " pages written to " + manifestFile);
+    }
+
+    /**
+     * Reads the manifest file and starts a thread that loads the listed pages into the caches.
+     *
+     * @param manifestFile The file to read the manifest from.
+     * @param resourceIds  The current ids of the resources, mapped by their stable names.
+     * @return A future that yields the number of pages loaded.
+     * @throws IOException         Thrown, if the manifest could not be read.
+     * @throws BufferPoolException Thrown, if the buffer pool is closed.
+     */
+    public Future<Integer> loadCacheManifest(File manifestFile, Map<String, Integer> resourceIds)
+            throws IOException, BufferPoolException {
+
+        if (!isOpened)
+            throw new BufferPoolException("Buffer pool is closed");
+
+        CacheManifest manifest;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)))) {
+            manifest = CacheManifest.read(in, resourceIds);
+        }
+
+        // every run holds its buffers until its pages are in the cache, so leave enough
+        // buffers to the regular requests
+        int maxRunLength = Math.max(1, Math.min(MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE, numberIOBuffers / 4));
+
+        FutureTask<Integer> task = new FutureTask<>(new WarmRestartLoader(manifest, this, maxRunLength, logger));
+
+        warmUpThread = new Thread(task, "cache-warm-up");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+
+        return task;
+    }
+
+    /**
+     * Runs one round of rebalancing over the resizable caches and queues the modified pages that
+     * the shrinking cache evicted to be written. The frames of the other evicted pages go back to
+     * the arena, the cache took them from there.
+     */
+    void rebalanceCaches(CacheRebalancer rebalancer) {
+
+        List<ResizablePageCache> resizable = new ArrayList<>();
+
+        synchronized (this) {
+            for (PageCache cache : caches.values()) {
+                if (cache instanceof ResizablePageCache)
+                    resizable.add((ResizablePageCache) cache);
+            }
+        }
+
+        if (resizable.size() < 2)
+            return;
+
+        List<EvictedCacheEntry> evicted = new ArrayList<>();
+
+        if (rebalancer.rebalance(resizable, evicted)) {
+            StringBuilder sizes = new StringBuilder();
+            for (ResizablePageCache cache : resizable)
+                sizes.append(' ').append(cache.getPageSize()).append('=').append(cache.getCapacity());
+            logger.fine("Cache capacities rebalanced:" + sizes);
+        }
+
+        for (EvictedCacheEntry entry : evicted) {
+            byte[] spare = handleEvicted(entry);
+
+            // an entry without a page does not tell its page size, the frame does
+            for (ResizablePageCache cache : resizable) {
+                if (spare != null && spare.length == cache.getPageSize().getNumberOfBytes()) {
+                    putBuffer(cache.getPageSize(), spare);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the page of a completed read to the cache, pinned, if the request pins it, and without
+     * hitting it otherwise. If the page has been loaded into the cache by other means in the
+     * meantime, the resident page is kept. The frame and, for a prefetch, the permit of the request
+     * are paid back, and the read leaves the table of reads in flight.
+     *
+     * @param page the page, or null, if the read failed or was canceled
+     * @return the page for the request, or null, if the read failed or the buffer pool is closed
+     */
+    CacheableData finishRead(ReadRequest request, CacheableData page) {
+
+        int resourceId = request.getId();
+        PageSize pageSize = request.getMng().getPageSize();
+        byte[] spare = request.getBuffer();
+        CacheableData result = null;
+        boolean added = false;
 
         try {
-            synchronized (availableBuffers) {
-                while (availableBuffers.isEmpty()) {
-                    availableBuffers.wait();
+            if (page != null && isOpened) {
+                result = page;
+
+                PageCache cache = caches.get(pageSize);
+                boolean pin = request.isPinned();
+
+                try {
+                    EvictedCacheEntry writePage;
+                    if (request.isScan() && cache instanceof ScanAwarePageCache) {
+                        ScanAwarePageCache scanCache = (ScanAwarePageCache) cache;
+                        writePage = pin ? scanCache.addScanPageAndPin(page, resourceId) : scanCache.addScanPage(page, resourceId);
+                    } else
+                        writePage = pin ? cache.addPageAndPin(page, resourceId) : cache.addPage(page, resourceId);
+
+                    spare = handleEvicted(writePage);
+                    added = true;
+
+                } catch (DuplicateCacheEntryException ex) {
+                    CacheableData resident = pin ? cache.getPageAndPin(resourceId, page.getPageNumber()) : null;
+
+                    if (resident != null)
+                        result = resident;
+                    else if (pin) {
+                        // evicted again, the requester gets the page without the cache
+                        buffers.get(pageSize).replace();
+                        spare = null;
+                    }
+
+                } catch (CachePinnedException ex) {
+                    buffers.get(pageSize).replace();
+                    spare = null;
                 }
-                buffer = availableBuffers.lastElement();
-                availableBuffers.remove(buffer);
-                availableBuffers.notifyAll();
             }
+        } finally {
+            putBuffer(pageSize, spare);
+
+            if (request instanceof PrefetchRequest) {
+                prefetchPermits.release();
+                if (!added)
+                    metrics.prefetchFailed(resourceId, request.getPageNumber());
+            }
+
+            inFlight.remove(PageTable.key(resourceId, request.getPageNumber()), request);
+        }
+
+        return result;
+    }
+
+    /**
+     * Takes a snapshot of the metrics of the buffer pool.
+     */
+    public BufferPoolStatistics getStatistics() {
+
+        Map<Integer, PageSize> pageSizes = new HashMap<>();
+        Map<Integer, Integer> freeFrames = new HashMap<>();
+
+        synchronized (this) {
+            for (Map.Entry<Integer, ResourceManager> entry : resourceManagers.entrySet())
+                pageSizes.put(entry.getKey(), entry.getValue().getPageSize());
+            for (Map.Entry<PageSize, FrameArena> entry : buffers.entrySet())
+                freeFrames.put(entry.getKey().getNumberOfBytes(), entry.getValue().getNumFreeFrames());
+        }
+
+        int readQueueDepth = 0, writeQueueDepth = 0;
+        for (int i = 0; i < readThreads.length; i++) {
+            readQueueDepth += readThreads[i].getQueueDepth();
+            writeQueueDepth += writeThreads[i].getQueueDepth();
+        }
 
+        return metrics.snapshot(pageSizes, freeFrames, readQueueDepth, writeQueueDepth);
+    }
+
+    boolean isOpen() {
+
+        return isOpened;
+    }
+
+    ResourceManager getResourceManager(int resourceId) {
+
+        return resourceManagers.get(resourceId);
+    }
+
+    /**
+     * Gets the lock that a batched read or write of the resource manager holds.
+     */
+    ReentrantLock channelLock(ResourceManager manager) {
+
+        return channelLocks.of(manager);
+    }
+
+
+    /**
+     * Takes a frame from the arena of the given page size, waiting until one is available.
+     * It must be paid back with <code>putBuffer</code>.
+     *
+     * @return a buffer
+     * @see #putBuffer(PageSize, byte[])
+     */
+
+    byte[] getBuffer(PageSize size) throws BufferPoolException {
+
+        try {
+            return buffers.get(size).acquire();
         } catch (InterruptedException ie) {
             throw new BufferPoolException();
         }
 
-        return buffer;
-
     }
 
 
     /**
-     * Puts the given buffer into the pool for future use.
+     * Pays back a frame taken with <code>getBuffer</code>. This is either the taken buffer
+     * itself, or the buffer of the cache entry that was evicted in exchange for it.
      *
-     * @param buffer the buffer to be put back into the buffer pool
-     * @see #getBuffer()
+     * @param buffer the buffer to be put back into the arena, or null, if the buffer of the evicted
+     *               entry goes back once the entry is written
+     * @see #getBuffer(PageSize)
+     */
+    void putBuffer(PageSize size, byte[] buffer) {
+
+        if (buffer != null)
+            buffers.get(size).release(buffer);
+    }
+
+    /**
+     * Gets the read thread that handles the requests for the resource.
      */
-    public void putBuffer(PageSize size) {
+    private IOread readerFor(int resourceId) {
 
-        Vector<byte[]> bufferPool = buffers.get(size);
+        return readThreads[Math.floorMod(resourceId, readThreads.length)];
+    }
+
+    /**
+     * Gets the write thread that handles the requests for the resource.
+     */
+    private IOwrite writerFor(int resourceId) {
 
-        if (bufferPool.size() < config.getNumIOBuffers()) {
-            synchronized (bufferPool) {
+        return writeThreads[Math.floorMod(resourceId, writeThreads.length)];
+    }
 
-                bufferPool.add(new byte[size.getNumberOfBytes()]);
-                bufferPool.notifyAll();
-            }
+    /**
+     * Checks whether a request continues a sequential stream on the resource.
+     */
+    private boolean isScanRequest(int resourceId, int pageNumber) {
 
-        }
+        return scanDetector != null && scanDetector.isSequential(resourceId, pageNumber);
     }
 
     /**
@@ -576,41 +1504,134 @@ public class MyBufferPoolManager implements BufferPoolManager {
      * @param resourceId
      * @param page
      * @param pin
+     * @param scan       whether the page is part of a sequential scan
+     * @return the buffer of the evicted entry, if it can be reused right away, or null, if it is
+     *         still needed to write the evicted page
      */
 
-    private void addPageToCache(int resourceId, CacheableData page, boolean isPinned) {
+    byte[] addPageToCache(int resourceId, CacheableData page, boolean isPinned, boolean scan) {
 
         ResourceManager currentManager = resourceManagers.get(resourceId);
         PageSize currentPageSize = currentManager.getPageSize();
         PageCache currentCache = caches.get(currentPageSize);
-        byte[] buffer;
 
         EvictedCacheEntry writePage;
+        byte[] spare = null;
+
+        try {
+            if (scan && currentCache instanceof ScanAwarePageCache) {
+                ScanAwarePageCache scanCache = (ScanAwarePageCache) currentCache;
+                writePage = isPinned ? scanCache.addScanPageAndPin(page, resourceId) : scanCache.addScanPage(page, resourceId);
+            } else if (isPinned)
+                writePage = currentCache.addPageAndPin(page, resourceId);
+            else
+                writePage = currentCache.addPage(page, resourceId);
+
+            spare = handleEvicted(writePage);
+
+        } catch (Exception ex) {
+            logger.warning("Page " + page.getPageNumber() + " of resource " + resourceId + " could not be added to the cache: " + ex.getMessage());
+            // the requester keeps the page without the cache
+            buffers.get(currentPageSize).replace();
+        }
+
+        return spare;
+    }
+
+    /**
+     * Registers the read of a page listed in a cache manifest as a read in flight, like a miss
+     * registers its read. Until the read is finished, the requests for the page wait for it, and
+     * no other copy of the page can enter the cache or be written. The page is not read, if it is
+     * in the cache, read or written already, since the copy on disk may be older than that one.
+     *
+     * @param buffer the buffer the page is read into
+     * @return the request, which must be finished with <code>finishWarmRead</code>, or null, if
+     *         the page is not to be read
+     */
+    ReadRequest beginWarmRead(int resourceId, int pageNumber, ResourceManager manager, byte[] buffer) {
+
+        Long key = PageTable.key(resourceId, pageNumber);
+        ReadRequest request = new ReadRequest(resourceId, pageNumber, buffer, manager, this, false, false);
+
+        if (inFlight.putIfAbsent(key, request) != null)
+            return null;
+
+        // checked only now, since a copy that is resident or written before the registration may
+        // still reach the disk after the read
+        PageCache currentCache = caches.get(manager.getPageSize());
+        boolean resident = currentCache instanceof ScanAwarePageCache
+                ? ((ScanAwarePageCache) currentCache).containsPage(resourceId, pageNumber)
+                : currentCache.getPage(resourceId, pageNumber) != null;
+
+        if (resident || flushing.containsKey(key) || writerFor(resourceId).isWriteBackPending(resourceId, pageNumber)) {
+            inFlight.remove(key, request);
+            request.completeAdded(null);
+            return null;
+        }
+
+        return request;
+    }
+
+    /**
+     * Adds the page of a read registered with <code>beginWarmRead</code> to the cache and ends the
+     * read. The page is skipped, if all pages are pinned.
+     *
+     * @param page     the page, or null, if the read failed
+     * @param frequent whether the page was frequent when the manifest was written
+     * @return the buffer of the page itself, if it has been skipped, otherwise like
+     *         <code>addPageToCache</code>
+     */
+    byte[] finishWarmRead(ReadRequest request, CacheableData page, boolean frequent) {
+
+        int resourceId = request.getId();
+        PageCache currentCache = caches.get(request.getMng().getPageSize());
+        byte[] spare = request.getBuffer();
 
         try {
-            synchronized (currentCache) {
-                if (isPinned)
-                    writePage = currentCache.addPageAndPin(page, resourceId);
+            if (page != null && isOpened) {
+                EvictedCacheEntry writePage;
+                if (currentCache instanceof WarmablePageCache)
+                    writePage = ((WarmablePageCache) currentCache).addWarmPage(page, resourceId, frequent);
                 else
                     writePage = currentCache.addPage(page, resourceId);
+
+                spare = handleEvicted(writePage);
             }
+        } catch (DuplicateCacheEntryException | CachePinnedException ex) {
+            // skipped, the waiting requests read the page themselves
+        } finally {
+            inFlight.remove(PageTable.key(resourceId, request.getPageNumber()), request);
+            request.completeAdded(page);
+        }
+
+        return spare;
+    }
+
+    /**
+     * Queues the evicted page to be written, if it has been modified.
+     *
+     * @return the buffer of the evicted entry, if it can be reused right away, or null, if the write
+     *         pays it back to the arena
+     */
+    private byte[] handleEvicted(EvictedCacheEntry writePage) {
 
-            CacheableData writeData = writePage.getWrappingPage();
+        CacheableData writeData = writePage.getWrappingPage();
 
-            int evictedResourceId = writePage.getResourceID();
-            ResourceManager evictedManager = resourceManagers.get(evictedResourceId);
+        int evictedResourceId = writePage.getResourceID();
+        ResourceManager evictedManager = resourceManagers.get(evictedResourceId);
 
-            if (writeData != null && writeData.hasBeenModified()) {
-                buffer = getBuffer(currentPageSize);
-                buffer = writeData.getBuffer();
-                WriteRequest writeRequest = new WriteRequest(evictedResourceId, writeData.getPageNumber(), buffer, evictedManager, writeData);
-                writeThread.addRequest(writeRequest);
-                putBuffer(currentPageSize);
-            }
+        if (writeData != null)
+            metrics.evicted(evictedResourceId, writeData.getPageNumber(), writeData.hasBeenModified());
 
-        } catch (Exception ex) {
-            System.out.println(ex.getMessage());
+        if (writeData != null && writeData.hasBeenModified()) {
+            byte[] buffer = writeData.getBuffer();
+            WriteRequest writeRequest = new WriteRequest(evictedResourceId, writeData.getPageNumber(), buffer,
+                    evictedManager, writeData, buffers.get(evictedManager.getPageSize()));
+            writerFor(evictedResourceId).addRequest(writeRequest);
+            return null;
         }
+
+        return writePage.getBinaryPage();
     }
 
 
@@ -0,0 +1,52 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+/**
+ * A read that nobody waits for. When it completes, the page goes into the cache without being hit,
+ * and the frame and the prefetch permit of the request go back to the buffer pool. A prefetch is
+ * handled after the demand reads, unless a demand read for the same page promotes it.
+ * <p/>
+ * The request remembers who issued it, so that only that owner cancels it. A prefetch of the read
+ * ahead has no owner, and a prefetch that several owners asked for belongs to none of them.
+ */
+public class PrefetchRequest extends ReadRequest {
+
+
+    // marks a prefetch that several owners asked for
+    private static final Object SHARED = new Object();
+
+    private volatile Object owner;
+
+
+    public PrefetchRequest(int resourceId, int pageNumber, byte[] buffer, ResourceManager mng,
+                           MyBufferPoolManager bufferPool, boolean scan, Object owner) {
+
+        super(resourceId, pageNumber, buffer, mng, bufferPool, false, scan);
+        this.owner = owner;
+
+    }
+
+
+    /**
+     * Records that the owner asked for the page as well.
+     */
+    public void share(Object other) {
+        if (owner != other)
+            owner = SHARED;
+    }
+
+    /**
+     * Checks whether the owner alone asked for the page.
+     */
+    public boolean isOwnedBy(Object owner) {
+        return owner != null && this.owner == owner;
+    }
+
+
+    public boolean isPrefetch() {
+        return !promoted;
+    }
+
+    public IOPriority getPriority() {
+        return promoted ? IOPriority.DEMAND_READ : IOPriority.PREFETCH;
+    }
+}
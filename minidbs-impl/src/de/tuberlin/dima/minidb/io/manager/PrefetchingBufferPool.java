@@ -0,0 +1,33 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+/**
+ * A buffer pool whose prefetches can be canceled, for example when the operator that issued them
+ * is closed before it reached the prefetched pages. The prefetches are tagged with the object that
+ * issued them, so that one scan does not cancel the prefetches of another.
+ */
+public interface PrefetchingBufferPool extends BufferPoolManager {
+
+    /**
+     * Prefetches a sequence of pages for the given owner. Behaves exactly like
+     * {@link BufferPoolManager#prefetchPages(int, int, int)}, only that the owner can cancel the
+     * prefetches later.
+     *
+     * @param resourceId      The id of the resource.
+     * @param startPageNumber The page number of the first page to prefetch.
+     * @param endPageNumber   The page number of the last page to prefetch.
+     * @param owner           The object that issues the prefetches, for example a scan.
+     * @throws BufferPoolException If the buffer pool is closed, or the resource is not registered.
+     */
+    void prefetchPages(int resourceId, int startPageNumber, int endPageNumber, Object owner)
+            throws BufferPoolException;
+
+    /**
+     * Cancels the prefetches for the resource that the owner issued and that have not started yet.
+     * A page that was also prefetched by another owner or by the read-ahead is read anyway. This is
+     * a hint, the buffer pool may read the pages anyway.
+     *
+     * @param resourceId The id of the resource.
+     * @param owner      The object that issued the prefetches.
+     */
+    void cancelPrefetches(int resourceId, Object owner);
+}
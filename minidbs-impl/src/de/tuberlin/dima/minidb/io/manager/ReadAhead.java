@@ -0,0 +1,130 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+/**
+ * Recognizes sequential and strided streams in the demand requests for the pages of a resource and
+ * tells which pages to read ahead, similar to the read-ahead of the Linux page cache. A stream
+ * starts when two successive requests advance by the same stride of at most <code>MAX_STRIDE</code>
+ * pages. The first window covers <code>INITIAL_WINDOW</code> pages beyond the request. Whenever the
+ * stream has consumed half of the pages read ahead, the window doubles, up to the maximal window,
+ * and is filled up again. Requests that arrive slightly late (for example from a concurrent reader
+ * of the same resource) are ignored, any other jump ends the stream.
+ * <p/>
+ * Like the {@link SequentialDetector}, the read-ahead tracks one stream per resource in a small
+ * direct mapped table and is not synchronized, a lost update between threads only affects which
+ * pages are read ahead.
+ */
+public class ReadAhead {
+
+
+    /**
+     * The largest distance between the pages of a strided stream.
+     */
+    public static final int MAX_STRIDE = 8;
+
+    /**
+     * The number of pages read ahead when a stream is recognized.
+     */
+    public static final int INITIAL_WINDOW = 4;
+
+    /**
+     * How far a request may lag behind the head of the stream without ending it.
+     */
+    private static final int REORDER_WINDOW = BufferPoolManager.MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE;
+
+    private static final int SLOTS = 64;
+
+
+    private final int maxWindow;
+
+    private final int[] resources = new int[SLOTS];
+    private final int[] last = new int[SLOTS];
+    private final int[] stride = new int[SLOTS];
+    private final int[] window = new int[SLOTS];
+    // the next page of the stream that has not been read ahead
+    private final int[] ahead = new int[SLOTS];
+    private final boolean[] used = new boolean[SLOTS];
+
+
+    /**
+     * Creates a read-ahead whose windows grow up to the given number of pages.
+     *
+     * @param maxWindow The maximal number of pages read ahead of a stream.
+     */
+    public ReadAhead(int maxWindow) {
+
+        this.maxWindow = maxWindow;
+    }
+
+
+    /**
+     * Records a demand request for a page and returns the pages to read ahead.
+     *
+     * @param resourceId The id of the resource the page belongs to.
+     * @param pageNumber The page number.
+     * @return The page numbers to read ahead, in stream order, or null, if there are none.
+     */
+    public int[] onRequest(int resourceId, int pageNumber) {
+
+        int slot = (resourceId * 0x9E3779B9) >>> 26;
+
+        if (!used[slot] || resources[slot] != resourceId) {
+            start(slot, resourceId, pageNumber);
+            return null;
+        }
+
+        int delta = pageNumber - last[slot];
+
+        // a repeated or late request
+        if (delta == 0 || (delta < 0 && delta >= -REORDER_WINDOW))
+            return null;
+
+        if (delta < 0 || delta > MAX_STRIDE) {
+            start(slot, resourceId, pageNumber);
+            return null;
+        }
+
+        last[slot] = pageNumber;
+
+        if (delta != stride[slot]) {
+            stride[slot] = delta;
+            window[slot] = 0;
+            ahead[slot] = pageNumber + delta;
+            return null;
+        }
+
+        // the stream may have overtaken its read-ahead
+        if (ahead[slot] <= pageNumber)
+            ahead[slot] = pageNumber + delta;
+
+        int remaining = (ahead[slot] - pageNumber) / delta - 1;
+
+        if (window[slot] == 0)
+            window[slot] = Math.min(INITIAL_WINDOW, maxWindow);
+        else if (remaining > window[slot] / 2)
+            return null;
+        else
+            window[slot] = Math.min(2 * window[slot], maxWindow);
+
+        int count = window[slot] - remaining;
+        if (count <= 0)
+            return null;
+
+        int[] pages = new int[count];
+        for (int i = 0; i < count; i++)
+            pages[i] = ahead[slot] + i * delta;
+
+        ahead[slot] += count * delta;
+        return pages;
+    }
+
+    private void start(int slot, int resourceId, int pageNumber) {
+
+        resources[slot] = resourceId;
+        last[slot] = pageNumber;
+        stride[slot] = 0;
+        window[slot] = 0;
+        used[slot] = true;
+    }
+
+
+}
@@ -2,20 +2,35 @@ package de.tuberlin.dima.minidb.io.manager;
 
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
 
+import java.io.IOException;
+
 /**
  * Created by arbuzinside on 14.11.2015.
+ * <p/>
+ * A read of a page that is not in the cache. The buffer pool keeps the request in its table of
+ * reads in flight until the page is in the cache, so that concurrent requests for the page wait
+ * for this read instead of issuing their own. The I/O thread puts the page into the cache before
+ * it completes the request, pinned for the requester that issued the read.
  */
 public class ReadRequest extends Request {
 
 
     private CacheableData result;
 
-    public ReadRequest(int resourceId, int pageNumber, byte[] buffer, ResourceManager mng) {
+    private final MyBufferPoolManager bufferPool;
+    private final boolean pin;
+    private final boolean scan;
+
+    public ReadRequest(int resourceId, int pageNumber, byte[] buffer, ResourceManager mng,
+                       MyBufferPoolManager bufferPool, boolean pin, boolean scan) {
 
         this.resourceId = resourceId;
         this.pageNumber = pageNumber;
         this.mng = mng;
         this.buffer = buffer;
+        this.bufferPool = bufferPool;
+        this.pin = pin;
+        this.scan = scan;
         this.setCompleted(false);
 
     }
@@ -29,4 +44,42 @@ public class ReadRequest extends Request {
     public void setResult(CacheableData result) {
         this.result = result;
     }
+
+    /**
+     * Checks whether the page is pinned for the requester when it goes into the cache.
+     */
+    public boolean isPinned() {
+        return pin;
+    }
+
+    public boolean isScan() {
+        return scan;
+    }
+
+    public void complete(CacheableData result) {
+
+        // the page must be in the cache before the waiting requests look for it
+        CacheableData page = bufferPool.finishRead(this, result);
+
+        if (page == null)
+            super.fail(new IOException("The buffer pool has been closed."));
+        else
+            super.complete(page);
+    }
+
+    public void fail(IOException error) {
+
+        bufferPool.finishRead(this, null);
+        super.fail(error);
+    }
+
+    /**
+     * Completes the request of a read whose page the reader has added to the cache itself, or
+     * has skipped. The waiting requests look for the page in the cache and read it themselves, if
+     * it is not there.
+     */
+    void completeAdded(CacheableData page) {
+
+        super.complete(page);
+    }
 }
@@ -0,0 +1,47 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import de.tuberlin.dima.minidb.io.cache.CacheRebalancer;
+
+/**
+ * Periodically lets the buffer pool move memory between its page caches.
+ */
+public class RebalanceTask implements Runnable {
+
+
+    private final MyBufferPoolManager bufferPool;
+    private final CacheRebalancer rebalancer;
+    private final int interval;
+    private volatile boolean running;
+
+
+    /**
+     * @param bufferPool the buffer pool whose caches are balanced
+     * @param interval   the time between two rounds, in milliseconds
+     */
+    public RebalanceTask(MyBufferPoolManager bufferPool, int interval) {
+
+        this.bufferPool = bufferPool;
+        this.rebalancer = new CacheRebalancer();
+        this.interval = interval;
+        this.running = true;
+    }
+
+
+    public void run() {
+
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException ex) {
+                break;
+            }
+
+            bufferPool.rebalanceCaches(rebalancer);
+        }
+    }
+
+
+    public void stopThread() {
+        running = false;
+    }
+}
@@ -2,11 +2,29 @@ package de.tuberlin.dima.minidb.io.manager;
 
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Created by arbuzinside on 16.11.2015.
+ * <p/>
+ * The I/O thread that handles a request completes it with its result or the I/O error. Threads
+ * wait for it in <code>awaitResult</code>, asynchronous callers chain their stages to the
+ * completion future.
  */
 public abstract class Request implements Comparable<Request> {
 
+    // a number per thread that issues requests, for the fair queue
+    private static final AtomicLong OWNERS = new AtomicLong();
+    private static final ThreadLocal<Long> OWNER = new ThreadLocal<Long>() {
+        @Override
+        protected Long initialValue() {
+            return OWNERS.incrementAndGet();
+        }
+    };
+
     protected int resourceId;
     protected int pageNumber;
     protected byte[] buffer;
@@ -14,6 +32,13 @@ public abstract class Request implements Comparable<Request> {
     protected boolean completed;
     protected CacheableData result;
     protected CacheableData data;
+    protected IOException error;
+    protected long sequence;
+    protected long queuedAt;
+    protected int rank;
+    protected volatile boolean promoted;
+    protected final long owner = OWNER.get();
+    protected final CompletableFuture<CacheableData> completion = new CompletableFuture<>();
 
 
     public int getId() {
@@ -74,6 +99,104 @@ public abstract class Request implements Comparable<Request> {
         this.result = result;
     }
 
+    /**
+     * Checks whether the request is a prefetch, which is handled after the pending demand
+     * requests.
+     */
+    public boolean isPrefetch() {
+        return false;
+    }
+
+    /**
+     * Gets the priority class of the request.
+     */
+    public IOPriority getPriority() {
+        return IOPriority.DEMAND_READ;
+    }
+
+    /**
+     * Lets the request be handled in a more urgent class, because a requester waits for it.
+     */
+    public void promote() {
+        promoted = true;
+    }
+
+    /**
+     * Gets the number of the thread that issued the request.
+     */
+    public long getOwner() {
+        return owner;
+    }
+
+    /**
+     * Gets the time at which the request was queued, in the nanoseconds of
+     * <code>System.nanoTime</code>.
+     */
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    public void setQueuedAt(long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the future that is completed together with the request. Stages chained to it must not
+     * block, or must be asynchronous, since they would otherwise run on the I/O thread.
+     */
+    public CompletableFuture<CacheableData> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Completes the request with the given result.
+     */
+    public void complete(CacheableData result) {
+        setResult(result);
+        completed = true;
+        completion.complete(result);
+    }
+
+    /**
+     * Completes the request with an error, which <code>awaitResult</code> throws.
+     */
+    public void fail(IOException error) {
+        this.error = error;
+        completed = true;
+        completion.completeExceptionally(error);
+    }
+
+    /**
+     * Waits until the request is completed.
+     *
+     * @return The result of the request.
+     * @throws IOException          Thrown, if the request failed.
+     * @throws InterruptedException Thrown, if the thread was interrupted while waiting.
+     */
+    public CacheableData awaitResult() throws IOException, InterruptedException {
+        try {
+            return completion.get();
+        } catch (ExecutionException ex) {
+            throw new IOException(error.getMessage(), error);
+        }
+    }
+
     public int compareTo(Request req) {
         if (pageNumber == req.pageNumber)
             return 0;
@@ -0,0 +1,166 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue of an I/O worker. Requests are ordered by their priority class (see
+ * {@link IOPriority}) and within a class in the order they were queued.
+ * <p/>
+ * A fair queue shares every class among the threads that issued the requests: a request is ranked
+ * by the number of requests its owner had queued before it, and lower ranks go first. A thread with
+ * a single lookup is therefore not queued behind the backlog of a large scan from another thread.
+ * A promoted request is ranked as if its owner had no other request queued.
+ * <p/>
+ * Writes must not use a fair queue, since two writes of the same page have to keep their order.
+ */
+public final class RequestQueue implements Iterable<Request> {
+
+
+    private final PriorityBlockingQueue<Request> queue;
+
+    private final boolean fair;
+
+    // the number of queued requests of every owner, for the fair queue
+    private final Map<Long, Integer> queued = new HashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+
+    /**
+     * @param fair whether the classes are shared fairly among the owners of the requests
+     */
+    public RequestQueue(boolean fair) {
+
+        this.fair = fair;
+        this.queue = new PriorityBlockingQueue<>(16, new Comparator<Request>() {
+            public int compare(Request a, Request b) {
+                int c = a.getPriority().compareTo(b.getPriority());
+                if (c == 0 && RequestQueue.this.fair)
+                    c = Integer.compare(a.getRank(), b.getRank());
+                return c != 0 ? c : Long.compare(a.getSequence(), b.getSequence());
+            }
+        });
+    }
+
+
+    public void add(Request request) {
+
+        request.setSequence(sequence.getAndIncrement());
+        request.setQueuedAt(System.nanoTime());
+
+        if (fair) {
+            synchronized (queued) {
+                Integer count = queued.get(request.getOwner());
+                int rank = count == null ? 0 : count;
+                queued.put(request.getOwner(), rank + 1);
+                request.setRank(rank);
+            }
+        }
+        queue.add(request);
+    }
+
+    /**
+     * Waits for the most urgent request and takes it.
+     */
+    public Request take() throws InterruptedException {
+
+        Request request = queue.take();
+        dequeued(request);
+        return request;
+    }
+
+    public Request poll() {
+
+        Request request = queue.poll();
+        if (request != null)
+            dequeued(request);
+        return request;
+    }
+
+    /**
+     * Takes the most urgent requests, until the batch holds the given number of requests. All
+     * requests that are added have the class of the first request in the batch, so that a sweep
+     * over the batch does not hold up more urgent requests with less urgent ones.
+     *
+     * @param batch the batch, possibly with a request taken already
+     * @param max   the maximal number of requests in the batch
+     */
+    public void drainTo(List<Request> batch, int max) {
+
+        IOPriority priority = batch.isEmpty() ? null : batch.get(0).getPriority();
+
+        while (batch.size() < max) {
+            Request next = queue.peek();
+            if (next == null || (priority != null && next.getPriority().compareTo(priority) > 0))
+                return;
+
+            next = queue.poll();
+            if (next == null)
+                return;
+
+            // the request peeked at may have been removed meanwhile
+            if (priority != null && next.getPriority().compareTo(priority) > 0) {
+                queue.add(next);
+                return;
+            }
+
+            dequeued(next);
+            batch.add(next);
+            if (priority == null)
+                priority = next.getPriority();
+        }
+    }
+
+    public boolean remove(Request request) {
+
+        if (!queue.remove(request))
+            return false;
+        dequeued(request);
+        return true;
+    }
+
+    /**
+     * Promotes the request, if it is still queued, and ranks it first among the requests of its
+     * owner.
+     */
+    public void promote(Request request) {
+
+        if (queue.remove(request)) {
+            request.promote();
+            request.setRank(0);
+            queue.add(request);
+        }
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public Iterator<Request> iterator() {
+        return queue.iterator();
+    }
+
+    private void dequeued(Request request) {
+
+        if (!fair)
+            return;
+
+        synchronized (queued) {
+            Integer count = queued.get(request.getOwner());
+            if (count == null || count <= 1)
+                queued.remove(request.getOwner());
+            else
+                queued.put(request.getOwner(), count - 1);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+/**
+ * Recognizes sequential page streams, as produced by table scans, from the order in which the
+ * pages of a resource are requested. A stream is sequential once it advanced page by page for
+ * <code>RUN_THRESHOLD</code> pages. Requests that arrive slightly late (for example from a
+ * concurrent reader of the same resource) neither extend nor break the run, any other jump
+ * starts a new one.
+ * <p/>
+ * One stream is tracked per resource in a small direct mapped table, resources that collide
+ * in the table simply take over the slot. The detector is not synchronized: it is consulted on
+ * every page request, and a lost update between threads only affects the heuristic.
+ */
+public class SequentialDetector {
+
+
+    /**
+     * The number of consecutive pages after which a stream counts as sequential.
+     */
+    public static final int RUN_THRESHOLD = 8;
+
+    /**
+     * How far a request may lag behind the head of the stream without breaking the run.
+     */
+    private static final int REORDER_WINDOW = BufferPoolManager.MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE;
+
+    private static final int SLOTS = 64;
+
+
+    private final int[] resources = new int[SLOTS];
+    private final int[] last = new int[SLOTS];
+    private final int[] run = new int[SLOTS];
+
+
+    /**
+     * Records a request for a page and tells, whether it belongs to a sequential stream.
+     *
+     * @param resourceId The id of the resource the page belongs to.
+     * @param pageNumber The page number.
+     * @return True, if the page continues a sequential stream of its resource.
+     */
+    public boolean isSequential(int resourceId, int pageNumber) {
+
+        int slot = (resourceId * 0x9E3779B9) >>> 26;
+
+        if (run[slot] == 0 || resources[slot] != resourceId) {
+            resources[slot] = resourceId;
+            last[slot] = pageNumber;
+            run[slot] = 1;
+            return false;
+        }
+
+        int previous = last[slot];
+
+        if (pageNumber == previous + 1) {
+            last[slot] = pageNumber;
+            run[slot]++;
+        } else if (pageNumber > previous || pageNumber < previous - REORDER_WINDOW) {
+            last[slot] = pageNumber;
+            run[slot] = 1;
+        }
+
+        return run[slot] >= RUN_THRESHOLD;
+    }
+
+
+}
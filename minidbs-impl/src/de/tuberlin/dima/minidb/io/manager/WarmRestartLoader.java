@@ -0,0 +1,180 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import de.tuberlin.dima.minidb.io.cache.CacheManifest;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Loads the pages of a cache manifest into the caches of a buffer pool. The manifest is sorted by
+ * resource and page number, so consecutive pages are read together with one batched read per run.
+ * The reads are registered as reads in flight, like the reads of misses, so regular requests for
+ * the pages wait for them. Pages that regular requests have loaded, or that are being read or
+ * written, are skipped.
+ * <p/>
+ * The loader stops when the buffer pool is closed or the loading thread is interrupted. It
+ * returns the number of pages it added to the caches.
+ */
+public class WarmRestartLoader implements Callable<Integer> {
+
+
+    private final CacheManifest manifest;
+    private final MyBufferPoolManager bufferPool;
+    private final int maxRunLength;
+    private final Logger logger;
+
+
+    public WarmRestartLoader(CacheManifest manifest, MyBufferPoolManager bufferPool, int maxRunLength, Logger logger) {
+
+        this.manifest = manifest;
+        this.bufferPool = bufferPool;
+        this.maxRunLength = maxRunLength;
+        this.logger = logger;
+    }
+
+
+    public Integer call() {
+
+        long start = System.nanoTime();
+        int loaded = 0;
+        int i = 0;
+
+        try {
+            while (i < manifest.size() && bufferPool.isOpen()) {
+                int end = endOfRun(i);
+                loaded += loadRun(i, end);
+                i = end;
+            }
+        } catch (BufferPoolException ex) {
+            // interrupted while waiting for buffers, the buffer pool is closing
+        }
+
+        logger.info("Cache warm-up loaded " + loaded + " of " + manifest.size() + " pages in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+
+        return loaded;
+    }
+
+
+    /**
+     * Gets the index after the run of consecutive pages of one resource that starts at the given
+     * index.
+     */
+    private int endOfRun(int first) {
+
+        int resourceId = manifest.getResourceId(first);
+        int firstPage = manifest.getPageNumber(first);
+
+        int end = first + 1;
+        while (end < manifest.size() && end - first < maxRunLength
+                && manifest.getResourceId(end) == resourceId
+                && manifest.getPageNumber(end) == firstPage + (end - first))
+            end++;
+
+        return end;
+    }
+
+    /**
+     * Reads the pages of the run and adds them to the cache.
+     *
+     * @return The number of pages added.
+     */
+    private int loadRun(int first, int end) throws BufferPoolException {
+
+        int resourceId = manifest.getResourceId(first);
+        ResourceManager manager = bufferPool.getResourceManager(resourceId);
+
+        if (manager == null)
+            return 0;
+
+        int firstPage = manifest.getPageNumber(first);
+        int length = end - first;
+
+        // the table may have shrunk since the manifest was written
+        if (manager instanceof TableResourceManager)
+            length = Math.min(length, ((TableResourceManager) manager).getLastDataPageNumber() - firstPage + 1);
+        if (length <= 0)
+            return 0;
+
+        byte[][] buffers = new byte[length][];
+        ReadRequest[] reads = new ReadRequest[length];
+        int acquired = 0;
+        int loaded = 0;
+
+        try {
+            for (; acquired < buffers.length; acquired++)
+                buffers[acquired] = bufferPool.getBuffer(manager.getPageSize());
+
+            boolean any = false;
+            for (int k = 0; k < reads.length; k++) {
+                reads[k] = bufferPool.beginWarmRead(resourceId, firstPage + k, manager, buffers[k]);
+                any |= reads[k] != null;
+            }
+            if (!any)
+                return 0;
+
+            CacheableData[] pages;
+
+            try {
+                pages = readRun(manager, bufferPool.channelLock(manager), buffers, firstPage);
+            } catch (IOException ex) {
+                // the resource has changed since the manifest was written, the run is skipped
+                pages = new CacheableData[length];
+            }
+
+            for (int k = 0; k < reads.length; k++) {
+                if (reads[k] == null)
+                    continue;
+
+                ReadRequest read = reads[k];
+                reads[k] = null;
+                byte[] spare = bufferPool.finishWarmRead(read, pages[k], manifest.isFrequent(first + k));
+
+                // a skipped page hands back its own buffer
+                if (spare != buffers[k])
+                    loaded++;
+
+                // null, if the buffer is still needed to write the evicted page
+                buffers[k] = spare;
+            }
+        } finally {
+            // the reads end even if the run could not be read, the waiting requests read the pages
+            for (int k = 0; k < reads.length; k++) {
+                if (reads[k] != null)
+                    bufferPool.finishWarmRead(reads[k], null, false);
+            }
+            for (int k = 0; k < acquired; k++)
+                bufferPool.putBuffer(manager.getPageSize(), buffers[k]);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Reads consecutive pages into the buffers. Only tables are read with one batched read, since
+     * batched reads of other resources do not stop at the end of the file.
+     */
+    private static CacheableData[] readRun(ResourceManager manager, ReentrantLock channelLock, byte[][] buffers,
+                                           int firstPage) throws IOException {
+
+        if (manager instanceof TableResourceManager) {
+            channelLock.lock();
+            try {
+                return manager.readPagesFromResource(buffers, firstPage);
+            } finally {
+                channelLock.unlock();
+            }
+        }
+
+        CacheableData[] pages = new CacheableData[buffers.length];
+        for (int k = 0; k < buffers.length; k++)
+            pages[k] = manager.readPageFromResource(buffers[k], firstPage + k);
+        return pages;
+    }
+
+
+}
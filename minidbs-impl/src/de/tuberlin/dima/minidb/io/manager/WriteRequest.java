@@ -2,20 +2,44 @@ package de.tuberlin.dima.minidb.io.manager;
 
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by arbuzinside on 16.11.2015.
+ * <p/>
+ * The write of an evicted page. If the request has an arena, the frame of the page goes back to
+ * it once the page is written. A requester may take the page from the queued write instead of
+ * reading it again (see <code>handOut</code>); the page then goes into the cache again, and its
+ * frame is paid back with the buffer of the entry the cache evicts for it. Whichever happens
+ * first decides who owns the frame.
  */
 public class WriteRequest extends Request {
 
 
+    private static final int HELD = 0;
+    private static final int HANDED_OUT = 1;
+    private static final int RETURNED = 2;
+
     private CacheableData data;
 
+    private final FrameArena arena;
+
+    private final AtomicInteger frameState = new AtomicInteger(HELD);
+
     public WriteRequest(int resourceId, int pageNumber, byte[] buffer, ResourceManager mng, CacheableData data) {
 
+        this(resourceId, pageNumber, buffer, mng, data, null);
+    }
+
+    public WriteRequest(int resourceId, int pageNumber, byte[] buffer, ResourceManager mng, CacheableData data,
+                        FrameArena arena) {
+
         this.resourceId = resourceId;
         this.pageNumber = pageNumber;
         this.mng = mng;
         this.buffer = buffer;
+        this.arena = arena;
         this.setCompleted(false);
         this.setData(data);
 
@@ -30,5 +54,43 @@ public class WriteRequest extends Request {
         this.data = data;
     }
 
+    public IOPriority getPriority() {
+        return IOPriority.WRITE_BACK;
+    }
+
+    /**
+     * Hands the page out to a requester, unless its frame has already gone back to the arena. The
+     * requester pays back the frame, or replaces it, if it keeps the page outside the cache.
+     *
+     * @return The page, or null, if the frame may already hold another page.
+     */
+    public CacheableData handOut() {
+
+        if (arena == null || frameState.compareAndSet(HELD, HANDED_OUT) || frameState.get() == HANDED_OUT)
+            return data;
+        return null;
+    }
+
+    public void complete(CacheableData result) {
+
+        returnFrame();
+        super.complete(result);
+    }
+
+    public void fail(IOException error) {
+
+        returnFrame();
+        super.fail(error);
+    }
+
+    private void returnFrame() {
+
+        if (arena == null)
+            return;
+
+        if (frameState.compareAndSet(HELD, RETURNED))
+            arena.release(buffer);
+    }
+
 
-}
\ No newline at end of file
+}
@@ -1,77 +1,171 @@
 package de.tuberlin.dima.minidb.io.tables;
 
+import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataTuple;
 import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
 
 /**
  * Created by arbuzinside on 2.11.2015.
+ * <p/>
+ * Cursor over the records of a table page. Each record is decoded at most once: hasNext()
+ * skips deleted records, tests the predicates on the columns they refer to, decodes the
+ * remaining fetched columns only for records that pass, and keeps the tuple for next().
  */
 public class MyIterator implements TupleIterator {
 
     int position;
     int numCols;
-    long columnBitmap;
-    LowLevelPredicate[] preds;
 
     MyTablePage page;
 
+    /**
+     * The columns that have predicates, their predicates, and the position of each such column
+     * in the fetched tuple (-1, if the column is not fetched).
+     */
+    private final int[] testColumns;
+    private final LowLevelPredicate[][] tests;
+    private final int[] testTargets;
+
+    /**
+     * The fetched columns that have no predicates, and their positions in the fetched tuple.
+     */
+    private final int[] fetchColumns;
+    private final int[] fetchTargets;
+
+    /**
+     * The tuple that is reused for every record, or null, if a new tuple is created per record.
+     */
+    private final DataTuple reused;
+
+    /**
+     * The decoded tuple that the next call to next() returns, or null.
+     */
+    private DataTuple current;
+
     public MyIterator(MyTablePage page, int numCols, long columnBitmap) {
 
-        this.page = page;
-        this.numCols = numCols;
-        this.columnBitmap = columnBitmap;
+        this(page, null, numCols, columnBitmap, false);
+    }
 
-        position = 0;
+    public MyIterator(MyTablePage page, LowLevelPredicate[] preds, int numCols, long columnBitmap) {
 
+        this(page, preds, numCols, columnBitmap, false);
     }
 
-    public MyIterator(MyTablePage page, LowLevelPredicate[] preds, int numCols, long columnBitmap) {
+    public MyIterator(MyTablePage page, LowLevelPredicate[] preds, int numCols, long columnBitmap, boolean reuseTuple) {
 
         this.page = page;
         this.numCols = numCols;
-        this.columnBitmap = columnBitmap;
-        this.preds = preds;
+        this.reused = reuseTuple ? new DataTuple(numCols) : null;
         position = 0;
 
+        // group the predicates by column
+        int numColumns = page.getNumberOfColumns();
+        LowLevelPredicate[][] byColumn = new LowLevelPredicate[numColumns][];
+        int numTested = 0;
+
+        if (preds != null) {
+            for (LowLevelPredicate pred : preds) {
+                int column = pred.getColumnIndex();
+                LowLevelPredicate[] colPreds = byColumn[column];
+
+                if (colPreds == null) {
+                    byColumn[column] = new LowLevelPredicate[]{pred};
+                    numTested++;
+                } else {
+                    LowLevelPredicate[] more = new LowLevelPredicate[colPreds.length + 1];
+                    System.arraycopy(colPreds, 0, more, 0, colPreds.length);
+                    more[colPreds.length] = pred;
+                    byColumn[column] = more;
+                }
+            }
+        }
+
+        int numFetched = Long.bitCount(numColumns < 64 ? columnBitmap & ((1L << numColumns) - 1) : columnBitmap);
+
+        this.testColumns = new int[numTested];
+        this.tests = new LowLevelPredicate[numTested][];
+        this.testTargets = new int[numTested];
+        this.fetchColumns = new int[numFetched];
+        this.fetchTargets = new int[numFetched];
+
+        int tested = 0;
+        int fetched = 0;
+        int target = 0;
+
+        for (int i = 0; i < numColumns; i++) {
+            boolean fetch = ((columnBitmap >>> i) & 0x1) == 1;
+
+            if (byColumn[i] != null) {
+                testColumns[tested] = i;
+                tests[tested] = byColumn[i];
+                testTargets[tested++] = fetch ? target : -1;
+            } else if (fetch) {
+                fetchColumns[fetched] = i;
+                fetchTargets[fetched++] = target;
+            }
+
+            if (fetch)
+                target++;
+        }
     }
 
     @Override
     public boolean hasNext() throws PageTupleAccessException {
-        boolean skip = true;
 
-        if (preds != null) {
+        if (current != null)
+            return true;
 
+        while (position < page.getNumRecordsOnPage()) {
+            int offset = page.getFieldsOffset(position++);
 
-            while (position < page.getNumRecordsOnPage() && skip) {
-                if (page.isDead(position) || page.getDataTuple(preds, position, columnBitmap, numCols) == null) {
-                    position++;
-                } else {
-                    skip = false;
-                }
-            }
-            return position < page.getNumRecordsOnPage() && page.getDataTuple(preds, position, columnBitmap, numCols) != null;
-        } else {
+            if (offset >= 0) {
+                DataTuple tuple = reused != null ? reused : new DataTuple(numCols);
 
-            while (position < page.getNumRecordsOnPage() && skip) {
-                if (page.isDead(position) || page.getDataTuple(position, columnBitmap, numCols) == null) {
-                    position++;
-                } else {
-                    skip = false;
+                if (decode(offset, tuple)) {
+                    current = tuple;
+                    return true;
                 }
             }
-            return position < page.getNumRecordsOnPage() && page.getDataTuple(position, columnBitmap, numCols) != null;
         }
+        return false;
     }
 
 
     @Override
     public DataTuple next() throws PageTupleAccessException {
 
-        if (preds != null)
-            return page.getDataTuple(preds, position++, columnBitmap, numCols);
-        else
-            return page.getDataTuple(position++, columnBitmap, numCols);
+        if (!hasNext())
+            throw new PageTupleAccessException(position);
+
+        DataTuple tuple = current;
+        current = null;
+        return tuple;
+    }
+
+    /**
+     * Decodes a live record into the given tuple, stopping at the first predicate that fails.
+     *
+     * @return true, if the record passed all predicates.
+     */
+    private boolean decode(int offset, DataTuple tuple) {
+
+        for (int i = 0; i < testColumns.length; i++) {
+            DataField field = page.readField(offset, testColumns[i]);
+
+            for (LowLevelPredicate pred : tests[i]) {
+                if (!pred.evaluateWithNull(field))
+                    return false;
+            }
+
+            if (testTargets[i] >= 0)
+                tuple.assignDataField(field, testTargets[i]);
+        }
+
+        for (int i = 0; i < fetchColumns.length; i++)
+            tuple.assignDataField(page.readField(offset, fetchColumns[i]), fetchTargets[i]);
 
+        return true;
     }
 
 }
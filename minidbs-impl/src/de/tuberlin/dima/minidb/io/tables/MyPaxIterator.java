@@ -0,0 +1,66 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+import java.util.BitSet;
+
+/**
+ * Iterates over the tuples of a page whose records are grouped by column. The predicates are
+ * evaluated over whole mini-pages when the iterator is created; afterwards, only the columns to
+ * fetch are read for the records that passed.
+ */
+public class MyPaxIterator implements TupleIterator {
+
+    private final MyPaxTablePage page;
+    private final int numCols;
+    private final long columnBitmap;
+
+    private final BitSet selected;
+    private int position;
+
+    /**
+     * The tuple that is filled for every record, or null, if a new tuple is created per record.
+     */
+    private final DataTuple reused;
+
+
+    public MyPaxIterator(MyPaxTablePage page, LowLevelPredicate[] preds, int numCols, long columnBitmap) {
+
+        this(page, preds, numCols, columnBitmap, false);
+    }
+
+    public MyPaxIterator(MyPaxTablePage page, LowLevelPredicate[] preds, int numCols, long columnBitmap, boolean reuseTuple) {
+
+        this.page = page;
+        this.numCols = numCols;
+        this.columnBitmap = columnBitmap;
+        this.reused = reuseTuple ? new DataTuple(numCols) : null;
+
+        this.selected = page.selectRecords(preds);
+        this.position = selected.nextSetBit(0);
+    }
+
+    @Override
+    public boolean hasNext() throws PageTupleAccessException {
+
+        // skip records that were deleted after the predicates were evaluated
+        while (position >= 0 && page.isDead(position))
+            position = selected.nextSetBit(position + 1);
+
+        return position >= 0;
+    }
+
+    @Override
+    public DataTuple next() throws PageTupleAccessException {
+
+        if (!hasNext())
+            throw new PageTupleAccessException(page.getNumRecordsOnPage());
+
+        DataTuple tuple = reused != null ? page.project(position, columnBitmap, reused)
+                : page.project(position, columnBitmap, numCols);
+        position = selected.nextSetBit(position + 1);
+        return tuple;
+    }
+
+}
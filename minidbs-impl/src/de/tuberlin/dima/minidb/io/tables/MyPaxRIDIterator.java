@@ -0,0 +1,46 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.util.Pair;
+
+/**
+ * Iterates over the complete tuples of a page whose records are grouped by column, together with
+ * their RIDs.
+ */
+public class MyPaxRIDIterator implements TupleRIDIterator {
+
+    private final MyPaxTablePage page;
+    private final int numCols;
+    private int position;
+
+
+    public MyPaxRIDIterator(MyPaxTablePage page, int numCols) {
+
+        this.page = page;
+        this.numCols = numCols;
+        this.position = 0;
+    }
+
+    @Override
+    public boolean hasNext() throws PageTupleAccessException {
+
+        while (position < page.getNumRecordsOnPage() && page.isDead(position))
+            position++;
+
+        return position < page.getNumRecordsOnPage();
+    }
+
+    @Override
+    public Pair<DataTuple, RID> next() throws PageTupleAccessException {
+
+        if (!hasNext())
+            throw new PageTupleAccessException(position);
+
+        RID r = new RID((long) page.getPageNumber() << 32 | position & 0xFFFFFFFFL);
+        DataTuple t = page.project(position++, Long.MAX_VALUE, numCols);
+
+        return new Pair<DataTuple, RID>(t, r);
+    }
+
+}
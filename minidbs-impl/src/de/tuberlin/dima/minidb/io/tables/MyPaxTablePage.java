@@ -0,0 +1,510 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.FlushableData;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+import java.util.BitSet;
+
+/**
+ * A table page that groups the fields of its records by column (PAX). After the header, the page
+ * holds one tombstone byte per record, followed by a mini-page per column with the field of that
+ * column of every record: the field itself for fix-length columns, and the offset and length of
+ * the field in the variable-length-chunk at the end of the page for variable-length columns.
+ * <p/>
+ * The number of records a page holds is fixed when the page is initialized, such that every
+ * record fits with all variable-length fields at their maximal length. Since the mini-pages start
+ * at fixed positions, the field of a record is found without looking at the other columns, and
+ * projections and predicates read only the mini-pages of their columns. The iterators evaluate
+ * the predicates column by column over all records of the page before they build any tuple.
+ * <p/>
+ * The header has the size of the header of a row page: magic number, page number, number of
+ * records, number of records the page holds, and offset of the variable-length-chunk.
+ */
+public class MyPaxTablePage implements TablePage, FlushableData {
+
+
+    /**
+     * The magic number indicating a page whose records are grouped by column.
+     */
+    public static final int PAX_PAGE_HEADER_MAGIC_NUMBER = 0xDEADC01D;
+
+    private static final int PAGE_NUMBER_OFFSET = 4;
+    private static final int NUM_RECORDS_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int CHUNK_OFFSET = 16;
+
+    /**
+     * The width of the entry of a variable-length field in its mini-page: offset and length.
+     */
+    private static final int POINTER_WIDTH = 8;
+
+
+    private final byte[] page;
+    private final TableSchema schema;
+
+    private boolean isExpired;
+    private boolean isModified;
+
+    private final DataType[] types;
+    private final int capacity;
+
+    // the start of the mini-page and the width of a field of every column
+    private final int[] columnStarts;
+    private final int[] columnWidths;
+
+    // the end of the last mini-page, where the variable-length-chunk may grow to
+    private final int miniPagesEnd;
+
+
+    public MyPaxTablePage(TableSchema schema, byte[] binaryPage) throws PageFormatException {
+
+        if (schema.getPageSize().getNumberOfBytes() != binaryPage.length)
+            throw new PageFormatException("size doesn't match");
+        if (MyHelper.byteArrayToInt(binaryPage, 0) != PAX_PAGE_HEADER_MAGIC_NUMBER)
+            throw new PageFormatException("The page does not group its records by column.");
+
+        this.page = binaryPage;
+        this.schema = schema;
+        this.types = columnTypes(schema);
+        this.capacity = MyHelper.byteArrayToInt(binaryPage, CAPACITY_OFFSET);
+
+        this.columnStarts = new int[types.length];
+        this.columnWidths = new int[types.length];
+        this.miniPagesEnd = layMiniPages();
+
+        if (capacity < 0 || miniPagesEnd > binaryPage.length)
+            throw new PageFormatException("The number of records of the page is out of range: " + capacity);
+
+        this.isModified = false;
+        this.isExpired = false;
+    }
+
+    public MyPaxTablePage(TableSchema schema, byte[] binaryPage, int pageNumber) throws PageFormatException {
+
+        if (schema.getPageSize().getNumberOfBytes() != binaryPage.length)
+            throw new PageFormatException("size doesn't match");
+
+        this.page = binaryPage;
+        this.schema = schema;
+        this.types = columnTypes(schema);
+        this.capacity = calcCapacity(types, binaryPage.length);
+
+        if (capacity < 1)
+            throw new PageFormatException("A record whose fields all have their maximal length does not fit on the page.");
+
+        this.columnStarts = new int[types.length];
+        this.columnWidths = new int[types.length];
+        this.miniPagesEnd = layMiniPages();
+
+        MyHelper.intToBytes(page, PAX_PAGE_HEADER_MAGIC_NUMBER, 0);
+        MyHelper.intToBytes(page, pageNumber, PAGE_NUMBER_OFFSET);
+        MyHelper.intToBytes(page, 0, NUM_RECORDS_OFFSET);
+        MyHelper.intToBytes(page, capacity, CAPACITY_OFFSET);
+        MyHelper.intToBytes(page, page.length, CHUNK_OFFSET);
+
+        this.isModified = true;
+        this.isExpired = false;
+    }
+
+
+    private static DataType[] columnTypes(TableSchema schema) {
+
+        DataType[] types = new DataType[schema.getNumberOfColumns()];
+        for (int i = 0; i < types.length; i++)
+            types[i] = schema.getColumn(i).getDataType();
+        return types;
+    }
+
+    /**
+     * Calculates how many records fit on a page, if all variable-length fields have their
+     * maximal length.
+     */
+    private static int calcCapacity(DataType[] types, int pageSize) {
+
+        // one tombstone byte per record
+        int maxWidth = 1;
+
+        for (DataType type : types) {
+            if (type.isFixLength())
+                maxWidth += type.getNumberOfBytes();
+            else
+                maxWidth += POINTER_WIDTH + type.getNumberOfBytes();
+        }
+
+        return (pageSize - TABLE_DATA_PAGE_HEADER_BYTES) / maxWidth;
+    }
+
+    /**
+     * Places the mini-pages behind the tombstones and returns the end of the last one.
+     */
+    private int layMiniPages() {
+
+        int offset = TABLE_DATA_PAGE_HEADER_BYTES + capacity;
+
+        for (int i = 0; i < types.length; i++) {
+            columnStarts[i] = offset;
+            columnWidths[i] = types[i].isFixLength() ? types[i].getNumberOfBytes() : POINTER_WIDTH;
+            offset += capacity * columnWidths[i];
+        }
+        return offset;
+    }
+
+
+    @Override
+    public boolean isExpired() {
+
+        return isExpired;
+    }
+
+    public byte[] getBuffer() {
+
+        return page;
+    }
+
+    public void markExpired() {
+
+        this.isExpired = true;
+    }
+
+    public boolean hasBeenModified() throws PageExpiredException {
+
+        if (isExpired())
+            throw new PageExpiredException();
+
+        return isModified;
+    }
+
+    /**
+     * Marks the page as unmodified, after a copy of it has been taken to be written.
+     */
+    public void markUnmodified() {
+
+        this.isModified = false;
+    }
+
+    /**
+     * Marks the page as modified again, because its copy could not be written.
+     */
+    public void markModified() {
+
+        this.isModified = true;
+    }
+
+    /**
+     * Gets the page number of this page, as is found in the header bytes 4 - 7.
+     *
+     * @return The page number from the page header.
+     * @throws PageExpiredException Thrown, if the operation is performed
+     *                              on a page that is identified to be expired.
+     */
+    @Override
+    public int getPageNumber() throws PageExpiredException {
+
+        if (isExpired())
+            throw new PageExpiredException();
+
+        return MyHelper.byteArrayToInt(page, PAGE_NUMBER_OFFSET);
+    }
+
+    /**
+     * Gets how many records are currently stored on this page, including those that are marked
+     * as deleted. The number is found in the header bytes 8 - 11.
+     *
+     * @return The total number of records on this page.
+     * @throws PageExpiredException Thrown, if the operation is performed
+     *                              on a page that is identified to be expired.
+     */
+    @Override
+    public int getNumRecordsOnPage() throws PageExpiredException {
+
+        if (isExpired())
+            throw new PageExpiredException();
+
+        return MyHelper.byteArrayToInt(page, NUM_RECORDS_OFFSET);
+    }
+
+    /**
+     * Gets how many records the page holds at most.
+     *
+     * @return The number of records that fit on this page.
+     */
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    public boolean isDead(int position) {
+
+        return page[TABLE_DATA_PAGE_HEADER_BYTES + position] != 0;
+    }
+
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Inserts a tuple into the page by writing its fields into the mini-pages of their columns
+     * and its variable-length fields into the variable-length-chunk.
+     * <p/>
+     * If the method is not successful in inserting the tuple due to the fact that there is
+     * not enough space left, it returns false, but does not throw an exception.
+     *
+     * @param tuple The tuple to be inserted.
+     * @return true, if the tuple was inserted, false, if the tuple was not inserted.
+     * @throws PageFormatException  Thrown, if the tuple does not match the schema of the page.
+     * @throws PageExpiredException Thrown, if the operation is performed
+     *                              on a page that is identified to be expired.
+     */
+    @Override
+    public boolean insertTuple(DataTuple tuple) throws PageFormatException, PageExpiredException {
+
+        if (isExpired())
+            throw new PageExpiredException();
+
+        if (tuple.getNumberOfFields() != types.length)
+            throw new PageFormatException("Tuple is incorrect");
+
+        int chunkWidth = 0;
+        for (int i = 0; i < types.length; i++) {
+            DataField field = tuple.getField(i);
+            if (!field.getBasicType().equals(types[i].getBasicType()))
+                throw new PageFormatException("Tuple is incorrect");
+            if (!types[i].isFixLength() && !field.isNULL())
+                chunkWidth += field.getNumberOfBytes();
+        }
+
+        int position = getNumRecordsOnPage();
+        int chunk = MyHelper.byteArrayToInt(page, CHUNK_OFFSET);
+
+        if (position >= capacity || chunk - chunkWidth < miniPagesEnd)
+            return false;
+
+        page[TABLE_DATA_PAGE_HEADER_BYTES + position] = 0;
+
+        for (int i = 0; i < types.length; i++) {
+
+            DataField field = tuple.getField(i);
+            int offset = columnStarts[i] + position * columnWidths[i];
+
+            if (types[i].isFixLength()) {
+                field.encodeBinary(page, offset);
+            } else if (field.isNULL()) {
+                MyHelper.intToBytes(page, 0, offset);
+                MyHelper.intToBytes(page, 0, offset + 4);
+            } else {
+                chunk -= field.getNumberOfBytes();
+                field.encodeBinary(page, chunk);
+                MyHelper.intToBytes(page, chunk, offset);
+                MyHelper.intToBytes(page, field.getNumberOfBytes(), offset + 4);
+            }
+        }
+
+        MyHelper.intToBytes(page, position + 1, NUM_RECORDS_OFFSET);
+        MyHelper.intToBytes(page, chunk, CHUNK_OFFSET);
+
+        this.isModified = true;
+        return true;
+    }
+
+    /**
+     * Deletes a tuple by setting its tombstone.
+     *
+     * @param position The position of the tuple's record. The first record has position 0.
+     * @throws PageTupleAccessException Thrown, if the index is negative or larger than the number
+     *                                  of tuple on the page.
+     * @throws PageExpiredException     Thrown, if the operation is performed
+     *                                  on a page that is identified to be expired.
+     */
+    @Override
+    public void deleteTuple(int position) throws PageTupleAccessException, PageExpiredException {
+
+        checkPosition(position);
+
+        page[TABLE_DATA_PAGE_HEADER_BYTES + position] = 1;
+        this.isModified = true;
+    }
+
+    /**
+     * Takes the DataTuple whose record is found at the given position, with the columns given
+     * by the bitmap. Only the mini-pages of those columns are read.
+     *
+     * @param position The position of the tuple's record. The first record has position 0.
+     * @param bitmap   The bitmap describing which columns to fetch.
+     * @param cols     The number of columns that should be fetched.
+     * @return The tuple, or null, if the tombstone of the tuple is set.
+     * @throws PageTupleAccessException Thrown, if the index negative or larger than the number of
+     *                                  tuple on the page.
+     * @throws PageExpiredException     Thrown, if the operation is performed
+     *                                  on a page that is identified to be expired.
+     */
+    @Override
+    public DataTuple getDataTuple(int position, long bitmap, int cols) throws PageTupleAccessException, PageExpiredException {
+
+        checkPosition(position);
+
+        if (isDead(position))
+            return null;
+
+        return project(position, bitmap, cols);
+    }
+
+    /**
+     * Takes the DataTuple whose record is found at the given position, if it passes all given
+     * predicates. The fields of the predicate columns are checked before any other field is read.
+     *
+     * @param preds    An array of predicates that the tuple must pass.
+     * @param position The position of the tuple's record. The first record has position 0.
+     * @param bitmap   The bitmap describing which columns to fetch.
+     * @param cols     The number of columns that should be fetched.
+     * @return The tuple, or null, if the tombstone of the tuple is set or any predicate
+     * evaluates to false.
+     * @throws PageTupleAccessException Thrown, if the index negative or larger than the number of
+     *                                  tuple on the page.
+     * @throws PageExpiredException     Thrown, if the operation is performed
+     *                                  on a page that is identified to be expired.
+     */
+    @Override
+    public DataTuple getDataTuple(LowLevelPredicate[] preds, int position, long bitmap, int cols) throws PageTupleAccessException,
+            PageExpiredException {
+
+        checkPosition(position);
+
+        if (isDead(position))
+            return null;
+
+        for (LowLevelPredicate pred : preds) {
+            if (!pred.evaluateWithNull(getField(pred.getColumnIndex(), position)))
+                return null;
+        }
+
+        return project(position, bitmap, cols);
+    }
+
+    @Override
+    public TupleIterator getIterator(int cols, long bitmap) throws PageTupleAccessException, PageExpiredException {
+
+        if (isExpired)
+            throw new PageExpiredException();
+
+        return new MyPaxIterator(this, null, cols, bitmap);
+    }
+
+    @Override
+    public TupleIterator getIterator(LowLevelPredicate[] preds, int cols, long bitmap) throws PageTupleAccessException,
+            PageExpiredException {
+
+        if (isExpired)
+            throw new PageExpiredException();
+
+        return new MyPaxIterator(this, preds, cols, bitmap);
+    }
+
+    @Override
+    public TupleIterator getIterator(LowLevelPredicate[] preds, int cols, long bitmap, boolean reuseTuple)
+            throws PageTupleAccessException, PageExpiredException {
+
+        if (isExpired)
+            throw new PageExpiredException();
+
+        return new MyPaxIterator(this, preds, cols, bitmap, reuseTuple);
+    }
+
+    @Override
+    public TupleRIDIterator getIteratorWithRID() throws PageTupleAccessException, PageExpiredException {
+
+        if (isExpired)
+            throw new PageExpiredException();
+
+        return new MyPaxRIDIterator(this, types.length);
+    }
+
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Finds the live records on the page that pass all given predicates. Every predicate is
+     * evaluated over the mini-page of its column for the records that passed the predicates
+     * before.
+     *
+     * @param preds The predicates, or null, to select all live records.
+     * @return The positions of the selected records.
+     */
+    BitSet selectRecords(LowLevelPredicate[] preds) {
+
+        int numRecords = getNumRecordsOnPage();
+        BitSet selected = new BitSet(numRecords);
+
+        for (int position = 0; position < numRecords; position++) {
+            if (!isDead(position))
+                selected.set(position);
+        }
+
+        if (preds != null) {
+            for (LowLevelPredicate pred : preds) {
+                int column = pred.getColumnIndex();
+                for (int position = selected.nextSetBit(0); position >= 0; position = selected.nextSetBit(position + 1)) {
+                    if (!pred.evaluateWithNull(getField(column, position)))
+                        selected.clear(position);
+                }
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Builds the tuple of the given record with the columns given by the bitmap.
+     */
+    DataTuple project(int position, long bitmap, int cols) {
+
+        return project(position, bitmap, new DataTuple(cols));
+    }
+
+    /**
+     * Fills the given tuple with the columns given by the bitmap of the given record.
+     */
+    DataTuple project(int position, long bitmap, DataTuple tuple) {
+
+        int column = 0;
+
+        for (int i = 0; i < types.length && bitmap != 0; i++, bitmap >>>= 1) {
+            if ((bitmap & 0x1) != 0)
+                tuple.assignDataField(getField(i, position), column++);
+        }
+        return tuple;
+    }
+
+    /**
+     * Reads the field of the given column of the given record from the column's mini-page.
+     */
+    private DataField getField(int column, int position) {
+
+        DataType type = types[column];
+        int offset = columnStarts[column] + position * columnWidths[column];
+
+        if (type.isFixLength())
+            return type.getFromBinary(page, offset);
+
+        int start = MyHelper.byteArrayToInt(page, offset);
+        int length = MyHelper.byteArrayToInt(page, offset + 4);
+
+        if (start == 0 && length == 0)
+            return type.getNullValue();
+
+        return type.getFromBinary(page, start, length);
+    }
+
+    private void checkPosition(int position) throws PageTupleAccessException {
+
+        if (isExpired())
+            throw new PageExpiredException();
+
+        if (position < 0 || position >= getNumRecordsOnPage())
+            throw new PageTupleAccessException(position);
+    }
+}
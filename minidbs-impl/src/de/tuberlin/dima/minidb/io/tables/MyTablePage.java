@@ -4,6 +4,7 @@ import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataTuple;
 import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.FlushableData;
 import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
@@ -11,7 +12,7 @@ import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
 /**
  * Created by arbuzinside on 30.10.2015.
  */
-public class MyTablePage implements TablePage {
+public class MyTablePage implements TablePage, FlushableData {
 
 
     private byte[] header = new byte[TABLE_DATA_PAGE_HEADER_BYTES];
@@ -29,6 +30,12 @@ public class MyTablePage implements TablePage {
 
     private TableSchema schema;
 
+    /**
+     * The types of the columns, and the offsets of the columns within a record's fields.
+     */
+    private DataType[] types;
+    private int[] columnOffsets;
+
 
     private byte[] pNumber;
 
@@ -45,6 +52,7 @@ public class MyTablePage implements TablePage {
 
         this.pNumber = MyHelper.intToBytes(TABLE_DATA_PAGE_HEADER_MAGIC_NUMBER);
         this.schema = schema;
+        initColumns(schema);
 
 
 
@@ -68,6 +76,7 @@ public class MyTablePage implements TablePage {
 
         this.pNumber = MyHelper.intToBytes(TABLE_DATA_PAGE_HEADER_MAGIC_NUMBER);
         this.schema = schema;
+        initColumns(schema);
         this.pageNumber = MyHelper.intToBytes(pageNumber);
         this.recordWidth = MyHelper.intToBytes(calcRecordWidth(schema));
         this.numberRecords = MyHelper.intToBytes(0);
@@ -110,6 +119,26 @@ public class MyTablePage implements TablePage {
     }
 
 
+    /**
+     * Takes the column types from the schema and calculates where each column starts within
+     * the fields of a record
+     *
+     * @param schema
+     */
+    private void initColumns(TableSchema schema) {
+
+        this.types = new DataType[schema.getNumberOfColumns()];
+        this.columnOffsets = new int[types.length];
+
+        int offset = 0;
+        for (int i = 0; i < types.length; i++) {
+            types[i] = schema.getColumn(i).getDataType();
+            columnOffsets[i] = offset;
+            offset += types[i].isFixLength() ? types[i].getNumberOfBytes() : 8;
+        }
+    }
+
+
     private void setHeader() {
 
         page[0] = pNumber[0];   //magic number
@@ -189,6 +218,22 @@ public class MyTablePage implements TablePage {
         return isModified;
     }
 
+    /**
+     * Marks the page as unmodified, after a copy of it has been taken to be written.
+     */
+    public void markUnmodified() {
+
+        this.isModified = false;
+    }
+
+    /**
+     * Marks the page as modified again, because its copy could not be written.
+     */
+    public void markModified() {
+
+        this.isModified = true;
+    }
+
 
     /**
      * Gets the page number of this page, as is found in the header bytes 4 - 7.
@@ -202,7 +247,7 @@ public class MyTablePage implements TablePage {
 
         if (isExpired())
             throw new PageExpiredException();
-        return MyHelper.byteArrayToInt(pageNumber);
+        return MyHelper.byteArrayToInt(page, 4);
     }
 
 
@@ -240,6 +285,17 @@ public class MyTablePage implements TablePage {
     }
 
 
+    /**
+     * Gets the number of columns of the records on this page
+     *
+     * @return
+     */
+    int getNumberOfColumns() {
+
+        return types.length;
+    }
+
+
     public int getChunkOffset() throws PageExpiredException {
 
         if (isExpired())
@@ -394,6 +450,48 @@ public class MyTablePage implements TablePage {
     }
 
 
+    /**
+     * Gets the offset at which the fields of the record at the given position start.
+     *
+     * @param position The position of the record.
+     * @return The offset of the record's fields, or -1, if the tombstone bit of the record is set.
+     */
+    int getFieldsOffset(int position) {
+
+        int offset = TABLE_DATA_PAGE_HEADER_BYTES + position * getRecordWidth();
+
+        if ((MyHelper.byteArrayToInt(page, offset) & 0x1) == 1)
+            return -1;
+
+        return offset + 4;
+    }
+
+
+    /**
+     * Decodes a single field of a record, resolving the pointer of a variable-length field.
+     *
+     * @param fieldsOffset The offset of the record's fields, as returned by getFieldsOffset().
+     * @param column       The column of the field.
+     * @return The field.
+     */
+    DataField readField(int fieldsOffset, int column) {
+
+        DataType type = types[column];
+        int offset = fieldsOffset + columnOffsets[column];
+
+        if (type.isFixLength())
+            return type.getFromBinary(page, offset);
+
+        int start = MyHelper.byteArrayToInt(page, offset);
+        int length = MyHelper.byteArrayToInt(page, offset + 4);
+
+        if (start == 0 && length == 0)
+            return type.getNullValue();
+
+        return type.getFromBinary(page, start, length);
+    }
+
+
     /**
      * Takes the DataTuple from the page whose record is found at the given position in the
      * sequence of records on the page. The position starts at 0, such that
@@ -426,49 +524,21 @@ public class MyTablePage implements TablePage {
             throw new PageTupleAccessException(position);
 
 
-        int offset = getRecordWidth() * position + TABLE_DATA_PAGE_HEADER_BYTES;
+        int offset = getFieldsOffset(position);
 
-        if ((MyHelper.byteArrayToInt(page, offset) & 0x1) == 1)
+        if (offset < 0)
             return null;
 
-        offset += 4;
-
         DataTuple tuple = new DataTuple(cols);
-        DataType type;
-        DataField field;
         int column = 0;
 
-        for (int i = 0; i < schema.getNumberOfColumns(); i++) {
-
-            type = schema.getColumn(i).getDataType();
-
-            if ((bitmap & 0x1) == 0) {
+        for (int i = 0; i < types.length && bitmap != 0; i++) {
 
-                if (type.isFixLength())
-                    offset += type.getNumberOfBytes();
-                else
-                    offset += 8;
-
-            } else {
-                if (type.isFixLength()) {
-                    field = type.getFromBinary(page, offset);
-                    offset += type.getNumberOfBytes();
-                    if (field.getNumberOfBytes() != type.getNumberOfBytes()) {
-                    }
-                } else {
-                    int start = MyHelper.byteArrayToInt(page, offset);
-                    int length = MyHelper.byteArrayToInt(page, offset + 4);
-
-                    if (start == 0 && length == 0)
-                        field = type.getNullValue();
-                    else
-                        field = type.getFromBinary(page, start, length);
-                    offset += 8;
-                }
-                tuple.assignDataField(field, column);
+            if ((bitmap & 0x1) == 1) {
+                tuple.assignDataField(readField(offset, i), column);
                 column++;
             }
-            bitmap >>= 1;
+            bitmap >>>= 1;
         }
         return tuple;
     }
@@ -509,53 +579,34 @@ public class MyTablePage implements TablePage {
         if (position < 0 || position > getNumRecordsOnPage())
             throw new PageTupleAccessException(position);
 
-        int offset = getRecordWidth() * position + header.length;
+        int offset = getFieldsOffset(position);
 
-        if ((MyHelper.byteArrayToInt(page, offset) & 0x1) == 1)
+        if (offset < 0)
             return null;
 
+        // test the predicates first, so that no field is decoded for a record that fails
+        DataField[] tested = new DataField[types.length];
 
-        offset += 4;
-
-        DataTuple tuple = new DataTuple(cols);
-        DataType type;
-        DataField field;
-        int column = 0;
+        for (int j = 0; j < preds.length; j++) {
+            int i = preds[j].getColumnIndex();
 
+            if (tested[i] == null)
+                tested[i] = readField(offset, i);
 
-        for (int i = 0; i < schema.getNumberOfColumns(); i++) {
-            type = schema.getColumn(i).getDataType();
-
-            if (type.isFixLength()) {
-                field = type.getFromBinary(page, offset);
-                offset += type.getNumberOfBytes();
-            } else {
-                int start = MyHelper.byteArrayToInt(page, offset);
-                int length = MyHelper.byteArrayToInt(page, offset + 4);
-
-                if (start == 0 && length == 0) {
-                    field = type.getNullValue();
-                } else {
-
-                    field = type.getFromBinary(page, start, length);
-                }
-                offset += 8;
-            }
+            if (!preds[j].evaluateWithNull(tested[i]))
+                return null;
+        }
 
+        DataTuple tuple = new DataTuple(cols);
+        int column = 0;
 
-            for (int j = 0; j < preds.length; j++) {
-                if (preds[j].getColumnIndex() == i) {
-                    if (!preds[j].evaluateWithNull(field))
-                        return null;
-                }
-            }
+        for (int i = 0; i < types.length && bitmap != 0; i++) {
 
             if ((bitmap & 0x1) == 1) {
-                tuple.assignDataField(field, column);
+                tuple.assignDataField(tested[i] != null ? tested[i] : readField(offset, i), column);
                 column++;
             }
-
-            bitmap >>= 1;
+            bitmap >>>= 1;
         }
 
         return tuple;
@@ -608,6 +659,26 @@ public class MyTablePage implements TablePage {
         return new MyIterator(this, preds, cols, bitmap);
     }
 
+    /**
+     * Creates an iterator as <code>getIterator(preds, cols, bitmap)</code> does, which optionally
+     * decodes all records into the same tuple.
+     *
+     * @param preds      An array of predicates that the tuple must pass, or null.
+     * @param cols       The number of columns that should be fetched.
+     * @param bitmap     The bitmap describing which columns to fetch.
+     * @param reuseTuple If true, every call to next() returns the same tuple with new contents.
+     * @return An iterator over the tuples represented by the records in this page.
+     * @throws PageExpiredException Thrown, if the operation is performed
+     *                              on a page that is identified to be expired.
+     */
+    @Override
+    public TupleIterator getIterator(LowLevelPredicate[] preds, int cols, long bitmap, boolean reuseTuple) {
+
+        if (isExpired) throw new PageExpiredException();
+
+        return new MyIterator(this, preds, cols, bitmap, reuseTuple);
+    }
+
     /**
      * Creates an iterator as the function <code>getIterator()</code> does. In addition to the tuples,
      * this iterator the RID that referenced the tuple's record.
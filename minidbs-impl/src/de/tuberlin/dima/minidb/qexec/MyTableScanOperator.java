@@ -4,6 +4,7 @@ package de.tuberlin.dima.minidb.qexec;
 import de.tuberlin.dima.minidb.core.DataTuple;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.PrefetchingBufferPool;
 import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
@@ -17,6 +18,10 @@ import java.util.Set;
 
 /**
  * Created by arbuzinside on 8.12.2015.
+ * <p/>
+ * The scan keeps the pages of the prefetching window ahead of the current page requested from the
+ * buffer pool, one more page with every page it moves on, and cancels the prefetches it has not
+ * reached when it is closed.
  */
 public class MyTableScanOperator implements TableScanOperator {
 
@@ -114,7 +119,9 @@ public class MyTableScanOperator implements TableScanOperator {
 
         try {
 
-            bufferPool.prefetchPages(resourceId, currentPageNumber, manager.getLastDataPageNumber());
+            int windowEnd = Math.min(currentPageNumber + prefetchWindowLength - 1, manager.getLastDataPageNumber());
+            if (windowEnd >= currentPageNumber)
+                prefetch(currentPageNumber, windowEnd);
             page = (TablePage) bufferPool.getPageAndPin(resourceId, currentPageNumber);
             tupleIterator = page.getIterator(predicate, columnList.size(), bitmap);
         } catch (BufferPoolException ex) {
@@ -146,6 +153,9 @@ public class MyTableScanOperator implements TableScanOperator {
                     bufferPool.unpinPage(resourceId, currentPageNumber);
                     currentPageNumber++;
                     try {
+                        int windowEnd = currentPageNumber + prefetchWindowLength - 1;
+                        if (prefetchWindowLength > 0 && windowEnd <= manager.getLastDataPageNumber())
+                            prefetch(windowEnd, windowEnd);
                         TablePage page = (TablePage) bufferPool.getPageAndPin(resourceId, currentPageNumber);
                         tupleIterator = page.getIterator(predicate, columnList.size(), bitmap);
                         if (tupleIterator.hasNext())
@@ -165,6 +175,17 @@ public class MyTableScanOperator implements TableScanOperator {
         return null;
     }
 
+    /**
+     * Prefetches pages for this scan, so that closing the scan cancels only its own prefetches.
+     */
+    private void prefetch(int startPageNumber, int endPageNumber) throws BufferPoolException {
+
+        if (bufferPool instanceof PrefetchingBufferPool)
+            ((PrefetchingBufferPool) bufferPool).prefetchPages(resourceId, startPageNumber, endPageNumber, this);
+        else
+            bufferPool.prefetchPages(resourceId, startPageNumber, endPageNumber);
+    }
+
     private DataTuple formatTuple(DataTuple tuple) {
         DataTuple newTuple = new DataTuple(producedColumnIndexes.length);
         for (int i = 0; i < columnList.size(); i++) {
@@ -184,6 +205,8 @@ public class MyTableScanOperator implements TableScanOperator {
      */
     public void close() throws QueryExecutionException {
 
+        if (bufferPool instanceof PrefetchingBufferPool)
+            ((PrefetchingBufferPool) bufferPool).cancelPrefetches(resourceId, this);
     }
 
 
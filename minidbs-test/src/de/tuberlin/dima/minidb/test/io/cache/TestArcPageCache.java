@@ -0,0 +1,172 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.ArcPageCache;
+import de.tuberlin.dima.minidb.io.cache.CacheQuotas;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.ResourceClass;
+import de.tuberlin.dima.minidb.io.tables.MyTablePage;
+
+
+/**
+ * Tests the adaptive replacement of the ARC page cache.
+ */
+public class TestArcPageCache
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int RESOURCE_ID = 1;
+
+	private TableSchema schema;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.schema = new TableSchema(PAGE_SIZE);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+	}
+
+
+	/**
+	 * Pages that were requested repeatedly must survive a long scan of pages that are
+	 * requested only once.
+	 */
+	@Test
+	public void testScanResistance() throws Exception
+	{
+		final int capacity = 64;
+		final int hotPages = capacity / 2;
+		ArcPageCache cache = new ArcPageCache(PAGE_SIZE, capacity);
+
+		for (int i = 1; i <= hotPages; i++) {
+			cache.addPage(createPage(i), RESOURCE_ID);
+			cache.getPage(RESOURCE_ID, i);
+			cache.getPage(RESOURCE_ID, i);
+		}
+
+		for (int i = hotPages + 1; i <= hotPages + 10 * capacity; i++) {
+			cache.addPage(createPage(i), RESOURCE_ID);
+			cache.getPage(RESOURCE_ID, i);
+		}
+
+		for (int i = 1; i <= hotPages; i++) {
+			assertTrue("Frequently used page has been evicted by a scan.", cache.getPage(RESOURCE_ID, i) != null);
+		}
+	}
+
+
+	/**
+	 * A page that comes back shortly after its eviction from T1 must increase the target
+	 * size of T1, a page that comes back after its eviction from T2 must decrease it.
+	 */
+	@Test
+	public void testTargetAdaptation() throws Exception
+	{
+		ArcPageCache cache = new ArcPageCache(PAGE_SIZE, 4);
+
+		// pages 1 and 2 become frequent, pages 3 and 4 stay in T1
+		for (int i = 1; i <= 4; i++) {
+			cache.addPage(createPage(i), RESOURCE_ID);
+		}
+		for (int i = 1; i <= 2; i++) {
+			cache.getPage(RESOURCE_ID, i);
+			cache.getPage(RESOURCE_ID, i);
+		}
+
+		// pages 5 and 6 push pages 3 and 4 out of T1 into B1
+		assertEvicted(cache.addPage(createPage(5), RESOURCE_ID), 3);
+		assertEvicted(cache.addPage(createPage(6), RESOURCE_ID), 4);
+		assertTrue("Target must not change on regular misses.", cache.getTargetSize() == 0);
+
+		// page 3 is in B1, the target grows and T1 loses its least recently used page
+		assertEvicted(cache.addPage(createPage(3), RESOURCE_ID), 5);
+		assertTrue("Hit in B1 must increase the target size.", cache.getTargetSize() == 1);
+
+		// T1 = {6} meets its target, so T2 = {1, 2, 3} loses page 1 to B2
+		assertEvicted(cache.addPage(createPage(7), RESOURCE_ID), 1);
+
+		// page 1 is in B2, the target shrinks again
+		cache.addPage(createPage(1), RESOURCE_ID);
+		assertTrue("Hit in B2 must decrease the target size.", cache.getTargetSize() == 0);
+	}
+
+
+	/**
+	 * Pinned pages must never be chosen for replacement, even if the policy targets their list.
+	 */
+	@Test
+	public void testPinnedPagesAreNotReplaced() throws Exception
+	{
+		final int capacity = 16;
+		ArcPageCache cache = new ArcPageCache(PAGE_SIZE, capacity);
+
+		for (int i = 1; i < capacity; i++) {
+			cache.addPageAndPin(createPage(i), RESOURCE_ID);
+		}
+
+		for (int i = capacity; i < 4 * capacity; i++) {
+			cache.addPage(createPage(i), RESOURCE_ID);
+		}
+
+		for (int i = 1; i < capacity; i++) {
+			assertTrue("Pinned page has been evicted.", cache.getPage(RESOURCE_ID, i) != null);
+		}
+	}
+
+
+	/**
+	 * Index pages within the reserved share must survive a flood of table pages, and the table
+	 * pages must not grow beyond their maximal share.
+	 */
+	@Test
+	public void testQuotas() throws Exception
+	{
+		final int capacity = 100;
+		final int indexId = 2;
+
+		CacheQuotas quotas = new CacheQuotas();
+		quotas.setQuota(ResourceClass.INDEX, 20, 100);
+		quotas.setQuota(ResourceClass.TABLE, 0, 60);
+
+		ArcPageCache cache = new ArcPageCache(PAGE_SIZE, capacity, quotas);
+		cache.assignResourceClass(indexId, ResourceClass.INDEX);
+
+		for (int i = 1; i <= 20; i++) {
+			cache.addPage(createPage(i), indexId);
+		}
+
+		for (int i = 1; i <= 10 * capacity; i++) {
+			cache.addPage(createPage(i), RESOURCE_ID);
+			cache.getPage(RESOURCE_ID, i);
+			cache.getPage(RESOURCE_ID, i);
+			assertTrue("Table pages exceed their maximal share.", cache.getNumberOfResidentPages(ResourceClass.TABLE) <= 60);
+		}
+
+		for (int i = 1; i <= 20; i++) {
+			assertTrue("Reserved index page has been evicted.", cache.getPage(indexId, i) != null);
+		}
+	}
+
+
+	private static void assertEvicted(EvictedCacheEntry entry, int pageNumber)
+	{
+		CacheableData evicted = entry.getWrappingPage();
+		assertTrue("Expected page " + pageNumber + " to be evicted.", evicted != null && evicted.getPageNumber() == pageNumber);
+	}
+
+	private CacheableData createPage(int pageNumber) throws Exception
+	{
+		byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+		return new MyTablePage(this.schema, buffer, pageNumber);
+	}
+}
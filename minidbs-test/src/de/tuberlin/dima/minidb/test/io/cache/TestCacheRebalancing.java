@@ -0,0 +1,130 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.ArcPageCache;
+import de.tuberlin.dima.minidb.io.cache.CacheQuotas;
+import de.tuberlin.dima.minidb.io.cache.CacheRebalancer;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.ResizablePageCache;
+import de.tuberlin.dima.minidb.io.tables.MyTablePage;
+
+
+/**
+ * Tests that the {@link CacheRebalancer} moves memory from a cache whose working set fits to a
+ * cache whose working set does not, without changing the memory of both caches together.
+ */
+public class TestCacheRebalancing
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 5519024736615L;
+
+	private static final int INITIAL_PAGES = 256;
+
+	/**
+	 * The working set of the cache with small pages, more than twice its initial capacity.
+	 */
+	private static final int SMALL_WORKING_SET = 600;
+
+	/**
+	 * The working set of the cache with large pages, a quarter of its initial capacity.
+	 */
+	private static final int LARGE_WORKING_SET = 64;
+
+	private static final int ROUNDS = 40;
+
+	private static final int ACCESSES_PER_ROUND = 2000;
+
+	private TableSchema smallSchema;
+	private TableSchema largeSchema;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.smallSchema = new TableSchema(PageSize.SIZE_4096);
+		this.smallSchema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+		this.largeSchema = new TableSchema(PageSize.SIZE_8192);
+		this.largeSchema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+	}
+
+
+	@Test
+	public void testMemoryMovesToTheNeedierCache() throws Exception
+	{
+		ArcPageCache small = new ArcPageCache(PageSize.SIZE_4096, INITIAL_PAGES, 4 * INITIAL_PAGES, new CacheQuotas());
+		ArcPageCache large = new ArcPageCache(PageSize.SIZE_8192, INITIAL_PAGES, 2 * INITIAL_PAGES, new CacheQuotas());
+		List<ResizablePageCache> caches = Arrays.<ResizablePageCache>asList(small, large);
+
+		long budget = memory(small) + memory(large);
+
+		CacheRebalancer rebalancer = new CacheRebalancer();
+		Random random = new Random(SEED);
+		double firstHitRate = 0, lastHitRate = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			int hits = 0;
+			for (int i = 0; i < ACCESSES_PER_ROUND; i++) {
+				hits += access(small, this.smallSchema, random.nextInt(SMALL_WORKING_SET) + 1) ? 1 : 0;
+				access(large, this.largeSchema, random.nextInt(LARGE_WORKING_SET) + 1);
+			}
+
+			List<EvictedCacheEntry> evicted = new ArrayList<EvictedCacheEntry>();
+			rebalancer.rebalance(caches, evicted);
+
+			assertTrue("The memory of all caches must not grow.", memory(small) + memory(large) <= budget);
+
+			double hitRate = hits / (double) ACCESSES_PER_ROUND;
+			if (round == 0) {
+				firstHitRate = hitRate;
+			}
+			lastHitRate = hitRate;
+		}
+
+		System.out.println("Capacities after rebalancing: 4096 = " + small.getCapacity() + ", 8192 = " + large.getCapacity());
+		System.out.println("Hit rate of the 4096 cache: " + String.format("%.3f", firstHitRate) + " -> " + String.format("%.3f", lastHitRate));
+
+		assertTrue("The cache with the larger working set must grow.", small.getCapacity() > INITIAL_PAGES);
+		assertTrue("The cache with the smaller working set must shrink.", large.getCapacity() < INITIAL_PAGES);
+		assertTrue("A cache must keep a quarter of its initial capacity.", large.getCapacity() >= INITIAL_PAGES / 4);
+		assertTrue("Rebalancing must improve the hit rate.", lastHitRate > firstHitRate);
+	}
+
+
+	private static long memory(ResizablePageCache cache)
+	{
+		return (long) cache.getCapacity() * cache.getPageSize().getNumberOfBytes();
+	}
+
+	/**
+	 * Gets a page and adds it on a miss.
+	 *
+	 * @return True, if the page was found in the cache.
+	 */
+	private static boolean access(ResizablePageCache cache, TableSchema schema, int pageNumber) throws Exception
+	{
+		if (cache.getPage(1, pageNumber) != null) {
+			return true;
+		}
+
+		byte[] buffer = new byte[schema.getPageSize().getNumberOfBytes()];
+		CacheableData page = new MyTablePage(schema, buffer, pageNumber);
+		cache.addPage(page, 1);
+		return false;
+	}
+}
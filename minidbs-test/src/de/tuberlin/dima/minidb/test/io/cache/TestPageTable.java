@@ -0,0 +1,255 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.io.cache.PageTable;
+
+
+/**
+ * Tests the open addressing table that maps pages to frames, in particular the removal of entries
+ * from probe sequences that wrap around the end of the table, and growing the table after such
+ * removals.
+ */
+public class TestPageTable
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2398475610293847L;
+
+	/**
+	 * The number of slots of a table sized for eight entries.
+	 */
+	private static final int SLOTS = 16;
+
+	private static final int RESOURCE_ID = 3;
+
+	/**
+	 * Keys whose probe sequence wraps around the end of a table with sixteen slots: two keys with
+	 * the home slot 14, three with 15, one with 0 and one with 1, in the order of insertion. They
+	 * occupy the slots 14, 15 and 0 to 4.
+	 */
+	private long[] wrapped;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		long[] fourteen = keysWithHome(14, 2, 0);
+		long[] fifteen = keysWithHome(15, 3, 0);
+
+		this.wrapped = new long[] {
+			fourteen[0], fifteen[0], fifteen[1], fourteen[1], fifteen[2],
+			keysWithHome(0, 1, 0)[0], keysWithHome(1, 1, 0)[0] };
+	}
+
+
+	@Test
+	public void testRemoveFromWrappedChain() throws Exception
+	{
+		for (int removed = 0; removed < this.wrapped.length; removed++) {
+			PageTable table = newWrappedTable();
+
+			assertEquals(removed, table.remove(this.wrapped[removed]));
+			assertEquals(PageTable.NOT_FOUND, table.remove(this.wrapped[removed]));
+			assertEquals(this.wrapped.length - 1, table.size());
+
+			Map<Long, Integer> expected = new HashMap<Long, Integer>();
+			for (int i = 0; i < this.wrapped.length; i++) {
+				if (i != removed) {
+					expected.put(this.wrapped[i], i);
+				}
+			}
+			checkTable(table, expected);
+			assertFalse(table.contains(this.wrapped[removed]));
+
+			// remove the others in a random order, every remaining key must still be found
+			List<Long> others = new ArrayList<Long>(expected.keySet());
+			Collections.shuffle(others, new Random(SEED + removed));
+			for (long key : others) {
+				assertEquals(expected.remove(key).intValue(), table.remove(key));
+				checkTable(table, expected);
+				assertFalse(table.contains(key));
+			}
+			assertEquals(0, table.size());
+		}
+	}
+
+	@Test
+	public void testReinsertIntoWrappedChain() throws Exception
+	{
+		PageTable table = newWrappedTable();
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < this.wrapped.length; i++) {
+			expected.put(this.wrapped[i], i);
+		}
+
+		// the slots freed in the chain are taken again by keys of the same home slots
+		table.remove(this.wrapped[1]);
+		table.remove(this.wrapped[3]);
+		expected.remove(this.wrapped[1]);
+		expected.remove(this.wrapped[3]);
+
+		long last = 0;
+		for (long key : this.wrapped) {
+			last = Math.max(last, key);
+		}
+		long[] more = keysWithHome(15, 2, last + 1);
+		for (int i = 0; i < more.length; i++) {
+			assertEquals(PageTable.NOT_FOUND, table.put(more[i], 100 + i));
+			expected.put(more[i], 100 + i);
+		}
+		checkTable(table, expected);
+
+		// replacing a value does not add an entry
+		assertEquals(100, table.put(more[0], 200));
+		expected.put(more[0], 200);
+		assertEquals(expected.size(), table.size());
+		checkTable(table, expected);
+	}
+
+	@Test
+	public void testGrowAfterRemovals() throws Exception
+	{
+		PageTable table = newWrappedTable();
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < this.wrapped.length; i++) {
+			expected.put(this.wrapped[i], i);
+		}
+
+		// leave gaps in the chain, then grow the table several times
+		table.remove(this.wrapped[0]);
+		table.remove(this.wrapped[2]);
+		table.remove(this.wrapped[5]);
+		expected.remove(this.wrapped[0]);
+		expected.remove(this.wrapped[2]);
+		expected.remove(this.wrapped[5]);
+
+		for (int i = 0; i < 8 * SLOTS; i++) {
+			long key = PageTable.key(RESOURCE_ID + 1, i);
+			table.put(key, 1000 + i);
+			expected.put(key, 1000 + i);
+			checkTable(table, expected);
+		}
+
+		// the removed keys stay removed, and all keys can be removed and inserted again
+		assertFalse(table.contains(this.wrapped[0]));
+		assertFalse(table.contains(this.wrapped[2]));
+		assertFalse(table.contains(this.wrapped[5]));
+
+		for (long key : new ArrayList<Long>(expected.keySet())) {
+			assertEquals(expected.get(key).intValue(), table.remove(key));
+		}
+		assertEquals(0, table.size());
+		for (long key : expected.keySet()) {
+			assertFalse(table.contains(key));
+		}
+
+		for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertEquals(PageTable.NOT_FOUND, table.put(entry.getKey(), entry.getValue()));
+		}
+		checkTable(table, expected);
+	}
+
+	@Test
+	public void testRandomOperations() throws Exception
+	{
+		Random random = new Random(SEED);
+		PageTable table = new PageTable(8);
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+
+		// the number of live entries rises and falls, so that the table grows in between removals
+		for (int round = 0; round < 20000; round++) {
+			long key = PageTable.key(random.nextInt(4), random.nextInt(round / 100 + 8));
+			if (random.nextInt(3) == 0) {
+				Integer old = expected.remove(key);
+				assertEquals(old == null ? PageTable.NOT_FOUND : old.intValue(), table.remove(key));
+			}
+			else {
+				int value = random.nextInt(Integer.MAX_VALUE);
+				Integer old = expected.put(key, value);
+				assertEquals(old == null ? PageTable.NOT_FOUND : old.intValue(), table.put(key, value));
+			}
+			assertEquals(expected.size(), table.size());
+
+			if (round % 1000 == 0) {
+				checkTable(table, expected);
+			}
+		}
+		checkTable(table, expected);
+
+		table.clear();
+		assertEquals(0, table.size());
+		for (long key : expected.keySet()) {
+			assertFalse(table.contains(key));
+		}
+	}
+
+
+	/**
+	 * Creates a table with sixteen slots that holds the wrapped chain, each key with its index as
+	 * the value.
+	 */
+	private PageTable newWrappedTable()
+	{
+		PageTable table = new PageTable(SLOTS / 2);
+		for (int i = 0; i < this.wrapped.length; i++) {
+			assertEquals(PageTable.NOT_FOUND, table.put(this.wrapped[i], i));
+		}
+		return table;
+	}
+
+	private static void checkTable(PageTable table, Map<Long, Integer> expected)
+	{
+		assertEquals(expected.size(), table.size());
+		for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertTrue(table.contains(entry.getKey()));
+			assertEquals(entry.getValue().intValue(), table.get(entry.getKey()));
+		}
+	}
+
+	/**
+	 * Finds keys of the test resource whose home slot in a table with sixteen slots is the given
+	 * one.
+	 *
+	 * @param home The home slot.
+	 * @param num The number of keys to find.
+	 * @param from The key to start the search with.
+	 * @return The keys.
+	 */
+	private static long[] keysWithHome(int home, int num, long from)
+	{
+		long[] keys = new long[num];
+		int found = 0;
+		for (int page = Math.max(0, PageTable.pageNumberOf(from)); found < num; page++) {
+			long key = PageTable.key(RESOURCE_ID, page);
+			if (homeSlot(key) == home) {
+				keys[found++] = key;
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * The home slot of a key in a table with sixteen slots, as the table computes it.
+	 */
+	private static int homeSlot(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key & (SLOTS - 1);
+	}
+}
@@ -0,0 +1,236 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.ArcPageCache;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.ScanAwarePageCache;
+import de.tuberlin.dima.minidb.io.manager.SequentialDetector;
+import de.tuberlin.dima.minidb.io.tables.MyTablePage;
+
+
+/**
+ * Benchmark for the scan resistant mode of the ARC cache. Point lookups on a skewed set of
+ * index pages run alongside repeated full scans of a table that is much larger than the cache.
+ * The hit rate of the lookups is reported with and without the scan resistant mode, in which
+ * the requests pass a {@link SequentialDetector} and sequential pages are added with the scan
+ * hint, like the buffer pool does it.
+ * <p>
+ * The hot index pages fit into the cache several times over, so they must stay resident while
+ * the scans pass through, and their lookups must practically always hit. With the scan resistant
+ * mode, the scanned pages must in addition occupy only a small share of the frames, leaving the
+ * rest to the cold index pages. Those compete for the remaining frames, which bounds the overall
+ * hit rate to about 0.92 in this setup.
+ */
+public class TestScanResistance
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 8812736450192L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int CACHE_SIZE = 2048;
+
+	/**
+	 * The number of pages of the index that is accessed by point lookups.
+	 */
+	private static final int INDEX_PAGES = 3 * CACHE_SIZE / 2;
+
+	/**
+	 * The number of pages of the table that is scanned repeatedly.
+	 */
+	private static final int TABLE_PAGES = 8 * CACHE_SIZE;
+
+	/**
+	 * The number of point lookups issued per scanned page.
+	 */
+	private static final int LOOKUPS_PER_SCANNED_PAGE = 1;
+
+	/**
+	 * The number of scanned pages before the measurement starts.
+	 */
+	private static final int WARMUP_PAGES = TABLE_PAGES;
+
+	/**
+	 * The number of scanned pages during the measurement.
+	 */
+	private static final int MEASURED_PAGES = 4 * TABLE_PAGES;
+
+	private static final int INDEX_ID = 1;
+
+	private static final int TABLE_ID = 2;
+
+	/**
+	 * The number of frequently looked up index pages.
+	 */
+	private static final int HOT_PAGES = INDEX_PAGES / 5;
+
+	/**
+	 * The number of scanned pages between two checks of the hot pages during the measurement.
+	 */
+	private static final int CHECK_INTERVAL = TABLE_PAGES / 8;
+
+	private TableSchema schema;
+
+	/**
+	 * The buffer for the next page that is added, recycled from the evicted entries.
+	 */
+	private byte[] buffer;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.schema = new TableSchema(PAGE_SIZE);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+	}
+
+
+	/**
+	 * Runs the mixed workload with and without the scan resistant mode and reports the hit
+	 * rates. With the mode, the hot index pages must stay resident during and after the scans,
+	 * and the scans must be confined to a few frames.
+	 */
+	@Test
+	public void testLookupHitRateUnderScans() throws Exception
+	{
+		Result plain = runWorkload(new ArcPageCache(PAGE_SIZE, CACHE_SIZE), null);
+		Result resistant = runWorkload(new ArcPageCache(PAGE_SIZE, CACHE_SIZE), new SequentialDetector());
+
+		System.out.println("");
+		System.out.println("Cache size: " + CACHE_SIZE + ", index pages: " + INDEX_PAGES + ", table pages: " + TABLE_PAGES);
+		System.out.println("Without scan resistance: " + plain);
+		System.out.println("With scan resistance:    " + resistant);
+
+		assertTrue("Hot index pages were evicted during the scans: " + resistant,
+				resistant.minHotResident == HOT_PAGES);
+		assertTrue("Hot index pages were evicted by the scans: " + resistant,
+				resistant.finalHotResident == HOT_PAGES);
+		assertTrue("Lookups of hot index pages must hit: " + resistant, resistant.hotHitRate() >= 0.999);
+		assertTrue("Scanned pages occupy too many frames: " + resistant, resistant.maxScanResident <= CACHE_SIZE / 16);
+		assertTrue("Lookup hit rate is too low: " + resistant, resistant.hitRate() >= 0.90);
+		assertTrue("Scan resistance must improve the lookup hit rate.", resistant.hitRate() > plain.hitRate());
+	}
+
+
+	/**
+	 * Interleaves a sequential scan with skewed point lookups.
+	 *
+	 * @param detector The detector for scans, or null, to add all pages as regular pages.
+	 * @return The hit rates of the point lookups and the residency of the hot pages during the measurement.
+	 */
+	private Result runWorkload(ScanAwarePageCache cache, SequentialDetector detector) throws Exception
+	{
+		Random random = new Random(SEED);
+		this.buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+		Result result = new Result();
+
+		for (int i = 0; i < WARMUP_PAGES + MEASURED_PAGES; i++)
+		{
+			access(cache, detector, TABLE_ID, i % TABLE_PAGES + 1);
+
+			for (int k = 0; k < LOOKUPS_PER_SCANNED_PAGE; k++)
+			{
+				// 80 percent of the lookups go to 20 percent of the index pages
+				boolean hot = random.nextFloat() < 0.8f;
+				int page = 1 + (hot ? random.nextInt(HOT_PAGES) : HOT_PAGES + random.nextInt(INDEX_PAGES - HOT_PAGES));
+
+				boolean hit = access(cache, detector, INDEX_ID, page);
+
+				if (i >= WARMUP_PAGES) {
+					result.lookups++;
+					result.hits += hit ? 1 : 0;
+					if (hot) {
+						result.hotLookups++;
+						result.hotHits += hit ? 1 : 0;
+					}
+				}
+			}
+
+			if (i >= WARMUP_PAGES && (i - WARMUP_PAGES) % CHECK_INTERVAL == 0) {
+				result.minHotResident = Math.min(result.minHotResident, countResidentPages(cache, INDEX_ID, HOT_PAGES));
+				result.maxScanResident = Math.max(result.maxScanResident, countResidentPages(cache, TABLE_ID, TABLE_PAGES));
+			}
+		}
+
+		result.finalHotResident = countResidentPages(cache, INDEX_ID, HOT_PAGES);
+		return result;
+	}
+
+	/**
+	 * Counts the resident pages among the pages 1 to <code>numPages</code> of a resource.
+	 */
+	private static int countResidentPages(ScanAwarePageCache cache, int resourceId, int numPages)
+	{
+		int resident = 0;
+		for (int page = 1; page <= numPages; page++) {
+			resident += cache.containsPage(resourceId, page) ? 1 : 0;
+		}
+		return resident;
+	}
+
+	/**
+	 * Gets and pins a page, adds it on a miss and unpins it again.
+	 *
+	 * @return True, if the page was found in the cache.
+	 */
+	private boolean access(ScanAwarePageCache cache, SequentialDetector detector, int resourceId, int pageNumber)
+	throws Exception
+	{
+		boolean scan = detector != null && detector.isSequential(resourceId, pageNumber);
+		boolean hit = cache.getPageAndPin(resourceId, pageNumber) != null;
+
+		if (!hit) {
+			CacheableData page = new MyTablePage(this.schema, this.buffer, pageNumber);
+			EvictedCacheEntry evicted = scan ? cache.addScanPageAndPin(page, resourceId) : cache.addPageAndPin(page, resourceId);
+			this.buffer = evicted.getBinaryPage();
+		}
+		cache.unpinPage(resourceId, pageNumber);
+		return hit;
+	}
+
+
+	/**
+	 * The measured hit rates and hot page residency of one run.
+	 */
+	private static final class Result
+	{
+		private long lookups;
+		private long hits;
+		private long hotLookups;
+		private long hotHits;
+		private int minHotResident = HOT_PAGES;
+		private int finalHotResident;
+		private int maxScanResident;
+
+		private double hitRate()
+		{
+			return this.hits / (double) this.lookups;
+		}
+
+		private double hotHitRate()
+		{
+			return this.hotHits / (double) this.hotLookups;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("lookup hit rate %.3f, hot lookup hit rate %.4f, hot pages resident %d (min %d) of %d, " +
+					"scanned pages resident at most %d", hitRate(), hotHitRate(), this.finalHotResident, this.minHotResident,
+					HOT_PAGES, this.maxScanResident);
+		}
+	}
+}
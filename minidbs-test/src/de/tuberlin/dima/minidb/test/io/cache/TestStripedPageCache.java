@@ -0,0 +1,179 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.CacheQuotas;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageCache;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.StripedPageCache;
+import de.tuberlin.dima.minidb.io.tables.MyTablePage;
+
+
+/**
+ * Tests the thread safe page cache that the buffer pool uses, set up from the default configuration.
+ */
+public class TestStripedPageCache
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 7461230985412L;
+
+	/**
+	 * The number of threads accessing the cache concurrently.
+	 */
+	private static final int NUM_THREADS = 8;
+
+	/**
+	 * The number of cache operations every thread performs.
+	 */
+	private static final int OPS_PER_THREAD = 20000;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int CACHE_SIZE = 1024;
+
+	private PageCache underTest;
+	private TableSchema schema;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.schema = new TableSchema(PAGE_SIZE);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		Config config = Config.getDefaultConfig();
+		this.underTest = new StripedPageCache(PAGE_SIZE, CACHE_SIZE, CACHE_SIZE, config.getCacheSegments(),
+				config.getCacheReplacementPolicy(), new CacheQuotas(config));
+	}
+
+
+	/**
+	 * Tests that the capacity of all segments adds up to the requested capacity.
+	 */
+	@Test
+	public void testGetCapacity()
+	{
+		assertTrue("Capacity must be tracked correctly.", this.underTest.getCapacity() == CACHE_SIZE);
+	}
+
+
+	/**
+	 * Many threads hit and pin a working set that fits into the cache. Every request must be
+	 * answered from the cache with the correct page.
+	 */
+	@Test
+	public void testConcurrentHits() throws Exception
+	{
+		final int resourceId = 3;
+		final int workingSet = CACHE_SIZE / 4;
+
+		for (int i = 1; i <= workingSet; i++) {
+			this.underTest.addPage(createPage(i), resourceId);
+		}
+
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 0; t < NUM_THREADS; t++)
+		{
+			final Random random = new Random(SEED + t);
+			threads.add(new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						for (int i = 0; i < OPS_PER_THREAD; i++) {
+							int pageNumber = random.nextInt(workingSet) + 1;
+							CacheableData page = TestStripedPageCache.this.underTest.getPageAndPin(resourceId, pageNumber);
+							assertTrue("Page of the working set must be in the cache.", page != null);
+							assertTrue("Wrong page returned.", page.getPageNumber() == pageNumber);
+							TestStripedPageCache.this.underTest.unpinPage(resourceId, pageNumber);
+						}
+					}
+					catch (Throwable th) {
+						error.compareAndSet(null, th);
+					}
+				}
+			});
+		}
+
+		runAll(threads);
+		assertTrue("Concurrent access failed: " + error.get(), error.get() == null);
+	}
+
+
+	/**
+	 * Pages that are pinned must survive while other threads keep adding new pages.
+	 */
+	@Test
+	public void testPinnedPagesSurviveConcurrentInserts() throws Exception
+	{
+		final int pinnedResource = 1;
+		final int numPinned = 16;
+
+		for (int i = 1; i <= numPinned; i++) {
+			this.underTest.addPageAndPin(createPage(i), pinnedResource);
+		}
+
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 0; t < NUM_THREADS; t++)
+		{
+			final int resourceId = 100 + t;
+			threads.add(new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						for (int i = 1; i <= OPS_PER_THREAD / 4; i++) {
+							TestStripedPageCache.this.underTest.addPage(createPage(i), resourceId);
+						}
+					}
+					catch (Throwable th) {
+						error.compareAndSet(null, th);
+					}
+				}
+			});
+		}
+
+		runAll(threads);
+		assertTrue("Concurrent inserts failed: " + error.get(), error.get() == null);
+
+		for (int i = 1; i <= numPinned; i++) {
+			assertTrue("Pinned page has been evicted.", this.underTest.getPage(pinnedResource, i) != null);
+		}
+	}
+
+
+	private CacheableData createPage(int pageNumber) throws Exception
+	{
+		byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+		return new MyTablePage(this.schema, buffer, pageNumber);
+	}
+
+	private static void runAll(List<Thread> threads) throws InterruptedException
+	{
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.AsyncBufferPool;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that the asynchronous page requests yield the right pages, pinned, for pages in the
+ * cache as well as for pages that have to be read.
+ */
+public class TestAsyncPages
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2209871623409L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int TABLE_PAGES = 512;
+
+	/**
+	 * The number of pages requested in one batch, less than the I/O buffers.
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	/**
+	 * The number of I/O buffers of the buffer pool whose requests wait for frames.
+	 */
+	private static final int FEW_IO_BUFFERS = 2;
+
+	private File tableFile;
+	private TableResourceManager manager;
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("asyncpages", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+
+		this.manager = TableResourceManager.openTable(this.tableFile);
+		this.bufferPool = new MyBufferPoolManager(Config.getDefaultConfig(),
+			Logger.getLogger("Test-AsyncPages-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.manager);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.manager.closeResource();
+		this.tableFile.delete();
+	}
+
+
+	@Test(timeout = 60000)
+	public void testBatchedRequests() throws Exception
+	{
+		List<Integer> all = new ArrayList<Integer>();
+		for (int i = this.manager.getFirstDataPageNumber(); i <= this.manager.getLastDataPageNumber(); i++) {
+			all.add(i);
+		}
+		Collections.shuffle(all, new Random(SEED));
+
+		// the second round requests half of the pages again, those are hits now
+		for (int round = 0; round < 2; round++) {
+			for (int start = 0; start + BATCH_SIZE <= all.size(); start += 2 * BATCH_SIZE) {
+				int[] pageNumbers = new int[BATCH_SIZE];
+				for (int i = 0; i < BATCH_SIZE; i++) {
+					pageNumbers[i] = all.get(start + i + (round == 1 ? BATCH_SIZE / 2 : 0));
+				}
+
+				List<CompletableFuture<CacheableData>> pages = ((AsyncBufferPool) this.bufferPool).getPagesAndPinAsync(1, pageNumbers);
+				assertTrue("One future per page expected.", pages.size() == BATCH_SIZE);
+
+				for (int i = 0; i < BATCH_SIZE; i++) {
+					CacheableData page = pages.get(i).get();
+					assertTrue("Wrong page returned.", page.getPageNumber() == pageNumbers[i]);
+					this.bufferPool.unpinPage(1, pageNumbers[i]);
+				}
+			}
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testRequestsWaitingForFrames() throws Exception
+	{
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("NUM_IO_BUFFERS", String.valueOf(FEW_IO_BUFFERS));
+
+		File configFile = File.createTempFile("asyncpages", ".xml");
+		try {
+			OutputStream out = new FileOutputStream(configFile);
+			props.storeToXML(out, null);
+			out.close();
+
+			BufferPoolManager pool = new MyBufferPoolManager(Config.loadConfig(configFile),
+				Logger.getLogger("Test-AsyncPages-Logger"));
+			pool.startIOThreads();
+			pool.registerResource(2, this.manager);
+
+			// most requests of the batch find no free frame and wait on threads of the buffer pool
+			int[] pageNumbers = new int[BATCH_SIZE];
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				pageNumbers[i] = this.manager.getFirstDataPageNumber() + i;
+			}
+			List<CompletableFuture<CacheableData>> pages = ((AsyncBufferPool) pool).getPagesAndPinAsync(2, pageNumbers);
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				CacheableData page = pages.get(i).get();
+				assertTrue("Wrong page returned.", page.getPageNumber() == pageNumbers[i]);
+				pool.unpinPage(2, pageNumbers[i]);
+			}
+
+			// closing the buffer pool ends the threads that ran the waiting requests, the test
+			// times out otherwise
+			pool.closeBufferPool();
+			while (isRequestThreadAlive()) {
+				Thread.sleep(10);
+			}
+		}
+		finally {
+			configFile.delete();
+		}
+	}
+
+
+	private static boolean isRequestThreadAlive()
+	{
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("page-request-") && thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
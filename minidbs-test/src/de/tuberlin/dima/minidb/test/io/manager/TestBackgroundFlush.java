@@ -0,0 +1,300 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.CheckpointingBufferPool;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+import de.tuberlin.dima.minidb.io.tables.MyTablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that modified pages are written while they stay in the cache: by the background writer
+ * for the pages that are evicted next, and by a checkpoint for all pages.
+ */
+public class TestBackgroundFlush
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int NEW_PAGES = 64;
+
+	/**
+	 * The capacity of the cache for the checkpoint of an almost full cache, which is modified
+	 * nearly completely.
+	 */
+	private static final int SMALL_CACHE_PAGES = 256;
+
+	private static final int FEW_IO_BUFFERS = 4;
+
+	private File tableFile;
+	private File configFile;
+	private TableResourceManager manager;
+	private RecordingResourceManager recorder;
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("backgroundflush", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		// write in the background as soon as any page is modified, no periodic checkpoints
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("FLUSH_INTERVAL", "10");
+		props.setProperty("FLUSH_DIRTY_PERCENT", "0");
+		props.setProperty("CHECKPOINT_INTERVAL", "0");
+
+		this.configFile = File.createTempFile("backgroundflush", ".xml");
+		OutputStream out = new FileOutputStream(this.configFile);
+		props.storeToXML(out, null);
+		out.close();
+
+		this.manager = TableResourceManager.createTable(this.tableFile, schema);
+		this.recorder = new RecordingResourceManager(this.manager);
+		this.bufferPool = new MyBufferPoolManager(
+			Config.loadConfig(this.configFile), Logger.getLogger("Test-BackgroundFlush-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.recorder);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.manager.closeResource();
+		this.tableFile.delete();
+		this.configFile.delete();
+	}
+
+
+	@Test(timeout = 30000)
+	public void testColdPagesAreWrittenInBackground() throws Exception
+	{
+		List<Integer> pageNumbers = createPages();
+		int first = pageNumbers.get(0);
+
+		// the first page is the least recently used one of its segment
+		while (this.recorder.writes(first) == 0) {
+			Thread.sleep(10);
+		}
+
+		CacheableData page = this.bufferPool.getPageAndPin(1, first);
+		assertFalse("The written page must be clean and stay in the cache.", page.hasBeenModified());
+		this.bufferPool.unpinPage(1, first);
+	}
+
+	@Test(timeout = 30000)
+	public void testCheckpointWritesAllPages() throws Exception
+	{
+		List<Integer> pageNumbers = createPages();
+		CheckpointingBufferPool checkpointing = (CheckpointingBufferPool) this.bufferPool;
+
+		assertTrue("The first checkpoint must begin epoch 1.", checkpointing.checkpoint() == 1);
+
+		for (int pageNumber : pageNumbers) {
+			assertTrue("Page " + pageNumber + " must have been written.", this.recorder.writes(pageNumber) > 0);
+		}
+
+		// a page modified after the checkpoint is written by the next one
+		int last = pageNumbers.get(pageNumbers.size() - 1);
+		int writes = this.recorder.writes(last);
+
+		TablePage page = (TablePage) this.bufferPool.getPageAndPin(1, last);
+		page.insertTuple(tuple(-1));
+		this.bufferPool.unpinPage(1, last);
+
+		assertTrue("The second checkpoint must begin epoch 2.", checkpointing.checkpoint() == 2);
+		assertTrue("The modified page must have been written again.", this.recorder.writes(last) > writes);
+	}
+
+
+	@Test(timeout = 30000)
+	public void testCheckpointWritesAllPagesOfFullCache() throws Exception
+	{
+		// no background writer, and far fewer I/O buffers than modified pages, so that the
+		// checkpoint has to wait for its own copies to be written to get frames
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("FLUSH_INTERVAL", "0");
+		props.setProperty("CHECKPOINT_INTERVAL", "0");
+		props.setProperty("NUM_IO_BUFFERS", String.valueOf(FEW_IO_BUFFERS));
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(SMALL_CACHE_PAGES));
+
+		File smallConfigFile = File.createTempFile("backgroundflush", ".xml");
+		OutputStream out = new FileOutputStream(smallConfigFile);
+		props.storeToXML(out, null);
+		out.close();
+
+		this.bufferPool.closeBufferPool();
+		this.bufferPool = new MyBufferPoolManager(
+			Config.loadConfig(smallConfigFile), Logger.getLogger("Test-BackgroundFlush-Logger"));
+		smallConfigFile.delete();
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.recorder);
+
+		List<Integer> pageNumbers = createPages(SMALL_CACHE_PAGES - FEW_IO_BUFFERS);
+		assertTrue("The first checkpoint must begin epoch 1.", ((CheckpointingBufferPool) this.bufferPool).checkpoint() == 1);
+
+		for (int pageNumber : pageNumbers) {
+			assertTrue("Page " + pageNumber + " must have been written.", this.recorder.writes(pageNumber) > 0);
+		}
+	}
+
+
+	private List<Integer> createPages() throws Exception
+	{
+		return createPages(NEW_PAGES);
+	}
+
+	private List<Integer> createPages(int num) throws Exception
+	{
+		List<Integer> pageNumbers = new ArrayList<Integer>();
+
+		for (int i = 0; i < num; i++) {
+			TablePage page = (TablePage) this.bufferPool.createNewPageAndPin(1);
+			page.insertTuple(tuple(i));
+			pageNumbers.add(page.getPageNumber());
+			this.bufferPool.unpinPage(1, page.getPageNumber());
+		}
+		return pageNumbers;
+	}
+
+	private static DataTuple tuple(int value)
+	{
+		return new DataTuple(new DataField[] { new IntField(value) });
+	}
+
+
+	/**
+	 * A resource manager that counts the writes of every page. It hands out its pages as
+	 * MyTablePage, which the background writer can mark as clean.
+	 */
+	private static final class RecordingResourceManager extends ResourceManager
+	{
+		private final TableResourceManager target;
+
+		private final AtomicIntegerArray writes = new AtomicIntegerArray(SMALL_CACHE_PAGES + 16);
+
+
+		RecordingResourceManager(TableResourceManager target)
+		{
+			this.target = target;
+		}
+
+		private CacheableData wrap(CacheableData page) throws IOException
+		{
+			try {
+				return new MyTablePage(this.target.getSchema(), page.getBuffer());
+			}
+			catch (PageFormatException pfex) {
+				throw new IOException(pfex);
+			}
+		}
+
+		int writes(int pageNumber)
+		{
+			return this.writes.get(pageNumber);
+		}
+
+		@Override
+		public PageSize getPageSize()
+		{
+			return this.target.getPageSize();
+		}
+
+		@Override
+		public void truncate() throws IOException
+		{
+			this.target.truncate();
+		}
+
+		@Override
+		public void closeResource() throws IOException
+		{
+			this.target.closeResource();
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber) throws IOException
+		{
+			return wrap(this.target.readPageFromResource(buffer, pageNumber));
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException
+		{
+			CacheableData[] pages = this.target.readPagesFromResource(buffers, firstPageNumber);
+			for (int i = 0; i < pages.length; i++) {
+				pages[i] = wrap(pages[i]);
+			}
+			return pages;
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException
+		{
+			this.target.writePageToResource(buffer, wrapper);
+			this.writes.incrementAndGet(wrapper.getPageNumber());
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException
+		{
+			this.target.writePagesToResource(buffers, wrappers);
+			for (CacheableData wrapper : wrappers) {
+				this.writes.incrementAndGet(wrapper.getPageNumber());
+			}
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer) throws IOException, PageFormatException
+		{
+			int pageNumber = this.target.reserveNewPage(ioBuffer).getPageNumber();
+			return new MyTablePage(this.target.getSchema(), ioBuffer, pageNumber);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type) throws IOException, PageFormatException
+		{
+			return this.target.reserveNewPage(ioBuffer, type);
+		}
+	}
+}
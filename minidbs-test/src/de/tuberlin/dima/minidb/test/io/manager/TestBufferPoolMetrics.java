@@ -0,0 +1,159 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolStatistics;
+import de.tuberlin.dima.minidb.io.manager.CacheCounters;
+import de.tuberlin.dima.minidb.io.manager.MonitoredBufferPool;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests the metrics of the buffer pool, through the snapshot API and through JMX.
+ */
+public class TestBufferPoolMetrics
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int TABLE_PAGES = 32;
+
+	private static final String POOLS = "de.tuberlin.dima.minidb:type=BufferPool,*";
+
+	private File tableFile;
+	private TableResourceManager manager;
+	private BufferPoolManager bufferPool;
+	private int first;
+
+	private Set<ObjectName> before;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("metrics", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+
+		this.before = ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName(POOLS), null);
+
+		this.manager = TableResourceManager.openTable(this.tableFile);
+		this.first = this.manager.getFirstDataPageNumber();
+		this.bufferPool = new MyBufferPoolManager(
+			Config.getDefaultConfig(), Logger.getLogger("Test-Metrics-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.manager);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.manager.closeResource();
+		this.tableFile.delete();
+	}
+
+
+	@Test
+	public void testHitsMissesAndLatencies() throws Exception
+	{
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < TABLE_PAGES; i++) {
+				this.bufferPool.getPageAndPin(1, this.first + i);
+				this.bufferPool.unpinPage(1, this.first + i);
+			}
+		}
+
+		BufferPoolStatistics statistics = ((MonitoredBufferPool) this.bufferPool).getStatistics();
+		CacheCounters counters = statistics.getResources().get(1);
+
+		// the first round may be read ahead, the second one hits
+		assertTrue("Every request must be counted.", counters.getHits() + counters.getMisses() == 2 * TABLE_PAGES);
+		assertTrue("The second round must hit.", counters.getHits() >= TABLE_PAGES);
+		assertTrue("Every page must have been read.", counters.getMisses() + counters.getPrefetchHits() >= TABLE_PAGES);
+		assertTrue("Nothing must have been evicted.", counters.getEvictions() == 0);
+		assertTrue("The page size must add up its resources.",
+			statistics.getPageSizes().get(PAGE_SIZE.getNumberOfBytes()).getMisses() == counters.getMisses());
+		assertTrue("The total must add up the resources.", statistics.getTotal().getHits() == counters.getHits());
+
+		assertTrue("Every read must have been queued.", statistics.getReadWaitTime().getCount() == TABLE_PAGES);
+		assertTrue("Every read must have been timed.", statistics.getReadDeviceTime().getCount() > 0
+			&& statistics.getReadDeviceTime().getCount() <= TABLE_PAGES);
+		assertTrue("The median must not exceed the maximum.",
+			statistics.getReadDeviceTime().getMedianMicros() <= statistics.getReadDeviceTime().getMaxMicros());
+		assertTrue("No read must be queued.", statistics.getReadQueueDepth() == 0);
+	}
+
+	@Test
+	public void testPrefetchHits() throws Exception
+	{
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			this.bufferPool.prefetchPage(1, this.first + i);
+		}
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			this.bufferPool.getPageAndPin(1, this.first + i);
+			this.bufferPool.unpinPage(1, this.first + i);
+		}
+
+		CacheCounters counters = ((MonitoredBufferPool) this.bufferPool).getStatistics().getTotal();
+		assertTrue("Every prefetched page must count as a prefetch hit.",
+			counters.getPrefetchHits() + counters.getWastedPrefetches() == TABLE_PAGES);
+		assertTrue("No prefetch must have been wasted.", counters.getWastedPrefetches() == 0);
+	}
+
+	@Test
+	public void testMBean() throws Exception
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		Set<ObjectName> names = new HashSet<ObjectName>(server.queryNames(new ObjectName(POOLS), null));
+		names.removeAll(this.before);
+		assertTrue("The buffer pool must have registered one MBean.", names.size() == 1);
+		ObjectName name = names.iterator().next();
+
+		this.bufferPool.getPageAndPin(1, this.first);
+		this.bufferPool.unpinPage(1, this.first);
+
+		assertTrue("The MBean must count the miss.", ((Long) server.getAttribute(name, "Misses")) == 1);
+
+		CompositeData statistics = (CompositeData) server.getAttribute(name, "Statistics");
+		CompositeData readDeviceTime = (CompositeData) statistics.get("readDeviceTime");
+		assertTrue("The MBean must publish the histograms.", ((Long) readDeviceTime.get("count")) == 1);
+
+		this.bufferPool.closeBufferPool();
+		assertFalse("Closing the buffer pool must unregister the MBean.", server.isRegistered(name));
+	}
+}
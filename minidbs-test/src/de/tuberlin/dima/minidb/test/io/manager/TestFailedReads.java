@@ -0,0 +1,141 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.AsyncBufferPool;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+
+
+/**
+ * Tests that a read that fails in the I/O thread reaches the requesting thread as an
+ * <code>IOException</code>, instead of leaving it waiting, also for asynchronous requests.
+ */
+public class TestFailedReads
+{
+	private static final String MESSAGE = "Disk is gone.";
+
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.bufferPool = new MyBufferPoolManager(Config.getDefaultConfig(),
+			Logger.getLogger("Test-FailedReads-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, new FailingResourceManager());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+	}
+
+
+	@Test(timeout = 10000)
+	public void testReadErrorIsReported() throws Exception
+	{
+		for (int pageNumber = 1; pageNumber <= 3; pageNumber++) {
+			try {
+				this.bufferPool.getPageAndPin(1, pageNumber);
+				fail("The read must fail.");
+			}
+			catch (IOException ioex) {
+				assertTrue("The cause must be kept.", ioex.getMessage().contains(MESSAGE));
+			}
+		}
+	}
+
+
+	@Test(timeout = 10000)
+	public void testAsyncReadErrorIsReported() throws Exception
+	{
+		Future<CacheableData> page = ((AsyncBufferPool) this.bufferPool).getPageAndPinAsync(1, 1);
+		try {
+			page.get();
+			fail("The read must fail.");
+		}
+		catch (ExecutionException eex) {
+			assertTrue("The read must fail with an I/O error.", eex.getCause() instanceof IOException);
+			assertTrue("The cause must be kept.", eex.getCause().getMessage().contains(MESSAGE));
+		}
+	}
+
+
+	/**
+	 * A resource manager whose reads always fail.
+	 */
+	private static final class FailingResourceManager extends ResourceManager
+	{
+		@Override
+		public PageSize getPageSize()
+		{
+			return PageSize.SIZE_4096;
+		}
+
+		@Override
+		public void truncate()
+		{
+		}
+
+		@Override
+		public void closeResource()
+		{
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber) throws IOException
+		{
+			throw new IOException(MESSAGE);
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException
+		{
+			throw new IOException(MESSAGE);
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException
+		{
+			throw new IOException(MESSAGE);
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException
+		{
+			throw new IOException(MESSAGE);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer) throws IOException
+		{
+			throw new IOException(MESSAGE);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type) throws IOException
+		{
+			throw new IOException(MESSAGE);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Measures the memory allocated per page read in a warm buffer pool, whose cache is much smaller
+ * than the table and whose evicted pages are mostly modified, and while the cache fills. The I/O
+ * buffers are reused and the empty cache slots hand out frames of the arena, so a read must not
+ * allocate a page sized array.
+ */
+public class TestFrameAllocation
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2718281828459L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_8192;
+
+	/**
+	 * The page size of the table that runs the code paths before the cache of the other page
+	 * size fills.
+	 */
+	private static final PageSize WARMUP_PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int TABLE_PAGES = 512;
+
+	private static final int CACHE_PAGES = 64;
+
+	private static final int WARMUP_READS = 4000;
+
+	private static final int MEASURED_READS = 10000;
+
+	private File tableFile;
+	private File warmupFile;
+	private File configFile;
+	private TableResourceManager manager;
+	private TableResourceManager warmupManager;
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("frameallocation", ".tbl");
+		this.tableFile.delete();
+		this.warmupFile = File.createTempFile("frameallocation", ".warmup.tbl");
+		this.warmupFile.delete();
+
+		createTable(this.tableFile, PAGE_SIZE);
+		createTable(this.warmupFile, WARMUP_PAGE_SIZE);
+
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(CACHE_PAGES));
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + WARMUP_PAGE_SIZE.name(), String.valueOf(CACHE_PAGES));
+
+		this.configFile = File.createTempFile("frameallocation", ".xml");
+		OutputStream out = new FileOutputStream(this.configFile);
+		props.storeToXML(out, null);
+		out.close();
+
+		this.manager = TableResourceManager.openTable(this.tableFile);
+		this.bufferPool = new MyBufferPoolManager(
+			Config.loadConfig(this.configFile), Logger.getLogger("Test-FrameAllocation-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.manager);
+	}
+
+	private static void createTable(File file, PageSize pageSize) throws Exception
+	{
+		TableSchema schema = new TableSchema(pageSize);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(file, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[pageSize.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.manager.closeResource();
+		if (this.warmupManager != null) {
+			this.warmupManager.closeResource();
+		}
+		this.tableFile.delete();
+		this.warmupFile.delete();
+		this.configFile.delete();
+	}
+
+
+	@Test(timeout = 120000)
+	public void testNoFrameAllocatedPerRead() throws Exception
+	{
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		Random random = new Random(SEED);
+		int first = this.manager.getFirstDataPageNumber();
+
+		readAndModify(random, first, WARMUP_READS);
+
+		long before = allocatedBytes(threads);
+		readAndModify(random, first, MEASURED_READS);
+		long perRead = (allocatedBytes(threads) - before) / MEASURED_READS;
+
+		System.out.println("Allocated bytes per page read: " + perRead);
+		assertTrue("A page read must not allocate a frame (" + perRead + " bytes per read).",
+			perRead < PAGE_SIZE.getNumberOfBytes() / 2);
+	}
+
+
+	@Test(timeout = 120000)
+	public void testNoFrameAllocatedWhileCacheFills() throws Exception
+	{
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		// run the read path on a cache of the other page size, so the measured reads do not pay
+		// for loading and compiling it
+		this.warmupManager = TableResourceManager.openTable(this.warmupFile);
+		this.bufferPool.registerResource(2, this.warmupManager);
+		Random random = new Random(SEED);
+		readAndModify(random, 2, this.warmupManager.getFirstDataPageNumber(), WARMUP_READS);
+
+		// every read of the empty cache either fills an empty slot or evicts a clean page
+		int first = this.manager.getFirstDataPageNumber();
+		long before = allocatedBytes(threads);
+		for (int i = 0; i < CACHE_PAGES; i++) {
+			int pageNumber = first + i * 7;
+			this.bufferPool.getPageAndPin(1, pageNumber);
+			this.bufferPool.unpinPage(1, pageNumber);
+		}
+		long perRead = (allocatedBytes(threads) - before) / CACHE_PAGES;
+
+		System.out.println("Allocated bytes per page read while the cache fills: " + perRead);
+		assertTrue("An empty cache slot must not allocate a frame (" + perRead + " bytes per read).",
+			perRead < PAGE_SIZE.getNumberOfBytes() / 2);
+	}
+
+
+	private void readAndModify(Random random, int first, int reads) throws Exception
+	{
+		readAndModify(random, 1, first, reads);
+	}
+
+	private void readAndModify(Random random, int resourceId, int first, int reads) throws Exception
+	{
+		DataTuple tuple = new DataTuple(new DataField[] { new IntField(42) });
+
+		for (int i = 0; i < reads; i++) {
+			int pageNumber = first + random.nextInt(TABLE_PAGES);
+			TablePage page = (TablePage) this.bufferPool.getPageAndPin(resourceId, pageNumber);
+			page.insertTuple(tuple);
+			this.bufferPool.unpinPage(resourceId, pageNumber);
+		}
+	}
+
+	private static long allocatedBytes(com.sun.management.ThreadMXBean threads)
+	{
+		long[] ids = threads.getAllThreadIds();
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(ids)) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,143 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.PrefetchingBufferPool;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that prefetching a whole table neither starts a thread per page nor gets in the way of
+ * the demand reads, also when the prefetches are canceled, and that closing the buffer pool
+ * while it prefetches leaves the table open.
+ */
+public class TestPrefetching
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	/**
+	 * The number of pages of the test table, far more than I/O buffers.
+	 */
+	private static final int TABLE_PAGES = 2048;
+
+	/**
+	 * The number of threads the buffer pool may start beyond its I/O threads.
+	 */
+	private static final int THREAD_SLACK = 4;
+
+	private File tableFile;
+	private TableResourceManager manager;
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("prefetching", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+
+		this.manager = TableResourceManager.openTable(this.tableFile);
+		this.bufferPool = new MyBufferPoolManager(Config.getDefaultConfig(),
+			Logger.getLogger("Test-Prefetching-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.manager);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.manager.closeResource();
+		this.tableFile.delete();
+	}
+
+
+	@Test(timeout = 60000)
+	public void testPrefetchWholeTable() throws Exception
+	{
+		int threadsBefore = Thread.activeCount();
+
+		int first = this.manager.getFirstDataPageNumber();
+		int last = this.manager.getLastDataPageNumber();
+		this.bufferPool.prefetchPages(1, first, last);
+
+		assertTrue("Prefetching must not start a thread per page.", Thread.activeCount() <= threadsBefore + THREAD_SLACK);
+
+		for (int pageNumber = first; pageNumber <= last; pageNumber++) {
+			access(pageNumber);
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testCanceledPrefetches() throws Exception
+	{
+		int first = this.manager.getFirstDataPageNumber();
+		int last = this.manager.getLastDataPageNumber();
+		int middle = first + (last - first) / 2;
+		Object scan = new Object();
+		Object other = new Object();
+
+		// the pages of the first half are prefetched by both owners, they must not be canceled
+		PrefetchingBufferPool pool = (PrefetchingBufferPool) this.bufferPool;
+		pool.prefetchPages(1, first, last, scan);
+		pool.prefetchPages(1, first, middle, other);
+		pool.cancelPrefetches(1, scan);
+
+		// canceling for an owner that issued nothing leaves the prefetches alone
+		pool.cancelPrefetches(1, new Object());
+
+		// a page whose prefetch was canceled is read on demand
+		for (int pageNumber = last; pageNumber >= first; pageNumber -= 97) {
+			access(pageNumber);
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testCloseWhilePrefetching() throws Exception
+	{
+		int first = this.manager.getFirstDataPageNumber();
+		int last = this.manager.getLastDataPageNumber();
+		this.bufferPool.prefetchPages(1, first, last);
+		this.bufferPool.closeBufferPool();
+
+		// stopping the readers while they read must leave the table open
+		byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+		assertTrue("Wrong page read.", this.manager.readPageFromResource(buffer, last).getPageNumber() == last);
+	}
+
+
+	private void access(int pageNumber) throws Exception
+	{
+		CacheableData page = this.bufferPool.getPageAndPin(1, pageNumber);
+		assertTrue("Wrong page returned.", page.getPageNumber() == pageNumber);
+		this.bufferPool.unpinPage(1, pageNumber);
+	}
+}
@@ -0,0 +1,87 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.io.manager.ReadAhead;
+
+
+/**
+ * Tests that the {@link ReadAhead} reads ahead of sequential and strided streams with a growing
+ * window, and not at all for random requests.
+ */
+public class TestReadAhead
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 7120398457123L;
+
+	private static final int MAX_WINDOW = 32;
+
+
+	@Test
+	public void testSequentialStream()
+	{
+		ReadAhead readAhead = new ReadAhead(MAX_WINDOW);
+		Set<Integer> readAheadPages = new HashSet<Integer>();
+		int largestDistance = 0;
+
+		for (int pageNumber = 100; pageNumber < 400; pageNumber++) {
+			int[] pages = readAhead.onRequest(1, pageNumber);
+			if (pages != null) {
+				for (int p : pages) {
+					assertTrue("Pages must be read ahead of the stream.", p > pageNumber);
+					assertTrue("Page " + p + " must be read ahead only once.", readAheadPages.add(p));
+					assertTrue("The window must not exceed its maximum.", p - pageNumber <= MAX_WINDOW);
+					largestDistance = Math.max(largestDistance, p - pageNumber);
+				}
+			}
+			if (pageNumber > 110) {
+				assertTrue("Page " + pageNumber + " must have been read ahead.", readAheadPages.contains(pageNumber));
+			}
+		}
+
+		assertTrue("The window must grow to its maximum.", largestDistance == MAX_WINDOW);
+	}
+
+	@Test
+	public void testStridedStream()
+	{
+		ReadAhead readAhead = new ReadAhead(MAX_WINDOW);
+		Set<Integer> readAheadPages = new HashSet<Integer>();
+
+		for (int pageNumber = 10; pageNumber < 1000; pageNumber += 3) {
+			int[] pages = readAhead.onRequest(2, pageNumber);
+			if (pages != null) {
+				for (int p : pages) {
+					assertTrue("Only pages of the stride must be read ahead.", (p - 10) % 3 == 0);
+					readAheadPages.add(p);
+				}
+			}
+			if (pageNumber > 40) {
+				assertTrue("Page " + pageNumber + " must have been read ahead.", readAheadPages.contains(pageNumber));
+			}
+		}
+	}
+
+	@Test
+	public void testRandomRequests()
+	{
+		ReadAhead readAhead = new ReadAhead(MAX_WINDOW);
+		Random random = new Random(SEED);
+		int readAheadPages = 0;
+
+		for (int i = 0; i < 10000; i++) {
+			int[] pages = readAhead.onRequest(3, random.nextInt(100000));
+			readAheadPages += pages == null ? 0 : pages.length;
+		}
+
+		assertTrue("Random requests must hardly cause read-ahead, got " + readAheadPages + " pages.", readAheadPages < 100);
+	}
+}
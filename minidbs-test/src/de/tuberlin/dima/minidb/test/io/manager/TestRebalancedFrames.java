@@ -0,0 +1,152 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that the frames of the pages a cache gives up when it shrinks for a cache of another
+ * page size go back to the arena of the I/O buffers, from which the cache took them.
+ */
+public class TestRebalancedFrames
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 1618033988749L;
+
+	/**
+	 * The page size of the cache that is used little and gives up memory.
+	 */
+	private static final PageSize DONOR_PAGE_SIZE = PageSize.SIZE_4096;
+
+	/**
+	 * The page size of the cache whose working set does not fit and that receives memory.
+	 */
+	private static final PageSize RECEIVER_PAGE_SIZE = PageSize.SIZE_8192;
+
+	private static final int CACHE_PAGES = 64;
+
+	private static final int IO_BUFFERS = 8;
+
+	/**
+	 * The pages the receiver reads at random, much more than it holds.
+	 */
+	private static final int RECEIVER_PAGES = 4 * CACHE_PAGES;
+
+	private File donorFile;
+	private File receiverFile;
+	private File configFile;
+	private TableResourceManager donor;
+	private TableResourceManager receiver;
+	private MyBufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.donorFile = File.createTempFile("rebalancedframes", ".donor.tbl");
+		this.donorFile.delete();
+		this.receiverFile = File.createTempFile("rebalancedframes", ".receiver.tbl");
+		this.receiverFile.delete();
+
+		createTable(this.donorFile, DONOR_PAGE_SIZE, CACHE_PAGES);
+		createTable(this.receiverFile, RECEIVER_PAGE_SIZE, RECEIVER_PAGES);
+
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("NUM_IO_BUFFERS", String.valueOf(IO_BUFFERS));
+		props.setProperty("CACHE_REBALANCE_INTERVAL", "20");
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + DONOR_PAGE_SIZE.name(), String.valueOf(CACHE_PAGES));
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + RECEIVER_PAGE_SIZE.name(), String.valueOf(CACHE_PAGES));
+
+		this.configFile = File.createTempFile("rebalancedframes", ".xml");
+		OutputStream out = new FileOutputStream(this.configFile);
+		props.storeToXML(out, null);
+		out.close();
+
+		this.donor = TableResourceManager.openTable(this.donorFile);
+		this.receiver = TableResourceManager.openTable(this.receiverFile);
+		this.bufferPool = new MyBufferPoolManager(
+			Config.loadConfig(this.configFile), Logger.getLogger("Test-RebalancedFrames-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.donor);
+		this.bufferPool.registerResource(2, this.receiver);
+	}
+
+	private static void createTable(File file, PageSize pageSize, int pages) throws Exception
+	{
+		TableSchema schema = new TableSchema(pageSize);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(file, schema);
+		for (int i = 0; i < pages; i++) {
+			byte[] buffer = new byte[pageSize.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.donor.closeResource();
+		this.receiver.closeResource();
+		this.donorFile.delete();
+		this.receiverFile.delete();
+		this.configFile.delete();
+	}
+
+
+	@Test(timeout = 60000)
+	public void testShrinkingCachePaysBackFrames() throws Exception
+	{
+		// the donor cache fills up and takes a frame of the arena for every slot
+		int first = this.donor.getFirstDataPageNumber();
+		for (int i = 0; i < CACHE_PAGES; i++) {
+			this.bufferPool.getPageAndPin(1, first + i);
+			this.bufferPool.unpinPage(1, first + i);
+		}
+
+		// the receiver misses on pages it evicted recently, so it takes memory from the donor,
+		// whose frames must come back to the arena, the test times out otherwise
+		Random random = new Random(SEED);
+		int receiverFirst = this.receiver.getFirstDataPageNumber();
+		int expected = IO_BUFFERS + CACHE_PAGES / 2;
+		while (freeDonorFrames() < expected) {
+			for (int i = 0; i < 100; i++) {
+				int pageNumber = receiverFirst + random.nextInt(RECEIVER_PAGES);
+				this.bufferPool.getPageAndPin(2, pageNumber);
+				this.bufferPool.unpinPage(2, pageNumber);
+			}
+		}
+	}
+
+
+	private int freeDonorFrames()
+	{
+		Integer free = this.bufferPool.getStatistics().getFreeFrames().get(DONOR_PAGE_SIZE.getNumberOfBytes());
+		return free == null ? 0 : free;
+	}
+}
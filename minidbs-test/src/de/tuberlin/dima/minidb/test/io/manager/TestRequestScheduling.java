@@ -0,0 +1,119 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.io.manager.IOPriority;
+import de.tuberlin.dima.minidb.io.manager.PrefetchRequest;
+import de.tuberlin.dima.minidb.io.manager.ReadRequest;
+import de.tuberlin.dima.minidb.io.manager.Request;
+import de.tuberlin.dima.minidb.io.manager.RequestQueue;
+import de.tuberlin.dima.minidb.io.manager.WriteRequest;
+
+
+/**
+ * Tests that the queues of the I/O workers hand out the requests by priority class and share a
+ * class fairly among the threads that issued the requests.
+ */
+public class TestRequestScheduling
+{
+	@Test
+	public void testClassesInOrder() throws Exception
+	{
+		RequestQueue queue = new RequestQueue(false);
+
+		queue.add(prefetch(1));
+		queue.add(new WriteRequest(1, 2, null, null, null));
+		queue.add(read(3));
+		queue.add(read(4));
+
+		// a sweep holds the demand reads only
+		List<Request> batch = new ArrayList<Request>();
+		batch.add(queue.take());
+		queue.drainTo(batch, 32);
+
+		assertTrue("The sweep must hold the two demand reads.", batch.size() == 2);
+		for (Request request : batch) {
+			assertTrue("The sweep must hold demand reads only.", request.getPriority() == IOPriority.DEMAND_READ);
+		}
+
+		assertTrue("The write-back must follow the demand reads.", queue.take().getPriority() == IOPriority.WRITE_BACK);
+		assertTrue("The prefetch must come last.", queue.take().getPriority() == IOPriority.PREFETCH);
+		assertTrue("The queue must be empty.", queue.isEmpty());
+	}
+
+	@Test
+	public void testFairShareAmongThreads() throws Exception
+	{
+		RequestQueue queue = new RequestQueue(true);
+
+		// a scan queues a backlog, then a lookup of another thread arrives
+		for (Request request : issue(0, 10)) {
+			queue.add(request);
+		}
+		for (Request request : issue(100, 1)) {
+			queue.add(request);
+		}
+
+		assertTrue("The scan's first read must go first.", queue.take().getPageNumber() == 0);
+		assertTrue("The lookup must not wait for the scan's backlog.", queue.take().getPageNumber() == 100);
+		for (int i = 1; i < 10; i++) {
+			assertTrue("The scan's reads must keep their order.", queue.take().getPageNumber() == i);
+		}
+	}
+
+	@Test
+	public void testPromotedPrefetchIsRankedFirst() throws Exception
+	{
+		RequestQueue queue = new RequestQueue(true);
+
+		for (int i = 0; i < 3; i++) {
+			queue.add(read(i));
+		}
+		Request prefetch = prefetch(10);
+		queue.add(prefetch);
+
+		queue.promote(prefetch);
+		assertTrue("The promoted prefetch must be a demand read.", prefetch.getPriority() == IOPriority.DEMAND_READ);
+
+		assertTrue("The first read must go first.", queue.take().getPageNumber() == 0);
+		assertTrue("The promoted prefetch must go before the backlog.", queue.take() == prefetch);
+	}
+
+
+	private static Request read(int pageNumber)
+	{
+		return new ReadRequest(1, pageNumber, null, null, null, true, false);
+	}
+
+	private static Request prefetch(int pageNumber)
+	{
+		return new PrefetchRequest(1, pageNumber, null, null, null, false, null);
+	}
+
+	/**
+	 * Creates demand reads for consecutive pages, issued by a new thread.
+	 */
+	private static List<Request> issue(final int firstPage, final int count) throws InterruptedException
+	{
+		final List<Request> requests = new ArrayList<Request>();
+
+		Thread issuer = new Thread() {
+			@Override
+			public void run()
+			{
+				for (int i = 0; i < count; i++) {
+					requests.add(read(firstPage + i));
+				}
+			}
+		};
+		issuer.start();
+		issuer.join();
+
+		return requests;
+	}
+}
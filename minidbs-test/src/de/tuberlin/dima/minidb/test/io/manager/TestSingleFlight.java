@@ -0,0 +1,243 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that threads which miss on the same pages at the same time wait for one read of each
+ * page, instead of reading the page once per thread.
+ */
+public class TestSingleFlight
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 6651209873345L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int TABLE_PAGES = 64;
+
+	private static final int THREADS = 8;
+
+	private File tableFile;
+	private TableResourceManager manager;
+	private CountingResourceManager counter;
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("singleflight", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+
+		this.manager = TableResourceManager.openTable(this.tableFile);
+		this.counter = new CountingResourceManager(this.manager);
+		this.bufferPool = new MyBufferPoolManager(Config.getDefaultConfig(),
+			Logger.getLogger("Test-SingleFlight-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.counter);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.manager.closeResource();
+		this.tableFile.delete();
+	}
+
+
+	@Test(timeout = 60000)
+	public void testConcurrentMissesReadOnce() throws Exception
+	{
+		final List<Integer> pages = new ArrayList<Integer>();
+		for (int i = this.manager.getFirstDataPageNumber(); i <= this.manager.getLastDataPageNumber(); i++) {
+			pages.add(i);
+		}
+		Collections.shuffle(pages, new Random(SEED));
+
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						// all threads miss on every page at about the same time
+						for (int pageNumber : pages) {
+							barrier.await();
+							CacheableData page = TestSingleFlight.this.bufferPool.getPageAndPin(1, pageNumber);
+							if (page.getPageNumber() != pageNumber) {
+								throw new AssertionError("Wrong page returned.");
+							}
+							TestSingleFlight.this.bufferPool.unpinPage(1, pageNumber);
+						}
+					}
+					catch (Throwable t) {
+						error.compareAndSet(null, t);
+						barrier.reset();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue("Request failed: " + error.get(), error.get() == null);
+
+		for (int pageNumber : pages) {
+			assertTrue("Page " + pageNumber + " read " + this.counter.reads(pageNumber) + " times.",
+				this.counter.reads(pageNumber) == 1);
+		}
+		assertTrue("Only the pages of the table must be read.", this.counter.total() == pages.size());
+	}
+
+
+	/**
+	 * A resource manager that counts the reads of every page, and reads slowly, so that the
+	 * requests for a page overlap.
+	 */
+	private static final class CountingResourceManager extends ResourceManager
+	{
+		private final ResourceManager target;
+
+		private final AtomicIntegerArray reads = new AtomicIntegerArray(TABLE_PAGES + 16);
+
+		private final AtomicInteger total = new AtomicInteger();
+
+
+		CountingResourceManager(ResourceManager target)
+		{
+			this.target = target;
+		}
+
+		int reads(int pageNumber)
+		{
+			return this.reads.get(pageNumber);
+		}
+
+		int total()
+		{
+			return this.total.get();
+		}
+
+		private void count(int pageNumber, int pages) throws IOException
+		{
+			for (int i = 0; i < pages; i++) {
+				this.reads.incrementAndGet(pageNumber + i);
+			}
+			this.total.addAndGet(pages);
+
+			try {
+				Thread.sleep(5);
+			}
+			catch (InterruptedException iex) {
+				throw new IOException("Interrupted.");
+			}
+		}
+
+		@Override
+		public PageSize getPageSize()
+		{
+			return this.target.getPageSize();
+		}
+
+		@Override
+		public void truncate() throws IOException
+		{
+			this.target.truncate();
+		}
+
+		@Override
+		public void closeResource() throws IOException
+		{
+			this.target.closeResource();
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber) throws IOException
+		{
+			count(pageNumber, 1);
+			return this.target.readPageFromResource(buffer, pageNumber);
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException
+		{
+			count(firstPageNumber, buffers.length);
+			return this.target.readPagesFromResource(buffers, firstPageNumber);
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException
+		{
+			this.target.writePageToResource(buffer, wrapper);
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException
+		{
+			this.target.writePagesToResource(buffers, wrappers);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer) throws IOException, PageFormatException
+		{
+			return this.target.reserveNewPage(ioBuffer);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type) throws IOException, PageFormatException
+		{
+			return this.target.reserveNewPage(ioBuffer, type);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.AsyncBufferPool;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.IOThreads;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Benchmarks thousands of concurrent point queries, each on its own thread of the query executor
+ * (see {@link IOThreads#newQueryExecutor(boolean, int)}), with the queries and the completions of
+ * asynchronous requests on platform threads and on virtual threads. Every query
+ * fetches one page with a blocking and one with an asynchronous request. Reads are slowed down,
+ * so that most queries wait for I/O at the same time.
+ * <p>
+ * On a Java runtime without virtual threads, both benchmarks run on platform threads.
+ */
+public class TestVirtualThreadQueries
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 9182736450912L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int TABLE_PAGES = 512;
+
+	private static final int QUERIES = 2000;
+
+	/**
+	 * Mark test as benchmark.
+	 */
+	@Rule
+	public MethodRule benchmarkRun = new BenchmarkRule();
+
+	private File tableFile;
+	private File configFile;
+	private TableResourceManager manager;
+
+
+	@BeforeClass
+	public static void benchmarkInfos()
+	{
+		System.out.println("Virtual threads available: " + IOThreads.isVirtualAvailable());
+	}
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("virtualthreads", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+
+		this.manager = TableResourceManager.openTable(this.tableFile);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.manager.closeResource();
+		this.tableFile.delete();
+		if (this.configFile != null) {
+			this.configFile.delete();
+		}
+	}
+
+
+	@BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+	@Test(timeout = 120000)
+	public void testPlatformThreads() throws Exception
+	{
+		runQueries(false);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+	@Test(timeout = 120000)
+	public void testVirtualThreads() throws Exception
+	{
+		runQueries(true);
+	}
+
+
+	private void runQueries(boolean virtual) throws Exception
+	{
+		final BufferPoolManager bufferPool = new MyBufferPoolManager(
+			loadConfig(virtual), Logger.getLogger("Test-VirtualThreads-Logger"));
+		bufferPool.startIOThreads();
+		bufferPool.registerResource(1, new SlowResourceManager(this.manager));
+
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final int first = this.manager.getFirstDataPageNumber();
+		Random random = new Random(SEED);
+
+		// as many platform threads as queries, so that all queries run at once in both modes
+		ExecutorService queries = IOThreads.newQueryExecutor(virtual, QUERIES);
+		try {
+			for (int i = 0; i < QUERIES; i++) {
+				final int blocking = first + random.nextInt(TABLE_PAGES);
+				final int async = first + random.nextInt(TABLE_PAGES);
+
+				queries.execute(new Runnable() {
+					@Override
+					public void run()
+					{
+						try {
+							lookup(bufferPool.getPageAndPin(1, blocking), blocking);
+							bufferPool.unpinPage(1, blocking);
+
+							lookup(((AsyncBufferPool) bufferPool).getPageAndPinAsync(1, async).get(), async);
+							bufferPool.unpinPage(1, async);
+						}
+						catch (Throwable t) {
+							error.compareAndSet(null, t);
+						}
+					}
+				});
+			}
+
+			queries.shutdown();
+			assertTrue("The queries must finish.", queries.awaitTermination(1, TimeUnit.MINUTES));
+
+			assertTrue("Query failed: " + error.get(), error.get() == null);
+		}
+		finally {
+			bufferPool.closeBufferPool();
+		}
+	}
+
+	private static void lookup(CacheableData page, int pageNumber)
+	{
+		if (page.getPageNumber() != pageNumber) {
+			throw new AssertionError("Wrong page returned.");
+		}
+	}
+
+	private Config loadConfig(boolean virtual) throws IOException
+	{
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("IO_VIRTUAL_THREADS", String.valueOf(virtual));
+
+		this.configFile = File.createTempFile("virtualthreads", ".xml");
+		OutputStream out = new FileOutputStream(this.configFile);
+		props.storeToXML(out, null);
+		out.close();
+
+		return Config.loadConfig(this.configFile);
+	}
+
+
+	/**
+	 * A resource manager that reads slowly, like a disk under load.
+	 */
+	private static final class SlowResourceManager extends ResourceManager
+	{
+		private final ResourceManager target;
+
+
+		SlowResourceManager(ResourceManager target)
+		{
+			this.target = target;
+		}
+
+		private static void delay() throws IOException
+		{
+			try {
+				Thread.sleep(1);
+			}
+			catch (InterruptedException iex) {
+				throw new IOException("Interrupted.");
+			}
+		}
+
+		@Override
+		public PageSize getPageSize()
+		{
+			return this.target.getPageSize();
+		}
+
+		@Override
+		public void truncate() throws IOException
+		{
+			this.target.truncate();
+		}
+
+		@Override
+		public void closeResource() throws IOException
+		{
+			this.target.closeResource();
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber) throws IOException
+		{
+			delay();
+			return this.target.readPageFromResource(buffer, pageNumber);
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException
+		{
+			delay();
+			return this.target.readPagesFromResource(buffers, firstPageNumber);
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException
+		{
+			this.target.writePageToResource(buffer, wrapper);
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException
+		{
+			this.target.writePagesToResource(buffers, wrappers);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer) throws IOException, PageFormatException
+		{
+			return this.target.reserveNewPage(ioBuffer);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type) throws IOException, PageFormatException
+		{
+			return this.target.reserveNewPage(ioBuffer, type);
+		}
+	}
+}
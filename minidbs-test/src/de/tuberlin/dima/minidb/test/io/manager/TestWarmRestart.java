@@ -0,0 +1,207 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.CacheManifest;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.WarmRestartable;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that a buffer pool reloads the pages listed in the cache manifest of a previous buffer
+ * pool, with the frequency class they had, even if the resource is registered under another id.
+ * The time of the warm-up is reported.
+ */
+public class TestWarmRestart
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 3320981746523L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	/**
+	 * The number of pages of the test table.
+	 */
+	private static final int TABLE_PAGES = 256;
+
+	/**
+	 * The pages that are hit twice before the shutdown.
+	 */
+	private static final int HOT_FIRST = 40, HOT_LAST = 99;
+
+	/**
+	 * The pages that are hit once before the shutdown.
+	 */
+	private static final int WARM_FIRST = 150, WARM_LAST = 179;
+
+	private static final String TABLE_NAME = "warm.tbl";
+
+	private File tableFile;
+	private File manifestFile;
+	private TableResourceManager manager;
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("warmrestart", ".tbl");
+		this.manifestFile = File.createTempFile("warmrestart", ".manifest");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.bufferPool != null) {
+			this.bufferPool.closeBufferPool();
+		}
+		if (this.manager != null) {
+			this.manager.closeResource();
+		}
+		this.tableFile.delete();
+		this.manifestFile.delete();
+	}
+
+
+	@Test
+	public void testWarmRestart() throws Exception
+	{
+		// first run: hit the pages and write the manifest at shutdown
+		// (in random order, sequential requests would be taken for a scan)
+		Random random = new Random(SEED);
+		startBufferPool(3);
+		for (int round = 0; round < 2; round++) {
+			for (int pageNumber : shuffled(HOT_FIRST, HOT_LAST, random)) {
+				access(3, pageNumber);
+			}
+		}
+		for (int pageNumber : shuffled(WARM_FIRST, WARM_LAST, random)) {
+			access(3, pageNumber);
+		}
+		((WarmRestartable) this.bufferPool).writeCacheManifest(this.manifestFile, Collections.singletonMap(3, TABLE_NAME));
+		stopBufferPool();
+
+		// second run: the table has another id
+		startBufferPool(11);
+		long start = System.nanoTime();
+		Future<Integer> warmUp = ((WarmRestartable) this.bufferPool).loadCacheManifest(this.manifestFile,
+			Collections.singletonMap(TABLE_NAME, 11));
+		int loaded = warmUp.get().intValue();
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		int expected = (HOT_LAST - HOT_FIRST + 1) + (WARM_LAST - WARM_FIRST + 1);
+		System.out.println("Warm restart loaded " + loaded + " pages in " + millis + " ms.");
+		assertTrue("All pages of the manifest must be loaded.", loaded == expected);
+
+		// the manifest of the second run must list the same pages in the same classes
+		File secondManifest = File.createTempFile("warmrestart", ".manifest");
+		try {
+			((WarmRestartable) this.bufferPool).writeCacheManifest(secondManifest, Collections.singletonMap(11, TABLE_NAME));
+			CacheManifest manifest = readManifest(secondManifest, Collections.singletonMap(TABLE_NAME, 11));
+
+			Set<Integer> hot = new HashSet<Integer>();
+			Set<Integer> warm = new HashSet<Integer>();
+			for (int i = 0; i < manifest.size(); i++) {
+				assertTrue("Wrong resource id.", manifest.getResourceId(i) == 11);
+				(manifest.isFrequent(i) ? hot : warm).add(manifest.getPageNumber(i));
+			}
+
+			for (int i = HOT_FIRST; i <= HOT_LAST; i++) {
+				assertTrue("Frequent page " + i + " must be frequent again.", hot.contains(i));
+			}
+			for (int i = WARM_FIRST; i <= WARM_LAST; i++) {
+				assertTrue("Recent page " + i + " must be recent again.", warm.contains(i));
+			}
+		}
+		finally {
+			secondManifest.delete();
+		}
+	}
+
+
+	private void startBufferPool(int resourceId) throws Exception
+	{
+		this.manager = TableResourceManager.openTable(this.tableFile);
+		this.bufferPool = new MyBufferPoolManager(Config.getDefaultConfig(),
+			Logger.getLogger("Test-WarmRestart-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(resourceId, this.manager);
+	}
+
+	private void stopBufferPool() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.bufferPool = null;
+		this.manager.closeResource();
+		this.manager = null;
+	}
+
+	private void access(int resourceId, int pageNumber) throws Exception
+	{
+		CacheableData page = this.bufferPool.getPageAndPin(resourceId, pageNumber);
+		assertTrue("Wrong page returned.", page.getPageNumber() == pageNumber);
+		this.bufferPool.unpinPage(resourceId, pageNumber);
+	}
+
+	private static List<Integer> shuffled(int first, int last, Random random)
+	{
+		List<Integer> pages = new ArrayList<Integer>();
+		for (int i = first; i <= last; i++) {
+			pages.add(i);
+		}
+		Collections.shuffle(pages, random);
+		return pages;
+	}
+
+	private static CacheManifest readManifest(File file, Map<String, Integer> resourceIds) throws Exception
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return CacheManifest.read(in, resourceIds);
+		}
+		finally {
+			in.close();
+		}
+	}
+}
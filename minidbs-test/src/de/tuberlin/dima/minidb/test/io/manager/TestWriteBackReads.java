@@ -0,0 +1,275 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.AsyncBufferPool;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that a modified page which has been evicted, but is still waiting to be written, is
+ * served in its modified version rather than read from disk.
+ */
+public class TestWriteBackReads
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int TABLE_PAGES = 128;
+
+	private static final int CACHE_PAGES = 16;
+
+	private static final int VALUE = 4711;
+
+	private File tableFile;
+	private File configFile;
+	private TableResourceManager manager;
+	private StallingResourceManager staller;
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("writebackreads", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			creator.writePageToResource(buffer, creator.reserveNewPage(buffer));
+		}
+		creator.closeResource();
+
+		// a small cache without scan resistance, pages are only written when they are evicted
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(CACHE_PAGES));
+		props.setProperty("CACHE_SEGMENTS", "1");
+		props.setProperty("CACHE_SCAN_RESISTANCE", "false");
+		props.setProperty("READ_AHEAD_MAX_PAGES", "0");
+		props.setProperty("FLUSH_INTERVAL", "0");
+		props.setProperty("CHECKPOINT_INTERVAL", "0");
+
+		this.configFile = File.createTempFile("writebackreads", ".xml");
+		OutputStream out = new FileOutputStream(this.configFile);
+		props.storeToXML(out, null);
+		out.close();
+
+		this.manager = TableResourceManager.openTable(this.tableFile);
+		this.staller = new StallingResourceManager(this.manager);
+		this.bufferPool = new MyBufferPoolManager(
+			Config.loadConfig(this.configFile), Logger.getLogger("Test-WriteBackReads-Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(1, this.staller);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.staller.release();
+		this.bufferPool.closeBufferPool();
+		this.manager.closeResource();
+		this.tableFile.delete();
+		this.configFile.delete();
+	}
+
+
+	@Test(timeout = 30000)
+	public void testEvictedPageIsNotReadStale() throws Exception
+	{
+		int pageNumber = modifyAndEvict();
+
+		CacheableData page = this.bufferPool.getPageAndPin(1, pageNumber);
+		assertModified(page);
+
+		// the page is in the cache again
+		this.staller.release();
+		this.bufferPool.unpinPage(1, pageNumber);
+		assertModified(this.bufferPool.getPageAndPin(1, pageNumber));
+		this.bufferPool.unpinPage(1, pageNumber);
+	}
+
+	@Test(timeout = 30000)
+	public void testEvictedPageIsNotReadStaleAsync() throws Exception
+	{
+		int pageNumber = modifyAndEvict();
+
+		CacheableData page = ((AsyncBufferPool) this.bufferPool).getPageAndPinAsync(1, pageNumber).get();
+		assertModified(page);
+
+		this.staller.release();
+		this.bufferPool.unpinPage(1, pageNumber);
+	}
+
+
+	/**
+	 * Modifies the first page of the table, stalls the writes, and reads the other pages until
+	 * the write of the modified page has begun.
+	 *
+	 * @return The number of the modified page.
+	 */
+	private int modifyAndEvict() throws Exception
+	{
+		int first = this.manager.getFirstDataPageNumber();
+
+		TablePage page = (TablePage) this.bufferPool.getPageAndPin(1, first);
+		page.insertTuple(new DataTuple(new DataField[] { new IntField(VALUE) }));
+		this.bufferPool.unpinPage(1, first);
+
+		this.staller.stall();
+
+		for (int i = first + 1; i <= this.manager.getLastDataPageNumber(); i++) {
+			this.bufferPool.getPageAndPin(1, i);
+			this.bufferPool.unpinPage(1, i);
+		}
+
+		this.staller.awaitWrite();
+		return first;
+	}
+
+	private static void assertModified(CacheableData page) throws Exception
+	{
+		TablePage tablePage = (TablePage) page;
+		assertTrue("The page must keep its modification.", page.hasBeenModified());
+		assertEquals("The modified version of the page must be served.", 1, tablePage.getNumRecordsOnPage());
+		assertEquals(new IntField(VALUE), tablePage.getDataTuple(0, 0x1, 1).getField(0));
+	}
+
+
+	/**
+	 * A resource manager whose writes block, once it has been stalled, until it is released.
+	 */
+	private static final class StallingResourceManager extends ResourceManager
+	{
+		private final ResourceManager target;
+
+		private volatile CountDownLatch stalled = new CountDownLatch(0);
+
+		private final CountDownLatch writing = new CountDownLatch(1);
+
+
+		StallingResourceManager(ResourceManager target)
+		{
+			this.target = target;
+		}
+
+		void stall()
+		{
+			this.stalled = new CountDownLatch(1);
+		}
+
+		void release()
+		{
+			this.stalled.countDown();
+		}
+
+		void awaitWrite() throws InterruptedException
+		{
+			this.writing.await();
+		}
+
+		private void block() throws IOException
+		{
+			CountDownLatch latch = this.stalled;
+			if (latch.getCount() > 0) {
+				this.writing.countDown();
+			}
+			try {
+				latch.await();
+			}
+			catch (InterruptedException iex) {
+				throw new IOException("Interrupted.");
+			}
+		}
+
+		@Override
+		public PageSize getPageSize()
+		{
+			return this.target.getPageSize();
+		}
+
+		@Override
+		public void truncate() throws IOException
+		{
+			this.target.truncate();
+		}
+
+		@Override
+		public void closeResource() throws IOException
+		{
+			this.target.closeResource();
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber) throws IOException
+		{
+			return this.target.readPageFromResource(buffer, pageNumber);
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException
+		{
+			return this.target.readPagesFromResource(buffers, firstPageNumber);
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException
+		{
+			block();
+			this.target.writePageToResource(buffer, wrapper);
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException
+		{
+			block();
+			this.target.writePagesToResource(buffers, wrappers);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer) throws IOException, PageFormatException
+		{
+			return this.target.reserveNewPage(ioBuffer);
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type) throws IOException, PageFormatException
+		{
+			return this.target.reserveNewPage(ioBuffer, type);
+		}
+	}
+}
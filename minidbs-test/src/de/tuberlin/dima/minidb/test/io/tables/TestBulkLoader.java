@@ -0,0 +1,447 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.Catalogue;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.ColumnStatistics;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.catalogue.TableStatistics;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataFormatException;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeBulkLoader;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableBulkLoader;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests loading delimited files into a table and building the indexes on the table with the bulk
+ * loader, against the tuples written to the files.
+ */
+public class TestBulkLoader
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 7435098274529834L;
+
+	private static final int NUM_TUPLES = 20000;
+
+	private static final int NUM_GROUPS = 500;
+
+	/**
+	 * A sort buffer that makes every index loader write many sorted runs.
+	 */
+	private static final int SORT_BUFFER_SIZE = 16 * 1024;
+
+	private static final String TABLE = "orders";
+
+	private Catalogue catalogue;
+	private TableSchema schema;
+	private List<File> files;
+	private List<TableResourceManager> tables;
+	private List<IndexResourceManager> indexes;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.schema = new TableSchema(PageSize.SIZE_8192);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("name", DataType.charType(60), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("comment", DataType.varcharType(40), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("group", DataType.intType(), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("price", DataType.doubleType(), true));
+
+		this.catalogue = new Catalogue() {};
+		this.files = new ArrayList<File>();
+		this.tables = new ArrayList<TableResourceManager>();
+		this.indexes = new ArrayList<IndexResourceManager>();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		for (TableResourceManager table : this.tables) {
+			table.closeResource();
+		}
+		for (IndexResourceManager index : this.indexes) {
+			index.closeResource();
+		}
+		for (File file : this.files) {
+			file.delete();
+		}
+	}
+
+
+	@Test
+	public void testLoadTableAndIndexes() throws Exception
+	{
+		Random random = new Random(SEED);
+		List<DataTuple> tuples = generate(random);
+
+		File first = writeLines(tuples.subList(0, NUM_TUPLES / 3));
+		File second = writeLines(tuples.subList(NUM_TUPLES / 3, NUM_TUPLES));
+
+		TableDescriptor table = createTable();
+		IndexDescriptor keyIndex = createIndex("orders_pk", 0, PageSize.SIZE_4096, true);
+		IndexDescriptor nameIndex = createIndex("orders_name", 1, PageSize.SIZE_4096, true);
+		IndexDescriptor groupIndex = createIndex("orders_group", 3, PageSize.SIZE_4096, false);
+
+		TableBulkLoader loader = new TableBulkLoader(this.catalogue, TABLE);
+		loader.setNumberOfThreads(3);
+		assertEquals(NUM_TUPLES, loader.load(first, second));
+
+		// the tuples are stored in the order of the files
+		TableResourceManager resource = table.getResourceManager();
+		List<RID> rids = new ArrayList<RID>();
+		byte[] buffer = new byte[PageSize.SIZE_8192.getNumberOfBytes()];
+		int pages = 0;
+		for (int p = resource.getFirstDataPageNumber(); p <= resource.getLastDataPageNumber(); p++, pages++) {
+			TablePage page = resource.readPageFromResource(buffer, p);
+			for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+				assertEquals(tuples.get(rids.size()), page.getDataTuple(i, Long.MAX_VALUE, 5));
+				rids.add(new RID(p, i));
+			}
+		}
+		assertEquals(NUM_TUPLES, rids.size());
+
+		// statistics
+		TableStatistics stats = table.getStatistics();
+		assertEquals(NUM_TUPLES, stats.getCardinality());
+		assertEquals(pages, stats.getNumberOfPages());
+
+		ColumnStatistics key = stats.getColumnStatistics(0);
+		assertEquals(NUM_TUPLES, key.getCardinality());
+		assertEquals(new IntField(0), key.getLowKey());
+		assertEquals(new IntField(NUM_TUPLES - 1), key.getHighKey());
+		assertEquals(NUM_GROUPS, stats.getColumnStatistics(3).getCardinality());
+
+		// the cardinality of a column without index is estimated
+		long prices = stats.getColumnStatistics(4).getCardinality();
+		assertTrue("Estimated " + prices + " distinct prices.", Math.abs(prices - 1000) < 50);
+
+		checkIndex(keyIndex, 0, tuples, rids);
+		checkIndex(nameIndex, 1, tuples, rids);
+		checkIndex(groupIndex, 3, tuples, rids);
+		assertEquals(3, nameIndex.getStatistics().getTreeDepth());
+	}
+
+	@Test
+	public void testInvalidLine() throws Exception
+	{
+		File file = newFile();
+		Writer writer = new FileWriter(file);
+		writer.write("1|one|comment|7|1.5|\n");
+		writer.write("\n");
+		writer.write("2|two|comment|seven|1.5|\n");
+		writer.close();
+
+		createTable();
+		try {
+			new TableBulkLoader(this.catalogue, TABLE).load(file);
+			fail("The invalid line must be reported.");
+		}
+		catch (DataFormatException dfex) {
+			assertTrue(dfex.getMessage(), dfex.getMessage().contains("line 3"));
+		}
+	}
+
+	@Test
+	public void testDuplicateKey() throws Exception
+	{
+		List<DataTuple> tuples = generate(new Random(SEED));
+		tuples.add(tuples.get(17));
+
+		createTable();
+		IndexDescriptor index = createIndex("orders_pk", 0, PageSize.SIZE_4096, true);
+		try {
+			new TableBulkLoader(this.catalogue, TABLE).load(writeLines(tuples));
+			fail("The duplicate key must be reported.");
+		}
+		catch (DuplicateException dex) {
+			// the index is left empty
+			BTreeIndexPage root = index.getResourceManager().readPageFromResource(
+				new byte[PageSize.SIZE_4096.getNumberOfBytes()], index.getSchema().getRootPageNumber());
+			assertTrue(root instanceof BTreeLeafPage);
+			assertEquals(0, ((BTreeLeafPage) root).getNumberOfEntries());
+		}
+	}
+
+
+	@Test
+	public void testSpilledRuns() throws Exception
+	{
+		List<DataTuple> tuples = generate(new Random(SEED));
+
+		TableDescriptor table = createTable();
+		IndexDescriptor keyIndex = createIndex("orders_pk", 0, PageSize.SIZE_4096, true);
+		IndexDescriptor nameIndex = createIndex("orders_name", 1, PageSize.SIZE_4096, true);
+		IndexDescriptor groupIndex = createIndex("orders_group", 3, PageSize.SIZE_4096, false);
+
+		File spillDirectory = newDirectory();
+		TableBulkLoader loader = new TableBulkLoader(this.catalogue, TABLE);
+		loader.setSpillDirectory(spillDirectory);
+		loader.setSortBufferSize(SORT_BUFFER_SIZE);
+		assertEquals(NUM_TUPLES, loader.load(writeLines(tuples)));
+		assertEquals("The sorted runs must have been deleted.", 0, spillDirectory.list().length);
+
+		TableResourceManager resource = table.getResourceManager();
+		List<RID> rids = new ArrayList<RID>();
+		byte[] buffer = new byte[PageSize.SIZE_8192.getNumberOfBytes()];
+		for (int p = resource.getFirstDataPageNumber(); p <= resource.getLastDataPageNumber(); p++) {
+			TablePage page = resource.readPageFromResource(buffer, p);
+			for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+				rids.add(new RID(p, i));
+			}
+		}
+
+		checkIndex(keyIndex, 0, tuples, rids);
+		checkIndex(nameIndex, 1, tuples, rids);
+		checkIndex(groupIndex, 3, tuples, rids);
+	}
+
+	@Test
+	public void testSpilledRunsOfDoubleKeys() throws Exception
+	{
+		createTable();
+		IndexDescriptor index = createIndex("orders_price", 4, PageSize.SIZE_4096, false);
+
+		// negative and positive keys, many of them repeated, and some NULL keys
+		Random random = new Random(SEED);
+		final DataField[] keys = new DataField[NUM_TUPLES];
+		final long[] rids = new long[NUM_TUPLES];
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			keys[i] = random.nextInt(20) == 0 ? DataType.doubleType().getNullValue() : new DoubleField((random.nextInt(4000) - 2000) / 8.0);
+			rids[i] = new RID(i / 100, i % 100).getID();
+			if (!keys[i].isNULL()) {
+				expected.add(i);
+			}
+		}
+		Collections.sort(expected, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second)
+			{
+				return keys[first].compareTo(keys[second]);
+			}
+		});
+
+		File spillDirectory = newDirectory();
+		BTreeBulkLoader loader = new BTreeBulkLoader(index.getResourceManager(), spillDirectory, SORT_BUFFER_SIZE);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			loader.add(keys[i], rids[i]);
+		}
+		assertEquals(expected.size(), loader.getNumberOfEntries());
+		loader.build();
+		assertEquals(0, spillDirectory.list().length);
+
+		// the leaves hold all pairs in key order
+		IndexResourceManager resource = index.getResourceManager();
+		byte[] buffer = new byte[PageSize.SIZE_4096.getNumberOfBytes()];
+		Set<Long> found = new HashSet<Long>();
+		int next = 0;
+		for (int p = index.getSchema().getFirstLeafNumber(); p != -1; ) {
+			BTreeLeafPage leaf = (BTreeLeafPage) resource.readPageFromResource(buffer, p);
+			for (int i = 0; i < leaf.getNumberOfEntries(); i++, next++) {
+				assertEquals(keys[expected.get(next)], leaf.getKey(i));
+				long rid = leaf.getRidAtPosition(i).getID();
+				assertEquals(keys[(int) (rid >>> 32) * 100 + (int) rid], leaf.getKey(i));
+				assertTrue(found.add(rid));
+			}
+			p = leaf.getNextLeafPageNumber();
+		}
+		assertEquals(expected.size(), next);
+	}
+
+
+	private void checkIndex(IndexDescriptor index, int column, List<DataTuple> tuples, List<RID> rids) throws Exception
+	{
+		IndexResourceManager resource = index.getResourceManager();
+		byte[] buffer = new byte[index.getSchema().getPageSize().getNumberOfBytes()];
+
+		Map<RID, Integer> positions = new HashMap<RID, Integer>();
+		for (int i = 0; i < rids.size(); i++) {
+			positions.put(rids.get(i), i);
+		}
+
+		// the leaves hold all pairs in key order
+		Set<Long> seen = new HashSet<Long>();
+		DataField previous = null;
+		int leaves = 0;
+		for (int p = index.getSchema().getFirstLeafNumber(); p != -1; leaves++) {
+			BTreeLeafPage leaf = (BTreeLeafPage) resource.readPageFromResource(buffer, p);
+			for (int i = 0; i < leaf.getNumberOfEntries(); i++) {
+				DataField key = leaf.getKey(i);
+				RID rid = leaf.getRidAtPosition(i);
+				assertTrue(previous == null || previous.compareTo(key) <= 0);
+				assertEquals(key, tuples.get(positions.get(rid)).getField(column));
+				assertTrue(seen.add(rid.getID()));
+				previous = key;
+			}
+			if (leaf.isLastKeyContinuingOnNextPage()) {
+				DataField last = leaf.getLastKey();
+				p = leaf.getNextLeafPageNumber();
+				assertEquals(last, ((BTreeLeafPage) resource.readPageFromResource(buffer, p)).getFirstKey());
+			} else {
+				p = leaf.getNextLeafPageNumber();
+			}
+		}
+		assertEquals(NUM_TUPLES, seen.size());
+		assertEquals(leaves, index.getStatistics().getNumberOfLeafs());
+
+		// every key is found from the root
+		List<Integer> sample = new ArrayList<Integer>();
+		for (int i = 0; i < NUM_TUPLES; i += 97) {
+			sample.add(i);
+		}
+		for (int i : sample) {
+			DataField key = tuples.get(i).getField(column);
+			int depth = 1;
+			BTreeIndexPage page = resource.readPageFromResource(buffer, index.getSchema().getRootPageNumber());
+			while (page instanceof BTreeInnerNodePage) {
+				page = resource.readPageFromResource(buffer, ((BTreeInnerNodePage) page).getChildPageForKey(key));
+				depth++;
+			}
+			assertEquals(index.getStatistics().getTreeDepth(), depth);
+
+			List<RID> found = new ArrayList<RID>();
+			BTreeLeafPage leaf = (BTreeLeafPage) page;
+			while (leaf.getAllsRIDsForKey(key, found) && leaf.isLastKeyContinuingOnNextPage()) {
+				leaf = (BTreeLeafPage) resource.readPageFromResource(buffer, leaf.getNextLeafPageNumber());
+			}
+			assertTrue(found.contains(rids.get(i)));
+
+			List<RID> expected = new ArrayList<RID>();
+			for (int t = 0; t < NUM_TUPLES; t++) {
+				if (tuples.get(t).getField(column).equals(key)) {
+					expected.add(rids.get(t));
+				}
+			}
+			assertEquals(new HashSet<RID>(expected), new HashSet<RID>(found));
+			assertEquals(expected.size(), found.size());
+		}
+		assertFalse(sample.isEmpty());
+	}
+
+	private List<DataTuple> generate(Random random)
+	{
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			keys.add(i);
+		}
+		Collections.shuffle(keys, random);
+
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			int key = keys.get(i);
+			tuples.add(new DataTuple(new DataField[] {
+				new IntField(key),
+				new CharField(String.format("%-60s", "customer#" + String.format("%09d", key * 7919 % 1000003))),
+				random.nextInt(9) == 0 ? DataType.varcharType(40).getNullValue() : new VarcharField("comment " + random.nextInt(1000)),
+				new IntField(random.nextInt(NUM_GROUPS)),
+				new DoubleField(random.nextInt(1000) / 4.0) }));
+		}
+		return tuples;
+	}
+
+	private File writeLines(List<DataTuple> tuples) throws IOException
+	{
+		File file = newFile();
+		Writer writer = new FileWriter(file);
+		try {
+			for (DataTuple tuple : tuples) {
+				for (int i = 0; i < tuple.getNumberOfFields(); i++) {
+					DataField field = tuple.getField(i);
+					writer.write(field.isNULL() ? "NULL" : field.encodeAsString().trim());
+					writer.write('|');
+				}
+				writer.write('\n');
+			}
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private TableDescriptor createTable() throws IOException
+	{
+		File file = newFile();
+		TableResourceManager resource = TableResourceManager.createTable(file, this.schema);
+		this.tables.add(resource);
+
+		TableDescriptor descriptor = new TableDescriptor(TABLE, file.getPath());
+		descriptor.setResourceProperties(resource, this.catalogue.reserveNextId());
+		this.catalogue.addTable(descriptor);
+		return descriptor;
+	}
+
+	private IndexDescriptor createIndex(String name, int column, PageSize pageSize, boolean unique) throws IOException
+	{
+		File file = newFile();
+		IndexResourceManager resource = IndexResourceManager.createIndex(file, new IndexSchema(this.schema, column, pageSize, unique, 1, 1));
+		this.indexes.add(resource);
+
+		IndexDescriptor descriptor = new IndexDescriptor(name, TABLE, file.getPath());
+		descriptor.setResourceProperties(resource, this.catalogue.getTable(TABLE), this.catalogue.reserveNextId());
+		this.catalogue.addIndex(descriptor);
+		return descriptor;
+	}
+
+	private File newFile() throws IOException
+	{
+		File file = File.createTempFile("bulkload", ".tmp");
+		this.files.add(file);
+		return file;
+	}
+
+	private File newDirectory() throws IOException
+	{
+		File directory = newFile();
+		directory.delete();
+		assertTrue(directory.mkdir());
+		return directory;
+	}
+}
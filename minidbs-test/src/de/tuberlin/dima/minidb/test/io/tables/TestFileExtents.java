@@ -0,0 +1,225 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that table files grow in pre-allocated extents, that the logical end survives closing and
+ * reopening, and that it is found again in a file that was not closed.
+ */
+public class TestFileExtents
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int EXTENT_SIZE = 16 * PAGE_SIZE.getNumberOfBytes();
+
+	private File tableFile;
+	private File copyFile;
+	private TableSchema schema;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("fileextents", ".tbl");
+		this.tableFile.delete();
+		this.copyFile = File.createTempFile("fileextents", ".copy.tbl");
+
+		this.schema = new TableSchema(PAGE_SIZE);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.tableFile.delete();
+		this.copyFile.delete();
+	}
+
+
+	@Test
+	public void testFileGrowsInExtents() throws Exception
+	{
+		TableResourceManager manager = TableResourceManager.createTable(this.tableFile, this.schema);
+		manager.setExtentSize(EXTENT_SIZE);
+		int first = manager.getFirstDataPageNumber();
+
+		writePages(manager, 100);
+
+		// 100 pages in extents of 16 pages
+		assertEquals(7, manager.getNumberOfExtensions());
+		assertEquals((first + 7 * 16) * (long) PAGE_SIZE.getNumberOfBytes(), this.tableFile.length());
+
+		manager.closeResource();
+
+		// the unused part of the last extent is cut off
+		assertEquals((first + 100) * (long) PAGE_SIZE.getNumberOfBytes(), this.tableFile.length());
+
+		TableResourceManager reopened = TableResourceManager.openTable(this.tableFile);
+		try {
+			assertEquals(first + 99, reopened.getLastDataPageNumber());
+			TablePage last = reopened.readPageFromResource(new byte[PAGE_SIZE.getNumberOfBytes()], first + 99);
+			assertEquals(99, ((IntField) last.getDataTuple(0, 1, 1).getField(0)).getValue());
+
+			// new pages continue after the recorded end
+			writePages(reopened, 1);
+			assertEquals(first + 100, reopened.getLastDataPageNumber());
+		}
+		finally {
+			reopened.closeResource();
+		}
+	}
+
+	@Test
+	public void testLogicalEndFoundWithoutClose() throws Exception
+	{
+		TableResourceManager manager = TableResourceManager.createTable(this.tableFile, this.schema);
+		manager.setExtentSize(EXTENT_SIZE);
+		int first = manager.getFirstDataPageNumber();
+
+		try {
+			writePages(manager, 20);
+
+			// a copy of the open file is what a crash leaves behind: the header records the end
+			// as of the last extension, and the file holds the zeros of the whole extent
+			Files.copy(this.tableFile.toPath(), this.copyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			assertTrue(this.copyFile.length() > (first + 20) * (long) PAGE_SIZE.getNumberOfBytes());
+		}
+		finally {
+			manager.closeResource();
+		}
+
+		TableResourceManager recovered = TableResourceManager.openTable(this.copyFile);
+		try {
+			assertEquals(first + 19, recovered.getLastDataPageNumber());
+		}
+		finally {
+			recovered.closeResource();
+		}
+	}
+
+	@Test
+	public void testOriginalFormatGrowsPageByPage() throws Exception
+	{
+		TableResourceManager manager = TableResourceManager.createTable(this.tableFile, this.schema);
+		int first = manager.getFirstDataPageNumber();
+		try {
+			writePages(manager, 3);
+		}
+		finally {
+			manager.closeResource();
+		}
+
+		// turn the header into the original format, which lacks the last page and the flags
+		byte[] file = Files.readAllBytes(this.tableFile.toPath());
+		ByteBuffer header = ByteBuffer.wrap(file, 0, PAGE_SIZE.getNumberOfBytes()).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(4, 0);
+		System.arraycopy(file, 24, file, 16, PAGE_SIZE.getNumberOfBytes() - 24);
+		Arrays.fill(file, PAGE_SIZE.getNumberOfBytes() - 8, PAGE_SIZE.getNumberOfBytes(), (byte) 0);
+		Files.write(this.tableFile.toPath(), file);
+
+		TableResourceManager original = TableResourceManager.openTable(this.tableFile);
+		try {
+			original.setExtentSize(EXTENT_SIZE);
+			assertEquals(first + 2, original.getLastDataPageNumber());
+
+			// without a recorded end, the zeros of an extent would be taken for data
+			writePages(original, 5);
+			assertEquals(0, original.getNumberOfExtensions());
+			assertEquals((first + 8) * (long) PAGE_SIZE.getNumberOfBytes(), this.tableFile.length());
+		}
+		finally {
+			original.closeResource();
+		}
+	}
+
+	@Test
+	public void testConcurrentReservations() throws Exception
+	{
+		final TableResourceManager manager = TableResourceManager.createTable(this.tableFile, this.schema);
+		manager.setExtentSize(EXTENT_SIZE);
+		final int first = manager.getFirstDataPageNumber();
+		final int pagesPerThread = 500;
+		final BitSet reserved = new BitSet();
+		final Throwable[] error = new Throwable[1];
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+						for (int i = 0; i < pagesPerThread; i++) {
+							int pageNumber = manager.reserveNewPage(buffer).getPageNumber();
+							synchronized (reserved) {
+								assertTrue("Page " + pageNumber + " was handed out twice.", !reserved.get(pageNumber));
+								reserved.set(pageNumber);
+							}
+						}
+					}
+					catch (Throwable th) {
+						error[0] = th;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		try {
+			if (error[0] != null) {
+				throw new AssertionError(error[0]);
+			}
+			int total = threads.length * pagesPerThread;
+			assertEquals(total, reserved.cardinality());
+			assertEquals(first, reserved.nextSetBit(0));
+			assertEquals(first + total - 1, manager.getLastDataPageNumber());
+			assertTrue(this.tableFile.length() >= (first + total) * (long) PAGE_SIZE.getNumberOfBytes());
+		}
+		finally {
+			manager.closeResource();
+		}
+	}
+
+
+	private static void writePages(TableResourceManager manager, int pages) throws Exception
+	{
+		int start = manager.getLastDataPageNumber() - manager.getFirstDataPageNumber() + 1;
+		for (int i = 0; i < pages; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			TablePage page = manager.reserveNewPage(buffer);
+			page.insertTuple(new DataTuple(new DataField[] { new IntField(start + i) }));
+			manager.writePageToResource(buffer, page);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.MyBufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Tests that a table opened mapped returns the same pages as a table opened for writing and
+ * rejects modifications.
+ */
+public class TestMappedTable
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int TABLE_PAGES = 32;
+
+	private File tableFile;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.tableFile = File.createTempFile("mappedtable", ".tbl");
+		this.tableFile.delete();
+
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("Column 0", DataType.intType(), true));
+
+		TableResourceManager creator = TableResourceManager.createTable(this.tableFile, schema);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			TablePage page = creator.reserveNewPage(buffer);
+			page.insertTuple(new DataTuple(new DataField[] { new IntField(i) }));
+			creator.writePageToResource(buffer, page);
+		}
+		creator.closeResource();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.tableFile.delete();
+	}
+
+
+	@Test
+	public void testMappedPagesMatch() throws Exception
+	{
+		TableResourceManager regular = TableResourceManager.openTable(this.tableFile);
+		byte[][] expected = new byte[TABLE_PAGES][PAGE_SIZE.getNumberOfBytes()];
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			regular.readPageFromResource(expected[i], regular.getFirstDataPageNumber() + i);
+		}
+		regular.closeResource();
+
+		TableResourceManager mapped = TableResourceManager.openTable(this.tableFile, true);
+		try {
+			assertTrue("The table must be mapped.", mapped.isMapped());
+			assertTrue("The mapped table must have the same pages.",
+				mapped.getLastDataPageNumber() - mapped.getFirstDataPageNumber() + 1 == TABLE_PAGES);
+
+			for (int i = 0; i < TABLE_PAGES; i++) {
+				byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+				TablePage page = mapped.readPageFromResource(buffer, mapped.getFirstDataPageNumber() + i);
+				assertArrayEquals("Page " + i + " differs.", expected[i], buffer);
+				assertTrue("Page " + i + " has the wrong number.", page.getPageNumber() == mapped.getFirstDataPageNumber() + i);
+			}
+
+			byte[][] buffers = new byte[TABLE_PAGES / 2][PAGE_SIZE.getNumberOfBytes()];
+			mapped.readPagesFromResource(buffers, mapped.getFirstDataPageNumber() + TABLE_PAGES / 2);
+			for (int i = 0; i < buffers.length; i++) {
+				assertArrayEquals("Page " + (TABLE_PAGES / 2 + i) + " differs in a batched read.", expected[TABLE_PAGES / 2 + i], buffers[i]);
+			}
+
+			try {
+				mapped.readPageFromResource(new byte[PAGE_SIZE.getNumberOfBytes()], mapped.getLastDataPageNumber() + 1);
+				fail("A page beyond the end of the table must not be read.");
+			}
+			catch (IOException ioex) {
+				// expected
+			}
+		}
+		finally {
+			mapped.closeResource();
+		}
+	}
+
+	@Test
+	public void testMappedTableIsReadOnly() throws Exception
+	{
+		TableResourceManager mapped = TableResourceManager.openTable(this.tableFile, true);
+		try {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			TablePage page = mapped.readPageFromResource(buffer, mapped.getFirstDataPageNumber());
+
+			try {
+				mapped.writePageToResource(buffer, page);
+				fail("A mapped table must not be written.");
+			}
+			catch (IOException ioex) {
+				// expected
+			}
+			try {
+				mapped.truncate();
+				fail("A mapped table must not be truncated.");
+			}
+			catch (IOException ioex) {
+				// expected
+			}
+			try {
+				mapped.reserveNewPage(new byte[PAGE_SIZE.getNumberOfBytes()]);
+				fail("A mapped table must not grow.");
+			}
+			catch (IOException ioex) {
+				// expected
+			}
+		}
+		finally {
+			mapped.closeResource();
+		}
+	}
+
+	@Test
+	public void testBufferPoolReadsMappedTable() throws Exception
+	{
+		TableResourceManager mapped = TableResourceManager.openTable(this.tableFile, true);
+		BufferPoolManager bufferPool = new MyBufferPoolManager(
+			Config.getDefaultConfig(), Logger.getLogger("Test-MappedTable-Logger"));
+		bufferPool.startIOThreads();
+		bufferPool.registerResource(1, mapped);
+		try {
+			for (int i = 0; i < TABLE_PAGES; i++) {
+				int pageNumber = mapped.getFirstDataPageNumber() + i;
+				TablePage page = (TablePage) bufferPool.getPageAndPin(1, pageNumber);
+				DataTuple tuple = page.getDataTuple(0, 1, 1);
+				assertTrue("Page " + pageNumber + " holds the wrong tuple.", ((IntField) tuple.getField(0)).getValue() == i);
+				bufferPool.unpinPage(1, pageNumber);
+			}
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			mapped.closeResource();
+		}
+	}
+}
@@ -0,0 +1,357 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Copies the customer table of the test data into a compressed table, checks that the pages read
+ * back unchanged, and benchmarks scans over the plain and the compressed table. The compression
+ * ratio and the scan throughput are printed.
+ */
+public class TestPageCompression
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 4711471147114711L;
+
+	private static final int SCAN_BATCH = 8;
+
+	private static final int READER_THREADS = 4;
+
+	private static final int READS_PER_THREAD = 2000;
+
+	/**
+	 * Mark test as benchmark.
+	 */
+	@Rule
+	public MethodRule benchmarkRun = new BenchmarkRule();
+
+	private static File plainFile;
+	private static File compressedFile;
+
+
+	@BeforeClass
+	public static void setUpTables() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		File source = new File(TestPageCompression.class.getResource("/config.xml").getPath().replace("/config.xml", "/data/customer.mdtbl"));
+		plainFile = File.createTempFile("pagecompression", ".tbl");
+		compressedFile = File.createTempFile("pagecompression", ".compressed.tbl");
+		Files.copy(source.toPath(), plainFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		TableResourceManager plain = TableResourceManager.openTable(plainFile);
+		TableResourceManager compressed = TableResourceManager.createTable(compressedFile, plain.getSchema(), true);
+		try {
+			byte[] buffer = new byte[plain.getPageSize().getNumberOfBytes()];
+			byte[] reserved = new byte[buffer.length];
+			for (int i = plain.getFirstDataPageNumber(); i <= plain.getLastDataPageNumber(); i++) {
+				plain.readPageFromResource(buffer, i);
+				CacheableData page = compressed.reserveNewPage(reserved);
+				assertEquals(i, page.getPageNumber());
+				compressed.writePageToResource(buffer, page);
+			}
+		}
+		finally {
+			compressed.closeResource();
+			plain.closeResource();
+		}
+
+		System.out.println("Plain table: " + plainFile.length() + " bytes, compressed table: " + compressedFile.length() + " bytes, ratio "
+			+ String.format("%.2f", plainFile.length() / (double) compressedFile.length()));
+	}
+
+	@AfterClass
+	public static void tearDownTables() throws Exception
+	{
+		plainFile.delete();
+		compressedFile.delete();
+	}
+
+
+	@BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 0)
+	@Test
+	public void testPagesReadBackUnchanged() throws Exception
+	{
+		TableResourceManager plain = TableResourceManager.openTable(plainFile);
+		TableResourceManager compressed = TableResourceManager.openTable(compressedFile);
+		try {
+			assertTrue("The table must be compressed.", compressed.isCompressed());
+			assertEquals(plain.getLastDataPageNumber(), compressed.getLastDataPageNumber());
+			assertTrue("The compressed table must be smaller.", compressedFile.length() < plainFile.length());
+
+			byte[] expected = new byte[plain.getPageSize().getNumberOfBytes()];
+			byte[] actual = new byte[expected.length];
+			for (int i = plain.getFirstDataPageNumber(); i <= plain.getLastDataPageNumber(); i++) {
+				plain.readPageFromResource(expected, i);
+				TablePage page = compressed.readPageFromResource(actual, i);
+				assertEquals(i, page.getPageNumber());
+				assertArrayEquals("Page " + i + " differs.", expected, actual);
+			}
+		}
+		finally {
+			compressed.closeResource();
+			plain.closeResource();
+		}
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 0)
+	@Test
+	public void testGrowingPageMovesToNewSlot() throws Exception
+	{
+		File file = File.createTempFile("pagecompression", ".moved.tbl");
+		try {
+			Files.copy(compressedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			TableResourceManager table = TableResourceManager.openTable(file);
+			int first = table.getFirstDataPageNumber();
+			byte[] noise = new byte[table.getPageSize().getNumberOfBytes()];
+			byte[] next = new byte[noise.length];
+			try {
+				// random bytes do not compress, so the page no longer fits its slot; the header
+				// stays intact, so that the page is still accepted when it is read back
+				table.readPageFromResource(noise, first);
+				byte[] random = new byte[noise.length - TablePage.TABLE_DATA_PAGE_HEADER_BYTES];
+				new Random(SEED).nextBytes(random);
+				System.arraycopy(random, 0, noise, TablePage.TABLE_DATA_PAGE_HEADER_BYTES, random.length);
+				table.writePageToResource(noise, new TestPage(first));
+				table.readPageFromResource(next, first + 1);
+			}
+			finally {
+				table.closeResource();
+			}
+
+			TableResourceManager reopened = TableResourceManager.openTable(file);
+			try {
+				byte[] buffer = new byte[noise.length];
+				reopened.readPagesFromResource(new byte[][] { buffer }, first);
+				assertArrayEquals(noise, buffer);
+
+				byte[][] scan = new byte[][] { new byte[noise.length], new byte[noise.length] };
+				reopened.readPagesFromResource(scan, first + 1);
+				assertArrayEquals(next, scan[0]);
+			}
+			finally {
+				reopened.closeResource();
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 0)
+	@Test(timeout = 120000)
+	public void testReadsDuringRewrite() throws Exception
+	{
+		File file = File.createTempFile("pagecompression", ".rewritten.tbl");
+		try {
+			Files.copy(compressedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			final TableResourceManager table = TableResourceManager.openTable(file);
+			final int first = table.getFirstDataPageNumber();
+			int pageSize = table.getPageSize().getNumberOfBytes();
+
+			// versions of the first page that compress to different lengths: the page as it is,
+			// with a quarter of random bytes, and with random bytes only
+			final byte[][] versions = new byte[3][pageSize];
+			table.readPageFromResource(versions[0], first);
+			Random random = new Random(SEED);
+			for (int v = 1; v < versions.length; v++) {
+				System.arraycopy(versions[0], 0, versions[v], 0, pageSize);
+				int start = TablePage.TABLE_DATA_PAGE_HEADER_BYTES;
+				int end = v == 1 ? start + (pageSize - start) / 4 : pageSize;
+				byte[] noise = new byte[end - start];
+				random.nextBytes(noise);
+				System.arraycopy(noise, 0, versions[v], start, noise.length);
+			}
+			final byte[] next = new byte[pageSize];
+			table.readPageFromResource(next, first + 1);
+
+			// the page moves to a slot that holds every version, from then on it is rewritten in place
+			table.writePageToResource(versions[2], new TestPage(first));
+
+			final AtomicBoolean done = new AtomicBoolean();
+			final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+			Thread writer = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						for (int i = 0; !done.get(); i++) {
+							table.writePageToResource(versions[i % versions.length], new TestPage(first));
+						}
+					}
+					catch (Throwable t) {
+						error.compareAndSet(null, t);
+					}
+				}
+			};
+
+			Thread[] readers = new Thread[READER_THREADS];
+			for (int t = 0; t < readers.length; t++) {
+				final boolean batched = t % 2 == 1;
+				readers[t] = new Thread() {
+					@Override
+					public void run()
+					{
+						try {
+							byte[][] buffers = new byte[][] { new byte[next.length], new byte[next.length] };
+							for (int i = 0; i < READS_PER_THREAD && error.get() == null; i++) {
+								if (batched) {
+									table.readPagesFromResource(buffers, first);
+									assertArrayEquals(next, buffers[1]);
+								}
+								else {
+									table.readPageFromResource(buffers[0], first);
+								}
+								assertTrue("A page must be read as one of its versions.", isVersion(buffers[0], versions));
+							}
+						}
+						catch (Throwable t) {
+							error.compareAndSet(null, t);
+						}
+					}
+				};
+			}
+
+			writer.start();
+			for (Thread reader : readers) {
+				reader.start();
+			}
+			for (Thread reader : readers) {
+				reader.join();
+			}
+			done.set(true);
+			writer.join();
+			table.closeResource();
+
+			assertTrue("Concurrent access failed: " + error.get(), error.get() == null);
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	@Test
+	public void testScanPlain() throws Exception
+	{
+		scan(plainFile);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	@Test
+	public void testScanCompressed() throws Exception
+	{
+		scan(compressedFile);
+	}
+
+
+	private static boolean isVersion(byte[] page, byte[][] versions)
+	{
+		for (byte[] version : versions) {
+			if (Arrays.equals(version, page)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void scan(File file) throws Exception
+	{
+		TableResourceManager table = TableResourceManager.openTable(file);
+		try {
+			int pageSize = table.getPageSize().getNumberOfBytes();
+			int first = table.getFirstDataPageNumber();
+			int last = table.getLastDataPageNumber();
+
+			long start = System.nanoTime();
+			int tuples = 0;
+			for (int i = first; i <= last; i += SCAN_BATCH) {
+				byte[][] buffers = new byte[Math.min(SCAN_BATCH, last - i + 1)][pageSize];
+				for (TablePage page : table.readPagesFromResource(buffers, i)) {
+					tuples += page.getNumRecordsOnPage();
+				}
+			}
+			long nanos = System.nanoTime() - start;
+
+			assertTrue(tuples > 0);
+			System.out.println(file.getName() + ": " + (last - first + 1) + " pages scanned at "
+				+ String.format("%.1f", (last - first + 1) * (double) pageSize / nanos * 1000) + " MB/s");
+		}
+		finally {
+			table.closeResource();
+		}
+	}
+
+
+	/**
+	 * A wrapper that only carries the number of a page to write.
+	 */
+	private static final class TestPage implements CacheableData
+	{
+		private final int pageNumber;
+
+
+		TestPage(int pageNumber)
+		{
+			this.pageNumber = pageNumber;
+		}
+
+		@Override
+		public boolean hasBeenModified()
+		{
+			return true;
+		}
+
+		@Override
+		public void markExpired()
+		{
+		}
+
+		@Override
+		public boolean isExpired()
+		{
+			return false;
+		}
+
+		@Override
+		public int getPageNumber()
+		{
+			return this.pageNumber;
+		}
+
+		@Override
+		public byte[] getBuffer()
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.tables.MyPaxTablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageLayout;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TupleIterator;
+import de.tuberlin.dima.minidb.io.tables.TupleRIDIterator;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+import de.tuberlin.dima.minidb.util.Pair;
+
+
+/**
+ * Tests table pages whose records are grouped by column against the tuples inserted into them,
+ * and that the layout of a table survives closing and reopening the table.
+ */
+public class TestPaxTablePage
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2390847502398475L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_8192;
+
+	private TableSchema schema;
+	private Random random;
+	private File tableFile;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.schema = new TableSchema(PAGE_SIZE);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("name", DataType.charType(25), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("comment", DataType.varcharType(40), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("quantity", DataType.bigIntType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("price", DataType.doubleType(), true));
+		this.schema.setPageLayout(TablePageLayout.COLUMN_GROUPED);
+
+		this.random = new Random(SEED);
+		this.tableFile = File.createTempFile("paxpage", ".tbl");
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.tableFile.delete();
+	}
+
+
+	@Test
+	public void testProjectionsAndDeletes() throws Exception
+	{
+		TablePage page = AbstractExtensionFactory.getExtensionFactory().initTablePage(this.schema, new byte[PAGE_SIZE.getNumberOfBytes()], 7);
+		assertTrue("The layout must select the column-grouped page.", page instanceof MyPaxTablePage);
+		List<DataTuple> tuples = fill(page);
+		assertTrue("The page must hold tuples.", tuples.size() > 10);
+		assertEquals(tuples.size(), page.getNumRecordsOnPage());
+
+		boolean[] deleted = new boolean[tuples.size()];
+		for (int i = 0; i < tuples.size(); i += 3) {
+			page.deleteTuple(i);
+			deleted[i] = true;
+		}
+
+		// read the page back from its binary form
+		page = AbstractExtensionFactory.getExtensionFactory().createTablePage(this.schema, page.getBuffer());
+		assertTrue("The layout must select the column-grouped page.", page instanceof MyPaxTablePage);
+		assertFalse(page.hasBeenModified());
+		assertEquals(7, page.getPageNumber());
+
+		// columns 1 and 4
+		long bitmap = 0x12;
+		for (int i = 0; i < tuples.size(); i++) {
+			if (deleted[i]) {
+				assertNull(page.getDataTuple(i, Long.MAX_VALUE, 5));
+				continue;
+			}
+			assertEquals(tuples.get(i), page.getDataTuple(i, Long.MAX_VALUE, 5));
+
+			DataTuple projected = page.getDataTuple(i, bitmap, 2);
+			assertEquals(tuples.get(i).getField(1), projected.getField(0));
+			assertEquals(tuples.get(i).getField(4), projected.getField(1));
+		}
+
+		TupleRIDIterator withRID = page.getIteratorWithRID();
+		TupleIterator iterator = page.getIterator(2, bitmap);
+		int live = 0;
+		while (withRID.hasNext()) {
+			Pair<DataTuple, RID> pair = withRID.next();
+			int position = pair.getSecond().getTupleIndex();
+			assertFalse(deleted[position]);
+			assertEquals(7, pair.getSecond().getPageIndex());
+			assertEquals(tuples.get(position), pair.getFirst());
+
+			assertTrue(iterator.hasNext());
+			assertEquals(tuples.get(position).getField(4), iterator.next().getField(1));
+			live++;
+		}
+		assertFalse(iterator.hasNext());
+		assertEquals(tuples.size() - (tuples.size() + 2) / 3, live);
+	}
+
+	@Test
+	public void testPredicates() throws Exception
+	{
+		TablePage page = AbstractExtensionFactory.getExtensionFactory().initTablePage(this.schema, new byte[PAGE_SIZE.getNumberOfBytes()], 1);
+		List<DataTuple> tuples = fill(page);
+		page.deleteTuple(0);
+
+		LowLevelPredicate[] preds = new LowLevelPredicate[] {
+			new LowLevelPredicate(Operator.GREATER, new IntField(0), 0),
+			new LowLevelPredicate(Operator.SMALLER_OR_EQUAL, new DoubleField(500.0), 4) };
+
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		for (int i = 1; i < tuples.size(); i++) {
+			DataTuple tuple = tuples.get(i);
+			if (preds[0].evaluate(tuple) && preds[1].evaluate(tuple)) {
+				expected.add(tuple);
+				assertEquals(tuple, page.getDataTuple(preds, i, Long.MAX_VALUE, 5));
+			} else {
+				assertNull(page.getDataTuple(preds, i, Long.MAX_VALUE, 5));
+			}
+		}
+		assertTrue("Some tuples must pass and some must not.", expected.size() > 0 && expected.size() < tuples.size() - 1);
+
+		TupleIterator iterator = page.getIterator(preds, 5, Long.MAX_VALUE);
+		for (DataTuple tuple : expected) {
+			assertTrue(iterator.hasNext());
+			assertEquals(tuple, iterator.next());
+		}
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testLayoutIsRecordedInTable() throws Exception
+	{
+		TableResourceManager manager = TableResourceManager.createTable(this.tableFile, this.schema);
+		List<DataTuple> tuples;
+		int pageNumber;
+		try {
+			byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+			TablePage page = manager.reserveNewPage(buffer);
+			tuples = fill(page);
+			pageNumber = page.getPageNumber();
+			manager.writePageToResource(buffer, page);
+		}
+		finally {
+			manager.closeResource();
+		}
+
+		TableResourceManager reopened = TableResourceManager.openTable(this.tableFile);
+		try {
+			assertEquals(TablePageLayout.COLUMN_GROUPED, reopened.getSchema().getPageLayout());
+
+			TablePage page = reopened.readPageFromResource(new byte[PAGE_SIZE.getNumberOfBytes()], pageNumber);
+			assertEquals(tuples.size(), page.getNumRecordsOnPage());
+			for (int i = 0; i < tuples.size(); i++) {
+				assertEquals(tuples.get(i), page.getDataTuple(i, Long.MAX_VALUE, 5));
+			}
+		}
+		finally {
+			reopened.closeResource();
+		}
+	}
+
+	@Test
+	public void testLayoutRejectsRecordsLargerThanPage() throws Exception
+	{
+		TableSchema wide = new TableSchema(PAGE_SIZE);
+		wide.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), false));
+		wide.addColumn(ColumnSchema.createColumnSchema("text", DataType.varcharType(PAGE_SIZE.getNumberOfBytes() - 64), true));
+		wide.addColumn(ColumnSchema.createColumnSchema("more", DataType.varcharType(1000), true));
+		wide.setPageLayout(TablePageLayout.COLUMN_GROUPED);
+
+		try {
+			TableResourceManager.createTable(this.tableFile, wide).closeResource();
+			fail("A column-grouped table whose records may exceed the page must be rejected.");
+		}
+		catch (IOException ioex) {
+			// expected
+		}
+
+		// the same schema with the row layout stores the records that fit
+		wide.setPageLayout(TablePageLayout.ROW);
+		TableResourceManager.createTable(this.tableFile, wide).closeResource();
+	}
+
+
+	private List<DataTuple> fill(TablePage page) throws Exception
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		while (true) {
+			DataTuple tuple = new DataTuple(new DataField[] {
+				new IntField(this.random.nextInt(1000) - 100),
+				new CharField(String.format("%-25s", "name " + this.random.nextInt(100000))),
+				this.random.nextInt(7) == 0 ? DataType.varcharType(40).getNullValue() : new VarcharField(comment()),
+				new BigIntField(this.random.nextLong()),
+				new DoubleField(this.random.nextDouble() * 1000) });
+			if (!page.insertTuple(tuple)) {
+				return tuples;
+			}
+			tuples.add(tuple);
+		}
+	}
+
+	private String comment()
+	{
+		StringBuilder bld = new StringBuilder();
+		int length = this.random.nextInt(40);
+		for (int i = 0; i < length; i++) {
+			bld.append((char) ('a' + this.random.nextInt(26)));
+		}
+		return bld.toString();
+	}
+}
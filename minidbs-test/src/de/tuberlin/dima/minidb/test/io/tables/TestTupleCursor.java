@@ -0,0 +1,204 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.tables.MyPaxTablePage;
+import de.tuberlin.dima.minidb.io.tables.MyTablePage;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageLayout;
+import de.tuberlin.dima.minidb.io.tables.TupleIterator;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+
+/**
+ * Tests the page iterators with predicates on columns that are not fetched, several predicates
+ * on one column, and a tuple that is reused for all records, for both page layouts.
+ */
+public class TestTupleCursor
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 8734502983745092L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_8192;
+
+	/**
+	 * Fetches the columns 1 and 3.
+	 */
+	private static final long BITMAP = 0xa;
+
+	private Random random;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.random = new Random(SEED);
+	}
+
+
+	@Test
+	public void testPredicatesOnOtherColumns() throws Exception
+	{
+		for (TablePageLayout layout : TablePageLayout.values()) {
+			TablePage page = createPage(layout);
+			List<DataTuple> tuples = fill(page);
+			boolean[] deleted = delete(page, tuples.size());
+
+			LowLevelPredicate[] preds = predicates();
+			List<DataTuple> expected = select(tuples, deleted, preds);
+
+			TupleIterator iterator = page.getIterator(preds, 2, BITMAP);
+			DataTuple previous = null;
+			for (DataTuple tuple : expected) {
+				assertTrue(layout.name(), iterator.hasNext());
+				assertTrue("hasNext() must not advance the iterator.", iterator.hasNext());
+				DataTuple next = iterator.next();
+				assertEquals(layout.name(), tuple, next);
+				assertNotSame(previous, next);
+				previous = next;
+			}
+			assertFalse(layout.name(), iterator.hasNext());
+		}
+	}
+
+	@Test
+	public void testReusedTuple() throws Exception
+	{
+		for (TablePageLayout layout : TablePageLayout.values()) {
+			TablePage page = createPage(layout);
+			List<DataTuple> tuples = fill(page);
+			boolean[] deleted = delete(page, tuples.size());
+
+			LowLevelPredicate[] preds = predicates();
+			List<DataTuple> expected = select(tuples, deleted, preds);
+
+			TupleIterator iterator = page.getIterator(preds, 2, BITMAP, true);
+			DataTuple first = null;
+			for (DataTuple tuple : expected) {
+				assertTrue(layout.name(), iterator.hasNext());
+				DataTuple next = iterator.next();
+				if (first == null) {
+					first = next;
+				}
+				assertSame(layout.name(), first, next);
+				assertEquals(layout.name(), tuple, next);
+			}
+			assertFalse(layout.name(), iterator.hasNext());
+
+			try {
+				iterator.next();
+				fail("Exhausted iterator must not return a tuple.");
+			}
+			catch (PageTupleAccessException ptaex) {
+				// expected
+			}
+
+			// without predicates, all live records are returned
+			iterator = page.getIterator(null, 5, Long.MAX_VALUE, true);
+			for (int i = 0; i < tuples.size(); i++) {
+				if (!deleted[i]) {
+					assertTrue(iterator.hasNext());
+					assertEquals(tuples.get(i), iterator.next());
+				}
+			}
+			assertFalse(iterator.hasNext());
+		}
+	}
+
+
+	private TablePage createPage(TablePageLayout layout) throws Exception
+	{
+		TableSchema schema = new TableSchema(PAGE_SIZE);
+		schema.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), false));
+		schema.addColumn(ColumnSchema.createColumnSchema("name", DataType.charType(25), true));
+		schema.addColumn(ColumnSchema.createColumnSchema("comment", DataType.varcharType(40), true));
+		schema.addColumn(ColumnSchema.createColumnSchema("quantity", DataType.bigIntType(), true));
+		schema.addColumn(ColumnSchema.createColumnSchema("price", DataType.doubleType(), true));
+		schema.setPageLayout(layout);
+
+		byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+		return layout == TablePageLayout.COLUMN_GROUPED ? new MyPaxTablePage(schema, buffer, 3) : new MyTablePage(schema, buffer, 3);
+	}
+
+	/**
+	 * Two predicates on the key and one on the price, none of which is fetched.
+	 */
+	private LowLevelPredicate[] predicates()
+	{
+		return new LowLevelPredicate[] {
+			new LowLevelPredicate(Operator.GREATER, new IntField(0), 0),
+			new LowLevelPredicate(Operator.SMALLER, new DoubleField(700.0), 4),
+			new LowLevelPredicate(Operator.SMALLER_OR_EQUAL, new IntField(600), 0) };
+	}
+
+	private List<DataTuple> select(List<DataTuple> tuples, boolean[] deleted, LowLevelPredicate[] preds) throws Exception
+	{
+		List<DataTuple> selected = new ArrayList<DataTuple>();
+		for (int i = 0; i < tuples.size(); i++) {
+			DataTuple tuple = tuples.get(i);
+			boolean pass = !deleted[i];
+			for (LowLevelPredicate pred : preds) {
+				pass &= pred.evaluate(tuple);
+			}
+			if (pass) {
+				selected.add(new DataTuple(new DataField[] { tuple.getField(1), tuple.getField(3) }));
+			}
+		}
+		assertTrue("Some tuples must pass and some must not.", selected.size() > 0 && selected.size() < tuples.size() / 2);
+		return selected;
+	}
+
+	private boolean[] delete(TablePage page, int numRecords) throws Exception
+	{
+		boolean[] deleted = new boolean[numRecords];
+		for (int i = 0; i < numRecords; i += 4) {
+			page.deleteTuple(i);
+			deleted[i] = true;
+		}
+		return deleted;
+	}
+
+	private List<DataTuple> fill(TablePage page) throws Exception
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		while (true) {
+			DataTuple tuple = new DataTuple(new DataField[] {
+				new IntField(this.random.nextInt(1000) - 100),
+				new CharField(String.format("%-25s", "name " + this.random.nextInt(100000))),
+				this.random.nextInt(7) == 0 ? DataType.varcharType(40).getNullValue() : new VarcharField("comment " + this.random.nextInt(1000)),
+				new BigIntField(this.random.nextLong()),
+				new DoubleField(this.random.nextDouble() * 1000) });
+			if (!page.insertTuple(tuple)) {
+				return tuples;
+			}
+			tuples.add(tuple);
+		}
+	}
+}